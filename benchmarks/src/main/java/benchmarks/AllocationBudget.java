@@ -0,0 +1,376 @@
+package benchmarks;
+
+import utils.HttpResponse;
+
+import utils.cache.StaticAssetCache;
+import utils.http2.Http2Settings;
+import utils.log.AsyncLogger;
+import utils.log.Log;
+import utils.metrics.Metrics;
+import utils.queue.QueueJournal;
+import utils.queue.interfaces.IQueue;
+import utils.request.HttpRequest;
+import utils.request.HttpRequestParser;
+import utils.request.RequestBuffer;
+import utils.request.enums.HttpStatus;
+import utils.response.CompressionPolicy;
+import utils.server.AdmissionControl;
+import utils.server.TlsTerminator;
+import utils.server.interfaces.IRequestDispatcher;
+import utils.store.Purchase;
+import utils.store.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import java.util.function.Consumer;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures how many bytes each route allocates per request, and fails if any allocates more than the
+ * budget checked in for it. Garbage made on the request path is what drives GC pauses, and so the tail
+ * latency, so a change that adds some has to raise the budget in the same commit, where it is reviewed.
+ * Each request is parsed, dispatched through the server's real route table and written to a discarding
+ * channel on one thread, and the thread's allocation counter is read around it, so setting up what a
+ * request needs in the store is not counted. Routes are warmed up first so the JIT has done its escape
+ * analysis, and the lowest of several rounds is kept.
+ * Run from an empty folder, which tickets.json and the saved queue are written to before the server loads them.
+ */
+public final class AllocationBudget {
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int CONCERTS = 10;
+    private static final int WARMUP = 20000;
+    private static final int ROUNDS = 5;
+    private static final int REQUESTS = 2000;
+
+    // the purchase each refund is served against, made afresh every time so no refund relies on an earlier one
+    private static final int REFUND_PURCHASE = 1;
+    private static final String REFUND_TICKET = "T-2";
+
+    /**
+     * A request to measure.
+     * @param name The route's name in the budgets file.
+     * @param status The status it must be answered with, so an error path is never measured by mistake.
+     * @param request The raw request.
+     * @param before Sets up what the request needs in the store, run before each request and not measured.
+     * @param after Clears it up again, run after each request and not measured.
+     */
+    private record Route(String name, HttpStatus status, String request, Consumer<Store> before, Consumer<Store> after) {
+        /**
+         * Constructor for a request that needs nothing set up.
+         * @param name The route's name in the budgets file.
+         * @param status The status it must be answered with.
+         * @param request The raw request.
+         */
+        Route(String name, HttpStatus status, String request) {
+            this(name, status, request, store -> { }, store -> { });
+        }
+    }
+
+    // in an order where no route changes what a later one measures: refunds bump ticket counts, which
+    // rebuilds the cached catalogue
+    private static final List<Route> ROUTES = List.of(
+            new Route("static", HttpStatus.OK, "GET /styles.css HTTP/1.1\r\n"
+                    + "Host: localhost:8080\r\n"
+                    + "Accept: text/css,*/*;q=0.1\r\n"
+                    + "Accept-Encoding: gzip, deflate, br\r\n"
+                    + "\r\n"),
+            new Route("tickets", HttpStatus.OK, get("/tickets")),
+            new Route("concert", HttpStatus.OK, get("/tickets/1")),
+            new Route("not-found", HttpStatus.NOT_FOUND, get("/venues/missing.png")),
+            new Route("queue-get", HttpStatus.OK, get("/queue/0/0")),
+            new Route("refund", HttpStatus.OK, post("/tickets/refund", "{\"ticketIDs\":[\"" + REFUND_TICKET + "\"]}"),
+                    AllocationBudget::addRefundable, store -> store.removePurchase(REFUND_PURCHASE)),
+            new Route("queue-post", HttpStatus.CREATED, post("/queue/1", "{ \"tickets\": 1 }"),
+                    store -> { }, AllocationBudget::discardPurchases)
+    );
+
+    // one completed purchase, holding ticket T-1, for the status requests to find
+    private static final String SAVED_QUEUE = "{\"concerts\":[],"
+            + "\"purchases\":[{\"id\":0,\"concertId\":0,\"tickets\":1,\"ticketIds\":[\"T-1\"]}],"
+            + "\"queue\":{\"nextId\":2,\"nextTicket\":3,\"waiting\":[],\"completed\":[0]}}";
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private AllocationBudget() {
+    }
+
+    /**
+     * Entry point, which exits with 1 if any route is over its budget, or cannot be measured.
+     * @param args The budgets file, and the document root to serve static files from.
+     */
+    public static void main(String[] args) {
+        int status;
+
+        try {
+            status = check(args) ? 0 : 1;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        }
+
+        // the queue's worker threads would otherwise keep the JVM alive
+        System.exit(status);
+    }
+
+    /**
+     * Measures every route and checks it against its budget.
+     * @param args The budgets file, and the document root to serve static files from.
+     * @return True if every route is within its budget.
+     * @throws Exception Thrown if the server cannot be set up, or a request cannot be served.
+     */
+    private static boolean check(String[] args) throws Exception {
+        Properties budgets = new Properties();
+
+        try (InputStream inputStream = Files.newInputStream(Path.of(args[0]))) {
+            budgets.load(inputStream);
+        }
+
+        // enough tickets that no purchase is ever turned away for the lack of them
+        Fixtures.writeCatalogue(Path.of("tickets.json"), CONCERTS, 1000000);
+        Files.writeString(Path.of("queue-state.json"), SAVED_QUEUE, StandardCharsets.UTF_8);
+
+        // measured as configured by default, with metrics and the access log on
+        AsyncLogger logger = new AsyncLogger(Path.of("server.log"), 8192, 100, 1.0);
+        Log.install(logger);
+        Metrics.enable();
+
+        HttpRequestParser parser = new HttpRequestParser(8192, 16384, 1048576);
+        StoreCapture journal = new StoreCapture("queue-state.json");
+        IRequestDispatcher handler = createHandler(parser, journal, args[1]);
+        boolean exceeded = false;
+
+        System.out.printf("%-12s %12s %12s%n", "route", "bytes/req", "budget");
+
+        for (Route route : ROUTES) {
+            long budget = Long.parseLong(budgets.getProperty(route.name(), "0"));
+            long allocated = measure(handler, parser, journal.store, route);
+            String verdict = "";
+
+            if (allocated > budget) {
+                exceeded = true;
+                verdict = budget == 0 ? "  NO BUDGET" : "  OVER BUDGET by " + (allocated - budget) + " B";
+            }
+
+            System.out.printf("%-12s %12d %12d%s%n", route.name(), allocated, budget, verdict);
+        }
+
+        Log.install(null);
+        logger.close();
+
+        if (exceeded) {
+            System.err.println("A route allocates more per request than its budget in " + args[0] + ".");
+            System.err.println("Cut the allocation, or if it is intended, raise the budget in the same change.");
+        }
+
+        return !exceeded;
+    }
+
+    /**
+     * Builds the server's request handler, as HttpServer does. The handler is in the unnamed package, so it
+     * is constructed reflectively and only used through the dispatcher interface.
+     * @param parser The request parser.
+     * @param journal The saved queue, which the handler restores its store from.
+     * @param documentRoot The folder static files are served from.
+     * @return The handler.
+     * @throws ReflectiveOperationException Thrown if the handler cannot be constructed.
+     */
+    private static IRequestDispatcher createHandler(
+            HttpRequestParser parser,
+            QueueJournal journal,
+            String documentRoot
+    ) throws ReflectiveOperationException {
+        CompressionPolicy compressionPolicy = new CompressionPolicy(1024);
+        StaticAssetCache assetCache = new StaticAssetCache(documentRoot, "public, max-age=60", 1048576, compressionPolicy);
+
+        return (IRequestDispatcher) Class.forName("HttpRequestHandler")
+                .getConstructor(
+                        StaticAssetCache.class,
+                        HttpRequestParser.class,
+                        CompressionPolicy.class,
+                        AdmissionControl.class,
+                        QueueJournal.class,
+                        TlsTerminator.class,
+                        Http2Settings.class,
+                        int.class,
+                        int.class
+                )
+                .newInstance(
+                        assetCache,
+                        parser,
+                        compressionPolicy,
+                        new AdmissionControl(10000, 1000, 1),
+                        journal,
+                        null,
+                        null,
+                        0,
+                        60
+                );
+    }
+
+    /**
+     * Makes a completed purchase holding the ticket the refund route refunds, as the queue would have.
+     * @param store The server's store.
+     */
+    private static void addRefundable(Store store) {
+        Purchase purchase = new Purchase(store.getConcert(0), REFUND_PURCHASE, 1);
+        purchase.setTicketIDs(new ArrayList<>(List.of(REFUND_TICKET)));
+        store.addPurchase(purchase);
+    }
+
+    /**
+     * Drops every purchase but the saved one, so the store measured against stays the same size however
+     * many purchases are made. Each purchase also waits out its delay in the queue's scheduler, which
+     * lets go of it within 10 seconds, and then joins the queue, on threads that are not measured.
+     * @param store The server's store.
+     */
+    private static void discardPurchases(Store store) {
+        for (Purchase purchase : store.getPurchases()) {
+            if (purchase.getId() != 0) {
+                store.removePurchase(purchase.getId());
+            }
+        }
+    }
+
+    /**
+     * Finds how many bytes a route allocates per request, once warmed up.
+     * @param handler The server's request handler.
+     * @param parser The request parser.
+     * @param store The server's store, for the route to set up what each request needs.
+     * @param route The route.
+     * @return The fewest bytes allocated per request, over every round.
+     * @throws Exception Thrown if the request cannot be served, or is answered with the wrong status.
+     */
+    private static long measure(IRequestDispatcher handler, HttpRequestParser parser, Store store, Route route) throws Exception {
+        ByteArrayInputStream input = new ByteArrayInputStream(route.request().getBytes(StandardCharsets.US_ASCII));
+        RequestBuffer buffer = new RequestBuffer();
+        WritableByteChannel channel = Channels.newChannel(OutputStream.nullOutputStream());
+
+        for (int i = 0; i < WARMUP; i++) {
+            route.before().accept(store);
+            serve(handler, parser, route, input, buffer, channel);
+            route.after().accept(store);
+        }
+
+        long fewest = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocated = 0;
+
+            for (int i = 0; i < REQUESTS; i++) {
+                route.before().accept(store);
+
+                long before = THREADS.getCurrentThreadAllocatedBytes();
+                serve(handler, parser, route, input, buffer, channel);
+                allocated += THREADS.getCurrentThreadAllocatedBytes() - before;
+
+                route.after().accept(store);
+            }
+
+            fewest = Math.min(fewest, allocated / REQUESTS);
+        }
+
+        return fewest;
+    }
+
+    /**
+     * Serves one request, as a keep-alive connection does: reads it into the buffer, parses it,
+     * dispatches it and writes the response. Every response's status is checked, so a route that
+     * starts failing partway through is never measured as its error path.
+     * @param handler The server's request handler.
+     * @param parser The request parser.
+     * @param route The route, and the status it must be answered with.
+     * @param input The raw request, rewound for each use.
+     * @param buffer The connection's request buffer.
+     * @param channel Where the response is written.
+     * @throws Exception Thrown if the request cannot be parsed, the response written, or it has the wrong status.
+     */
+    private static void serve(
+            IRequestDispatcher handler,
+            HttpRequestParser parser,
+            Route route,
+            ByteArrayInputStream input,
+            RequestBuffer buffer,
+            WritableByteChannel channel
+    ) throws Exception {
+        input.reset();
+        buffer.fill(input);
+
+        HttpRequest req = parser.parse(buffer);
+        HttpResponse res = handler.dispatch(req);
+        res.sendResponse(channel, true);
+
+        if (res.status() != route.status()) {
+            throw new IllegalStateException(route.name() + " was answered " + res.status().getStatusCode()
+                    + ", expected " + route.status().getStatusCode());
+        }
+    }
+
+    /**
+     * Builds a JSON GET request.
+     * @param path The path.
+     * @return The raw request.
+     */
+    private static String get(String path) {
+        return "GET " + path + " HTTP/1.1\r\n"
+                + "Host: localhost:8080\r\n"
+                + "Accept: application/json\r\n"
+                + "\r\n";
+    }
+
+    /**
+     * Builds a JSON POST request.
+     * @param path The path.
+     * @param body The JSON body.
+     * @return The raw request.
+     */
+    private static String post(String path, String body) {
+        return "POST " + path + " HTTP/1.1\r\n"
+                + "Host: localhost:8080\r\n"
+                + "Accept: application/json\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n"
+                + body;
+    }
+
+    /**
+     * The saved queue, which also keeps hold of the store the handler restores into. The store is private
+     * to the handler, and this is how routes reach it to set up what their requests need.
+     */
+    private static final class StoreCapture extends QueueJournal {
+        private Store store;
+
+        /**
+         * Constructor for the StoreCapture class.
+         * @param path The saved queue.
+         */
+        StoreCapture(String path) {
+            super(path);
+        }
+
+        @Override
+        public int restore(Store store, IQueue queue) throws IOException {
+            this.store = store;
+            return super.restore(store, queue);
+        }
+    }
+}
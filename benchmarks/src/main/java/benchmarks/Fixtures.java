@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds the inputs the benchmarks share.
+ */
+final class Fixtures {
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Writes a catalogue in the shape of tickets.json, for a Store to load.
+     * @param concerts The number of concerts in it.
+     * @return The file, deleted when the benchmark's JVM exits.
+     */
+    static Path catalogue(int concerts) {
+        try {
+            Path file = Files.createTempFile("tickets", ".json");
+            writeCatalogue(file, concerts, 250);
+            file.toFile().deleteOnExit();
+
+            return file;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a catalogue in the shape of tickets.json to a given file.
+     * @param file Where to write it.
+     * @param concerts The number of concerts in it.
+     * @param tickets The fewest tickets each concert has, some have up to 49 more.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    static void writeCatalogue(Path file, int concerts, int tickets) throws IOException {
+        StringBuilder json = new StringBuilder(concerts * 100 + 2).append('[');
+
+        for (int i = 0; i < concerts; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"count\":").append(tickets + i % 50)
+                    .append(",\"artist\":\"Artist ").append(i)
+                    .append("\",\"venue\":\"Venue ").append(i % 40)
+                    .append("\",\"datetime\":\"2025-05-14T19:30:00Z\"}");
+        }
+
+        Files.writeString(file, json.append(']'), StandardCharsets.UTF_8);
+    }
+}
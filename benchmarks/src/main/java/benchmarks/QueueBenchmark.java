@@ -0,0 +1,110 @@
+package benchmarks;
+
+import utils.queue.Queue;
+import utils.queue.common.QueueFullException;
+
+import utils.store.Concert;
+import utils.store.Purchase;
+import utils.store.Store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue's operations at depths from its default capacity to a million waiting purchases.
+ * Each benchmark leaves the queue as deep as it found it. The queue's worker is stopped,
+ * so nothing is dequeued underneath the measurements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class QueueBenchmark {
+    @Param({"128", "1024", "16384", "131072", "1048576"})
+    public int depth;
+
+    private Queue queue;
+    private Purchase[] purchases;
+    private Purchase extra;
+
+    // the purchase at the front of the queue, which moves along as purchases are sent to the back
+    private int front = 0;
+
+    /**
+     * Fills a queue to the chosen depth.
+     * @throws QueueFullException Never, the queue has room for one more than the depth.
+     */
+    @Setup
+    public void setup() throws QueueFullException {
+        Store store = new Store(Fixtures.catalogue(1).toString());
+        Concert concert = store.getConcert(0);
+
+        queue = new Queue(store, depth + 1);
+        queue.shutdown();
+
+        purchases = new Purchase[depth];
+
+        for (int i = 0; i < depth; i++) {
+            purchases[i] = new Purchase(concert, queue.reserveId(), 1);
+            store.addPurchase(purchases[i]);
+            queue.enqueue(purchases[i]);
+        }
+
+        extra = new Purchase(concert, queue.reserveId(), 1);
+        store.addPurchase(extra);
+    }
+
+    /**
+     * Stops the queue's worker, in case it was restarted.
+     */
+    @TearDown
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+    /**
+     * Looks up the position of the purchase at the back of the queue, as a client polling its status does.
+     * @return The position.
+     */
+    @Benchmark
+    public int getPosition() {
+        return queue.getPosition(purchases[(front + depth - 1) % depth].getId());
+    }
+
+    /**
+     * Adds a purchase to the back of the queue, then takes it out again.
+     * @throws QueueFullException Never, there is always room for one more.
+     */
+    @Benchmark
+    public void enqueueThenRemove() throws QueueFullException {
+        queue.enqueue(extra);
+        queue.remove(extra.getId());
+    }
+
+    /**
+     * Takes the purchase at the front of the queue out, as a client giving up its place does, and puts it at the back.
+     * @throws QueueFullException Never, the queue is no deeper than before.
+     */
+    @Benchmark
+    public void removeFront() throws QueueFullException {
+        Purchase purchase = purchases[front];
+        front = (front + 1) % depth;
+
+        queue.remove(purchase.getId());
+        queue.enqueue(purchase);
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import utils.request.HttpRequest;
+import utils.request.HttpRequestParser;
+import utils.request.RequestBuffer;
+import utils.request.common.HttpParseException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing canned requests, as every connection does for each request it reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParserBenchmark {
+    private static final Map<String, String> REQUESTS = Map.of(
+            "ticket", "GET /tickets/1 HTTP/1.1\r\n"
+                    + "Host: localhost:8080\r\n"
+                    + "Accept: application/json\r\n"
+                    + "\r\n",
+            "browser", "GET /index.js HTTP/1.1\r\n"
+                    + "Host: localhost:8080\r\n"
+                    + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+                    + "Accept: */*\r\n"
+                    + "Accept-Language: en-GB,en;q=0.5\r\n"
+                    + "Accept-Encoding: gzip, deflate, br\r\n"
+                    + "Referer: http://localhost:8080/\r\n"
+                    + "Connection: keep-alive\r\n"
+                    + "If-None-Match: \"5d8c72a5-1b2\"\r\n"
+                    + "Sec-Fetch-Dest: script\r\n"
+                    + "\r\n",
+            "purchase", "POST /queue/1 HTTP/1.1\r\n"
+                    + "Host: localhost:8080\r\n"
+                    + "Accept: application/json\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: 16\r\n"
+                    + "\r\n"
+                    + "{ \"tickets\": 2 }"
+    );
+
+    @Param({"ticket", "browser", "purchase"})
+    public String request;
+
+    private HttpRequestParser parser;
+    private RequestBuffer buffer;
+    private ByteArrayInputStream input;
+
+    /**
+     * Sets up a parser with the server's default limits, and the request to feed it.
+     */
+    @Setup
+    public void setup() {
+        parser = new HttpRequestParser(8192, 16384, 1048576);
+        buffer = new RequestBuffer();
+        input = new ByteArrayInputStream(REQUESTS.get(request).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Copies the request into the connection's buffer and parses it, as a keep-alive connection does for each request.
+     * @return The request.
+     * @throws IOException Never, the input is in memory.
+     * @throws HttpParseException Never, the requests are well formed.
+     */
+    @Benchmark
+    public HttpRequest parse() throws IOException, HttpParseException {
+        input.reset();
+        buffer.fill(input);
+
+        return parser.parse(buffer);
+    }
+}
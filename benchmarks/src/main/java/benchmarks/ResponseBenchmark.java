@@ -0,0 +1,65 @@
+package benchmarks;
+
+import utils.HttpResponse;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a response's head and writing it with its body, into a stream that discards everything,
+ * so only the server's own work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+    // a concert's JSON, the catalogue page, and a large static file held in memory
+    @Param({"64", "2048", "65536"})
+    public int bodySize;
+
+    private HttpResponse response;
+    private OutputStream out;
+
+    /**
+     * Builds a response like the ones the server sends, with a body of the chosen size.
+     */
+    @Setup
+    public void setup() {
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'x');
+
+        response = new HttpResponse(HttpStatus.OK, ContentType.json, body, Map.of("Cache-Control", "no-store"));
+        out = OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Writes the response on a keep-alive connection.
+     * @throws IOException Never, the stream discards its input.
+     */
+    @Benchmark
+    public void sendResponse() throws IOException {
+        response.sendResponse(out, true);
+    }
+}
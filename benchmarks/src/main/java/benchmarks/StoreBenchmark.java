@@ -0,0 +1,64 @@
+package benchmarks;
+
+import utils.store.Store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.json.JsonObject;
+
+import java.io.OutputStream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialising the catalogue behind 'GET /tickets', built in memory and streamed, at sizes from a small venue list to a large one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int concerts;
+
+    private Store store;
+    private OutputStream out;
+
+    /**
+     * Loads a store holding the chosen number of concerts.
+     */
+    @Setup
+    public void setup() {
+        store = new Store(Fixtures.catalogue(concerts).toString());
+        out = OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Builds the whole catalogue as one JSON object.
+     * @return The catalogue.
+     */
+    @Benchmark
+    public JsonObject toJson() {
+        return store.toJson();
+    }
+
+    /**
+     * Streams the catalogue without building it first, as large catalogues are sent.
+     */
+    @Benchmark
+    public void writeJson() {
+        store.writeJson(out);
+    }
+}
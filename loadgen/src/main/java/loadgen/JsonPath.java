@@ -0,0 +1,101 @@
+package loadgen;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A path to a value in a JSON response, written as names separated by dots. A name may be followed by
+ * an index into an array, or by '[*]' for an element picked at random (i.e. 'concerts[*].id').
+ */
+public class JsonPath {
+    private static final int RANDOM = -1;
+
+    private final String path;
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> indexes = new ArrayList<>();
+
+    /**
+     * Constructor for the JsonPath class.
+     * @param path The path, as written in the scenario.
+     * @throws IllegalArgumentException Thrown if the path is malformed.
+     */
+    public JsonPath(String path) {
+        this.path = path;
+
+        for (String segment : path.split("\\.")) {
+            int bracket = segment.indexOf('[');
+
+            if (bracket < 0) {
+                names.add(segment);
+                indexes.add(null);
+                continue;
+            }
+
+            if (!segment.endsWith("]")) {
+                throw new IllegalArgumentException("Malformed path '" + path + "'.");
+            }
+
+            String index = segment.substring(bracket + 1, segment.length() - 1);
+
+            try {
+                names.add(segment.substring(0, bracket));
+                indexes.add(index.equals("*") ? RANDOM : Integer.parseInt(index));
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed index in path '" + path + "'.");
+            }
+        }
+    }
+
+    /**
+     * Finds the value the path leads to.
+     * @param root The response to search.
+     * @return The value, or null if the response has nothing at the path.
+     */
+    public JsonValue find(JsonValue root) {
+        JsonValue value = root;
+
+        for (int i = 0; i < names.size() && value != null; i++) {
+            if (!names.get(i).isEmpty()) {
+                value = value instanceof JsonObject object ? object.get(names.get(i)) : null;
+            }
+
+            Integer index = indexes.get(i);
+
+            if (index != null) {
+                value = value instanceof JsonArray array ? element(array, index) : null;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Picks an element from an array.
+     * @param array The array.
+     * @param index The element's index, or RANDOM for any element.
+     * @return The element, or null if the array has no such element.
+     */
+    private JsonValue element(JsonArray array, int index) {
+        if (index == RANDOM) {
+            return array.isEmpty() ? null : array.get(ThreadLocalRandom.current().nextInt(array.size()));
+        }
+
+        return index < array.size() ? array.get(index) : null;
+    }
+
+    /**
+     * Retrieves the path as written in the scenario.
+     * @return The path.
+     */
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,264 @@
+package loadgen;
+
+import loadgen.common.StepFailedException;
+import loadgen.enums.LoopMode;
+import loadgen.interfaces.IStep;
+
+import java.io.IOException;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a running server with sessions from a scenario script, and reports how it held up.
+ * In open loop, sessions start at a fixed rate whatever the server is doing, as real customers arrive
+ * for an on-sale. In closed loop, a fixed number of users each run one session after another.
+ * Every session runs on its own virtual thread, so the generator keeps to its schedule with thousands
+ * of sessions waiting on the server at once.
+ */
+public class LoadGenerator {
+    private final Options options;
+    private final Scenario scenario;
+    private final Recorder recorder;
+    private final HttpClient client;
+
+    /**
+     * Constructor for the LoadGenerator class.
+     * @param options The run's settings.
+     * @param scenario The scenario each session runs through.
+     */
+    public LoadGenerator(Options options, Scenario scenario) {
+        this.options = options;
+        this.scenario = scenario;
+        this.recorder = new Recorder(scenario.getLabels());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(options.getTimeout()))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * Entry point, which runs the load and prints and saves the results.
+     * @param args The options, see Options.USAGE.
+     */
+    public static void main(String[] args) {
+        Options options;
+        Scenario scenario;
+
+        if (args.length > 0 && args[0].equals("--help")) {
+            System.out.print(Options.USAGE);
+            return;
+        }
+
+        try {
+            options = Options.parse(args);
+            scenario = Scenario.load(options.getScenario());
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        catch (IOException e) {
+            System.err.println("Could not read the scenario: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        LoadGenerator generator = new LoadGenerator(options, scenario);
+
+        try {
+            generator.checkServer();
+
+            Report report = generator.run();
+            report.print(System.out);
+            report.save(options.getOut());
+            System.out.println();
+            System.out.println("Saved the results to " + options.getOut());
+
+            if (options.getCompare() != null) {
+                report.compare(System.out, options.getCompare());
+            }
+        }
+        catch (IOException e) {
+            System.err.println("IO Exception: " + e.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException e) {
+            System.err.println("Interrupted.");
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Checks that the server answers, before starting the load.
+     * @throws IOException Thrown if the server cannot be reached.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    private void checkServer() throws IOException, InterruptedException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(options.getUrl().resolve("/"))
+                    .timeout(Duration.ofSeconds(options.getTimeout()))
+                    .build();
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+        catch (IOException e) {
+            throw new IOException("Could not reach " + options.getUrl() + ": " + e.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Runs the warmup and the measurement, then waits for the sessions still running.
+     * @return The results.
+     * @throws InterruptedException Thrown if interrupted while running.
+     */
+    public Report run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.getWarmup());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.getDuration());
+        Instant startedAt = Instant.now().plusSeconds(options.getWarmup());
+
+        if (options.getMode() == LoopMode.OPEN) {
+            System.out.printf("Starting %.1f sessions/s of %s for %ds, after a %ds warmup%n",
+                    options.getRate(), scenario.getName(), options.getDuration(), options.getWarmup());
+        }
+        else {
+            System.out.printf("Running %d users through %s for %ds, after a %ds warmup%n",
+                    options.getUsers(), scenario.getName(), options.getDuration(), options.getWarmup());
+        }
+
+        ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+
+        if (options.getMode() == LoopMode.OPEN) {
+            openLoop(sessions, start, measureFrom, end);
+        }
+        else {
+            closedLoop(sessions, measureFrom, end);
+        }
+
+        sessions.shutdown();
+
+        if (!sessions.awaitTermination(options.getDrain(), TimeUnit.SECONDS)) {
+            System.out.println("Stopping the sessions still running after " + options.getDrain() + "s");
+        }
+
+        sessions.shutdownNow();
+
+        long elapsed = Math.max(end, recorder.getLastResponse()) - measureFrom;
+
+        return new Report(options, scenario, recorder, startedAt, elapsed);
+    }
+
+    /**
+     * Starts sessions on a fixed schedule until the end. If too many are already in flight, the next one
+     * waits, but its requests are still due from when it was scheduled, so the wait counts against the server.
+     * @param sessions Runs each session.
+     * @param start When the first session is due.
+     * @param measureFrom When sessions start being recorded.
+     * @param end When sessions stop being started.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    private void openLoop(ExecutorService sessions, long start, long measureFrom, long end) throws InterruptedException {
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / options.getRate());
+        Semaphore slots = new Semaphore(options.getMaxSessions());
+
+        for (long i = 0; ; i++) {
+            long due = start + i * period;
+
+            if (due >= end) {
+                return;
+            }
+
+            Session.waitUntil(due);
+            slots.acquire();
+
+            Recorder target = due >= measureFrom ? recorder : null;
+
+            sessions.execute(() -> {
+                try {
+                    runSession(new Session(client, options.getUrl(), Duration.ofSeconds(options.getTimeout()), target, due));
+                }
+                finally {
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts the users, each running one session after another until the end.
+     * @param sessions Runs each user.
+     * @param measureFrom When sessions start being recorded.
+     * @param end When users stop starting sessions.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    private void closedLoop(ExecutorService sessions, long measureFrom, long end) throws InterruptedException {
+        for (int i = 0; i < options.getUsers(); i++) {
+            sessions.execute(() -> {
+                for (long now = System.nanoTime(); now < end && !Thread.currentThread().isInterrupted(); now = System.nanoTime()) {
+                    Recorder target = now >= measureFrom ? recorder : null;
+                    runSession(new Session(client, options.getUrl(), Duration.ofSeconds(options.getTimeout()), target, now));
+                }
+            });
+        }
+
+        Session.waitUntil(end);
+    }
+
+    /**
+     * Runs a session through every step of the scenario, stopping at the first that fails.
+     * @param session The session.
+     */
+    private void runSession(Session session) {
+        if (!session.isRecorded()) {
+            runSteps(session);
+            return;
+        }
+
+        recorder.sessionStarted();
+
+        String failure = runSteps(session);
+
+        if (failure == null) {
+            recorder.sessionCompleted(System.nanoTime() - session.getStart());
+        }
+        else if (!failure.isEmpty()) {
+            recorder.sessionFailed(failure);
+        }
+    }
+
+    /**
+     * Runs the steps of the scenario in order.
+     * @param session The session.
+     * @return Null if every step ran, why the session failed, or blank if the run was stopped.
+     */
+    private String runSteps(Session session) {
+        try {
+            for (IStep step : scenario.getSteps()) {
+                step.run(session);
+            }
+
+            return null;
+        }
+        catch (StepFailedException e) {
+            return e.getMessage();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+}
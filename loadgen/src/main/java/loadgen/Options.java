@@ -0,0 +1,217 @@
+package loadgen;
+
+import loadgen.enums.LoopMode;
+
+import java.net.URI;
+
+import java.nio.file.Path;
+
+/**
+ * The settings for one run, read from the command line as '--name value' pairs.
+ */
+public class Options {
+    public static final String USAGE = """
+            Usage: loadgen [options]
+              --url URL              the server to drive (default http://localhost:8080)
+              --scenario FILE        the scenario script (default loadgen/scenarios/purchase.txt)
+              --mode open|closed     start sessions at a fixed rate, or keep a fixed number of users busy (default open)
+              --rate N               open loop: sessions started per second (default 10)
+              --users N              closed loop: concurrent users, each running one session after another (default 10)
+              --duration SECONDS     how long to measure for (default 60)
+              --warmup SECONDS       how long to run first without measuring (default 10)
+              --drain SECONDS        how long to wait for sessions still running at the end (default 60)
+              --timeout SECONDS      how long to wait for each response (default 30)
+              --max-sessions N       open loop: sessions allowed in flight before new ones wait (default 10000)
+              --interval MILLIS      closed loop: the expected time between a user's requests, for the
+                                     coordinated omission correction (default: measured)
+              --out FILE             where to save the results (default loadgen/build/results/<scenario>-<mode>.json)
+              --compare FILE         results of an earlier run to compare against
+              --help                 show this message
+            """;
+
+    private URI url = URI.create("http://localhost:8080");
+    private Path scenario = Path.of("loadgen/scenarios/purchase.txt");
+    private LoopMode mode = LoopMode.OPEN;
+    private double rate = 10;
+    private int users = 10;
+    private long duration = 60;
+    private long warmup = 10;
+    private long drain = 60;
+    private long timeout = 30;
+    private int maxSessions = 10000;
+    private long interval = 0;
+    private Path out;
+    private Path compare;
+
+    /**
+     * Private constructor, options are read with parse.
+     */
+    private Options() {
+    }
+
+    /**
+     * Reads the options from the command line.
+     * @param args The arguments.
+     * @return The options, with defaults for any not given.
+     * @throws IllegalArgumentException Thrown if an option is unknown, missing its value, or out of range.
+     */
+    public static Options parse(String[] args) {
+        Options options = new Options();
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i] + ".");
+            }
+
+            String value = args[i + 1];
+
+            try {
+                switch (args[i]) {
+                    case "--url" -> options.url = URI.create(value);
+                    case "--scenario" -> options.scenario = Path.of(value);
+                    case "--mode" -> options.mode = LoopMode.fromName(value);
+                    case "--rate" -> options.rate = positive(Double.parseDouble(value), args[i]);
+                    case "--users" -> options.users = (int) positive(Integer.parseInt(value), args[i]);
+                    case "--duration" -> options.duration = (long) positive(Long.parseLong(value), args[i]);
+                    case "--warmup" -> options.warmup = Long.parseLong(value);
+                    case "--drain" -> options.drain = Long.parseLong(value);
+                    case "--timeout" -> options.timeout = (long) positive(Long.parseLong(value), args[i]);
+                    case "--max-sessions" -> options.maxSessions = (int) positive(Integer.parseInt(value), args[i]);
+                    case "--interval" -> options.interval = Long.parseLong(value);
+                    case "--out" -> options.out = Path.of(value);
+                    case "--compare" -> options.compare = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                }
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number for " + args[i] + ", got '" + value + "'.");
+            }
+        }
+
+        if (options.out == null) {
+            String name = options.scenario.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+            options.out = Path.of("loadgen/build/results", name + "-" + options.mode.getName() + ".json");
+        }
+
+        return options;
+    }
+
+    /**
+     * Checks that a number is above zero.
+     * @param value The number.
+     * @param option The option it was given for.
+     * @return The number.
+     * @throws IllegalArgumentException Thrown if it is zero or less.
+     */
+    private static double positive(double value, String option) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(option + " must be above zero.");
+        }
+
+        return value;
+    }
+
+    /**
+     * Retrieves the server's address.
+     * @return The base URL.
+     */
+    public URI getUrl() {
+        return url;
+    }
+
+    /**
+     * Retrieves the scenario script.
+     * @return The file.
+     */
+    public Path getScenario() {
+        return scenario;
+    }
+
+    /**
+     * Retrieves how sessions are started.
+     * @return The mode.
+     */
+    public LoopMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Retrieves how many sessions start per second, in open loop.
+     * @return The rate.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Retrieves how many users run sessions at once, in closed loop.
+     * @return The number of users.
+     */
+    public int getUsers() {
+        return users;
+    }
+
+    /**
+     * Retrieves how long to measure for.
+     * @return The duration, in seconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Retrieves how long to run before measuring.
+     * @return The warmup, in seconds.
+     */
+    public long getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Retrieves how long to wait for sessions still running once the measurement ends.
+     * @return The drain time, in seconds.
+     */
+    public long getDrain() {
+        return drain;
+    }
+
+    /**
+     * Retrieves how long to wait for each response.
+     * @return The timeout, in seconds.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Retrieves how many sessions may be in flight at once, in open loop.
+     * @return The limit.
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Retrieves the expected time between a user's requests, in closed loop.
+     * @return The interval, in milliseconds, or 0 to use the one measured.
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Retrieves where to save the results.
+     * @return The file.
+     */
+    public Path getOut() {
+        return out;
+    }
+
+    /**
+     * Retrieves the results of an earlier run to compare against.
+     * @return The file, or null for none.
+     */
+    public Path getCompare() {
+        return compare;
+    }
+}
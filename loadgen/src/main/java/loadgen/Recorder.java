@@ -0,0 +1,227 @@
+package loadgen;
+
+import utils.metrics.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the measurements of every recorded session, from many threads at once.
+ * Each request is recorded twice: its service time, from when it was actually sent, and its response
+ * time, from when it was due to be sent. The two only differ when requests went out late.
+ */
+public class Recorder {
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final Step all = new Step("all requests");
+    private final LatencyHistogram sessions = new LatencyHistogram();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final LongAccumulator lastResponse = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * The measurements of the requests recorded under one name.
+     */
+    public static class Step {
+        private final String label;
+        private final LatencyHistogram service = new LatencyHistogram();
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        /**
+         * Constructor for the Step class.
+         * @param label The name the requests are recorded under.
+         */
+        private Step(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Records one request.
+         * @param status The response status, or 0 if no response arrived.
+         * @param serviceNanos How long it took from being sent.
+         * @param responseNanos How long it took from being due.
+         */
+        private void record(int status, long serviceNanos, long responseNanos) {
+            service.record(serviceNanos);
+            response.record(responseNanos);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+
+            if (status == 0 || status >= 400) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * Retrieves the name the requests are recorded under.
+         * @return The label.
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Retrieves the service times, from when each request was actually sent.
+         * @return The histogram.
+         */
+        public LatencyHistogram getService() {
+            return service;
+        }
+
+        /**
+         * Retrieves the response times, from when each request was due to be sent.
+         * @return The histogram.
+         */
+        public LatencyHistogram getResponse() {
+            return response;
+        }
+
+        /**
+         * Retrieves how many requests failed, or were answered with an error status.
+         * @return The count.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * Retrieves how many responses had each status, with 0 for requests that got no response.
+         * @return The counts, by status.
+         */
+        public Map<Integer, Long> getStatuses() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+
+    /**
+     * Constructor for the Recorder class.
+     * @param labels The names requests are recorded under, in the order they are reported.
+     */
+    public Recorder(Collection<String> labels) {
+        for (String label : labels) {
+            steps.put(label, new Step(label));
+        }
+    }
+
+    /**
+     * Records a request.
+     * @param label The step it belongs to.
+     * @param status The response status, or 0 if no response arrived.
+     * @param serviceNanos How long it took from being sent.
+     * @param responseNanos How long it took from being due.
+     */
+    public void request(String label, int status, long serviceNanos, long responseNanos) {
+        steps.get(label).record(status, serviceNanos, responseNanos);
+        all.record(status, serviceNanos, responseNanos);
+        lastResponse.accumulate(System.nanoTime());
+    }
+
+    /**
+     * Counts a session starting.
+     */
+    public void sessionStarted() {
+        started.increment();
+    }
+
+    /**
+     * Records a session that ran every step.
+     * @param nanos How long it took from its scheduled start.
+     */
+    public void sessionCompleted(long nanos) {
+        completed.increment();
+        sessions.record(nanos);
+    }
+
+    /**
+     * Counts a session that could not go on.
+     * @param reason Why, which failures are grouped by.
+     */
+    public void sessionFailed(String reason) {
+        failures.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * Retrieves the measurements of each step, in scenario order.
+     * @return The steps.
+     */
+    public Collection<Step> getSteps() {
+        return Collections.unmodifiableCollection(steps.values());
+    }
+
+    /**
+     * Retrieves the measurements of every request together.
+     * @return The combined step.
+     */
+    public Step getAll() {
+        return all;
+    }
+
+    /**
+     * Retrieves how long completed sessions took, from their scheduled start.
+     * @return The histogram.
+     */
+    public LatencyHistogram getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Retrieves how many sessions started.
+     * @return The count.
+     */
+    public long getStarted() {
+        return started.sum();
+    }
+
+    /**
+     * Retrieves how many sessions ran every step.
+     * @return The count.
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Retrieves how many sessions could not go on.
+     * @return The count.
+     */
+    public long getFailed() {
+        return failures.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Retrieves how many sessions neither completed nor failed, because the run stopped while they were running.
+     * @return The count.
+     */
+    public long getUnfinished() {
+        return getStarted() - getCompleted() - getFailed();
+    }
+
+    /**
+     * Retrieves how many sessions could not go on, by reason.
+     * @return The counts, by reason.
+     */
+    public Map<String, Long> getFailures() {
+        Map<String, Long> counts = new TreeMap<>();
+        failures.forEach((reason, count) -> counts.put(reason, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Retrieves when the last response was recorded.
+     * @return The time, from System.nanoTime(), or Long.MIN_VALUE if nothing was recorded.
+     */
+    public long getLastResponse() {
+        return lastResponse.get();
+    }
+}
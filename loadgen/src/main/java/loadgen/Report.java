@@ -0,0 +1,335 @@
+package loadgen;
+
+import loadgen.enums.LoopMode;
+
+import utils.metrics.LatencyHistogram;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Instant;
+
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a run: throughput, and latency percentiles for each step of the scenario.
+ * Response times count from when each request was due, so they are corrected for coordinated omission.
+ * In open loop that holds by construction, as sessions are due on a fixed schedule whether or not the
+ * server keeps up. In closed loop a slow response also delays the user's next requests, so the response
+ * times are corrected afterwards, by adding the requests each slow response held back (in the style of
+ * HdrHistogram's copyCorrectedForCoordinatedOmission).
+ */
+public class Report {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final Options options;
+    private final Scenario scenario;
+    private final Recorder recorder;
+    private final Instant startedAt;
+    private final long elapsed;
+    private final long interval;
+
+    /**
+     * Constructor for the Report class.
+     * @param options The run's settings.
+     * @param scenario The scenario that was run.
+     * @param recorder The measurements.
+     * @param startedAt When the measurement started.
+     * @param elapsed How long the measurement ran for, in nanoseconds, until the last recorded response.
+     */
+    public Report(Options options, Scenario scenario, Recorder recorder, Instant startedAt, long elapsed) {
+        this.options = options;
+        this.scenario = scenario;
+        this.recorder = recorder;
+        this.startedAt = startedAt;
+        this.elapsed = elapsed;
+        this.interval = expectedInterval();
+    }
+
+    /**
+     * Works out the expected time between a user's requests, for correcting closed loop response times.
+     * Unless one is given, it is the average measured: each user sent a request every users * elapsed / requests.
+     * @return The interval, in microseconds, or 0 in open loop, which needs no correction.
+     */
+    private long expectedInterval() {
+        if (options.getMode() == LoopMode.OPEN) {
+            return 0;
+        }
+
+        if (options.getInterval() > 0) {
+            return TimeUnit.MILLISECONDS.toMicros(options.getInterval());
+        }
+
+        long requests = recorder.getAll().getService().snapshot().count();
+
+        return requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(elapsed) * options.getUsers() / requests;
+    }
+
+    /**
+     * Retrieves the response times of a step, corrected for coordinated omission.
+     * @param step The step.
+     * @return The corrected response times.
+     */
+    private LatencyHistogram.Snapshot corrected(Recorder.Step step) {
+        return step.getResponse().snapshot().correctedFor(interval);
+    }
+
+    /**
+     * Writes the report for a person to read.
+     * @param out Where to write.
+     */
+    public void print(PrintStream out) {
+        double seconds = elapsed / 1e9;
+        long requests = recorder.getAll().getService().snapshot().count();
+
+        out.println();
+
+        if (options.getMode() == LoopMode.OPEN) {
+            out.printf("%s, open loop at %.1f sessions/s against %s%n", scenario.getName(), options.getRate(), options.getUrl());
+        }
+        else {
+            out.printf("%s, closed loop with %d users against %s%n", scenario.getName(), options.getUsers(), options.getUrl());
+        }
+
+        out.printf("Measured for %.1fs after a %ds warmup%n", seconds, options.getWarmup());
+        out.printf("Sessions: %d started, %d completed, %d failed, %d unfinished%n", recorder.getStarted(),
+                recorder.getCompleted(), recorder.getFailed(), recorder.getUnfinished());
+
+        for (Map.Entry<String, Long> failure : recorder.getFailures().entrySet()) {
+            out.printf("  %8d  %s%n", failure.getValue(), failure.getKey());
+        }
+
+        out.printf("Throughput: %.1f requests/s, %.2f sessions/s%n", requests / seconds, recorder.getCompleted() / seconds);
+        out.println();
+
+        if (options.getMode() == LoopMode.OPEN) {
+            out.println("Response time in ms, from when each request was due:");
+        }
+        else {
+            out.printf("Response time in ms, corrected for an expected interval of %.1f ms between each user's requests:%n", interval / 1e3);
+        }
+
+        printHeader(out);
+
+        for (Recorder.Step step : recorder.getSteps()) {
+            printRow(out, step.getLabel(), corrected(step), step.getErrors());
+        }
+
+        printRow(out, "all requests", corrected(recorder.getAll()), recorder.getAll().getErrors());
+        printRow(out, "whole session", recorder.getSessions().snapshot(), -1);
+
+        out.println();
+        out.println("Service time in ms, from when each request was actually sent:");
+        printHeader(out);
+
+        for (Recorder.Step step : recorder.getSteps()) {
+            printRow(out, step.getLabel(), step.getService().snapshot(), step.getErrors());
+        }
+
+        printRow(out, "all requests", recorder.getAll().getService().snapshot(), recorder.getAll().getErrors());
+    }
+
+    /**
+     * Writes the column headings of a latency table.
+     * @param out Where to write.
+     */
+    private static void printHeader(PrintStream out) {
+        out.printf("  %-40s %8s %7s", "", "count", "errors");
+
+        for (String name : QUANTILE_NAMES) {
+            out.printf(" %9s", name);
+        }
+
+        out.printf(" %9s%n", "max");
+    }
+
+    /**
+     * Writes one row of a latency table.
+     * @param out Where to write.
+     * @param label What the row measures.
+     * @param snapshot The latencies.
+     * @param errors How many requests failed, or -1 to leave the column blank.
+     */
+    private static void printRow(PrintStream out, String label, LatencyHistogram.Snapshot snapshot, long errors) {
+        out.printf("  %-40s %8d %7s", label, snapshot.count(), errors < 0 ? "" : Long.toString(errors));
+
+        for (double quantile : QUANTILES) {
+            out.printf(" %9.2f", snapshot.valueAt(quantile) / 1e3);
+        }
+
+        out.printf(" %9.2f%n", snapshot.valueAt(1) / 1e3);
+    }
+
+    /**
+     * Builds the results as JSON, to save and compare against later runs.
+     * @return The results.
+     */
+    public JsonObject toJson() {
+        double seconds = elapsed / 1e9;
+        long requests = recorder.getAll().getService().snapshot().count();
+
+        JsonObjectBuilder failures = Json.createObjectBuilder();
+        recorder.getFailures().forEach(failures::add);
+
+        JsonObjectBuilder steps = Json.createObjectBuilder();
+
+        for (Recorder.Step step : recorder.getSteps()) {
+            steps.add(step.getLabel(), stepJson(step));
+        }
+
+        JsonObjectBuilder run = Json.createObjectBuilder()
+                .add("scenario", scenario.getName())
+                .add("mode", options.getMode().getName())
+                .add("url", options.getUrl().toString())
+                .add("startedAt", startedAt.toString())
+                .add("warmupSeconds", options.getWarmup())
+                .add("elapsedSeconds", seconds);
+
+        if (options.getMode() == LoopMode.OPEN) {
+            run.add("rate", options.getRate());
+        }
+        else {
+            run.add("users", options.getUsers()).add("expectedIntervalMillis", interval / 1e3);
+        }
+
+        return Json.createObjectBuilder()
+                .add("run", run)
+                .add("throughput", Json.createObjectBuilder()
+                        .add("requests", requests / seconds)
+                        .add("sessions", recorder.getCompleted() / seconds))
+                .add("sessions", Json.createObjectBuilder()
+                        .add("started", recorder.getStarted())
+                        .add("completed", recorder.getCompleted())
+                        .add("unfinished", recorder.getUnfinished())
+                        .add("failures", failures)
+                        .add("latency", latencyJson(recorder.getSessions().snapshot())))
+                .add("all", stepJson(recorder.getAll()))
+                .add("steps", steps)
+                .build();
+    }
+
+    /**
+     * Builds the results of one step as JSON.
+     * @param step The step.
+     * @return The step's counts, and its response and service time percentiles.
+     */
+    private JsonObject stepJson(Recorder.Step step) {
+        JsonObjectBuilder statuses = Json.createObjectBuilder();
+        step.getStatuses().forEach((status, count) -> statuses.add(Integer.toString(status), count));
+
+        return Json.createObjectBuilder()
+                .add("count", step.getService().snapshot().count())
+                .add("errors", step.getErrors())
+                .add("statuses", statuses)
+                .add("response", latencyJson(corrected(step)))
+                .add("service", latencyJson(step.getService().snapshot()))
+                .build();
+    }
+
+    /**
+     * Builds the percentiles of a histogram as JSON.
+     * @param snapshot The latencies.
+     * @return The percentiles, maximum and mean, in milliseconds.
+     */
+    private static JsonObject latencyJson(LatencyHistogram.Snapshot snapshot) {
+        JsonObjectBuilder latency = Json.createObjectBuilder();
+
+        for (int i = 0; i < QUANTILES.length; i++) {
+            latency.add(QUANTILE_NAMES[i], snapshot.valueAt(QUANTILES[i]) / 1e3);
+        }
+
+        return latency
+                .add("max", snapshot.valueAt(1) / 1e3)
+                .add("mean", snapshot.count() == 0 ? 0 : snapshot.sum() / 1e6 / snapshot.count())
+                .build();
+    }
+
+    /**
+     * Saves the results as JSON.
+     * @param file Where to save them. Missing folders are created.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        try (Writer writer = Files.newBufferedWriter(file); JsonWriter json = Json.createWriter(writer)) {
+            json.writeObject(toJson());
+        }
+    }
+
+    /**
+     * Writes how this run compares with an earlier one: throughput, and the response time percentiles of
+     * each step both runs share.
+     * @param out Where to write.
+     * @param file The earlier run's saved results.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public void compare(PrintStream out, Path file) throws IOException {
+        JsonObject before;
+
+        try (Reader reader = Files.newBufferedReader(file); JsonReader json = Json.createReader(reader)) {
+            before = json.readObject();
+        }
+
+        JsonObject after = toJson();
+
+        out.println();
+        out.println("Compared with " + file + " (" + before.getJsonObject("run").getString("startedAt", "?") + "):");
+        out.printf("  %-40s %12s %12s %8s%n", "", "before", "after", "change");
+
+        compareRow(out, "requests/s", before.getJsonObject("throughput").get("requests"), after.getJsonObject("throughput").get("requests"));
+
+        for (Map.Entry<String, JsonValue> step : after.getJsonObject("steps").entrySet()) {
+            JsonObject earlier = before.getJsonObject("steps").getJsonObject(step.getKey());
+
+            if (earlier == null) {
+                continue;
+            }
+
+            for (String quantile : new String[] {"p50", "p99"}) {
+                compareRow(out, step.getKey() + " " + quantile,
+                        earlier.getJsonObject("response").get(quantile),
+                        ((JsonObject) step.getValue()).getJsonObject("response").get(quantile));
+            }
+        }
+
+        compareRow(out, "all requests p99", before.getJsonObject("all").getJsonObject("response").get("p99"),
+                after.getJsonObject("all").getJsonObject("response").get("p99"));
+    }
+
+    /**
+     * Writes one row of a comparison.
+     * @param out Where to write.
+     * @param label What the row compares.
+     * @param before The earlier value.
+     * @param after The value from this run.
+     */
+    private static void compareRow(PrintStream out, String label, JsonValue before, JsonValue after) {
+        if (before == null || after == null) {
+            return;
+        }
+
+        double from = Double.parseDouble(before.toString());
+        double to = Double.parseDouble(after.toString());
+        String change = from == 0 ? "" : String.format("%+.1f%%", (to - from) / from * 100);
+
+        out.printf("  %-40s %12.2f %12.2f %8s%n", label, from, to, change);
+    }
+}
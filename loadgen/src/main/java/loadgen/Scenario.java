@@ -0,0 +1,201 @@
+package loadgen;
+
+import loadgen.interfaces.IStep;
+import loadgen.steps.PollStep;
+import loadgen.steps.RequestStep;
+import loadgen.steps.SaveStep;
+import loadgen.steps.ThinkStep;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The steps a session runs through, read from a script with one step per line:
+ * <pre>
+ * GET /tickets                          send a request, failing the session on an error status
+ * POST /queue/{concert} {"tickets": 1}  the same, with a JSON body
+ * save concert = concerts[*].id         keep a value from the last response as a variable
+ * poll GET /queue/{concert}/{queueId} until position = -1 every 1000 max 60
+ *                                       repeat a request until its response holds a value
+ * think 2000                            wait before the next request
+ * </pre>
+ * Variables are used as '{name}' in paths and bodies. Blank lines and lines starting with '#' are skipped.
+ */
+public class Scenario {
+    private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "DELETE");
+    private static final Set<String> OPERATORS = Set.of("=", "!=", "<", "<=", ">", ">=");
+    private static final Pattern VARIABLE = Pattern.compile("\\{(\\w+)}");
+    private static final Pattern POLL = Pattern.compile(
+            "poll\\s+(\\S+)\\s+(\\S+)\\s+until\\s+(\\S+)\\s+(\\S+)\\s+(\\S+)\\s+every\\s+(\\d+)(?:\\s+max\\s+(\\d+))?");
+
+    private final String name;
+    private final List<IStep> steps = new ArrayList<>();
+    private final Set<String> labels = new LinkedHashSet<>();
+
+    /**
+     * Constructor for the Scenario class, which parses a script.
+     * @param name The scenario's name, for the report.
+     * @param lines The script.
+     * @throws IllegalArgumentException Thrown if a line is malformed, or uses a variable no earlier line saves.
+     */
+    public Scenario(String name, List<String> lines) {
+        this.name = name;
+
+        Set<String> saved = new HashSet<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                steps.add(parse(line, saved));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        if (labels.isEmpty()) {
+            throw new IllegalArgumentException("The scenario sends no requests.");
+        }
+    }
+
+    /**
+     * Reads a scenario from a file.
+     * @param file The script.
+     * @return The scenario, named after the file.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the script is malformed.
+     */
+    public static Scenario load(Path file) throws IOException {
+        String name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return new Scenario(name, Files.readAllLines(file));
+    }
+
+    /**
+     * Parses one line.
+     * @param line The line, stripped.
+     * @param saved The variables saved by earlier lines, which this line's variable is added to.
+     * @return The step.
+     * @throws IllegalArgumentException Thrown if the line is malformed.
+     */
+    private IStep parse(String line, Set<String> saved) {
+        String[] words = line.split("\\s+", 3);
+
+        if (METHODS.contains(words[0])) {
+            if (words.length < 2) {
+                throw new IllegalArgumentException("Expected a path after " + words[0] + ".");
+            }
+
+            String body = words.length > 2 ? words[2] : null;
+            checkVariables(words[1], saved);
+            checkVariables(body, saved);
+
+            RequestStep step = new RequestStep(words[0], words[1], body);
+            labels.add(step.getLabel());
+            return step;
+        }
+
+        switch (words[0]) {
+            case "save": {
+                String[] parts = line.substring(4).split("=", 2);
+
+                if (parts.length < 2 || !parts[0].strip().matches("\\w+") || parts[1].isBlank()) {
+                    throw new IllegalArgumentException("Expected 'save name = path'.");
+                }
+
+                saved.add(parts[0].strip());
+                return new SaveStep(parts[0].strip(), new JsonPath(parts[1].strip()));
+            }
+            case "poll": {
+                Matcher matcher = POLL.matcher(line);
+
+                if (!matcher.matches() || !METHODS.contains(matcher.group(1)) || !OPERATORS.contains(matcher.group(4))) {
+                    throw new IllegalArgumentException("Expected 'poll METHOD path until path op value every millis [max attempts]'.");
+                }
+
+                boolean ordering = matcher.group(4).contains("<") || matcher.group(4).contains(">");
+
+                if (ordering && !matcher.group(5).matches("-?\\d+(\\.\\d+)?")) {
+                    throw new IllegalArgumentException("Only numbers can be compared with " + matcher.group(4) + ".");
+                }
+
+                checkVariables(matcher.group(2), saved);
+
+                RequestStep request = new RequestStep(matcher.group(1), matcher.group(2), null);
+                int attempts = matcher.group(7) == null ? 60 : Integer.parseInt(matcher.group(7));
+                labels.add(request.getLabel());
+
+                return new PollStep(request, new JsonPath(matcher.group(3)), matcher.group(4), matcher.group(5),
+                        Long.parseLong(matcher.group(6)), attempts);
+            }
+            case "think": {
+                if (words.length != 2 || !words[1].matches("\\d+")) {
+                    throw new IllegalArgumentException("Expected 'think millis'.");
+                }
+
+                return new ThinkStep(Long.parseLong(words[1]));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown step '" + words[0] + "'.");
+        }
+    }
+
+    /**
+     * Checks that every variable a path or body uses is saved by an earlier line.
+     * @param template The path or body, or null.
+     * @param saved The variables saved so far.
+     * @throws IllegalArgumentException Thrown if a variable is used before it is saved.
+     */
+    private static void checkVariables(String template, Set<String> saved) {
+        if (template == null) {
+            return;
+        }
+
+        Matcher matcher = VARIABLE.matcher(template);
+
+        while (matcher.find()) {
+            if (!saved.contains(matcher.group(1))) {
+                throw new IllegalArgumentException("Variable '" + matcher.group(1) + "' is used before it is saved.");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the scenario's name.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the steps, in order.
+     * @return The steps.
+     */
+    public List<IStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Retrieves the names requests are recorded under, in the order they first appear.
+     * @return The labels.
+     */
+    public Set<String> getLabels() {
+        return labels;
+    }
+}
@@ -0,0 +1,230 @@
+package loadgen;
+
+import loadgen.common.StepFailedException;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.time.Duration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One run through a scenario, as a single user would make it.
+ * Every request has a time it is due to be sent: the session's scheduled start for the first, and for the
+ * rest, when the response before it arrived plus any pause the scenario asks for. Response times are
+ * measured from that due time, not from when the request was actually sent, so a generator or server
+ * that falls behind shows up in the latencies rather than silently sending fewer requests.
+ */
+public class Session {
+    private static final Pattern VARIABLE = Pattern.compile("\\{(\\w+)}");
+
+    private final HttpClient client;
+    private final URI base;
+    private final Duration timeout;
+    private final Recorder recorder;
+    private final long start;
+
+    private final Map<String, JsonValue> variables = new HashMap<>();
+    private long due;
+    private JsonValue lastResponse;
+
+    /**
+     * Constructor for the Session class.
+     * @param client The client to send requests with, shared by every session.
+     * @param base The server's address (i.e. 'http://localhost:8080').
+     * @param timeout How long to wait for each response.
+     * @param recorder Where to record the session's requests, or null if it runs during the warmup.
+     * @param start When the session was scheduled to start, from System.nanoTime().
+     */
+    public Session(HttpClient client, URI base, Duration timeout, Recorder recorder, long start) {
+        this.client = client;
+        this.base = base;
+        this.timeout = timeout;
+        this.recorder = recorder;
+        this.start = start;
+        this.due = start;
+    }
+
+    /**
+     * Sends a request once it is due, and records how long it took.
+     * @param method The request method.
+     * @param path The path, with any variables already substituted.
+     * @param body The JSON body, or null for none.
+     * @param label The step the request is recorded under.
+     * @return The response body if it was JSON, otherwise null.
+     * @throws StepFailedException Thrown if the request failed, or was answered with an error status.
+     * @throws InterruptedException Thrown if the run is stopped.
+     */
+    public JsonValue request(String method, String path, String body, String label) throws StepFailedException, InterruptedException {
+        waitUntil(due);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(path))
+                .timeout(timeout)
+                .header("Accept", "application/json");
+
+        if (body == null) {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        else {
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+
+        long sent = System.nanoTime();
+        HttpResponse<String> response;
+
+        try {
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        }
+        catch (IOException e) {
+            long done = System.nanoTime();
+
+            if (recorder != null) {
+                recorder.request(label, 0, done - sent, done - due);
+            }
+
+            throw new StepFailedException(label + " failed: " + e.getClass().getSimpleName());
+        }
+
+        long done = System.nanoTime();
+
+        if (recorder != null) {
+            recorder.request(label, response.statusCode(), done - sent, done - due);
+        }
+
+        due = done;
+
+        if (response.statusCode() >= 400) {
+            throw new StepFailedException(label + " answered " + response.statusCode());
+        }
+
+        lastResponse = parse(response);
+
+        return lastResponse;
+    }
+
+    /**
+     * Delays the next request.
+     * @param millis How many milliseconds after it would otherwise be due.
+     */
+    public void pause(long millis) {
+        due += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Stores a value for later steps to use.
+     * @param name The variable name.
+     * @param value The value.
+     */
+    public void set(String name, JsonValue value) {
+        variables.put(name, value);
+    }
+
+    /**
+     * Replaces each '{name}' in a path or body with the value of that variable. Strings are inserted
+     * without their quotes, everything else as JSON.
+     * @param template The path or body, as written in the scenario.
+     * @return The path or body to send.
+     * @throws StepFailedException Thrown if a variable has not been set.
+     */
+    public String substitute(String template) throws StepFailedException {
+        if (template == null || template.indexOf('{') < 0) {
+            return template;
+        }
+
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuilder out = new StringBuilder(template.length() + 16);
+
+        while (matcher.find()) {
+            JsonValue value = variables.get(matcher.group(1));
+
+            if (value == null) {
+                throw new StepFailedException("Variable '" + matcher.group(1) + "' is not set");
+            }
+
+            String text = value instanceof JsonString string ? string.getString() : value.toString();
+            matcher.appendReplacement(out, Matcher.quoteReplacement(text));
+        }
+
+        return matcher.appendTail(out).toString();
+    }
+
+    /**
+     * Retrieves the body of the last response.
+     * @return The body if it was JSON, otherwise null.
+     */
+    public JsonValue getLastResponse() {
+        return lastResponse;
+    }
+
+    /**
+     * Retrieves when the session was scheduled to start.
+     * @return The time, from System.nanoTime().
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Checks whether the session's requests are being recorded.
+     * @return False if the session runs during the warmup.
+     */
+    public boolean isRecorded() {
+        return recorder != null;
+    }
+
+    /**
+     * Parses a JSON response body.
+     * @param response The response.
+     * @return The body, or null if it is not JSON.
+     */
+    private static JsonValue parse(HttpResponse<String> response) {
+        boolean json = response.headers().firstValue("Content-Type")
+                .map(type -> type.startsWith("application/json"))
+                .orElse(false);
+
+        if (!json || response.body().isEmpty()) {
+            return null;
+        }
+
+        try (JsonReader reader = Json.createReader(new StringReader(response.body()))) {
+            return reader.read();
+        }
+        catch (JsonException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parks the calling thread until a given time.
+     * @param time The time, from System.nanoTime().
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+     */
+    static void waitUntil(long time) throws InterruptedException {
+        for (long remaining = time - System.nanoTime(); remaining > 0; remaining = time - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package loadgen.common;
+
+/**
+ * Custom Exception class for a scenario step that could not go on, which ends the session running it.
+ */
+@SuppressWarnings("serial")
+public class StepFailedException extends Exception {
+    /**
+     * Constructor for the StepFailedException class.
+     * @param message The reasoning for the failure.
+     */
+    public StepFailedException(String message) {
+        // failures under load are routine, so skip filling in a stack trace nobody reads
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,43 @@
+package loadgen.enums;
+
+/**
+ * Enum class representing how the load generator decides when to start each session.
+ */
+public enum LoopMode {
+    OPEN("open"),
+    CLOSED("closed");
+
+    private final String name;
+
+    /**
+     * Constructor for LoopMode.
+     * @param name The mode as given on the command line.
+     */
+    LoopMode(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the name of the mode.
+     * @return The mode as given on the command line.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Finds the mode with a given name.
+     * @param name The mode as given on the command line.
+     * @return The mode.
+     * @throws IllegalArgumentException Thrown if no mode has that name.
+     */
+    public static LoopMode fromName(String name) {
+        for (LoopMode mode : values()) {
+            if (mode.name.equals(name)) {
+                return mode;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown mode '" + name + "', expected 'open' or 'closed'.");
+    }
+}
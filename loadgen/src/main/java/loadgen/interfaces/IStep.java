@@ -0,0 +1,18 @@
+package loadgen.interfaces;
+
+import loadgen.Session;
+
+import loadgen.common.StepFailedException;
+
+/**
+ * The interface for one line of a scenario script.
+ */
+public interface IStep {
+    /**
+     * Runs the step as part of a session.
+     * @param session The session, holding its variables and the time its next request is due.
+     * @throws StepFailedException Thrown if the session cannot go on.
+     * @throws InterruptedException Thrown if the run is stopped.
+     */
+    void run(Session session) throws StepFailedException, InterruptedException;
+}
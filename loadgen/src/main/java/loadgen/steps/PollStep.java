@@ -0,0 +1,115 @@
+package loadgen.steps;
+
+import loadgen.JsonPath;
+import loadgen.Session;
+
+import loadgen.common.StepFailedException;
+import loadgen.interfaces.IStep;
+
+import javax.json.JsonNumber;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * A step that repeats a request until its response holds an expected value
+ * (i.e. 'poll GET /queue/{concert}/{queueId} until position = -1 every 1000 max 60').
+ * Every attempt is recorded as a request of its own.
+ */
+public class PollStep implements IStep {
+    private final RequestStep request;
+    private final JsonPath path;
+    private final String operator;
+    private final String expected;
+    private final long every;
+    private final int attempts;
+
+    /**
+     * Constructor for the PollStep class.
+     * @param request The request to repeat.
+     * @param path Where the value to check is in the response.
+     * @param operator How to compare it: '=', '!=', '&lt;', '&lt;=', '&gt;' or '&gt;='.
+     * @param expected The value to compare it with.
+     * @param every How many milliseconds to wait after each response before asking again.
+     * @param attempts How many times to ask before giving up.
+     */
+    public PollStep(RequestStep request, JsonPath path, String operator, String expected, long every, int attempts) {
+        this.request = request;
+        this.path = path;
+        this.operator = operator;
+        this.expected = expected;
+        this.every = every;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Polls until the condition holds.
+     * @param session The session, holding its variables and the time its next request is due.
+     * @throws StepFailedException Thrown if a request fails, or the condition still does not hold after every attempt.
+     * @throws InterruptedException Thrown if the run is stopped.
+     */
+    @Override
+    public void run(Session session) throws StepFailedException, InterruptedException {
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            request.run(session);
+
+            if (holds(session.getLastResponse() == null ? null : path.find(session.getLastResponse()))) {
+                return;
+            }
+
+            session.pause(every);
+        }
+
+        throw new StepFailedException("poll " + request.getLabel() + " gave up after " + attempts + " attempts");
+    }
+
+    /**
+     * Retrieves the name the step's requests are recorded under.
+     * @return The method and the path as written in the scenario.
+     */
+    public String getLabel() {
+        return request.getLabel();
+    }
+
+    /**
+     * Checks the condition against a value from the response.
+     * @param value The value, or null if the response has none.
+     * @return True if the condition holds.
+     */
+    private boolean holds(JsonValue value) {
+        if (value == null) {
+            return false;
+        }
+
+        if (value instanceof JsonNumber number && isNumber(expected)) {
+            int comparison = Double.compare(number.doubleValue(), Double.parseDouble(expected));
+
+            return switch (operator) {
+                case "=" -> comparison == 0;
+                case "!=" -> comparison != 0;
+                case "<" -> comparison < 0;
+                case "<=" -> comparison <= 0;
+                case ">" -> comparison > 0;
+                default -> comparison >= 0;
+            };
+        }
+
+        String text = value instanceof JsonString string ? string.getString() : value.toString();
+
+        return operator.equals("!=") != text.equals(expected);
+    }
+
+    /**
+     * Checks whether an expected value is a number.
+     * @param text The value as written in the scenario.
+     * @return True if it parses as a number.
+     */
+    private static boolean isNumber(String text) {
+        try {
+            Double.parseDouble(text);
+            return true;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package loadgen.steps;
+
+import loadgen.Session;
+
+import loadgen.common.StepFailedException;
+import loadgen.interfaces.IStep;
+
+/**
+ * A step that sends one request (i.e. 'POST /queue/{concert} { "tickets": 1 }').
+ */
+public class RequestStep implements IStep {
+    private final String method;
+    private final String path;
+    private final String body;
+
+    /**
+     * Constructor for the RequestStep class.
+     * @param method The request method.
+     * @param path The path, which may hold variables.
+     * @param body The JSON body, which may hold variables, or null for none.
+     */
+    public RequestStep(String method, String path, String body) {
+        this.method = method;
+        this.path = path;
+        this.body = body;
+    }
+
+    /**
+     * Sends the request.
+     * @param session The session, holding its variables and the time its next request is due.
+     * @throws StepFailedException Thrown if the request failed, or was answered with an error status.
+     * @throws InterruptedException Thrown if the run is stopped.
+     */
+    @Override
+    public void run(Session session) throws StepFailedException, InterruptedException {
+        session.request(method, session.substitute(path), session.substitute(body), getLabel());
+    }
+
+    /**
+     * Retrieves the name the step's requests are recorded under.
+     * @return The method and the path as written in the scenario.
+     */
+    public String getLabel() {
+        return method + " " + path;
+    }
+}
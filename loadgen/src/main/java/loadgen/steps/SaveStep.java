@@ -0,0 +1,43 @@
+package loadgen.steps;
+
+import loadgen.JsonPath;
+import loadgen.Session;
+
+import loadgen.common.StepFailedException;
+import loadgen.interfaces.IStep;
+
+import javax.json.JsonValue;
+
+/**
+ * A step that keeps a value from the last response for later steps (i.e. 'save queueId = id').
+ */
+public class SaveStep implements IStep {
+    private final String name;
+    private final JsonPath path;
+
+    /**
+     * Constructor for the SaveStep class.
+     * @param name The variable to save the value as.
+     * @param path Where the value is in the response.
+     */
+    public SaveStep(String name, JsonPath path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    /**
+     * Saves the value.
+     * @param session The session, holding its variables and the last response.
+     * @throws StepFailedException Thrown if the last response has no value at the path.
+     */
+    @Override
+    public void run(Session session) throws StepFailedException {
+        JsonValue value = session.getLastResponse() == null ? null : path.find(session.getLastResponse());
+
+        if (value == null) {
+            throw new StepFailedException("save " + name + ": no '" + path + "' in the response");
+        }
+
+        session.set(name, value);
+    }
+}
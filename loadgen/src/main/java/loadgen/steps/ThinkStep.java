@@ -0,0 +1,29 @@
+package loadgen.steps;
+
+import loadgen.Session;
+
+import loadgen.interfaces.IStep;
+
+/**
+ * A step that waits before the next request, as a user reading the page would (i.e. 'think 2000').
+ */
+public class ThinkStep implements IStep {
+    private final long millis;
+
+    /**
+     * Constructor for the ThinkStep class.
+     * @param millis How many milliseconds to wait.
+     */
+    public ThinkStep(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Delays the session's next request. The wait itself happens when that request is due to be sent.
+     * @param session The session.
+     */
+    @Override
+    public void run(Session session) {
+        session.pause(millis);
+    }
+}
@@ -1,172 +1,544 @@
+import utils.metrics.Metrics;
+import utils.metrics.enums.MetricType;
+
 import utils.queue.interfaces.IQueue;
 import utils.queue.Queue;
+import utils.queue.QueueJournal;
 
 import utils.request.DefaultResponses;
 import utils.request.types.QueueRequest;
 import utils.request.types.TicketRequest;
 import utils.store.Store;
 
+import utils.cache.StaticAssetCache;
+
+import utils.http2.Http2Connection;
+import utils.http2.Http2Settings;
+
+import utils.jfr.DispatchEvent;
+import utils.jfr.RequestParseEvent;
+import utils.jfr.ResponseWriteEvent;
+
+import utils.log.Log;
+
 import utils.request.HttpRequest;
+import utils.request.HttpRequestParser;
+import utils.request.RequestBuffer;
+import utils.request.common.HttpParseException;
+import utils.request.routing.PathParams;
+import utils.request.routing.Router;
 import utils.HttpResponse;
 
-import utils.request.enums.HttpStatus;
+import utils.response.CompressionPolicy;
+
+import utils.server.AdmissionControl;
+import utils.server.ConnectionDeadline;
+import utils.server.KeepAlivePolicy;
+import utils.server.TlsTerminator;
+import utils.server.interfaces.IRequestDispatcher;
+
+import utils.websocket.LiveCounts;
+import utils.websocket.WebSocket;
+
 import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
 
-import java.io.BufferedReader;
-import java.io.OutputStream;
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import java.io.InputStream;
 import java.io.IOException;
-import java.io.File;
 
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Processes all requests made by the client to the HTTP server.
+ * A single instance is shared by every connection, whichever server mode is running.
  */
-public class HttpRequestHandler {
-    private final BufferedReader reader;
-    private final OutputStream outputStream;
-    private final String documentRoot;
+public class HttpRequestHandler implements IRequestDispatcher {
+    private final StaticAssetCache assetCache;
+    private final HttpRequestParser requestParser;
+    private final CompressionPolicy compressionPolicy;
+    private final AdmissionControl admissionControl;
+    private final QueueJournal queueJournal;
+    private final TlsTerminator tls;
+    private final Http2Settings http2;
+    private final LiveCounts liveCounts;
 
     private static final Store store = new Store("./tickets.json");
     private static final IQueue queue = new Queue(store);
 
-    private final DefaultResponses defaultResponses = new DefaultResponses();
-    private final TicketRequest ticketRequest = new TicketRequest(store);
-    private final QueueRequest queueRequest = new QueueRequest(store, queue);
+    // the request helpers are stateless, so one instance is shared by every connection thread
+    private static final DefaultResponses defaultResponses = new DefaultResponses();
+
+    private final QueueRequest queueRequest;
+    private final TicketRequest ticketRequest;
+    private final Router router;
 
     /**
      * Constructor for the HttpRequestHandler class.
-     * @param reader To read client requests.
-     * @param outputStream To write server responses.
-     * @param documentRoot The root of all client side resources.
+     * @param assetCache Serves the files under the document root from memory.
+     * @param requestParser Parses requests read from blocking connections.
+     * @param compressionPolicy Decides which responses are sent gzip compressed.
+     * @param admissionControl Limits how many requests are handled at once.
+     * @param queueJournal Where the queue is saved on shutdown, and restored from on startup.
+     * @param tls Terminates the HTTPS listeners, or null if there are none.
+     * @param http2 The limits for HTTP/2 connections, or null if HTTP/2 is turned off.
+     * @param liveCountsRate The most batches of ticket counts a WebSocket client is sent each second, or 0 to turn WebSockets off.
+     * @param longPollMaxWait The longest a queue long poll is held, in seconds, or 0 to answer every poll at once and turn event streams off.
      */
-    public HttpRequestHandler(BufferedReader reader, OutputStream outputStream, String documentRoot) {
-        this.reader = reader;
-        this.outputStream = outputStream;
-        this.documentRoot = documentRoot;
+    public HttpRequestHandler(
+            StaticAssetCache assetCache,
+            HttpRequestParser requestParser,
+            CompressionPolicy compressionPolicy,
+            AdmissionControl admissionControl,
+            QueueJournal queueJournal,
+            TlsTerminator tls,
+            Http2Settings http2,
+            int liveCountsRate,
+            int longPollMaxWait
+    ) {
+        this.assetCache = assetCache;
+        this.requestParser = requestParser;
+        this.compressionPolicy = compressionPolicy;
+        this.admissionControl = admissionControl;
+        this.queueJournal = queueJournal;
+        this.tls = tls;
+        this.http2 = http2;
+        this.liveCounts = liveCountsRate > 0 ? new LiveCounts(store, liveCountsRate) : null;
+        this.queueRequest = new QueueRequest(store, queue, longPollMaxWait);
+        this.ticketRequest = new TicketRequest(store, compressionPolicy);
+        this.router = buildRouter(longPollMaxWait);
+
+        if (Metrics.isEnabled()) {
+            registerMetrics();
+        }
+
+        try {
+            int restored = queueJournal.restore(store, queue);
+
+            if (restored > 0) {
+                System.out.println("Restored " + restored + " purchases from the saved queue");
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Could not restore the saved queue: " + e.getMessage());
+        }
     }
 
     /**
-     * Deciphers the type of request the client requires, and begins processing it.
+     * Ends the open queue event streams and WebSockets as soon as shutdown starts, as they would otherwise run until the drain timeout.
      */
-    protected void handleRequest() {
+    public void endStreams() {
+        queueRequest.endEvents();
+
+        if (liveCounts != null) {
+            liveCounts.shutdown();
+        }
+    }
+
+    /**
+     * Stops the queue and saves it, once no more requests can arrive.
+     * Purchases still waiting to join the queue join it first, so they keep their place.
+     */
+    public void shutdown() {
+        queueRequest.shutdown();
+        queue.shutdown();
+
         try {
-            // read the request
-            HttpRequest req = buildRequest();
-            HttpResponse res;
+            Path saved = queueJournal.save(store, queue);
+            System.out.println("Saved " + store.getPurchases().size() + " purchases to " + saved);
+        }
+        catch (IOException e) {
+            System.err.println("Could not save the queue: " + e.getMessage());
+        }
+    }
 
-            // get the path of the request
-            String path = req.path().toLowerCase();
+    /**
+     * Compiles the route table. Any GET that no route matches falls through to the document root.
+     * @param longPollMaxWait The longest a queue long poll is held, in seconds, or 0 if event streams are off.
+     * @return The router.
+     */
+    private Router buildRouter(int longPollMaxWait) {
+        Router router = new Router()
+                .add("GET", "/", (req, params) -> serveIndex(req))
+                .add("GET", "/styles.css", (req, params) -> serveStatic(req, "/styles.css", ContentType.css))
+                .add("GET", "/index.js", (req, params) -> serveStatic(req, "/index.js", ContentType.javascript))
+                .add("GET", "/tickets", ticketRequest::getTickets)
+                .add("GET", "/tickets/{concertId:int}", ticketRequest::getConcert)
+                .add("POST", "/tickets/refund", ticketRequest::refund)
+                .add("GET", "/queue/{concertId:int}/{queueId:int}", queueRequest::getStatus)
+                .add("POST", "/queue/{concertId:int}", queueRequest::enqueue)
+                .add("DELETE", "/queue/{queueId:int}", queueRequest::remove)
+                .add("GET", "/server/admission", (req, params) -> admissionStatus());
+
+        if (tls != null) {
+            router.add("GET", "/server/tls", (req, params) -> tlsStatus());
+        }
+
+        if (Metrics.isEnabled()) {
+            router.add("GET", "/metrics", (req, params) -> metrics());
+        }
+
+        // an event stream holds its connection until the purchase completes, so it goes with long polls
+        if (longPollMaxWait > 0) {
+            router.add("GET", "/queue/{concertId:int}/{queueId:int}/events", queueRequest::events);
+        }
+
+        // reached only by requests that are not a valid WebSocket handshake
+        if (liveCounts != null) {
+            router.add("GET", "/tickets/live", (req, params) -> defaultResponses.make400("Expected a WebSocket handshake."));
+        }
+
+        return router;
+    }
+
+    /**
+     * Reads a request from a blocking connection, processes it and writes the response.
+     * Once the first bytes of a request arrive it must be admitted before it is parsed. If the
+     * server is already handling as many requests as it allows, the client gets a 503 and the
+     * connection is closed.
+     * A new connection that opens with the HTTP/2 preface, or a request asking to upgrade to h2c,
+     * is served as HTTP/2 from then on, and closed when that ends. The same goes for a WebSocket handshake.
+     * @param inputStream To read client requests.
+     * @param buffer The connection's request buffer, which carries pipelined bytes between requests.
+     * @param channel To write server responses.
+     * @param keepAlivePolicy Decides whether the connection stays open after the response.
+     * @param deadline The connection's deadline, moved on as the request is read, processed and answered.
+     * @param served How many requests this connection has already answered.
+     * @return True if the connection should be kept open for another request.
+     * @throws IOException Thrown if the connection cannot be read or written, including when it is closed for missing a deadline.
+     */
+    protected boolean handleRequest(
+            InputStream inputStream,
+            RequestBuffer buffer,
+            WritableByteChannel channel,
+            KeepAlivePolicy keepAlivePolicy,
+            ConnectionDeadline deadline,
+            int served
+    ) throws IOException {
+        deadline.reading(buffer.phase());
 
-            if (path.equals("/")) {
-                res = serveIndex();
+        // the client closed the connection without sending anything
+        if (!buffer.hasRemaining() && buffer.fill(inputStream) == -1) {
+            return false;
+        }
+
+        // a client that knows we speak HTTP/2 sends the connection preface instead of a request
+        if (served == 0 && http2 != null && Http2Connection.awaitPreface(inputStream, buffer)) {
+            serveHttp2(inputStream, buffer, channel, keepAlivePolicy, deadline, null);
+            return false;
+        }
+
+        if (!admissionControl.tryAdmitRequest()) {
+            deadline.writing();
+            ByteBuffer overloaded = admissionControl.overloadedResponse();
+
+            while (overloaded.hasRemaining()) {
+                channel.write(overloaded);
             }
-            else if (path.equals("/styles.css")) {
-                res = serveStatic("/styles.css", ContentType.css);
+
+            return false;
+        }
+
+        HttpRequest req;
+        HttpResponse res = null;
+        boolean keepAlive;
+
+        try {
+            // read the request, timed from its first bytes rather than from when the connection went idle
+            RequestParseEvent parse = new RequestParseEvent();
+            parse.begin();
+
+            try {
+                req = requestParser.read(inputStream, buffer, deadline::reading);
             }
-            else if (path.equals("/index.js")) {
-                res = serveStatic("/index.js", ContentType.javascript);
+            catch (HttpParseException e) {
+                // we can't tell where the next request would start, so answer and close
+                deadline.writing();
+                defaultResponses.makeError(e.getStatus(), e.getMessage()).sendResponse(channel, false);
+                return false;
             }
-            else if (path.startsWith("/tickets")) {
-                res = ticketRequest.handleRequest(req);
+
+            if (req == null) {
+                return false;
             }
-            else if (path.startsWith("/queue")) {
-                res = queueRequest.handleRequest(req);
+
+            if (parse.shouldCommit()) {
+                parse.method = req.method();
+                parse.path = req.path();
+                parse.commit();
             }
-            else { // otherwise return a 404 error
-               res = defaultResponses.make404();
+
+            keepAlive = keepAlivePolicy.keepAlive(req, served);
+
+            if (!keepAlive || !isUpgrade(req) && (http2 == null || !Http2Connection.isUpgrade(req))) {
+                deadline.processing();
+                res = dispatch(req);
+                keepAlive = keepAlive && !res.isCloseDelimited();
+            }
+        }
+        finally {
+            // the request is handled once it has a response: a slow reader, or an event stream
+            // that stays open for minutes, does not hold a place other requests could use
+            admissionControl.releaseRequest();
+        }
+
+        if (res != null) {
+            ResponseWriteEvent write = new ResponseWriteEvent();
+            write.begin();
+
+            deadline.writing();
+            res.sendResponse(channel, keepAlive);
+
+            if (write.shouldCommit()) {
+                write.status = res.status().getStatusCode();
+                write.bytes = res.body().length();
+                write.keepAlive = keepAlive;
+                write.commit();
             }
 
-            res.sendResponse(outputStream);
+            return keepAlive;
         }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+
+        // switched outside the admitted section, as each HTTP/2 stream is admitted on its own,
+        // and a WebSocket is a connection rather than a request
+        if (isUpgrade(req)) {
+            serveUpgrade(req, inputStream, buffer, channel, deadline);
+        } else {
+            serveHttp2(inputStream, buffer, channel, keepAlivePolicy, deadline, req);
         }
+
+        return false;
+    }
+
+    @Override
+    public boolean isUpgrade(HttpRequest req) {
+        return liveCounts != null && req.path().equals("/tickets/live") && WebSocket.isUpgrade(req);
+    }
+
+    @Override
+    public void serveUpgrade(
+            HttpRequest req,
+            InputStream inputStream,
+            RequestBuffer buffer,
+            WritableByteChannel channel,
+            ConnectionDeadline deadline
+    ) throws IOException {
+        // a quiet WebSocket is kept open by pings, each of which pushes back the write deadline
+        deadline.writing();
+        new WebSocket(inputStream, buffer, channel, liveCounts).serve(req);
+    }
+
+    /**
+     * Serves a blocking connection as HTTP/2 until the client closes it.
+     * @param inputStream To read frames.
+     * @param buffer The connection's request buffer, whose unread bytes are handed over.
+     * @param channel To write frames.
+     * @param keepAlivePolicy Tells the connection to wind down once the server is draining.
+     * @param deadline The connection's deadline.
+     * @param upgrade The request that asked for the upgrade, answered on stream 1, or null if the client opened with the preface.
+     * @throws IOException Thrown if the connection cannot be read or written.
+     */
+    private void serveHttp2(
+            InputStream inputStream,
+            RequestBuffer buffer,
+            WritableByteChannel channel,
+            KeepAlivePolicy keepAlivePolicy,
+            ConnectionDeadline deadline,
+            HttpRequest upgrade
+    ) throws IOException {
+        new Http2Connection(
+                inputStream,
+                buffer,
+                channel,
+                this,
+                admissionControl,
+                keepAlivePolicy,
+                deadline,
+                http2
+        ).serve(upgrade);
     }
 
     /**
-     * Reads the clients request and generates an appropriate request object.
-     * @return An object representing the request.
-     * @throws IOException Should not be thrown.
+     * Deciphers the type of request the client requires, and processes it, recording it in the access log.
+     * The response is adapted to the request's HTTP version, so a HTTP/1.0 client is never sent chunks.
+     * @param req The request made by the client.
+     * @return The response to send back to the client.
      */
-    private HttpRequest buildRequest() throws IOException {
-        String start = reader.readLine();
-        String[] parts = start.split(" ");
+    @Override
+    public HttpResponse dispatch(HttpRequest req) {
+        DispatchEvent event = new DispatchEvent();
+        event.begin();
 
-        // i.e. GET /tickets HTTP/1.1
-        String method = parts[0];
-        String path = parts[1];
+        long start = System.nanoTime();
+        PathParams params = router.params();
+        HttpResponse res = respond(req, params).forVersion(req.version());
+        long elapsed = System.nanoTime() - start;
 
-        // Get the headers
-        Map<String, String> headers = parseHeaders();
+        // requests no route matched are labelled by what answered them, so raw paths never become labels
+        String route = params.getRoute() != null ? params.getRoute() : req.method().equals("GET") ? "static" : "unmatched";
+        Metrics.request(route, res.status(), elapsed);
+        Log.access(req, res, elapsed);
 
-        // Get the body (if there is one)
-        int contentLength = headers.containsKey("Content-Length")
-                ? Integer.parseInt(headers.get("Content-Length"))
-                : 0;
+        if (event.shouldCommit()) {
+            event.method = req.method();
+            event.path = req.path();
+            event.route = route;
+            event.status = res.status().getStatusCode();
+            event.bytes = res.body().length();
+            event.commit();
+        }
 
-        // build the string using the chars of the content
-        char[] chars = new char[contentLength];
-        reader.read(chars, 0, contentLength);
+        return res;
+    }
 
-        String body = new String(chars);
+    /**
+     * Routes a request to whichever part of the server answers it.
+     * @param req The request made by the client.
+     * @param params Collects the path parameters, and the route matched.
+     * @return The response to send back to the client.
+     */
+    private HttpResponse respond(HttpRequest req, PathParams params) {
+        try {
+            HttpResponse res = router.route(req, params);
 
-        return new HttpRequest(method, path, headers, body);
+            if (res != null) {
+                return compressionPolicy.apply(req.headers(), res);
+            }
+            else if (req.method().equals("GET")) { // any other file under the document root (i.e. venue maps)
+                return serveStatic(req, req.path(), ContentType.fromFileName(req.path()));
+            }
+            else { // otherwise return a 404 error
+                return defaultResponses.make404();
+            }
+        }
+        catch (IOException e) {
+            // a file that cannot be read is the server's fault, and must not cost the client its connection
+            Log.event("IO Exception: ", e.getMessage());
+            return defaultResponses.make500("The requested resource could not be read.");
+        }
+        catch (RuntimeException e) {
+            // a bug in a handler must not take the connection thread down with it, but it must be seen
+            Log.event("Unexpected error: ", e.getClass().getName() + ": " + e.getMessage());
+            return defaultResponses.make500("The server could not handle the request.");
+        }
     }
 
     /**
      * Attempts to serve a file from the document root to the client.
+     * Files are served from memory (or streamed from disk if large), clients holding the current
+     * version get a 304, and Range requests get a 206.
+     * @param req The request made by the client.
      * @param file The file the client has requested.
      * @param contentType The type of content the requested file contains (i.e. html, css).
      * @return A HttpResponse object.
      * @throws IOException Thrown when the file cannot be read.
      */
-    private HttpResponse serveStatic(String file, ContentType contentType) throws IOException {
-        File f  = new File(documentRoot + file);
+    private HttpResponse serveStatic(HttpRequest req, String file, ContentType contentType) throws IOException {
+        HttpResponse res = assetCache.serve(file, contentType, req.headers());
 
-        if (!f.exists()) {
+        if (res == null) {
             return defaultResponses.make404();
         }
 
+        return res;
+    }
+
+    /**
+     * Reports the load the server is under and how much it has turned away, for 'GET /server/admission'.
+     * @return A HttpResponse object.
+     */
+    private HttpResponse admissionStatus() {
+        JsonObject json = Json.createObjectBuilder()
+                .add("connections", admissionControl.getConnections())
+                .add("inFlightRequests", admissionControl.getInFlightRequests())
+                .add("shedConnections", admissionControl.getShedConnections())
+                .add("shedRequests", admissionControl.getShedRequests())
+                .build();
+
         return new HttpResponse(
                 HttpStatus.OK,
-                contentType,
-                Files.readAllBytes(f.toPath()),
-                new HashMap<>()
+                ContentType.json,
+                json.toString().getBytes(StandardCharsets.UTF_8),
+                Map.of("Cache-Control", "no-store")
         );
     }
 
     /**
-     * Generates an HttpResponse for the root HTML file (index.html).
+     * Exposes the server's metrics in the Prometheus text format, for 'GET /metrics'.
      * @return A HttpResponse object.
-     * @throws IOException if the file cannot be read.
      */
-    private HttpResponse serveIndex() throws IOException {
-        return serveStatic("/index.html", ContentType.html);
+    private HttpResponse metrics() {
+        return new HttpResponse(
+                HttpStatus.OK,
+                ContentType.prometheus,
+                Metrics.scrape().getBytes(StandardCharsets.UTF_8),
+                Map.of("Cache-Control", "no-store")
+        );
     }
 
     /**
-     * Creates a map of headers from the client's request.
-     * @return A map of headers.
-     * @throws IOException Should not be thrown.
+     * Exposes the counts kept by admission control, TLS and the queue alongside the recorded metrics.
      */
-    private HashMap<String, String> parseHeaders() throws IOException {
-        HashMap<String, String> headers = new HashMap<>();
-        String line;
-
-        // iterates through every header
-        while((line = reader.readLine()) != null && !line.isEmpty()) {
-            int colon = line.indexOf(':');
-            if (colon != -1) {
-                String key = line.substring(0, colon).trim();
-                String value = line.substring(colon + 1).trim();
-                headers.put(key, value);
-            }
+    private void registerMetrics() {
+        Metrics.register("http_connections_open", MetricType.GAUGE,
+                "Connections currently open.", admissionControl::getConnections);
+        Metrics.register("http_connections_accepted_total", MetricType.COUNTER,
+                "Connections admitted since startup.", admissionControl::getAdmittedConnections);
+        Metrics.register("http_connections_rejected_total", MetricType.COUNTER,
+                "Connections turned away with a 503 because the connection cap was reached.", admissionControl::getShedConnections);
+        Metrics.register("http_requests_in_flight", MetricType.GAUGE,
+                "Requests currently being parsed or handled.", admissionControl::getInFlightRequests);
+        Metrics.register("http_requests_rejected_total", MetricType.COUNTER,
+                "Requests turned away with a 503 because the in-flight cap was reached.", admissionControl::getShedRequests);
+
+        if (tls != null) {
+            Metrics.register("tls_handshakes_full_total", MetricType.COUNTER,
+                    "TLS handshakes that negotiated a new session.", tls::getFullHandshakes);
+            Metrics.register("tls_handshakes_resumed_total", MetricType.COUNTER,
+                    "TLS handshakes that resumed a cached session.", tls::getResumedHandshakes);
+            Metrics.register("tls_handshakes_failed_total", MetricType.COUNTER,
+                    "TLS handshakes that failed.", tls::getFailedHandshakes);
         }
 
-        return headers;
+        Metrics.register("queue_depth", MetricType.GAUGE, "Purchases waiting in the queue.", queue::size);
+    }
+
+    /**
+     * Reports how many TLS handshakes have been full and how many resumed, for 'GET /server/tls'.
+     * @return A HttpResponse object.
+     */
+    private HttpResponse tlsStatus() {
+        JsonObject json = Json.createObjectBuilder()
+                .add("fullHandshakes", tls.getFullHandshakes())
+                .add("resumedHandshakes", tls.getResumedHandshakes())
+                .add("failedHandshakes", tls.getFailedHandshakes())
+                .add("resumptionRatio", tls.getResumptionRatio())
+                .add("handshakesPerSecond", tls.getHandshakeRate())
+                .add("cachedSessions", tls.getCachedSessions())
+                .build();
+
+        return new HttpResponse(
+                HttpStatus.OK,
+                ContentType.json,
+                json.toString().getBytes(StandardCharsets.UTF_8),
+                Map.of("Cache-Control", "no-store")
+        );
+    }
+
+    /**
+     * Generates an HttpResponse for the root HTML file (index.html).
+     * @param req The request made by the client.
+     * @return A HttpResponse object.
+     * @throws IOException if the file cannot be read.
+     */
+    private HttpResponse serveIndex(HttpRequest req) throws IOException {
+        return serveStatic(req, "/index.html", ContentType.html);
     }
 }
@@ -1,9 +1,62 @@
 import utils.PropertiesParser;
 
+import utils.cache.StaticAssetCache;
+
+import utils.http2.Http2Settings;
+
+import utils.jfr.FlightRecording;
+
+import utils.log.AsyncLogger;
+import utils.log.Log;
+
+import utils.metrics.Metrics;
+import utils.metrics.enums.MetricType;
+
+import utils.queue.QueueJournal;
+
+import utils.request.HttpRequestParser;
+import utils.request.RequestBuffer;
+
+import utils.request.enums.RequestPhase;
+
+import utils.response.CompressionPolicy;
+import utils.response.ProgressChannel;
+
+import utils.server.AdmissionControl;
+import utils.server.ConnectionDeadline;
+import utils.server.GracefulShutdown;
+import utils.server.KeepAlivePolicy;
+import utils.server.ListenerConfig;
+import utils.server.ListeningSocket;
+import utils.server.NioServer;
+import utils.server.TimeoutPolicy;
+import utils.server.TimerWheel;
+import utils.server.TlsTerminator;
+
+import javax.net.ssl.SSLSocket;
+
 import java.io.*;
 import java.net.*;
 import java.util.Properties;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import java.security.GeneralSecurityException;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
 // used https://www.youtube.com/watch?v=5wQWJAvMDGg
 
 /**
@@ -12,8 +65,18 @@ import java.util.Properties;
 public class HttpServer {
 
     private static int port;
-    private static ServerSocket  server;
+    private static List<ServerSocketChannel> listeners;
+    private static List<ServerSocketChannel> tlsListeners;
+    private static TlsTerminator tls;
+    private static Http2Settings http2;
     private static Properties prop;
+    private static KeepAlivePolicy keepAlivePolicy;
+    private static AdmissionControl admissionControl;
+    private static TimerWheel timerWheel;
+    private static TimeoutPolicy timeoutPolicy;
+    private static int acceptBacklog;
+    private static boolean reusePort;
+    private static GracefulShutdown shutdown;
 
     /**
      *  Main class for the java HTTP server.
@@ -24,39 +87,481 @@ public class HttpServer {
         Properties prop = PropertiesParser.loadProperties();
         assert prop != null;
 
-        // start the server
         port = Integer.parseInt(prop.getProperty("serverPort"));
-        startServer();
-
-        // Loop forever more
-        while (true) {
-            try ( // establish a connection
-                    Socket connection = server.accept();
-                    InputStream inputStream = connection.getInputStream();
-                    OutputStream outputStream = connection.getOutputStream();
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))
-            ) {
-                // wait for connection
-                System.out.println("New connection: " + connection.getInetAddress());
-                HttpRequestHandler requestHandler = new HttpRequestHandler(reader, outputStream, prop.getProperty("documentRoot"));
-
-                requestHandler.handleRequest();
+        keepAlivePolicy = new KeepAlivePolicy(
+                Integer.parseInt(prop.getProperty("keepAliveMaxRequests", "100")),
+                Integer.parseInt(prop.getProperty("keepAliveTimeout", "5000"))
+        );
+        String serverMode = prop.getProperty("serverMode", "virtual");
+        AsyncLogger logger = createLogger(prop);
+        Log.install(logger);
+        FlightRecording recording = startRecording(prop);
+
+        if (Boolean.parseBoolean(prop.getProperty("metricsEnabled", "true"))) {
+            Metrics.enable();
+
+            if (logger != null) {
+                Metrics.register("log_dropped_records_total", MetricType.COUNTER,
+                        "Log records dropped because the log buffer was full.", logger::getDropped);
+            }
+        }
+
+        if (serverMode.equalsIgnoreCase("sequential")) {
+            // an idle persistent connection would stall every other client, so answer one request each
+            keepAlivePolicy = new KeepAlivePolicy(1, keepAlivePolicy.getIdleTimeout());
+        }
+
+        timerWheel = new TimerWheel(100, 512);
+        timeoutPolicy = new TimeoutPolicy(
+                keepAlivePolicy.getIdleTimeout(),
+                Long.parseLong(prop.getProperty("requestLineTimeout", "5000")),
+                Long.parseLong(prop.getProperty("requestHeaderTimeout", "10000")),
+                Long.parseLong(prop.getProperty("requestBodyTimeout", "30000")),
+                Long.parseLong(prop.getProperty("responseWriteTimeout", "30000"))
+        );
+
+        acceptBacklog = Integer.parseInt(prop.getProperty("acceptBacklog", "1024"));
+        reusePort = Boolean.parseBoolean(prop.getProperty("reusePort", "false"));
+        admissionControl = new AdmissionControl(
+                Integer.parseInt(prop.getProperty("maxConcurrentConnections", "10000")),
+                Integer.parseInt(prop.getProperty("maxInFlightRequests", "1000")),
+                Integer.parseInt(prop.getProperty("overloadRetryAfter", "1"))
+        );
+
+        HttpRequestParser requestParser = new HttpRequestParser(
+                Integer.parseInt(prop.getProperty("maxRequestLineLength", "8192")),
+                Integer.parseInt(prop.getProperty("maxHeaderSize", "16384")),
+                Integer.parseInt(prop.getProperty("maxBodySize", "1048576"))
+        );
+        CompressionPolicy compressionPolicy = new CompressionPolicy(
+                Integer.parseInt(prop.getProperty("compressionMinSize", "1024"))
+        );
+        StaticAssetCache assetCache = new StaticAssetCache(
+                prop.getProperty("documentRoot"),
+                prop.getProperty("staticCacheControl", "public, max-age=60"),
+                Long.parseLong(prop.getProperty("staticMaxCachedFileSize", "1048576")),
+                compressionPolicy
+        );
+        String tlsConfig = prop.getProperty("tlsListeners", "");
+
+        // HTTP/2 serves a connection's requests side by side, which sequential mode exists to avoid
+        if (Boolean.parseBoolean(prop.getProperty("http2Enabled", "true")) && !serverMode.equalsIgnoreCase("sequential")) {
+            http2 = new Http2Settings(
+                    Integer.parseInt(prop.getProperty("http2MaxConcurrentStreams", "100")),
+                    Integer.parseInt(prop.getProperty("http2InitialWindowSize", "65535")),
+                    Integer.parseInt(prop.getProperty("maxHeaderSize", "16384")),
+                    Integer.parseInt(prop.getProperty("maxBodySize", "1048576"))
+            );
+        }
+
+        // a WebSocket holds its connection's thread for as long as it is open, which sequential mode cannot spare
+        int liveCountsRate = serverMode.equalsIgnoreCase("sequential") ? 0
+                : Integer.parseInt(prop.getProperty("liveCountsUpdatesPerSecond", "4"));
+
+        // likewise a long poll or event stream, so sequential mode answers every status request at once
+        int longPollMaxWait = serverMode.equalsIgnoreCase("sequential") ? 0
+                : Integer.parseInt(prop.getProperty("longPollMaxWait", "60"));
+
+        if (!tlsConfig.isBlank()) {
+            tls = createTls(prop);
+        }
+
+        HttpRequestHandler requestHandler = new HttpRequestHandler(
+                assetCache,
+                requestParser,
+                compressionPolicy,
+                admissionControl,
+                new QueueJournal(prop.getProperty("queueStateFile", "queue-state.json")),
+                tls,
+                http2,
+                liveCountsRate,
+                longPollMaxWait
+        );
+
+        // on SIGTERM, stop accepting, end event streams, let open connections finish, then save the queue
+        shutdown = new GracefulShutdown(
+                admissionControl,
+                keepAlivePolicy,
+                Long.parseLong(prop.getProperty("shutdownDrainTimeout", "10000"))
+        );
+        shutdown.beforeDrain(requestHandler::endStreams);
+        shutdown.afterDrain(requestHandler::shutdown);
+
+        if (recording != null) {
+            shutdown.afterDrain(recording::stop);
+        }
+
+        if (logger != null) {
+            shutdown.afterDrain(logger::close);
+        }
+        shutdown.install();
+
+        // start the server
+        startServer(prop.getProperty("listeners", ""), tls == null ? "" : tlsConfig);
+        tlsListeners.forEach(shutdown::addListener);
+
+        if (serverMode.equalsIgnoreCase("nio")) {
+            int eventLoops = Integer.parseInt(prop.getProperty("nioEventLoops",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            serveNonBlocking(requestHandler, requestParser, eventLoops);
+
+            // the event loops only speak plaintext, so HTTPS connections get virtual threads
+            if (!tlsListeners.isEmpty()) {
+                serveConcurrently(requestHandler, List.of());
+            }
+            return;
+        }
+
+        listeners.forEach(shutdown::addListener);
+
+        if (serverMode.equalsIgnoreCase("sequential")) {
+            serveSequentially(requestHandler);
+        } else {
+            serveConcurrently(requestHandler, listeners);
+        }
+    }
+
+    /**
+     * Sets up TLS for the HTTPS listeners from the properties file.
+     * @param prop The server's properties.
+     * @return The TLS terminator, or null if TLS is misconfigured, in which case no HTTPS listener is opened.
+     */
+    private static TlsTerminator createTls(Properties prop) {
+        try {
+            return new TlsTerminator(
+                    Path.of(prop.getProperty("tlsKeyStore", "keystore.p12")),
+                    prop.getProperty("tlsKeyStorePassword", "").toCharArray(),
+                    prop.getProperty("tlsProtocols", ""),
+                    prop.getProperty("tlsCipherSuites", ""),
+                    Integer.parseInt(prop.getProperty("tlsSessionCacheSize", "20480")),
+                    Integer.parseInt(prop.getProperty("tlsSessionTimeout", "86400")),
+                    Boolean.parseBoolean(prop.getProperty("tlsSessionTickets", "true"))
+            );
+        }
+        catch (IOException | GeneralSecurityException e) {
+            System.err.println("TLS disabled, could not load the keystore: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets up the access and event log from the properties file.
+     * @param prop The server's properties.
+     * @return The logger, or null if its file cannot be opened, in which case nothing is logged.
+     */
+    private static AsyncLogger createLogger(Properties prop) {
+        String file = prop.getProperty("logFile", "server.log");
+
+        try {
+            return new AsyncLogger(
+                    file.isBlank() ? null : Path.of(file),
+                    Integer.parseInt(prop.getProperty("logBufferSize", "8192")),
+                    Long.parseLong(prop.getProperty("logFlushInterval", "100")),
+                    Double.parseDouble(prop.getProperty("accessLogSampleRate", "1.0"))
+            );
+        }
+        catch (IOException e) {
+            System.err.println("Logging disabled, could not open the log file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts a Flight Recorder recording, if the properties file asks for one.
+     * @param prop The server's properties.
+     * @return The recording, or null if there is none.
+     */
+    private static FlightRecording startRecording(Properties prop) {
+        String file = prop.getProperty("jfrRecordingFile", "");
+
+        if (file.isBlank()) {
+            return null;
+        }
+
+        try {
+            return new FlightRecording(
+                    Path.of(file),
+                    prop.getProperty("jfrSettings", "default"),
+                    Long.parseLong(prop.getProperty("jfrMaxAge", "0"))
+            );
+        }
+        catch (IOException | ParseException e) {
+            System.err.println("Recording disabled, could not start Flight Recorder: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts the selector based engine, which runs on its own event loop threads.
+     * @param requestHandler Processes every request.
+     * @param requestParser Parses the bytes read by the event loops.
+     * @param eventLoops The number of event loop threads.
+     */
+    private static void serveNonBlocking(
+            HttpRequestHandler requestHandler,
+            HttpRequestParser requestParser,
+            int eventLoops
+    ) {
+        try {
+            NioServer nioServer = new NioServer(
+                    eventLoops,
+                    requestHandler,
+                    requestParser,
+                    keepAlivePolicy,
+                    admissionControl,
+                    timerWheel,
+                    timeoutPolicy,
+                    http2
+            );
+            nioServer.start(listeners);
+            shutdown.addListener(nioServer::stopAccepting);
+        } catch (IOException e) {
+            System.err.println("IO Exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles one connection at a time, on whichever accept thread accepted it.
+     * @param requestHandler Processes every request.
+     */
+    private static void serveSequentially(HttpRequestHandler requestHandler) {
+        ReentrantLock turn = new ReentrantLock(true);
+
+        runAcceptors(listeners, (connection, secure) -> {
+            turn.lock();
+
+            // counted so that shutdown waits for it, there is never more than one
+            admissionControl.tryAdmitConnection();
+
+            try {
+                handleConnection(connection, secure, requestHandler);
             }
             catch (IOException e) {
-                System.err.println("IO Exception: " + e.getMessage());
+                Log.event("IO Exception: ", e.getMessage());
+            }
+            finally {
+                admissionControl.releaseConnection();
+                turn.unlock();
+            }
+        });
+    }
+
+    /**
+     * Hands every accepted connection to its own virtual thread.
+     * Once the connection cap is reached, new connections are answered with a 503 straight
+     * from the accept loop rather than left to queue, so clients learn at once to back off.
+     * @param requestHandler Processes every request.
+     * @param plainListeners The plaintext listening sockets to accept from, alongside every HTTPS one.
+     */
+    private static void serveConcurrently(HttpRequestHandler requestHandler, List<ServerSocketChannel> plainListeners) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            runAcceptors(plainListeners, (connection, secure) -> {
+                if (!admissionControl.tryAdmitConnection()) {
+                    reject(connection, secure);
+                    return;
+                }
+
+                executor.submit(() -> {
+                    try {
+                        handleConnection(connection, secure, requestHandler);
+                    }
+                    catch (IOException e) {
+                        Log.event("IO Exception: ", e.getMessage());
+                    }
+                    finally {
+                        admissionControl.releaseConnection();
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * Runs an accept loop on its own thread for every listening socket, and waits until shutdown closes them all.
+     * @param plainListeners The plaintext listening sockets, which are served alongside every HTTPS one.
+     * @param onAccept Called on the accept thread with each accepted connection, and whether it arrived over HTTPS.
+     */
+    private static void runAcceptors(List<ServerSocketChannel> plainListeners, BiConsumer<Socket, Boolean> onAccept) {
+        List<Thread> acceptors = new ArrayList<>();
+
+        for (int i = 0; i < plainListeners.size(); i++) {
+            ServerSocket server = plainListeners.get(i).socket();
+            acceptors.add(Thread.ofPlatform().name("acceptor-" + i).start(() -> acceptLoop(server, false, onAccept)));
+        }
+
+        for (int i = 0; i < tlsListeners.size(); i++) {
+            ServerSocket server = tlsListeners.get(i).socket();
+            acceptors.add(Thread.ofPlatform().name("tls-acceptor-" + i).start(() -> acceptLoop(server, true, onAccept)));
+        }
+
+        for (Thread acceptor : acceptors) {
+            try {
+                acceptor.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Accepts connections from one listening socket until shutdown closes it.
+     * @param server The listening socket.
+     * @param secure Whether connections on this socket speak TLS.
+     * @param onAccept Called with each accepted connection.
+     */
+    private static void acceptLoop(ServerSocket server, boolean secure, BiConsumer<Socket, Boolean> onAccept) {
+        while (!server.isClosed()) {
+            try {
+                onAccept.accept(server.accept(), secure);
+            }
+            catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("IO Exception: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers a connection the server has no room for with the pre-encoded 503, and closes it.
+     * The response is far smaller than a fresh socket's send buffer, so this never blocks the accept loop.
+     * HTTPS connections are closed without an answer, as one would need a handshake first, which is
+     * exactly the work an overloaded server should not take on.
+     * @param connection The accepted client socket.
+     * @param secure Whether the connection arrived over HTTPS.
+     */
+    private static void reject(Socket connection, boolean secure) {
+        try (connection) {
+            if (secure) {
+                return;
+            }
+
+            ByteBuffer overloaded = admissionControl.overloadedResponse();
+
+            while (overloaded.hasRemaining()) {
+                connection.getChannel().write(overloaded);
+            }
+        }
+        catch (IOException e) {
+            // the client has already gone, which is no loss
+        }
+    }
+
+    /**
+     * Serves requests from a connection until the client or the keep-alive policy closes it.
+     * Pipelined requests are answered in the order they arrive, as each is read only after
+     * the previous response has been written.
+     * The connection is held to the deadlines in the timeout policy by the timer wheel, which
+     * closes the socket if one passes, failing whatever read or write is blocked on it.
+     * HTTPS connections complete their handshake first, within the request line timeout. The plain socket
+     * underneath is what the deadline closes, as closing the TLS socket would try to write to the client.
+     * @param connection The accepted client socket, closed once the last response is sent.
+     * @param secure Whether the connection arrived over HTTPS.
+     * @param requestHandler Processes every request.
+     * @throws IOException Thrown if the connection cannot be read or written.
+     */
+    private static void handleConnection(Socket connection, boolean secure, HttpRequestHandler requestHandler) throws IOException {
+        ConnectionDeadline deadline = new ConnectionDeadline(timerWheel, timeoutPolicy, () -> closeQuietly(connection));
+
+        try (
+                connection;
+                Socket client = secure ? tls.wrap(connection) : connection;
+                InputStream inputStream = client.getInputStream();
+                OutputStream outputStream = client.getOutputStream()
+        ) {
+            // wait for connection
+            Log.event("New connection: ", connection.getInetAddress());
+
+            if (client instanceof SSLSocket tlsClient) {
+                deadline.reading(RequestPhase.REQUEST_LINE);
+                tls.handshake(tlsClient);
+            }
+
+            // plain sockets can send files with transferTo, TLS has to go through the stream to be encrypted
+            // (a TLS socket layered over a channel hands out the plain channel underneath, so it cannot be asked)
+            WritableByteChannel channel = new ProgressChannel(
+                    secure ? Channels.newChannel(outputStream) : connection.getChannel(),
+                    deadline::writing
+            );
+
+            RequestBuffer buffer = new RequestBuffer();
+            int served = 0;
+
+            while (requestHandler.handleRequest(inputStream, buffer, channel, keepAlivePolicy, deadline, served)) {
+                served++;
             }
         }
+        catch (IOException e) {
+            // a connection closed for missing a deadline is expected to fail mid read or write
+            if (!deadline.isExpired()) {
+                throw e;
+            }
+        }
+        finally {
+            deadline.cancel();
+        }
     }
 
     /**
-     * Creates a new server socket.
+     * Closes a socket from another thread, which fails any read or write blocked on it.
+     * @param connection The client socket.
      */
-    private static void startServer() {
+    private static void closeQuietly(Socket connection) {
         try {
-            server = new ServerSocket(port);
-            System.out.println("Starting server: " + server);
+            connection.close();
+        }
+        catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * Opens the listening sockets, or takes over the one inherited from the process that started the server.
+     * A listener with several acceptors gets one socket per acceptor, all bound with SO_REUSEPORT.
+     * The sockets are opened through channels so that accepted connections can use FileChannel.transferTo.
+     * The backlog bounds how many connections the kernel queues on each socket before the server accepts them.
+     * @param config The 'listeners' property, or an empty string to listen on serverPort only.
+     * @param tlsConfig The 'tlsListeners' property, in the same form, or an empty string for no HTTPS.
+     */
+    private static void startServer(String config, String tlsConfig) {
+        listeners = new ArrayList<>();
+        tlsListeners = new ArrayList<>();
+
+        try {
+            ServerSocketChannel inherited = ListeningSocket.inherited();
+
+            if (inherited != null) {
+                listeners.add(inherited);
+                System.out.println("Starting server: inherited " + inherited.getLocalAddress());
+            } else {
+                openListeners(config, "http", listeners);
+            }
+
+            if (!tlsConfig.isBlank()) {
+                openListeners(tlsConfig, "https", tlsListeners);
+            }
         } catch (IOException e) {
             System.err.println("IO Exception: " + e.getMessage());
         }
     }
+
+    /**
+     * Binds the sockets for a set of listeners.
+     * @param config The listeners, as in the properties file.
+     * @param scheme The scheme served, for the startup message.
+     * @param sockets The list the bound sockets are added to.
+     * @throws IOException Thrown if an address cannot be bound.
+     */
+    private static void openListeners(String config, String scheme, List<ServerSocketChannel> sockets) throws IOException {
+        for (ListenerConfig listener : ListenerConfig.parseAll(config, port)) {
+            for (int i = 0; i < listener.acceptors(); i++) {
+                sockets.add(ListeningSocket.open(listener.address(), acceptBacklog, reusePort || listener.acceptors() > 1));
+            }
+
+            System.out.println("Starting server: " + scheme + " on " + listener.address()
+                    + " with " + listener.acceptors() + " acceptors");
+        }
+    }
 }
@@ -3,48 +3,233 @@ package utils;
 import utils.request.enums.ContentType;
 import utils.request.enums.HttpStatus;
 
+import utils.response.BytesBody;
+import utils.response.ResponseBody;
+import utils.response.StreamingBody;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 import java.util.Map;
 
 /**
  * Represents Http responses as an java object.
  * @param status The status of a response (i.e. OK, CREATED...).
  * @param contentType The type of content the response contains (i.e. text/html, text/css...).
- * @param bytes The content to be sent to the client in the form of a byte array.
+ * @param body The content to be sent to the client: in memory, in a file, or streamed as it is produced.
  * @param headers The headers of the response.
  */
-public record HttpResponse(HttpStatus status, ContentType contentType, byte[] bytes, Map<String, String> headers) {
+public record HttpResponse(HttpStatus status, ContentType contentType, ResponseBody body, Map<String, String> headers) {
+    private static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNKED = "Transfer-Encoding: chunked\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE = "Connection: keep-alive\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
 
     /**
-     * Builds and send a HTTP response to the client.
+     * Constructor for a response whose content is held in memory.
+     * @param status The status of a response (i.e. OK, CREATED...).
+     * @param contentType The type of content the response contains (i.e. text/html, text/css...).
+     * @param bytes The content to be sent to the client in the form of a byte array.
+     * @param headers The headers of the response.
+     */
+    public HttpResponse(HttpStatus status, ContentType contentType, byte[] bytes, Map<String, String> headers) {
+        this(status, contentType, new BytesBody(bytes), headers);
+    }
+
+    /**
+     * Adapts the response to the client's HTTP version. HTTP/1.0 has no chunked transfer encoding,
+     * so a streamed body is sent unframed, and ended by closing the connection.
+     * @param version The version of the request being answered (i.e. HTTP/1.1).
+     * @return The response to send.
+     */
+    public HttpResponse forVersion(String version) {
+        if (body instanceof StreamingBody streaming && streaming.chunked() && "HTTP/1.0".equals(version)) {
+            return new HttpResponse(status, contentType, streaming.unframed(), headers);
+        }
+
+        return this;
+    }
+
+    /**
+     * Checks whether the end of the body can only be told by the connection closing, in which case
+     * the connection must not be kept open after it.
+     * @return True if the body is streamed without chunk framing.
+     */
+    public boolean isCloseDelimited() {
+        return body instanceof StreamingBody streaming && !streaming.chunked();
+    }
+
+    /**
+     * Builds and send a HTTP response to the client, telling it the connection will be closed.
      * @param outputStream The output stream to write the response.
      * @throws IOException Thrown if there is an error with the output stream.
      */
     public void sendResponse(OutputStream outputStream) throws IOException {
-        StringBuilder builder = new StringBuilder();
+        sendResponse(outputStream, false);
+    }
+
+    /**
+     * Builds and send a HTTP response to the client.
+     * @param outputStream The output stream to write the response.
+     * @param keepAlive Whether the connection stays open for another request after this response.
+     * @throws IOException Thrown if there is an error with the output stream.
+     */
+    public void sendResponse(OutputStream outputStream, boolean keepAlive) throws IOException {
+        sendResponse(Channels.newChannel(outputStream), keepAlive);
+        outputStream.flush();
+    }
+
+    /**
+     * Builds and send a HTTP response to the client over a blocking channel.
+     * An in-memory body goes out in the same write as the head, and file bodies written
+     * to a socket channel are sent by the kernel without passing through the heap.
+     * @param channel The channel to write the response.
+     * @param keepAlive Whether the connection stays open for another request after this response.
+     * @throws IOException Thrown if there is an error with the channel.
+     */
+    public void sendResponse(WritableByteChannel channel, boolean keepAlive) throws IOException {
+        ByteBuffer head = ByteBuffer.wrap(head(keepAlive));
 
-        // Get the first line
-        builder.append("HTTP/1.1 ")
-                .append(status.getStatusCode()).append(" ")
-                .append(status.getStatusMessage()).append("\r\n");
+        if (body instanceof BytesBody bytes && channel instanceof GatheringByteChannel gathering) {
+            ByteBuffer[] buffers = {head, bytes.toByteBuffer()};
 
-        // Append the always required headers
-        builder.append("Content-Type: ").append(contentType.getContentType()).append("\r\n");
-        builder.append("Content-Length: ").append(bytes.length).append("\r\n");
+            while (head.hasRemaining() || buffers[1].hasRemaining()) {
+                gathering.write(buffers);
+            }
+
+            return;
+        }
+
+        while (head.hasRemaining()) {
+            channel.write(head);
+        }
+
+        body.writeTo(channel);
+    }
+
+    /**
+     * Builds the status line and headers of the response.
+     * The fixed parts are copied from pre-encoded arrays, so the only allocation is the head itself.
+     * @param keepAlive Whether the connection stays open for another request after this response.
+     * @return The encoded head of the response, including the blank line that ends it.
+     */
+    public byte[] head(boolean keepAlive) {
+        long length = body.length();
+
+        // a 304 has no body, and must not claim the length of the body it stands in for
+        boolean chunked = body instanceof StreamingBody streaming && streaming.chunked();
+        boolean sendLength = length >= 0 && status != HttpStatus.NOT_MODIFIED;
+
+        // an unframed body ends when the connection closes, whatever the caller asked for
+        keepAlive = keepAlive && !isCloseDelimited();
+
+        int size = status.getStatusLineLength() + contentType.getHeaderLength()
+                + (keepAlive ? KEEP_ALIVE.length : CLOSE.length) + CRLF.length;
+
+        if (chunked) {
+            size += CHUNKED.length;
+        } else if (sendLength) {
+            size += CONTENT_LENGTH.length + digits(length) + CRLF.length;
+        }
+
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            size += h.getKey().length() + 2 + h.getValue().length() + CRLF.length;
+        }
+
+        byte[] head = new byte[size];
+        int pos = status.copyStatusLine(head, 0);
+        pos = contentType.copyHeader(head, pos);
+
+        if (chunked) {
+            pos = copy(CHUNKED, head, pos);
+        } else if (sendLength) {
+            pos = copy(CONTENT_LENGTH, head, pos);
+            pos = writeNumber(length, head, pos);
+            pos = copy(CRLF, head, pos);
+        }
+
+        pos = copy(keepAlive ? KEEP_ALIVE : CLOSE, head, pos);
 
         // Add any extra headers
         for (Map.Entry<String, String> h : headers.entrySet()) {
-            builder.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+            pos = writeText(h.getKey(), head, pos);
+            head[pos++] = ':';
+            head[pos++] = ' ';
+            pos = writeText(h.getValue(), head, pos);
+            pos = copy(CRLF, head, pos);
         }
 
         // finish the headers
-        builder.append("\r\n");
+        copy(CRLF, head, pos);
 
-        // Send the info
-        outputStream.write(builder.toString().getBytes());
-        outputStream.write(bytes);
-        outputStream.flush();
+        return head;
+    }
+
+    /**
+     * Copies a pre-encoded fragment into the head.
+     * @param fragment The fragment.
+     * @param dest The head.
+     * @param pos The position to copy to.
+     * @return The position after the fragment.
+     */
+    private static int copy(byte[] fragment, byte[] dest, int pos) {
+        System.arraycopy(fragment, 0, dest, pos, fragment.length);
+        return pos + fragment.length;
+    }
+
+    /**
+     * Encodes a header name or value as ISO-8859-1, without going through an intermediate array.
+     * @param text The text.
+     * @param dest The head.
+     * @param pos The position to write to.
+     * @return The position after the text.
+     */
+    private static int writeText(String text, byte[] dest, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            dest[pos++] = (byte) text.charAt(i);
+        }
+
+        return pos;
+    }
+
+    /**
+     * Writes a non-negative number in decimal.
+     * @param value The number.
+     * @param dest The head.
+     * @param pos The position to write to.
+     * @return The position after the number.
+     */
+    private static int writeNumber(long value, byte[] dest, int pos) {
+        int end = pos + digits(value);
+
+        for (int i = end - 1; i >= pos; i--) {
+            dest[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return end;
+    }
+
+    /**
+     * Counts the decimal digits in a non-negative number.
+     * @param value The number.
+     * @return The number of digits.
+     */
+    private static int digits(long value) {
+        int digits = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
     }
 }
@@ -3,7 +3,8 @@ package utils;
 import java.io.FileInputStream;
 import java.io.IOException;
 
-import java.util.Objects;
+import java.net.URL;
+
 import java.util.Properties;
 
 /**
@@ -19,7 +20,10 @@ public class PropertiesParser {
         try {
             // parse the properties file
             // from https://www.baeldung.com/java-properties TODO
-            String rootPath = Objects.requireNonNull(Thread.currentThread().getContextClassLoader().getResource("")).getPath();
+            URL classpathRoot = Thread.currentThread().getContextClassLoader().getResource("");
+
+            // run from the jar there is no classes folder, so the file is read from the working directory
+            String rootPath = classpathRoot != null ? classpathRoot.getPath() : ".";
             String root = "HTTPServer";
 
             // remove anything that is after 'CS2003-C3-ticket-chief'
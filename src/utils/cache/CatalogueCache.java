@@ -0,0 +1,95 @@
+package utils.cache;
+
+import utils.HttpResponse;
+
+import utils.request.HttpHeaders;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import utils.response.CompressionPolicy;
+
+import utils.store.Store;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Map;
+
+/**
+ * Keeps the encoded 'GET /tickets' catalogue, plain and gzip compressed, until a ticket count changes.
+ * The catalogue is read far more often than it changes, so most requests are answered without
+ * building any JSON or compressing anything.
+ */
+public class CatalogueCache {
+    private final Store store;
+    private final CompressionPolicy compressionPolicy;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * The catalogue as it was at one version of the store.
+     * @param version The store version the catalogue was built from.
+     * @param identity The uncompressed response.
+     * @param gzip The compressed response, or null if the catalogue is not worth compressing.
+     */
+    private record Snapshot(long version, HttpResponse identity, HttpResponse gzip) {
+    }
+
+    /**
+     * Constructor for the CatalogueCache class.
+     * @param store The primary storage for concerts and purchases.
+     * @param compressionPolicy Decides whether the catalogue is also kept compressed.
+     */
+    public CatalogueCache(Store store, CompressionPolicy compressionPolicy) {
+        this.store = store;
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Serves the catalogue, rebuilding it first if the store has changed since it was cached.
+     * @param requestHeaders The headers of the client's request.
+     * @return The compressed catalogue if the client accepts gzip, otherwise the plain one.
+     */
+    public HttpResponse serve(HttpHeaders requestHeaders) {
+        Snapshot current = snapshot;
+        long version = store.getVersion();
+
+        if (current == null || current.version() != version) {
+            current = build(version);
+            snapshot = current;
+        }
+
+        if (current.gzip() != null && compressionPolicy.acceptsGzip(requestHeaders)) {
+            return current.gzip();
+        }
+
+        return current.identity();
+    }
+
+    /**
+     * Encodes the catalogue. A change that races with this is only missed until the next request,
+     * as the snapshot records the version read before the catalogue was.
+     * @param version The store version read before building.
+     * @return The new snapshot.
+     */
+    private Snapshot build(long version) {
+        byte[] bytes = store.toJson().toString().getBytes(StandardCharsets.UTF_8);
+
+        if (!compressionPolicy.isEligible(ContentType.json, bytes.length)) {
+            return new Snapshot(version, new HttpResponse(HttpStatus.OK, ContentType.json, bytes, Map.of()), null);
+        }
+
+        byte[] compressed = compressionPolicy.compress(bytes, 0, bytes.length);
+
+        return new Snapshot(
+                version,
+                new HttpResponse(HttpStatus.OK, ContentType.json, bytes, Map.of("Vary", "Accept-Encoding")),
+                new HttpResponse(
+                        HttpStatus.OK,
+                        ContentType.json,
+                        compressed,
+                        Map.of("Vary", "Accept-Encoding", "Content-Encoding", "gzip")
+                )
+        );
+    }
+}
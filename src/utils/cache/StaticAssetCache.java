@@ -0,0 +1,477 @@
+package utils.cache;
+
+import utils.HttpResponse;
+
+import utils.request.HttpHeaders;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import utils.response.BytesBody;
+import utils.response.CompressionPolicy;
+import utils.response.FileBody;
+import utils.response.ResponseBody;
+import utils.response.SliceableBody;
+
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the files under the document root in memory, so serving them costs no disk I/O.
+ * Each file is read once, given a strong ETag, and dropped again when a WatchService
+ * reports that it has changed on disk. Files too large to hold in the heap are streamed
+ * from disk instead, and any file can be requested in parts with a Range header.
+ * Text files are also gzip compressed once when they are read, and the compressed copy is
+ * served to clients that accept it.
+ */
+public class StaticAssetCache {
+    private final Path documentRoot;
+    private final String cacheControl;
+    private final long maxCachedFileSize;
+    private final CompressionPolicy compressionPolicy;
+    private final Map<String, CachedAsset> assets = new ConcurrentHashMap<>();
+
+    // bumped on every change the watcher sees, so a read that raced with a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final boolean watching;
+
+    /**
+     * A file known to the cache, along with the responses used to serve it.
+     * @param body The uncompressed content, in memory for small files or on disk for large ones.
+     * @param identity The responses for the uncompressed content.
+     * @param gzip The responses for the compressed content, or null if the file is not worth compressing.
+     */
+    private record CachedAsset(SliceableBody body, Variant identity, Variant gzip) {
+    }
+
+    /**
+     * One encoding of a file. Each encoding has its own ETag, as the bytes differ.
+     * @param ok The full response.
+     * @param notModified The response for clients that already hold the current version.
+     * @param etag The strong validator for this encoding.
+     */
+    private record Variant(HttpResponse ok, HttpResponse notModified, String etag) {
+    }
+
+    /**
+     * Constructor for the StaticAssetCache class.
+     * @param documentRoot The root of all client side resources.
+     * @param cacheControl The Cache-Control header sent with every file.
+     * @param maxCachedFileSize Files larger than this, in bytes, are streamed from disk rather than held in memory.
+     * @param compressionPolicy Decides which files are also kept gzip compressed.
+     */
+    public StaticAssetCache(
+            String documentRoot,
+            String cacheControl,
+            long maxCachedFileSize,
+            CompressionPolicy compressionPolicy
+    ) {
+        this.documentRoot = Path.of(documentRoot).toAbsolutePath().normalize();
+        this.cacheControl = cacheControl;
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.compressionPolicy = compressionPolicy;
+        this.watching = startWatcher();
+    }
+
+    /**
+     * Starts a background thread that watches the document root, and every folder in it, for changes.
+     * @return True if the watcher is running. Without it nothing is cached, as nothing would be invalidated.
+     */
+    private boolean startWatcher() {
+        try {
+            WatchService watchService = documentRoot.getFileSystem().newWatchService();
+            registerTree(watchService, documentRoot);
+
+            Thread watcher = new Thread(() -> watch(watchService), "static-asset-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println("Unable to watch document root, static files will not be cached: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Serves a file, answering with 304 if the client's copy is still current and 206 for a Range request.
+     * The compressed copy is used if the client accepts gzip, except for Range requests, which always
+     * refer to the uncompressed bytes.
+     * @param file The file the client has requested, relative to the document root (i.e. '/index.html').
+     * @param contentType The type of content the file contains.
+     * @param requestHeaders The headers of the client's request.
+     * @return A HttpResponse object, or null if the file does not exist.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    public HttpResponse serve(String file, ContentType contentType, HttpHeaders requestHeaders) throws IOException {
+        // only canonical paths are ever cached, so an alias always misses here
+        CachedAsset asset = assets.get(file);
+
+        if (asset == null) {
+            asset = load(file, contentType);
+
+            if (asset == null) {
+                return null;
+            }
+        }
+
+        String range = requestHeaders.get("Range");
+        Variant variant = asset.gzip() != null && range == null && compressionPolicy.acceptsGzip(requestHeaders)
+                ? asset.gzip()
+                : asset.identity();
+
+        String ifNoneMatch = requestHeaders.get("If-None-Match");
+
+        if (ifNoneMatch != null && matches(ifNoneMatch, variant.etag())) {
+            return variant.notModified();
+        }
+
+        // If-Range asks for the part only if the file is unchanged, and the whole file otherwise
+        if (range != null && ifRangeHolds(requestHeaders.get("If-Range"), variant.etag())) {
+            return serveRange(asset, contentType, range);
+        }
+
+        return variant.ok();
+    }
+
+    /**
+     * Answers a Range request for a single range of bytes.
+     * Anything this does not understand (other units, several ranges) gets the whole file, as the RFC allows.
+     * @param asset The requested file.
+     * @param contentType The type of content the file contains.
+     * @param range The client's Range header (i.e. 'bytes=0-499', 'bytes=500-' or 'bytes=-500').
+     * @return A 206, 416 or 200 response.
+     */
+    private HttpResponse serveRange(CachedAsset asset, ContentType contentType, String range) {
+        long length = asset.body().length();
+        Variant identity = asset.identity();
+
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return identity.ok();
+        }
+
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+
+        if (dash == -1) {
+            return identity.ok();
+        }
+
+        long first;
+        long last;
+
+        try {
+            if (dash == 0) {
+                // a suffix range: the last N bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+
+                if (suffix == 0) {
+                    first = length;
+                }
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+
+                // a range that ends before it starts is invalid, and is ignored
+                if (last < first) {
+                    return identity.ok();
+                }
+
+                last = Math.min(length - 1, last);
+            }
+        }
+        catch (NumberFormatException e) {
+            return identity.ok();
+        }
+
+        if (first >= length) {
+            return new HttpResponse(
+                    HttpStatus.RANGE_NOT_SATISFIABLE,
+                    contentType,
+                    new byte[0],
+                    Map.of("Content-Range", "bytes */" + length, "Accept-Ranges", "bytes")
+            );
+        }
+
+        return new HttpResponse(
+                HttpStatus.PARTIAL_CONTENT,
+                contentType,
+                asset.body().slice(first, last - first + 1),
+                Map.of(
+                        "Content-Range", "bytes " + first + "-" + last + "/" + length,
+                        "Accept-Ranges", "bytes",
+                        "ETag", identity.etag(),
+                        "Cache-Control", cacheControl
+                )
+        );
+    }
+
+    /**
+     * Builds the key a file is cached under, which is also what the watcher drops when it changes.
+     * @param path The file, normalised and inside the document root.
+     * @return The path relative to the document root, with a leading slash (i.e. '/index.js').
+     */
+    private String keyOf(Path path) {
+        return "/" + documentRoot.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Reads a file from disk and caches it under its canonical path, so that aliases of it
+     * (i.e. '/./index.js' or '/x/../index.js') share one entry, which the watcher drops when it changes.
+     * @param file The file, relative to the document root.
+     * @param contentType The type of content the file contains.
+     * @return The cached file, or null if there is no file at that path.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    private CachedAsset load(String file, ContentType contentType) throws IOException {
+        Path path = documentRoot.resolve(file.substring(1)).normalize();
+
+        // never serve anything outside the document root (i.e. '/../tickets.json')
+        if (!path.startsWith(documentRoot)) {
+            return null;
+        }
+
+        long before = generation.get();
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        }
+        catch (FileSystemException e) {
+            // missing, or a path through a file (i.e. '/index.html/x'), neither of which can be served
+            return null;
+        }
+
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        String key = keyOf(path);
+
+        if (!key.equals(file)) {
+            CachedAsset cached = assets.get(key);
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        SliceableBody body;
+        String etag;
+        byte[] compressed = null;
+
+        if (attributes.size() > maxCachedFileSize) {
+            // too large for the heap, so stream it from disk and identify it by size and modification time
+            body = new FileBody(path, 0, attributes.size());
+            etag = "\"" + Long.toHexString(attributes.size()) + "-"
+                    + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+        } else {
+            byte[] bytes;
+
+            try {
+                bytes = Files.readAllBytes(path);
+            }
+            catch (FileSystemException e) {
+                return null;
+            }
+
+            body = new BytesBody(bytes);
+            etag = "\"" + hash(bytes) + "\"";
+
+            if (compressionPolicy.isEligible(contentType, bytes.length)) {
+                compressed = compressionPolicy.compress(bytes, 0, bytes.length);
+
+                // some text is already dense enough that gzip makes it larger
+                if (compressed.length >= bytes.length) {
+                    compressed = null;
+                }
+            }
+        }
+
+        Variant identity;
+        Variant gzip = null;
+
+        if (compressed == null) {
+            identity = variant(contentType, body, etag,
+                    Map.of("ETag", etag, "Cache-Control", cacheControl, "Accept-Ranges", "bytes"));
+        } else {
+            // the response now depends on Accept-Encoding, so shared caches must key on it
+            identity = variant(contentType, body, etag, Map.of(
+                    "ETag", etag,
+                    "Cache-Control", cacheControl,
+                    "Accept-Ranges", "bytes",
+                    "Vary", "Accept-Encoding"
+            ));
+
+            String gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+            gzip = variant(contentType, new BytesBody(compressed), gzipEtag, Map.of(
+                    "ETag", gzipEtag,
+                    "Cache-Control", cacheControl,
+                    "Content-Encoding", "gzip",
+                    "Vary", "Accept-Encoding"
+            ));
+        }
+
+        CachedAsset asset = new CachedAsset(body, identity, gzip);
+
+        if (watching && generation.get() == before) {
+            assets.put(key, asset);
+
+            // the watcher may have fired between the check and the put
+            if (generation.get() != before) {
+                assets.remove(key, asset);
+            }
+        }
+
+        return asset;
+    }
+
+    /**
+     * Builds the responses for one encoding of a file.
+     * @param contentType The type of content the file contains.
+     * @param body The content, in this encoding.
+     * @param etag The ETag for this encoding.
+     * @param headers The headers sent with both responses.
+     * @return The variant.
+     */
+    private static Variant variant(ContentType contentType, ResponseBody body, String etag, Map<String, String> headers) {
+        return new Variant(
+                new HttpResponse(HttpStatus.OK, contentType, body, headers),
+                new HttpResponse(HttpStatus.NOT_MODIFIED, contentType, new byte[0], headers),
+                etag
+        );
+    }
+
+    /**
+     * Checks an If-None-Match header against the current ETag.
+     * The header may list several tags, or be '*'. Weak tags are compared by their opaque value.
+     * @param ifNoneMatch The client's header.
+     * @param etag The current ETag.
+     * @return True if the client's copy is current.
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks an If-Range header. Only a strong ETag can validate a range, so dates and weak tags never match.
+     * @param ifRange The client's header, or null if it did not send one.
+     * @param etag The current ETag.
+     * @return True if the Range header should be honoured.
+     */
+    private boolean ifRangeHolds(String ifRange, String etag) {
+        return ifRange == null || ifRange.trim().equals(etag);
+    }
+
+    /**
+     * Drops cached files as they change on disk. Runs on the watcher thread until the service is closed.
+     * @param watchService The service watching the document root.
+     */
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = watchedDirectories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    generation.incrementAndGet();
+
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        // events were lost, so we no longer know what is stale
+                        assets.clear();
+                        continue;
+                    }
+
+                    Path changed = directory.resolve((Path) event.context());
+                    assets.remove(keyOf(changed));
+
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        registerTree(watchService, changed);
+                    }
+                }
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                    assets.clear();
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            assets.clear();
+        }
+        catch (IOException e) {
+            System.err.println("Static asset watcher stopped: " + e.getMessage());
+            assets.clear();
+        }
+    }
+
+    /**
+     * Watches a folder and every folder beneath it.
+     * @param watchService The service to register with.
+     * @param root The top of the tree.
+     * @throws IOException Thrown if the tree cannot be walked.
+     */
+    private void registerTree(WatchService watchService, Path root) throws IOException {
+        try (Stream<Path> directories = Files.walk(root).filter(Files::isDirectory)) {
+            for (Path directory : (Iterable<Path>) directories::iterator) {
+                WatchKey key = directory.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE
+                );
+                watchedDirectories.put(key, directory);
+            }
+        }
+    }
+
+    /**
+     * Computes a content hash for use as a strong ETag.
+     * @param bytes The file contents.
+     * @return The first 128 bits of the SHA-256 digest, as hex.
+     */
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package utils.http2;
+
+/**
+ * A single header as HPACK sees it, with the name in lower case.
+ * @param name The name of the header, or a pseudo-header such as ':path'.
+ * @param value The value of the header.
+ */
+public record HeaderField(String name, String value) {
+    /**
+     * Retrieves the size the header counts for in a header table: its name and value plus 32 bytes of overhead.
+     * Headers are decoded as ISO-8859-1, so each character is one byte.
+     * @return The size in bytes.
+     */
+    public int size() {
+        return name.length() + value.length() + 32;
+    }
+}
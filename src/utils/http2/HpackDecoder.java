@@ -0,0 +1,150 @@
+package utils.http2;
+
+import utils.http2.common.Http2Exception;
+import utils.http2.enums.Http2Error;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the HPACK header blocks a client sends (RFC 7541).
+ * The dynamic table carries state from one block to the next, so every block on a connection
+ * must be decoded, in order, by the same decoder, even those for streams that are then refused.
+ */
+public class HpackDecoder {
+    private final HpackTable table;
+    private final int maxTableSize;
+
+    // the block being decoded
+    private byte[] bytes;
+    private int pos;
+    private int end;
+
+    /**
+     * Constructor for the HpackDecoder class.
+     * @param maxTableSize The most bytes the client may make the dynamic table hold, as sent in our settings.
+     */
+    public HpackDecoder(int maxTableSize) {
+        this.table = new HpackTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+    }
+
+    /**
+     * Decodes a whole header block.
+     * @param block The array holding the block, put together from a HEADERS frame and any CONTINUATION frames.
+     * @param length The length of the block.
+     * @return The headers, in the order they were sent.
+     * @throws Http2Exception Thrown if the block cannot be decoded, which is always a connection error.
+     */
+    public List<HeaderField> decode(byte[] block, int length) throws Http2Exception {
+        this.bytes = block;
+        this.pos = 0;
+        this.end = length;
+
+        List<HeaderField> fields = new ArrayList<>();
+
+        while (pos < end) {
+            int first = bytes[pos] & 0xff;
+
+            if ((first & 0x80) != 0) { // indexed header field
+                int index = readInteger(7);
+
+                if (index == 0) {
+                    throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Header index 0");
+                }
+
+                fields.add(table.get(index));
+            }
+            else if ((first & 0x40) != 0) { // literal with incremental indexing
+                HeaderField field = readLiteral(6);
+                table.add(field);
+                fields.add(field);
+            }
+            else if ((first & 0x20) != 0) { // dynamic table size update, only allowed before the first header
+                int size = readInteger(5);
+
+                if (!fields.isEmpty() || size > maxTableSize) {
+                    throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Invalid dynamic table size update");
+                }
+
+                table.setMaxSize(size);
+            }
+            else { // literal without indexing, or never indexed, which only matters to proxies
+                fields.add(readLiteral(4));
+            }
+        }
+
+        this.bytes = null;
+        return fields;
+    }
+
+    /**
+     * Reads a literal header, whose name is either indexed or a string of its own.
+     * @param prefix The number of bits of the first byte holding the name index.
+     * @return The header.
+     * @throws Http2Exception Thrown if the header is malformed.
+     */
+    private HeaderField readLiteral(int prefix) throws Http2Exception {
+        int index = readInteger(prefix);
+        String name = index == 0 ? readString() : table.get(index).name();
+
+        return new HeaderField(name, readString());
+    }
+
+    /**
+     * Reads a string literal, Huffman coded or not.
+     * @return The string, one character per byte.
+     * @throws Http2Exception Thrown if the string runs past the end of the block.
+     */
+    private String readString() throws Http2Exception {
+        if (pos >= end) {
+            throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Truncated header block");
+        }
+
+        boolean huffman = (bytes[pos] & 0x80) != 0;
+        int length = readInteger(7);
+
+        if (length > end - pos) {
+            throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Truncated header block");
+        }
+
+        String value = huffman
+                ? Huffman.decode(bytes, pos, length)
+                : new String(bytes, pos, length, StandardCharsets.ISO_8859_1);
+
+        pos += length;
+        return value;
+    }
+
+    /**
+     * Reads an integer packed into the low bits of a byte, continued in 7 bit groups if it does not fit.
+     * @param prefix The number of low bits of the first byte holding the integer.
+     * @return The integer.
+     * @throws Http2Exception Thrown if the integer runs past the end of the block or overflows.
+     */
+    private int readInteger(int prefix) throws Http2Exception {
+        int max = (1 << prefix) - 1;
+        int value = bytes[pos++] & max;
+
+        if (value < max) {
+            return value;
+        }
+
+        for (int shift = 0; shift <= 21; shift += 7) {
+            if (pos >= end) {
+                throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Truncated header block");
+            }
+
+            int b = bytes[pos++] & 0xff;
+            value += (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Header integer too large");
+    }
+}
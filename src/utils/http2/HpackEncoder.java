@@ -0,0 +1,143 @@
+package utils.http2;
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Encodes the HPACK header blocks sent to a client (RFC 7541).
+ * Headers repeated from one response to the next (i.e. content-type, cache-control) are added to
+ * the dynamic table the first time, and sent as a single byte index after that. Strings are
+ * Huffman coded whenever that makes them shorter.
+ * Blocks must be sent in the order they are encoded, so the caller holds the connection's write lock.
+ */
+public class HpackEncoder {
+    private static final int DEFAULT_TABLE_SIZE = 4096;
+
+    // values that change with every response, and would only push useful entries out of the table
+    private static final Set<String> NOT_INDEXED = Set.of("content-length", "content-range", "etag", "last-modified", "date");
+
+    private final HpackTable table = new HpackTable(DEFAULT_TABLE_SIZE);
+
+    // table size changes the client has not been told about yet, or -1 if there are none
+    private int smallestSize = -1;
+    private int pendingSize = -1;
+
+    /**
+     * Applies the client's SETTINGS_HEADER_TABLE_SIZE. The table never grows past the default,
+     * and the client is told about the change at the start of the next block.
+     * @param size The most bytes the client will let the table hold.
+     */
+    public void setMaxTableSize(int size) {
+        size = Math.min(size, DEFAULT_TABLE_SIZE);
+
+        if (size == table.getMaxSize() && pendingSize == -1) {
+            return;
+        }
+
+        table.setMaxSize(size);
+        smallestSize = smallestSize == -1 ? size : Math.min(smallestSize, size);
+        pendingSize = size;
+    }
+
+    /**
+     * Encodes a header block.
+     * @param fields The headers, with pseudo-headers first and every name in lower case.
+     * @return The encoded block.
+     */
+    public byte[] encode(List<HeaderField> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+
+        if (pendingSize != -1) {
+            // if the table shrank and then grew again, the client must see the smallest size too
+            if (smallestSize < pendingSize) {
+                writeInteger(0x20, 5, smallestSize, out);
+            }
+
+            writeInteger(0x20, 5, pendingSize, out);
+            smallestSize = -1;
+            pendingSize = -1;
+        }
+
+        for (HeaderField field : fields) {
+            int index = table.find(field.name(), field.value());
+
+            if (index > 0) {
+                writeInteger(0x80, 7, index, out);
+            }
+            else if (NOT_INDEXED.contains(field.name())) {
+                writeInteger(0x00, 4, -index, out);
+                writeLiteral(field, index == 0, out);
+            }
+            else {
+                writeInteger(0x40, 6, -index, out);
+                writeLiteral(field, index == 0, out);
+                table.add(field);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the strings of a literal header, after its representation and name index.
+     * @param field The header.
+     * @param withName Whether the name has to be written too, as it is not in the table.
+     * @param out Where the block is written.
+     */
+    private static void writeLiteral(HeaderField field, boolean withName, ByteArrayOutputStream out) {
+        if (withName) {
+            writeString(field.name(), out);
+        }
+
+        writeString(field.value(), out);
+    }
+
+    /**
+     * Writes a string literal, Huffman coded if that is shorter.
+     * @param text The string, made of ISO-8859-1 characters.
+     * @param out Where the block is written.
+     */
+    private static void writeString(String text, ByteArrayOutputStream out) {
+        int coded = Huffman.encodedLength(text);
+
+        if (coded < text.length()) {
+            writeInteger(0x80, 7, coded, out);
+            Huffman.encode(text, out);
+            return;
+        }
+
+        writeInteger(0x00, 7, text.length(), out);
+
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes an integer into the low bits of a byte, continued in 7 bit groups if it does not fit.
+     * @param flags The high bits of the first byte, which say what the integer is.
+     * @param prefix The number of low bits of the first byte available for the integer.
+     * @param value The integer.
+     * @param out Where the block is written.
+     */
+    private static void writeInteger(int flags, int prefix, int value, ByteArrayOutputStream out) {
+        int max = (1 << prefix) - 1;
+
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+
+        out.write(flags | max);
+        value -= max;
+
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+}
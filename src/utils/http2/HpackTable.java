@@ -0,0 +1,196 @@
+package utils.http2;
+
+import utils.http2.common.Http2Exception;
+import utils.http2.enums.Http2Error;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The header table HPACK indexes into: the 61 entries of the static table, followed by a dynamic table
+ * of recently sent headers, newest first. Each side of a connection keeps one table per direction.
+ */
+public class HpackTable {
+    private static final HeaderField[] STATIC_TABLE = {
+            new HeaderField(":authority", ""),
+            new HeaderField(":method", "GET"),
+            new HeaderField(":method", "POST"),
+            new HeaderField(":path", "/"),
+            new HeaderField(":path", "/index.html"),
+            new HeaderField(":scheme", "http"),
+            new HeaderField(":scheme", "https"),
+            new HeaderField(":status", "200"),
+            new HeaderField(":status", "204"),
+            new HeaderField(":status", "206"),
+            new HeaderField(":status", "304"),
+            new HeaderField(":status", "400"),
+            new HeaderField(":status", "404"),
+            new HeaderField(":status", "500"),
+            new HeaderField("accept-charset", ""),
+            new HeaderField("accept-encoding", "gzip, deflate"),
+            new HeaderField("accept-language", ""),
+            new HeaderField("accept-ranges", ""),
+            new HeaderField("accept", ""),
+            new HeaderField("access-control-allow-origin", ""),
+            new HeaderField("age", ""),
+            new HeaderField("allow", ""),
+            new HeaderField("authorization", ""),
+            new HeaderField("cache-control", ""),
+            new HeaderField("content-disposition", ""),
+            new HeaderField("content-encoding", ""),
+            new HeaderField("content-language", ""),
+            new HeaderField("content-length", ""),
+            new HeaderField("content-location", ""),
+            new HeaderField("content-range", ""),
+            new HeaderField("content-type", ""),
+            new HeaderField("cookie", ""),
+            new HeaderField("date", ""),
+            new HeaderField("etag", ""),
+            new HeaderField("expect", ""),
+            new HeaderField("expires", ""),
+            new HeaderField("from", ""),
+            new HeaderField("host", ""),
+            new HeaderField("if-match", ""),
+            new HeaderField("if-modified-since", ""),
+            new HeaderField("if-none-match", ""),
+            new HeaderField("if-range", ""),
+            new HeaderField("if-unmodified-since", ""),
+            new HeaderField("last-modified", ""),
+            new HeaderField("link", ""),
+            new HeaderField("location", ""),
+            new HeaderField("max-forwards", ""),
+            new HeaderField("proxy-authenticate", ""),
+            new HeaderField("proxy-authorization", ""),
+            new HeaderField("range", ""),
+            new HeaderField("referer", ""),
+            new HeaderField("refresh", ""),
+            new HeaderField("retry-after", ""),
+            new HeaderField("server", ""),
+            new HeaderField("set-cookie", ""),
+            new HeaderField("strict-transport-security", ""),
+            new HeaderField("transfer-encoding", ""),
+            new HeaderField("user-agent", ""),
+            new HeaderField("vary", ""),
+            new HeaderField("via", ""),
+            new HeaderField("www-authenticate", "")
+    };
+
+    private final ArrayDeque<HeaderField> dynamic = new ArrayDeque<>();
+    private int size = 0;
+    private int maxSize;
+
+    /**
+     * Constructor for the HpackTable class.
+     * @param maxSize The most bytes the dynamic table may hold, 4096 unless the peer's settings say otherwise.
+     */
+    public HpackTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Retrieves a header by its index.
+     * @param index The index, starting at 1 for the static table.
+     * @return The header.
+     * @throws Http2Exception Thrown if nothing is at the index.
+     */
+    public HeaderField get(int index) throws Http2Exception {
+        if (index >= 1 && index <= STATIC_TABLE.length) {
+            return STATIC_TABLE[index - 1];
+        }
+
+        int position = index - STATIC_TABLE.length - 1;
+
+        if (index < 1 || position >= dynamic.size()) {
+            throw new Http2Exception(Http2Error.COMPRESSION_ERROR, "Header index out of range: " + index);
+        }
+
+        Iterator<HeaderField> fields = dynamic.iterator();
+
+        for (int i = 0; i < position; i++) {
+            fields.next();
+        }
+
+        return fields.next();
+    }
+
+    /**
+     * Finds a header in the table. The tables are short, so a linear search is cheaper than keeping a map in step.
+     * @param name The name of the header.
+     * @param value The value of the header.
+     * @return The index of an entry matching both, or the negated index of an entry matching the name only, or 0 if neither.
+     */
+    public int find(String name, String value) {
+        int nameIndex = 0;
+
+        for (int i = 0; i < STATIC_TABLE.length; i++) {
+            if (STATIC_TABLE[i].name().equals(name)) {
+                if (STATIC_TABLE[i].value().equals(value)) {
+                    return i + 1;
+                }
+
+                if (nameIndex == 0) {
+                    nameIndex = -(i + 1);
+                }
+            }
+        }
+
+        int index = STATIC_TABLE.length + 1;
+
+        for (HeaderField field : dynamic) {
+            if (field.name().equals(name)) {
+                if (field.value().equals(value)) {
+                    return index;
+                }
+
+                if (nameIndex == 0) {
+                    nameIndex = -index;
+                }
+            }
+
+            index++;
+        }
+
+        return nameIndex;
+    }
+
+    /**
+     * Adds a header to the front of the dynamic table, evicting the oldest entries to make room.
+     * A header larger than the whole table empties it and is not added.
+     * @param field The header.
+     */
+    public void add(HeaderField field) {
+        evict(maxSize - field.size());
+
+        if (field.size() <= maxSize) {
+            dynamic.addFirst(field);
+            size += field.size();
+        }
+    }
+
+    /**
+     * Changes how many bytes the dynamic table may hold, evicting entries if it shrinks.
+     * @param maxSize The new limit.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    /**
+     * Retrieves how many bytes the dynamic table may hold.
+     * @return The limit.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Drops the oldest entries until the dynamic table fits in the given size.
+     * @param limit The size to fit in, which may be negative.
+     */
+    private void evict(int limit) {
+        while (size > Math.max(0, limit) && !dynamic.isEmpty()) {
+            size -= dynamic.removeLast().size();
+        }
+    }
+}
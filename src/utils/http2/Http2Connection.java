@@ -0,0 +1,1483 @@
+package utils.http2;
+
+import utils.HttpResponse;
+
+import utils.http2.common.Http2Exception;
+import utils.http2.enums.Http2Error;
+
+import utils.metrics.Metrics;
+
+import utils.request.DefaultResponses;
+import utils.request.HttpHeaders;
+import utils.request.HttpRequest;
+import utils.request.RequestBuffer;
+import utils.request.enums.HttpStatus;
+import utils.request.enums.RequestPhase;
+
+import utils.response.BytesBody;
+import utils.response.FileBody;
+import utils.response.StreamingBody;
+
+import utils.server.AdmissionControl;
+import utils.server.ConnectionDeadline;
+import utils.server.KeepAlivePolicy;
+import utils.server.interfaces.IRequestDispatcher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves one HTTP/2 connection (RFC 9113) over cleartext, reached either with prior knowledge (the client
+ * opens with the connection preface) or by upgrading from an HTTP/1.1 request carrying 'Upgrade: h2c'.
+ * The calling thread reads frames; every request is dispatched on a virtual thread of its own, so many
+ * requests share one connection and a slow one holds up none of the others. Responses are cut into
+ * frames that are written whole under a lock, and DATA frames wait for the client's flow control windows.
+ * Each stream is admitted as a request on its own, so admission control sees HTTP/2 load as it does HTTP/1.1.
+ */
+public class Http2Connection {
+    public static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SWITCHING_PROTOCOLS =
+            "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // frame flags
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY_FLAG = 0x20;
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int DEFAULT_FRAME_SIZE = 16384;
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int DEFAULT_TABLE_SIZE = 4096;
+
+    // headers that only mean something to a single HTTP/1.1 hop, so must not cross an HTTP/2 connection
+    private static final Set<String> CONNECTION_HEADERS = Set.of("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    private static final DefaultResponses defaultResponses = new DefaultResponses();
+
+    private final InputStream in;
+    private final WritableByteChannel out;
+    private final IRequestDispatcher dispatcher;
+    private final AdmissionControl admissionControl;
+    private final KeepAlivePolicy keepAlivePolicy;
+    private final ConnectionDeadline deadline;
+    private final Http2Settings settings;
+
+    private final ByteBuffer readBuffer;
+    private final HpackDecoder decoder = new HpackDecoder(DEFAULT_TABLE_SIZE);
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+
+    // held while a frame is written, so frames never interleave and header blocks go out in the order they were encoded
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final HpackEncoder encoder = new HpackEncoder();
+    private int sending = 0;
+
+    // guards the send windows, and wakes streams waiting for the client to open them
+    private final ReentrantLock flowLock = new ReentrantLock();
+    private final Condition windowOpened = flowLock.newCondition();
+    private final Condition streamClosed = flowLock.newCondition();
+    private long sendWindow = DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindow = DEFAULT_WINDOW_SIZE;
+    private boolean closed = false;
+    private boolean goAwaySent = false;
+
+    private volatile int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+    private volatile int receiving = 0;
+
+    // only written by the reading thread, read by the last stream to finish when it says goodbye
+    private volatile int lastStreamId = 0;
+
+    // only touched by the reading thread
+    private int receiveWindow;
+    private int unacknowledged = 0;
+    private int headerBlockStream = 0;
+    private int headerBlockFlags = 0;
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+
+    /**
+     * Constructor for the Http2Connection class.
+     * @param in The client's connection. A stream rather than a channel, as a channel over a stream
+     *           reads under a monitor, which would pin the reading virtual thread to its carrier.
+     * @param buffer Whatever has already been read from the connection, i.e. the preface, which is handed over.
+     * @param out The client's connection, reporting write progress to the deadline.
+     * @param dispatcher Turns each request into a response.
+     * @param admissionControl Admits each stream as a request.
+     * @param keepAlivePolicy Tells the connection to wind down once the server is draining.
+     * @param deadline The connection's deadline. Only armed under the write lock, as several threads write.
+     * @param settings The limits announced to the client.
+     */
+    public Http2Connection(
+            InputStream in,
+            RequestBuffer buffer,
+            WritableByteChannel out,
+            IRequestDispatcher dispatcher,
+            AdmissionControl admissionControl,
+            KeepAlivePolicy keepAlivePolicy,
+            ConnectionDeadline deadline,
+            Http2Settings settings
+    ) {
+        this.in = in;
+        this.out = out;
+        this.dispatcher = dispatcher;
+        this.admissionControl = admissionControl;
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.deadline = deadline;
+        this.settings = settings;
+        this.receiveWindow = Math.max(DEFAULT_WINDOW_SIZE, settings.initialWindowSize());
+
+        this.readBuffer = ByteBuffer.allocate(Math.max(FRAME_HEADER_LENGTH + DEFAULT_FRAME_SIZE, buffer.remaining()));
+        buffer.transferTo(readBuffer);
+        readBuffer.flip();
+    }
+
+    /**
+     * Waits until it is clear whether a new connection opens with the HTTP/2 preface.
+     * @param inputStream The client's connection.
+     * @param buffer The connection's request buffer, holding the first bytes read.
+     * @return True if the whole preface has arrived, false as soon as the bytes differ from it or the client stops sending.
+     * @throws IOException Thrown if the connection cannot be read.
+     */
+    public static boolean awaitPreface(InputStream inputStream, RequestBuffer buffer) throws IOException {
+        while (buffer.matches(PREFACE) && buffer.remaining() < PREFACE.length) {
+            if (buffer.fill(inputStream) == -1) {
+                return false;
+            }
+        }
+
+        return buffer.matches(PREFACE);
+    }
+
+    /**
+     * Checks whether an HTTP/1.1 request asks to switch the connection to HTTP/2.
+     * Only requests without a body are upgraded, as a body would have to be read before the switch.
+     * @param req The request.
+     * @return True if the request carries 'Upgrade: h2c' and valid HTTP2-Settings.
+     */
+    public static boolean isUpgrade(HttpRequest req) {
+        return req.headers().valueEquals("Upgrade", "h2c")
+                && req.headers().contains("HTTP2-Settings")
+                && req.body().isEmpty()
+                && decodeSettings(req) != null;
+    }
+
+    /**
+     * Serves the connection until the client closes it, breaks the protocol, or the server drains.
+     * Returns once every stream has finished, so the caller can close the socket.
+     * @param upgrade The HTTP/1.1 request that asked for an upgrade, answered on stream 1, or null for prior knowledge.
+     * @throws IOException Thrown if the connection cannot be read or written.
+     */
+    public void serve(HttpRequest upgrade) throws IOException {
+        try {
+            if (upgrade != null) {
+                write(ByteBuffer.wrap(SWITCHING_PROTOCOLS));
+            }
+
+            writeFrame(SETTINGS, 0, 0, settings.encode());
+
+            // the connection's window starts at the default whatever the settings say, so it is opened up to match
+            if (receiveWindow > DEFAULT_WINDOW_SIZE) {
+                writeWindowUpdate(0, receiveWindow - DEFAULT_WINDOW_SIZE);
+            }
+
+            if (upgrade != null) {
+                applySettings(ByteBuffer.wrap(decodeSettings(upgrade)));
+                openUpgraded(upgrade);
+            }
+
+            readPreface();
+            readFrames();
+        }
+        catch (Http2Exception e) {
+            goAway(e.getError(), e.getMessage());
+        }
+        catch (IOException e) {
+            // the socket is closed deliberately once the server has said goodbye
+            if (!goAwaySent()) {
+                throw e;
+            }
+        }
+        finally {
+            awaitStreams();
+        }
+    }
+
+    /**
+     * Checks the client's connection preface, which must come before any frame.
+     * @throws IOException Thrown if the connection cannot be read.
+     * @throws Http2Exception Thrown if the client sent something else.
+     */
+    private void readPreface() throws IOException, Http2Exception {
+        if (!fill(PREFACE.length)) {
+            throw new EOFException("Connection closed before the HTTP/2 preface");
+        }
+
+        byte[] preface = new byte[PREFACE.length];
+        readBuffer.get(preface);
+
+        if (!Arrays.equals(preface, PREFACE)) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Invalid connection preface");
+        }
+    }
+
+    /**
+     * Reads and handles frames until the client closes the connection.
+     * Stream errors reset their stream and carry on; connection errors are thrown.
+     * @throws IOException Thrown if the connection cannot be read or written.
+     * @throws Http2Exception Thrown if the client breaks the protocol for the whole connection.
+     */
+    private void readFrames() throws IOException, Http2Exception {
+        boolean first = true;
+
+        while (fill(FRAME_HEADER_LENGTH)) {
+            int length = (readBuffer.get() & 0xff) << 16 | (readBuffer.get() & 0xff) << 8 | (readBuffer.get() & 0xff);
+            int type = readBuffer.get() & 0xff;
+            int flags = readBuffer.get() & 0xff;
+            int streamId = readBuffer.getInt() & 0x7fffffff;
+
+            if (length > DEFAULT_FRAME_SIZE) {
+                throw new Http2Exception(Http2Error.FRAME_SIZE_ERROR, "Frame larger than SETTINGS_MAX_FRAME_SIZE");
+            }
+
+            if (!fill(length)) {
+                throw new EOFException("Connection closed part way through a frame");
+            }
+
+            // only valid until the next read, so anything kept is copied out
+            ByteBuffer payload = readBuffer.slice(readBuffer.position(), length);
+            readBuffer.position(readBuffer.position() + length);
+
+            if (first && type != SETTINGS) {
+                throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Expected SETTINGS after the preface");
+            }
+
+            if (headerBlockStream != 0 && (type != CONTINUATION || streamId != headerBlockStream)) {
+                throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Expected CONTINUATION");
+            }
+
+            first = false;
+
+            try {
+                onFrame(type, flags, streamId, payload);
+            }
+            catch (Http2Exception e) {
+                if (e.getStreamId() == 0) {
+                    throw e;
+                }
+
+                resetStream(e.getStreamId(), e.getError());
+            }
+        }
+    }
+
+    /**
+     * Handles a single frame. Frames of unknown types are ignored, as the protocol requires.
+     * @param type The frame type.
+     * @param flags The frame flags.
+     * @param streamId The stream the frame belongs to, or 0 for the connection.
+     * @param payload The frame payload.
+     * @throws IOException Thrown if a reply cannot be written.
+     * @throws Http2Exception Thrown if the frame breaks the protocol.
+     */
+    private void onFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException, Http2Exception {
+        switch (type) {
+            case DATA -> onData(flags, streamId, payload);
+            case HEADERS -> onHeaders(flags, streamId, payload);
+            case CONTINUATION -> onContinuation(flags, streamId, payload);
+            case PRIORITY -> {
+                // priorities are only advice, and every stream is served as soon as it can be anyway
+                requireStream(streamId);
+                requireLength(payload, 5, streamId);
+            }
+            case RST_STREAM -> {
+                requireStream(streamId);
+                requireLength(payload, 4, 0);
+
+                if (streamId > lastStreamId) {
+                    throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "RST_STREAM on idle stream");
+                }
+
+                cancelStream(streamId);
+            }
+            case SETTINGS -> {
+                requireConnection(streamId);
+
+                if ((flags & ACK) != 0) {
+                    requireLength(payload, 0, 0);
+                    return;
+                }
+
+                if (payload.remaining() % 6 != 0) {
+                    throw new Http2Exception(Http2Error.FRAME_SIZE_ERROR, "Malformed SETTINGS");
+                }
+
+                applySettings(payload);
+                writeFrame(SETTINGS, ACK, 0, ByteBuffer.allocate(0));
+            }
+            case PING -> {
+                requireConnection(streamId);
+                requireLength(payload, 8, 0);
+
+                if ((flags & ACK) == 0) {
+                    ByteBuffer reply = ByteBuffer.allocate(8).put(payload).flip();
+                    writeFrame(PING, ACK, 0, reply);
+                }
+            }
+            case GOAWAY -> requireConnection(streamId); // the client opens no more streams, the ones open still finish
+            case WINDOW_UPDATE -> {
+                requireLength(payload, 4, 0);
+                onWindowUpdate(streamId, payload.getInt() & 0x7fffffff);
+            }
+            case PUSH_PROMISE -> throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Clients cannot push");
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Starts collecting a header block, which opens a stream (or ends one, if it carries trailers).
+     * @param flags The frame flags.
+     * @param streamId The stream.
+     * @param payload The frame payload.
+     * @throws Http2Exception Thrown if the frame is malformed.
+     */
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        requireStream(streamId);
+        unpad(flags, payload);
+
+        if ((flags & PRIORITY_FLAG) != 0) {
+            if (payload.remaining() < 5) {
+                throw new Http2Exception(Http2Error.FRAME_SIZE_ERROR, "HEADERS too short for its priority");
+            }
+
+            payload.position(payload.position() + 5);
+        }
+
+        headerBlockStream = streamId;
+        headerBlockFlags = flags;
+        headerBlock.reset();
+
+        onContinuation(flags, streamId, payload);
+    }
+
+    /**
+     * Adds a fragment to the header block being collected, and handles the block once it is complete.
+     * @param flags The frame flags.
+     * @param streamId The stream.
+     * @param payload The fragment.
+     * @throws Http2Exception Thrown if there is no header block to continue, or it grows too large.
+     */
+    private void onContinuation(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (headerBlockStream == 0) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "CONTINUATION without HEADERS");
+        }
+
+        // compressed headers are never much larger than decoded ones, so anything this size is abuse
+        if (headerBlock.size() + payload.remaining() > 2 * settings.maxHeaderListSize()) {
+            throw new Http2Exception(Http2Error.ENHANCE_YOUR_CALM, "Header block too large");
+        }
+
+        headerBlock.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+
+        if ((flags & END_HEADERS) != 0) {
+            headerBlockStream = 0;
+            onHeaderBlock(streamId, (headerBlockFlags & END_STREAM) != 0);
+        }
+    }
+
+    /**
+     * Decodes a complete header block and opens its stream. The block is always decoded, even for a stream
+     * that is then refused, to keep the decoder's table in step with the client's.
+     * @param streamId The stream.
+     * @param endStream Whether the request has no body.
+     * @throws Http2Exception Thrown if the block cannot be decoded, or the stream cannot be opened.
+     */
+    private void onHeaderBlock(int streamId, boolean endStream) throws Http2Exception {
+        List<HeaderField> fields = decoder.decode(headerBlock.toByteArray(), headerBlock.size());
+        Stream stream = streams.get(streamId);
+
+        if (stream != null) { // trailers, which nothing here uses
+            if (stream.dispatched) {
+                throw new Http2Exception(Http2Error.STREAM_CLOSED, streamId, "HEADERS after the end of the stream");
+            }
+
+            if (!endStream) {
+                throw new Http2Exception(Http2Error.PROTOCOL_ERROR, streamId, "Trailers must end the stream");
+            }
+
+            dispatch(stream);
+            return;
+        }
+
+        if (streamId <= lastStreamId) {
+            throw new Http2Exception(Http2Error.STREAM_CLOSED, "HEADERS on a closed stream");
+        }
+
+        if (streamId % 2 == 0) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Clients must use odd stream IDs");
+        }
+
+        lastStreamId = streamId;
+
+        if (goAwaySent()) {
+            return; // the client will retry it on a new connection
+        }
+
+        stream = new Stream(streamId);
+        stream.parseHeaders(fields);
+
+        if (streams.size() >= settings.maxConcurrentStreams() || !admissionControl.tryAdmitRequest()) {
+            throw new Http2Exception(Http2Error.REFUSED_STREAM, streamId, "Stream refused");
+        }
+
+        flowLock.lock();
+        try {
+            stream.sendWindow = peerInitialWindow;
+        }
+        finally {
+            flowLock.unlock();
+        }
+
+        streams.put(streamId, stream);
+        receiving++;
+
+        if (endStream) {
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Adds a DATA frame to its stream's request body, and returns flow control credit once enough has been used.
+     * @param flags The frame flags.
+     * @param streamId The stream.
+     * @param payload The frame payload.
+     * @throws IOException Thrown if a WINDOW_UPDATE cannot be written.
+     * @throws Http2Exception Thrown if the frame breaks flow control or arrives on a stream that is not receiving.
+     */
+    private void onData(int flags, int streamId, ByteBuffer payload) throws IOException, Http2Exception {
+        requireStream(streamId);
+
+        // the whole frame counts against the windows, padding included, whatever becomes of the stream
+        int length = payload.remaining();
+
+        if (length > receiveWindow) {
+            throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, "Connection window exceeded");
+        }
+
+        receiveWindow -= length;
+        unacknowledged += length;
+
+        if (unacknowledged >= Math.max(DEFAULT_WINDOW_SIZE, settings.initialWindowSize()) / 2) {
+            writeWindowUpdate(0, unacknowledged);
+            receiveWindow += unacknowledged;
+            unacknowledged = 0;
+        }
+
+        Stream stream = streams.get(streamId);
+
+        if (streamId > lastStreamId) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "DATA on idle stream");
+        }
+
+        if (stream == null || stream.dispatched) {
+            throw new Http2Exception(Http2Error.STREAM_CLOSED, streamId, "DATA after the end of the stream");
+        }
+
+        if (length > stream.receiveWindow) {
+            throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, streamId, "Stream window exceeded");
+        }
+
+        stream.receiveWindow -= length;
+        unpad(flags, payload);
+        stream.addBody(payload);
+
+        if ((flags & END_STREAM) != 0) {
+            dispatch(stream);
+            return;
+        }
+
+        stream.unacknowledged += length;
+
+        if (stream.unacknowledged >= settings.initialWindowSize() / 2) {
+            writeWindowUpdate(streamId, stream.unacknowledged);
+            stream.receiveWindow += stream.unacknowledged;
+            stream.unacknowledged = 0;
+        }
+    }
+
+    /**
+     * Gives a stream, or the whole connection, more room to send in.
+     * @param streamId The stream, or 0 for the connection.
+     * @param increment The number of bytes added to the window.
+     * @throws Http2Exception Thrown if the increment is zero or takes the window past its limit.
+     */
+    private void onWindowUpdate(int streamId, int increment) throws Http2Exception {
+        if (increment == 0) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, streamId, "WINDOW_UPDATE of 0");
+        }
+
+        if (streamId > lastStreamId) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream");
+        }
+
+        flowLock.lock();
+        try {
+            if (streamId == 0) {
+                if (sendWindow + increment > Integer.MAX_VALUE) {
+                    throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, "Connection window overflow");
+                }
+
+                sendWindow += increment;
+            } else {
+                Stream stream = streams.get(streamId);
+
+                if (stream == null) {
+                    return; // the stream has already finished, and the update crossed with its last frame
+                }
+
+                if (stream.sendWindow + increment > Integer.MAX_VALUE) {
+                    throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+                }
+
+                stream.sendWindow += increment;
+            }
+
+            windowOpened.signalAll();
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the client's settings. Settings this server has no use for are ignored.
+     * @param payload The SETTINGS payload, six bytes per setting.
+     * @throws Http2Exception Thrown if a setting has an invalid value.
+     */
+    private void applySettings(ByteBuffer payload) throws Http2Exception {
+        while (payload.remaining() >= 6) {
+            int id = payload.getShort() & 0xffff;
+            int value = payload.getInt();
+
+            switch (id) {
+                case Http2Settings.HEADER_TABLE_SIZE -> {
+                    writeLock.lock();
+                    try {
+                        encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    }
+                    finally {
+                        writeLock.unlock();
+                    }
+                }
+                case Http2Settings.ENABLE_PUSH -> {
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    }
+                }
+                case Http2Settings.INITIAL_WINDOW_SIZE -> {
+                    if (value < 0) {
+                        throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    }
+
+                    setInitialWindow(value);
+                }
+                case Http2Settings.MAX_FRAME_SIZE -> {
+                    if (value < DEFAULT_FRAME_SIZE || value > 0xffffff) {
+                        throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    }
+
+                    peerMaxFrameSize = value;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the send window of every open stream by the change in the client's initial window size.
+     * @param value The new initial window size.
+     * @throws Http2Exception Thrown if a stream's window would pass its limit.
+     */
+    private void setInitialWindow(int value) throws Http2Exception {
+        flowLock.lock();
+        try {
+            int delta = value - peerInitialWindow;
+            peerInitialWindow = value;
+
+            for (Stream stream : streams.values()) {
+                if (stream.sendWindow + delta > Integer.MAX_VALUE) {
+                    throw new Http2Exception(Http2Error.FLOW_CONTROL_ERROR, "Stream window overflow");
+                }
+
+                stream.sendWindow += delta;
+            }
+
+            windowOpened.signalAll();
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Opens stream 1 for the request that asked for the upgrade, which has already been read in full.
+     * @param upgrade The request.
+     * @throws IOException Thrown if the stream cannot be refused.
+     */
+    private void openUpgraded(HttpRequest upgrade) throws IOException {
+        lastStreamId = 1;
+
+        if (!admissionControl.tryAdmitRequest()) {
+            resetStream(1, Http2Error.REFUSED_STREAM);
+            return;
+        }
+
+        Stream stream = new Stream(1);
+        stream.request = upgrade;
+        stream.sendWindow = peerInitialWindow;
+        streams.put(1, stream);
+        receiving++;
+
+        dispatch(stream);
+    }
+
+    /**
+     * Hands a stream whose request has fully arrived to a virtual thread of its own.
+     * @param stream The stream.
+     */
+    private void dispatch(Stream stream) {
+        stream.dispatched = true;
+        receiving--;
+
+        Thread.ofVirtual().name("h2-stream").start(() -> respond(stream));
+    }
+
+    /**
+     * Answers a stream's request, then closes the stream. Runs on the stream's own thread.
+     * @param stream The stream.
+     */
+    private void respond(Stream stream) {
+        try {
+            HttpRequest req;
+            HttpResponse res;
+
+            try {
+                req = stream.request();
+                res = stream.early != null ? stream.early : dispatcher.dispatch(req);
+            }
+            finally {
+                // as over HTTP/1.1, writing the response (i.e. an event stream) does not hold a place
+                admissionControl.releaseRequest();
+            }
+
+            sendResponse(stream, req.method(), res);
+        }
+        catch (IOException e) {
+            // the client reset the stream, or the connection has gone
+        }
+        catch (RuntimeException e) {
+            resetQuietly(stream.id, Http2Error.INTERNAL_ERROR);
+        }
+        finally {
+            closeStream(stream);
+        }
+    }
+
+    /**
+     * Sends a response as a HEADERS frame followed by DATA frames.
+     * Hop-by-hop headers are dropped, and every name is sent in lower case as HTTP/2 requires.
+     * @param stream The stream.
+     * @param method The request method; a HEAD request gets the headers only.
+     * @param res The response.
+     * @throws IOException Thrown if the stream is reset or the connection cannot be written.
+     */
+    private void sendResponse(Stream stream, String method, HttpResponse res) throws IOException {
+        long length = res.body().length();
+        boolean headersOnly = method.equals("HEAD") || res.status() == HttpStatus.NOT_MODIFIED || length == 0;
+
+        List<HeaderField> fields = new ArrayList<>(res.headers().size() + 3);
+        fields.add(new HeaderField(":status", String.valueOf(res.status().getStatusCode())));
+        fields.add(new HeaderField("content-type", res.contentType().getContentType()));
+
+        if (length >= 0 && res.status() != HttpStatus.NOT_MODIFIED) {
+            fields.add(new HeaderField("content-length", String.valueOf(length)));
+        }
+
+        for (Map.Entry<String, String> header : res.headers().entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.ROOT);
+
+            if (!CONNECTION_HEADERS.contains(name)) {
+                fields.add(new HeaderField(name, header.getValue()));
+            }
+        }
+
+        startSending();
+
+        try {
+            writeHeaders(stream, fields, headersOnly);
+
+            if (headersOnly) {
+                return;
+            }
+
+            switch (res.body()) {
+                case BytesBody bytes -> sendData(stream, bytes.toByteBuffer(), true);
+                case FileBody file -> {
+                    file.writeTo(new StreamChannel(stream));
+                    sendData(stream, ByteBuffer.allocate(0), true);
+                }
+                case StreamingBody streaming -> {
+                    // anything the writer flushes goes out as a DATA frame straight away
+                    OutputStream body = new BufferedOutputStream(Channels.newOutputStream(new StreamChannel(stream)), DEFAULT_FRAME_SIZE);
+                    streaming.writer().writeTo(body);
+                    body.flush();
+                    sendData(stream, ByteBuffer.allocate(0), true);
+                }
+            }
+        }
+        finally {
+            stopSending();
+        }
+    }
+
+    /**
+     * Encodes and writes a header block, split into CONTINUATION frames if it is larger than a frame.
+     * @param stream The stream.
+     * @param fields The headers.
+     * @param endStream Whether the response has no body.
+     * @throws IOException Thrown if the stream is reset or the connection cannot be written.
+     */
+    private void writeHeaders(Stream stream, List<HeaderField> fields, boolean endStream) throws IOException {
+        writeLock.lock();
+        try {
+            if (stream.reset) {
+                throw new IOException("Stream reset by the client");
+            }
+
+            ByteBuffer block = ByteBuffer.wrap(encoder.encode(fields));
+            int type = HEADERS;
+            int flags = endStream ? END_STREAM : 0;
+
+            do {
+                int size = Math.min(block.remaining(), peerMaxFrameSize);
+                ByteBuffer fragment = block.slice(block.position(), size);
+                block.position(block.position() + size);
+
+                writeFrame(type, flags | (block.hasRemaining() ? 0 : END_HEADERS), stream.id, fragment);
+                type = CONTINUATION;
+                flags = 0;
+            } while (block.hasRemaining());
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends part of a response body, as DATA frames no larger than the client's windows allow.
+     * Blocks while either window is closed.
+     * @param stream The stream.
+     * @param data The bytes to send, which may be empty to just end the stream.
+     * @param endStream Whether these are the last bytes of the response.
+     * @throws IOException Thrown if the stream is reset or the connection cannot be written.
+     */
+    private void sendData(Stream stream, ByteBuffer data, boolean endStream) throws IOException {
+        do {
+            int size = reserve(stream, data.remaining());
+            ByteBuffer chunk = data.slice(data.position(), size);
+            data.position(data.position() + size);
+
+            writeFrame(DATA, endStream && !data.hasRemaining() ? END_STREAM : 0, stream.id, chunk);
+        } while (data.hasRemaining());
+    }
+
+    /**
+     * Takes room in the connection's and the stream's send windows, waiting for the client to open them if need be.
+     * @param stream The stream.
+     * @param wanted The number of bytes waiting to be sent.
+     * @return The number of bytes that may be sent now, at least one unless nothing is wanted.
+     * @throws IOException Thrown if the stream is reset, or the connection closes, while waiting.
+     */
+    private int reserve(Stream stream, int wanted) throws IOException {
+        flowLock.lock();
+        try {
+            while (true) {
+                if (closed || stream.reset) {
+                    throw new IOException("Stream closed before its response was sent");
+                }
+
+                if (wanted == 0) {
+                    return 0; // an empty frame just ends the stream, and needs no window
+                }
+
+                long window = Math.min(sendWindow, stream.sendWindow);
+
+                if (window > 0) {
+                    int size = (int) Math.min(Math.min(wanted, window), peerMaxFrameSize);
+                    sendWindow -= size;
+                    stream.sendWindow -= size;
+                    return size;
+                }
+
+                windowOpened.await();
+            }
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted waiting for the flow control window");
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a single frame.
+     * @param type The frame type.
+     * @param flags The frame flags.
+     * @param streamId The stream, or 0 for the connection.
+     * @param payload The payload.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void writeFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH)
+                .put((byte) (length >>> 16))
+                .put((byte) (length >>> 8))
+                .put((byte) length)
+                .put((byte) type)
+                .put((byte) flags)
+                .putInt(streamId)
+                .flip();
+
+        writeLock.lock();
+        try {
+            if (out instanceof GatheringByteChannel gathering) {
+                ByteBuffer[] buffers = {header, payload};
+
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    gathering.write(buffers);
+                }
+            } else {
+                write(header);
+                write(payload);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes raw bytes to the connection.
+     * @param buffer The bytes.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        writeLock.lock();
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gives the client more room to send request bodies in.
+     * @param streamId The stream, or 0 for the connection.
+     * @param increment The number of bytes.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        writeFrame(WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(0, increment));
+    }
+
+    /**
+     * Resets a stream, telling the client, and frees it if its request had not yet been dispatched.
+     * @param streamId The stream.
+     * @param error The reason.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void resetStream(int streamId, Http2Error error) throws IOException {
+        writeFrame(RST_STREAM, 0, streamId, ByteBuffer.allocate(4).putInt(0, error.getCode()));
+        cancelStream(streamId);
+    }
+
+    /**
+     * Resets a stream from its own thread, once its response has failed part way.
+     * @param streamId The stream.
+     * @param error The reason.
+     */
+    private void resetQuietly(int streamId, Http2Error error) {
+        try {
+            writeFrame(RST_STREAM, 0, streamId, ByteBuffer.allocate(4).putInt(0, error.getCode()));
+        }
+        catch (IOException e) {
+            // the connection has gone, which resets every stream anyway
+        }
+    }
+
+    /**
+     * Abandons a stream the client has reset. A stream still receiving its request is dropped here;
+     * one already dispatched is told to stop, and cleans up on its own thread.
+     * @param streamId The stream.
+     */
+    private void cancelStream(int streamId) {
+        Stream stream = streams.get(streamId);
+
+        if (stream == null) {
+            return;
+        }
+
+        if (!stream.dispatched) {
+            streams.remove(streamId);
+            receiving--;
+            admissionControl.releaseRequest();
+            return;
+        }
+
+        flowLock.lock();
+        try {
+            stream.reset = true;
+            windowOpened.signalAll();
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a stream once its response is done. If the server is draining, the last stream to
+     * finish says goodbye to the client and closes the connection.
+     * @param stream The stream.
+     */
+    private void closeStream(Stream stream) {
+        streams.remove(stream.id);
+
+        flowLock.lock();
+        try {
+            streamClosed.signalAll();
+        }
+        finally {
+            flowLock.unlock();
+        }
+
+        updateDeadline();
+
+        if (keepAlivePolicy.isDraining() && streams.isEmpty()) {
+            goAway(Http2Error.NO_ERROR, "Server shutting down");
+        }
+    }
+
+    /**
+     * Tells the client no more streams will be served, then closes the connection, which ends the read loop.
+     * @param error The reason.
+     * @param message The reason in words, sent as debug data.
+     */
+    private void goAway(Http2Error error, String message) {
+        flowLock.lock();
+        try {
+            if (goAwaySent) {
+                return;
+            }
+
+            goAwaySent = true;
+        }
+        finally {
+            flowLock.unlock();
+        }
+
+        byte[] debug = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + debug.length).putInt(lastStreamId).putInt(error.getCode()).put(debug).flip();
+
+        try {
+            writeFrame(GOAWAY, 0, 0, payload);
+            out.close();
+        }
+        catch (IOException e) {
+            // the client has already gone
+        }
+    }
+
+    /**
+     * Checks whether the server has already said goodbye.
+     * @return True once a GOAWAY has been sent.
+     */
+    private boolean goAwaySent() {
+        flowLock.lock();
+        try {
+            return goAwaySent;
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for every stream to finish once the connection can no longer be read.
+     * Streams still receiving their request are dropped, and streams waiting on a window are
+     * woken to fail, as the client can no longer complete or open either.
+     */
+    private void awaitStreams() {
+        for (Stream stream : streams.values()) {
+            if (!stream.dispatched) {
+                cancelStream(stream.id);
+            }
+        }
+
+        flowLock.lock();
+        try {
+            closed = true;
+            windowOpened.signalAll();
+
+            while (!streams.isEmpty()) {
+                streamClosed.awaitUninterruptibly();
+            }
+        }
+        finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a stream as writing its response, which holds the connection to the write deadline.
+     */
+    private void startSending() {
+        writeLock.lock();
+        try {
+            sending++;
+            deadline.writing();
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a stream as done writing.
+     */
+    private void stopSending() {
+        writeLock.lock();
+        try {
+            sending--;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the deadline for whatever the connection is waiting on. While any response is being written
+     * the write deadline holds, pushed back by each write; otherwise the connection is idle, waiting for
+     * a request body, or waiting on the server itself.
+     */
+    private void updateDeadline() {
+        writeLock.lock();
+        try {
+            if (sending > 0) {
+                return;
+            }
+
+            if (streams.isEmpty()) {
+                deadline.reading(RequestPhase.IDLE);
+            } else if (receiving > 0) {
+                deadline.reading(RequestPhase.BODY);
+            } else {
+                deadline.processing();
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Reads until the buffer holds at least the given number of bytes, applying the deadline before each read.
+     * @param needed The number of bytes needed.
+     * @return True once they have arrived, or false if the client closed the connection first.
+     * @throws IOException Thrown if the connection cannot be read.
+     */
+    private boolean fill(int needed) throws IOException {
+        while (readBuffer.remaining() < needed) {
+            updateDeadline();
+            readBuffer.compact();
+            int read = in.read(readBuffer.array(), readBuffer.position(), readBuffer.remaining());
+
+            if (read > 0) {
+                readBuffer.position(readBuffer.position() + read);
+                Metrics.bytesRead(read);
+            }
+
+            readBuffer.flip();
+
+            if (read == -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Strips the padding from a padded DATA or HEADERS frame.
+     * @param flags The frame flags.
+     * @param payload The payload, limited to the content afterwards.
+     * @throws Http2Exception Thrown if the padding is longer than the frame.
+     */
+    private static void unpad(int flags, ByteBuffer payload) throws Http2Exception {
+        if ((flags & PADDED) == 0) {
+            return;
+        }
+
+        if (!payload.hasRemaining()) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Padded frame without a pad length");
+        }
+
+        int padding = payload.get() & 0xff;
+
+        if (padding > payload.remaining()) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Padding longer than the frame");
+        }
+
+        payload.limit(payload.limit() - padding);
+    }
+
+    /**
+     * Checks that a frame that belongs to a stream is not sent on the connection.
+     * @param streamId The stream.
+     * @throws Http2Exception Thrown if the stream is 0.
+     */
+    private static void requireStream(int streamId) throws Http2Exception {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Frame needs a stream");
+        }
+    }
+
+    /**
+     * Checks that a frame that belongs to the connection is not sent on a stream.
+     * @param streamId The stream.
+     * @throws Http2Exception Thrown if the stream is not 0.
+     */
+    private static void requireConnection(int streamId) throws Http2Exception {
+        if (streamId != 0) {
+            throw new Http2Exception(Http2Error.PROTOCOL_ERROR, "Frame must be sent on stream 0");
+        }
+    }
+
+    /**
+     * Checks a fixed length frame is the right length.
+     * @param payload The payload.
+     * @param length The expected length.
+     * @param streamId The stream to reset if it is wrong, or 0 to close the connection.
+     * @throws Http2Exception Thrown if the length is wrong.
+     */
+    private static void requireLength(ByteBuffer payload, int length, int streamId) throws Http2Exception {
+        if (payload.remaining() != length) {
+            throw new Http2Exception(Http2Error.FRAME_SIZE_ERROR, streamId, "Frame must be " + length + " bytes");
+        }
+    }
+
+    /**
+     * Decodes the HTTP2-Settings header of an upgrade request, a SETTINGS payload in base64url.
+     * @param req The request.
+     * @return The payload, or null if the header is malformed.
+     */
+    private static byte[] decodeSettings(HttpRequest req) {
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(req.headers().get("HTTP2-Settings").trim());
+            return payload.length % 6 == 0 ? payload : null;
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A single request and its response.
+     */
+    private class Stream {
+        private final int id;
+
+        // only touched by the reading thread, until the stream is dispatched
+        private String method;
+        private String path;
+        private String query;
+        private HttpHeaders headers;
+        private ByteArrayOutputStream body;
+        private HttpRequest request;
+        private HttpResponse early;
+        private int receiveWindow = settings.initialWindowSize();
+        private int unacknowledged = 0;
+        private boolean dispatched = false;
+
+        // guarded by the flow lock
+        private long sendWindow;
+        private volatile boolean reset = false;
+
+        /**
+         * Constructor for the Stream class.
+         * @param id The stream ID.
+         */
+        Stream(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Checks the request headers and keeps what the request is built from.
+         * The pseudo-headers stand in for the HTTP/1.1 request line, and ':authority' for the Host header.
+         * Headers over the size limit are not kept, and the request is answered with a 431 instead.
+         * @param fields The decoded headers.
+         * @throws Http2Exception Thrown if the headers are malformed, which resets the stream.
+         */
+        void parseHeaders(List<HeaderField> fields) throws Http2Exception {
+            String authority = null;
+            boolean hasHost = false;
+            boolean regular = false;
+            long size = 0;
+
+            for (HeaderField field : fields) {
+                String name = field.name();
+                size += field.size();
+
+                if (name.startsWith(":")) {
+                    if (regular) {
+                        throw malformed("Pseudo-header after a regular header");
+                    }
+
+                    switch (name) {
+                        case ":method" -> method = unique(method, field.value());
+                        case ":path" -> path = unique(path, field.value());
+                        case ":authority" -> authority = unique(authority, field.value());
+                        case ":scheme" -> {
+                        }
+                        default -> throw malformed("Unknown pseudo-header " + name);
+                    }
+
+                    continue;
+                }
+
+                regular = true;
+
+                if (!name.equals(name.toLowerCase(Locale.ROOT)) || CONNECTION_HEADERS.contains(name)) {
+                    throw malformed("Invalid header " + name);
+                }
+
+                hasHost |= name.equals("host");
+            }
+
+            if (method == null || path == null || path.isEmpty()) {
+                throw malformed("Missing :method or :path");
+            }
+
+            int question = path.indexOf('?');
+
+            if (question != -1) {
+                query = path.substring(question + 1);
+                path = path.substring(0, question);
+            }
+
+            if (size > settings.maxHeaderListSize()) {
+                headers = HttpHeaders.EMPTY;
+                early = defaultResponses.makeError(HttpStatus.HEADERS_TOO_LARGE, "Request headers too large.");
+                return;
+            }
+
+            headers = toHeaders(fields, hasHost ? null : authority);
+        }
+
+        /**
+         * Adds a DATA frame's content to the request body. A body over the size limit is dropped, and the
+         * request answered with a 413 once it ends.
+         * @param data The content.
+         */
+        void addBody(ByteBuffer data) {
+            if (early != null || !data.hasRemaining()) {
+                return;
+            }
+
+            if (body == null) {
+                body = new ByteArrayOutputStream(data.remaining());
+            }
+
+            if (body.size() + data.remaining() > settings.maxBodySize()) {
+                body = null;
+                early = defaultResponses.makeError(HttpStatus.PAYLOAD_TOO_LARGE, "Request body too large.");
+                return;
+            }
+
+            body.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        /**
+         * Builds the request once it has fully arrived.
+         * @return The request, as the HTTP/1.1 parser would have built it.
+         */
+        HttpRequest request() {
+            if (request == null) {
+                String content = body == null ? "" : body.toString(StandardCharsets.UTF_8);
+                request = new HttpRequest(method, path, query, "HTTP/2.0", headers, content);
+            }
+
+            return request;
+        }
+
+        /**
+         * Builds a stream error for a malformed request.
+         * @param message The reasoning for the error.
+         * @return The exception.
+         */
+        private Http2Exception malformed(String message) {
+            return new Http2Exception(Http2Error.PROTOCOL_ERROR, id, message);
+        }
+
+        /**
+         * Checks a pseudo-header is not repeated.
+         * @param current The value already seen, or null.
+         * @param value The new value.
+         * @return The new value.
+         * @throws Http2Exception Thrown if the pseudo-header was already seen.
+         */
+        private String unique(String current, String value) throws Http2Exception {
+            if (current != null) {
+                throw malformed("Repeated pseudo-header");
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Packs the regular headers into the same raw form the HTTP/1.1 parser produces, so handlers read them the same way.
+     * @param fields The decoded headers, pseudo-headers included.
+     * @param host The ':authority' to add as a Host header, or null if the client sent one.
+     * @return The headers.
+     */
+    private static HttpHeaders toHeaders(List<HeaderField> fields, String host) {
+        List<HeaderField> regular = new ArrayList<>(fields.size() + 1);
+
+        for (HeaderField field : fields) {
+            if (!field.name().startsWith(":")) {
+                regular.add(field);
+            }
+        }
+
+        if (host != null) {
+            regular.add(new HeaderField("host", host));
+        }
+
+        int length = 0;
+
+        for (HeaderField field : regular) {
+            length += field.name().length() + field.value().length();
+        }
+
+        byte[] bytes = new byte[length];
+        int[] offsets = new int[regular.size() * 4];
+        int pos = 0;
+
+        for (int i = 0; i < regular.size(); i++) {
+            HeaderField field = regular.get(i);
+
+            offsets[i * 4] = pos;
+            pos = copy(field.name(), bytes, pos);
+            offsets[i * 4 + 1] = pos;
+            offsets[i * 4 + 2] = pos;
+            pos = copy(field.value(), bytes, pos);
+            offsets[i * 4 + 3] = pos;
+        }
+
+        return new HttpHeaders(bytes, offsets, regular.size());
+    }
+
+    /**
+     * Copies a header name or value as ISO-8859-1.
+     * @param text The text.
+     * @param dest The header bytes.
+     * @param pos The position to copy to.
+     * @return The position after the text.
+     */
+    private static int copy(String text, byte[] dest, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            dest[pos++] = (byte) text.charAt(i);
+        }
+
+        return pos;
+    }
+
+    /**
+     * A channel that sends whatever is written to it as DATA frames on one stream, so file and streamed
+     * bodies can be written to it as they would be to a socket.
+     */
+    private class StreamChannel implements WritableByteChannel {
+        private final Stream stream;
+
+        /**
+         * Constructor for the StreamChannel class.
+         * @param stream The stream.
+         */
+        StreamChannel(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+
+            if (length > 0) {
+                sendData(stream, src, false);
+            }
+
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !stream.reset;
+        }
+
+        @Override
+        public void close() {
+            // the stream is ended by the caller, with END_STREAM on the last frame
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package utils.http2;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The limits the server announces to HTTP/2 clients in its SETTINGS frame, and enforces on them.
+ * @param maxConcurrentStreams The most requests a client may have open at once on one connection.
+ * @param initialWindowSize How many bytes of request body a client may send on a stream before it is given more room.
+ * @param maxHeaderListSize The largest set of request headers accepted, decoded, in bytes. Larger ones are answered with 431.
+ * @param maxBodySize The largest request body accepted, in bytes. Larger ones are answered with 413.
+ */
+public record Http2Settings(int maxConcurrentStreams, int initialWindowSize, int maxHeaderListSize, int maxBodySize) {
+    public static final int HEADER_TABLE_SIZE = 0x1;
+    public static final int ENABLE_PUSH = 0x2;
+    public static final int MAX_CONCURRENT_STREAMS = 0x3;
+    public static final int INITIAL_WINDOW_SIZE = 0x4;
+    public static final int MAX_FRAME_SIZE = 0x5;
+    public static final int MAX_HEADER_LIST_SIZE = 0x6;
+
+    /**
+     * Encodes the settings as the payload of a SETTINGS frame. The header table and frame sizes keep their defaults.
+     * @return The payload, six bytes per setting.
+     */
+    public ByteBuffer encode() {
+        ByteBuffer payload = ByteBuffer.allocate(18);
+
+        payload.putShort((short) MAX_CONCURRENT_STREAMS).putInt(maxConcurrentStreams);
+        payload.putShort((short) INITIAL_WINDOW_SIZE).putInt(initialWindowSize);
+        payload.putShort((short) MAX_HEADER_LIST_SIZE).putInt(maxHeaderListSize);
+
+        return payload.flip();
+    }
+}
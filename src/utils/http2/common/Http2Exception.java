@@ -0,0 +1,51 @@
+package utils.http2.common;
+
+import utils.http2.enums.Http2Error;
+
+/**
+ * Custom Exception class for a peer breaking the HTTP/2 protocol.
+ * An error on stream 0 ends the whole connection with a GOAWAY, any other only resets its stream.
+ */
+@SuppressWarnings("serial")
+public class Http2Exception extends Exception {
+    private final Http2Error error;
+    private final int streamId;
+
+    /**
+     * Constructor for a connection error.
+     * @param error The error code to send in the GOAWAY.
+     * @param message The reasoning for the error.
+     */
+    public Http2Exception(Http2Error error, String message) {
+        this(error, 0, message);
+    }
+
+    /**
+     * Constructor for an error that only affects one stream.
+     * @param error The error code to send in the RST_STREAM.
+     * @param streamId The stream to reset.
+     * @param message The reasoning for the error.
+     */
+    public Http2Exception(Http2Error error, int streamId, String message) {
+        // like a malformed HTTP/1.1 request, a misbehaving peer is routine, so skip the stack trace
+        super(message, null, false, false);
+        this.error = error;
+        this.streamId = streamId;
+    }
+
+    /**
+     * Retrieves the error code to send to the peer.
+     * @return The error code.
+     */
+    public Http2Error getError() {
+        return error;
+    }
+
+    /**
+     * Retrieves the stream the error affects.
+     * @return The stream ID, or 0 if the whole connection has to be closed.
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+}
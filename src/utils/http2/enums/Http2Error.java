@@ -0,0 +1,39 @@
+package utils.http2.enums;
+
+/**
+ * Enum class to represent the error codes sent in RST_STREAM and GOAWAY frames.
+ */
+public enum Http2Error {
+    NO_ERROR(0x0),
+    PROTOCOL_ERROR(0x1),
+    INTERNAL_ERROR(0x2),
+    FLOW_CONTROL_ERROR(0x3),
+    SETTINGS_TIMEOUT(0x4),
+    STREAM_CLOSED(0x5),
+    FRAME_SIZE_ERROR(0x6),
+    REFUSED_STREAM(0x7),
+    CANCEL(0x8),
+    COMPRESSION_ERROR(0x9),
+    CONNECT_ERROR(0xa),
+    ENHANCE_YOUR_CALM(0xb),
+    INADEQUATE_SECURITY(0xc),
+    HTTP_1_1_REQUIRED(0xd);
+
+    private final int code;
+
+    /**
+     * Constructor for Http2Error.
+     * @param code The error code sent on the wire.
+     */
+    Http2Error(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Retrieves the error code.
+     * @return The error code sent on the wire.
+     */
+    public int getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,37 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for turning a parsed request into a response: routing, the handler, and compression.
+ */
+@Name("tickets.Dispatch")
+@Label("Request Dispatch")
+@Category({"Ticket Server", "HTTP"})
+@Description("Routing a request and building its response")
+@StackTrace(false)
+public class DispatchEvent extends Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Route")
+    @Description("The route pattern matched, 'static' for the document root, or 'unmatched'")
+    public String route;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Body Size")
+    @Description("The size of the response body, or -1 if it is streamed")
+    @DataAmount
+    public long bytes;
+}
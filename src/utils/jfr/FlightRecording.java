@@ -0,0 +1,58 @@
+package utils.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.text.ParseException;
+
+import java.time.Duration;
+
+/**
+ * A Flight Recorder recording started with the server, holding the server's own events alongside the
+ * JDK's (i.e. GC pauses, monitor waits, socket I/O). It is kept on disk as it runs, so it can be dumped at
+ * any time with 'jcmd &lt;pid&gt; JFR.dump name=tickets', and is written to its file when the server stops.
+ */
+public class FlightRecording {
+    private final Recording recording;
+
+    /**
+     * Constructor for the FlightRecording class, which starts recording.
+     * @param file Where the recording is written when it stops, or when the JVM exits.
+     * @param settings The JDK settings to record with: 'default' for continuous use, or 'profile' for more detail.
+     * @param maxAge How many milliseconds of history to keep, or 0 to keep everything.
+     * @throws IOException Thrown if the settings or the file cannot be read or written.
+     * @throws ParseException Thrown if the settings are malformed.
+     */
+    public FlightRecording(Path file, String settings, long maxAge) throws IOException, ParseException {
+        this.recording = new Recording(Configuration.getConfiguration(settings));
+
+        recording.setName("tickets");
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        recording.setDumpOnExit(true);
+
+        if (maxAge > 0) {
+            recording.setMaxAge(Duration.ofMillis(maxAge));
+        }
+
+        recording.start();
+    }
+
+    /**
+     * Stops recording and writes the recording to its file.
+     */
+    public void stop() {
+        try {
+            recording.stop();
+        }
+        catch (IllegalStateException e) {
+            return; // already stopped
+        }
+
+        recording.close();
+    }
+}
@@ -0,0 +1,27 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for running the handler of a matched route, without the routing around it.
+ */
+@Name("tickets.Handler")
+@Label("Route Handler")
+@Category({"Ticket Server", "HTTP"})
+@Description("Running the handler of a matched route")
+@StackTrace(false)
+public class HandlerEvent extends Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Route")
+    public String route;
+
+    @Label("Status")
+    public int status;
+}
@@ -0,0 +1,38 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one tick of the queue's worker, whether or not it processed a purchase.
+ */
+@Name("tickets.QueueDequeue")
+@Label("Queue Dequeue")
+@Category({"Ticket Server", "Queue"})
+@Description("One tick of the queue worker")
+public class QueueDequeueEvent extends Event {
+    @Label("Purchase Id")
+    @Description("The purchase at the front of the queue, or -1 if it was empty")
+    public int purchaseId;
+
+    @Label("Processed")
+    @Description("Whether the purchase had waited long enough to be processed")
+    public boolean processed;
+
+    @Label("Queue Depth")
+    @Description("Purchases left waiting after the tick")
+    public int depth;
+
+    @Label("Time In Queue")
+    @Timespan(Timespan.MILLISECONDS)
+    public long timeInQueue;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for the queue's monitor")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lockWait;
+}
@@ -0,0 +1,29 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a purchase joining the queue.
+ */
+@Name("tickets.QueueEnqueue")
+@Label("Queue Enqueue")
+@Category({"Ticket Server", "Queue"})
+@Description("A purchase joining the queue")
+public class QueueEnqueueEvent extends Event {
+    @Label("Purchase Id")
+    public int purchaseId;
+
+    @Label("Position")
+    @Description("The purchase's place in the queue, or -1 if the queue was full")
+    public int position;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for the queue's monitor")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lockWait;
+}
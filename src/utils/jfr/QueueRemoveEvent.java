@@ -0,0 +1,29 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a purchase being taken out of the queue before it was processed.
+ */
+@Name("tickets.QueueRemove")
+@Label("Queue Remove")
+@Category({"Ticket Server", "Queue"})
+@Description("A purchase leaving the queue unprocessed")
+public class QueueRemoveEvent extends Event {
+    @Label("Purchase Id")
+    public int purchaseId;
+
+    @Label("Position")
+    @Description("The place the purchase held, or -1 if it was not in the queue")
+    public int position;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for the queue's monitor")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lockWait;
+}
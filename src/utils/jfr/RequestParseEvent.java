@@ -0,0 +1,25 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading and parsing one HTTP/1.1 request.
+ * On a blocking connection it includes waiting for the client's bytes to arrive.
+ */
+@Name("tickets.RequestParse")
+@Label("Request Parse")
+@Category({"Ticket Server", "HTTP"})
+@Description("Reading and parsing an HTTP/1.1 request")
+@StackTrace(false)
+public class RequestParseEvent extends Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+}
@@ -0,0 +1,30 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for writing a response to a blocking connection, which lasts as long as the client takes to read it.
+ */
+@Name("tickets.ResponseWrite")
+@Label("Response Write")
+@Category({"Ticket Server", "HTTP"})
+@Description("Writing a response to the client")
+@StackTrace(false)
+public class ResponseWriteEvent extends Event {
+    @Label("Status")
+    public int status;
+
+    @Label("Body Size")
+    @Description("The size of the response body, or -1 if it is streamed")
+    @DataAmount
+    public long bytes;
+
+    @Label("Keep Alive")
+    public boolean keepAlive;
+}
@@ -0,0 +1,26 @@
+package utils.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for assigning ticket ids to a processed purchase, which happens holding the queue's monitor.
+ * It is committed once the monitor is released. The purchase id matches it to the QueueDequeue event of the
+ * same tick, which has the lock wait and queue depth.
+ */
+@Name("tickets.TicketAssignment")
+@Label("Ticket Assignment")
+@Category({"Ticket Server", "Queue"})
+@Description("Assigning ticket ids to a purchase")
+@StackTrace(false)
+public class TicketAssignmentEvent extends Event {
+    @Label("Purchase Id")
+    public int purchaseId;
+
+    @Label("Tickets")
+    public int tickets;
+}
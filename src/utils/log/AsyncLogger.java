@@ -0,0 +1,303 @@
+package utils.log;
+
+import utils.HttpResponse;
+
+import utils.log.enums.LogKind;
+
+import utils.request.HttpRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.time.Instant;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes access and event records as JSON lines, one object per line, off the request path.
+ * Callers only copy a few fields into a preallocated slot; a background thread wakes every
+ * flush interval, formats whatever has been published, and writes it to the file in one batch.
+ * Access records can be sampled, and records arriving while the ring is full are dropped,
+ * with the number dropped written to the log once there is room again.
+ */
+public final class AsyncLogger implements AutoCloseable {
+    // the most records formatted before the writer is flushed
+    private static final int BATCH_SIZE = 1024;
+
+    private final LogRing ring;
+    private final double sampleRate;
+    private final long flushInterval;
+
+    private final Writer writer;
+    private final boolean ownsWriter;
+    private final Thread thread;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private volatile boolean closed = false;
+    private long reportedDrops = 0;
+
+    /**
+     * Constructor for the AsyncLogger class.
+     * @param file The file records are appended to, or null to write them to standard output.
+     * @param bufferSize The most records waiting to be written before new ones are dropped.
+     * @param flushInterval How often, in milliseconds, waiting records are written.
+     * @param sampleRate The fraction of access records kept, from 0 (none) to 1 (all). Event records are always kept.
+     * @throws IOException Thrown if the file cannot be opened.
+     */
+    public AsyncLogger(Path file, int bufferSize, long flushInterval, double sampleRate) throws IOException {
+        this.ring = new LogRing(bufferSize);
+        this.sampleRate = sampleRate;
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushInterval));
+
+        if (file == null) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            this.ownsWriter = false;
+        } else {
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.ownsWriter = true;
+        }
+
+        // the class is final and every field is set by now, so the writer never sees a half-built logger
+        this.thread = new Thread(this::writeLoop, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records a request that has been answered, if it is sampled.
+     * @param req The request.
+     * @param res The response it was given.
+     * @param nanos How long the request took to handle, not counting sending the response.
+     */
+    public void access(HttpRequest req, HttpResponse res, long nanos) {
+        if (sampleRate < 1 && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+
+        long sequence = ring.claim();
+
+        if (sequence < 0) {
+            return;
+        }
+
+        LogEntry entry = ring.slot(sequence);
+        entry.kind = LogKind.ACCESS;
+        entry.time = System.currentTimeMillis();
+        entry.method = req.method();
+        entry.path = req.path();
+        entry.version = req.version();
+        entry.status = res.status();
+        entry.bytes = res.body().length();
+        entry.micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+        ring.publish(sequence);
+    }
+
+    /**
+     * Records something that happened. The message and detail are only joined on the writer thread.
+     * @param message What happened (i.e. 'New connection: ').
+     * @param detail Written straight after the message, or null if there is none.
+     */
+    public void event(String message, Object detail) {
+        long sequence = ring.claim();
+
+        if (sequence < 0) {
+            return;
+        }
+
+        LogEntry entry = ring.slot(sequence);
+        entry.kind = LogKind.EVENT;
+        entry.time = System.currentTimeMillis();
+        entry.message = message;
+        entry.detail = detail;
+
+        ring.publish(sequence);
+    }
+
+    /**
+     * Retrieves how many records have been dropped because the writer could not keep up.
+     * @return The number of records dropped.
+     */
+    public long getDropped() {
+        return ring.getDropped();
+    }
+
+    /**
+     * Writes every record published so far, then closes the file. Records arriving afterwards are never written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join(TimeUnit.NANOSECONDS.toMillis(flushInterval) + 1000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer thread. Sleeps for the flush interval whenever it has caught up, so callers never have to wake it.
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                // read before writing, so everything published before close is written
+                boolean closing = closed;
+                int written = writeBatch();
+
+                if (written > 0) {
+                    writer.flush();
+                }
+
+                if (closing && written == 0) {
+                    break;
+                }
+
+                if (written < BATCH_SIZE && !closing) {
+                    LockSupport.parkNanos(this, flushInterval);
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println("IO Exception: " + e.getMessage());
+        }
+        finally {
+            closeWriter();
+        }
+    }
+
+    /**
+     * Formats and writes up to a batch of waiting records, and notes any that were dropped.
+     * @return The number of lines written.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    private int writeBatch() throws IOException {
+        int written = 0;
+        LogEntry entry;
+
+        while (written < BATCH_SIZE && (entry = ring.peek()) != null) {
+            line.setLength(0);
+            format(entry);
+            ring.release(entry);
+
+            writer.append(line);
+            written++;
+        }
+
+        long dropped = ring.getDropped();
+
+        if (dropped > reportedDrops) {
+            line.setLength(0);
+            begin(System.currentTimeMillis(), "dropped");
+            line.append(",\"count\":").append(dropped - reportedDrops).append("}\n");
+            reportedDrops = dropped;
+
+            writer.append(line);
+            written++;
+        }
+
+        return written;
+    }
+
+    /**
+     * Formats a record as one line of JSON.
+     * @param entry The slot holding the record.
+     */
+    private void format(LogEntry entry) {
+        begin(entry.time, entry.kind.getName());
+
+        if (entry.kind == LogKind.ACCESS) {
+            line.append(",\"method\":");
+            quote(entry.method);
+            line.append(",\"path\":");
+            quote(entry.path);
+            line.append(",\"version\":");
+            quote(entry.version);
+            line.append(",\"status\":").append(entry.status.getStatusCode());
+
+            // a streamed body's length is not known when the request is handled
+            if (entry.bytes >= 0) {
+                line.append(",\"bytes\":").append(entry.bytes);
+            }
+
+            line.append(",\"micros\":").append(entry.micros);
+        } else {
+            line.append(",\"message\":");
+            quote(entry.detail == null ? entry.message : entry.message + entry.detail);
+        }
+
+        line.append("}\n");
+    }
+
+    /**
+     * Starts a line with the fields every record has.
+     * @param time When the record was made, in milliseconds since the epoch.
+     * @param type The kind of record.
+     */
+    private void begin(long time, String type) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(time)).append("\",\"type\":\"").append(type).append('"');
+    }
+
+    /**
+     * Appends a string as a JSON string literal.
+     * @param value The string, or null.
+     */
+    private void quote(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+
+        line.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+
+        line.append('"');
+    }
+
+    /**
+     * Flushes the writer, and closes it if it is a file.
+     */
+    private void closeWriter() {
+        try {
+            if (ownsWriter) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("IO Exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package utils.log;
+
+import utils.HttpResponse;
+
+import utils.request.HttpRequest;
+
+/**
+ * The server's log, reachable from anywhere without passing a logger down every constructor.
+ * Records made before a logger is installed, or after it is removed, are discarded.
+ */
+public class Log {
+    private static volatile AsyncLogger logger;
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private Log() {
+    }
+
+    /**
+     * Sets the logger records are written to.
+     * @param asyncLogger The logger, or null to stop logging.
+     */
+    public static void install(AsyncLogger asyncLogger) {
+        logger = asyncLogger;
+    }
+
+    /**
+     * Records a request that has been answered.
+     * @param req The request.
+     * @param res The response it was given.
+     * @param nanos How long the request took to handle.
+     */
+    public static void access(HttpRequest req, HttpResponse res, long nanos) {
+        AsyncLogger current = logger;
+
+        if (current != null) {
+            current.access(req, res, nanos);
+        }
+    }
+
+    /**
+     * Records something that happened.
+     * @param message What happened.
+     */
+    public static void event(String message) {
+        event(message, null);
+    }
+
+    /**
+     * Records something that happened, leaving the message and detail to be joined by the writer thread.
+     * @param message What happened (i.e. 'New connection: ').
+     * @param detail Written straight after the message.
+     */
+    public static void event(String message, Object detail) {
+        AsyncLogger current = logger;
+
+        if (current != null) {
+            current.event(message, detail);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package utils.log;
+
+import utils.log.enums.LogKind;
+
+import utils.request.enums.HttpStatus;
+
+/**
+ * One slot of the log's ring buffer. Slots are allocated once and refilled for every record,
+ * so logging only copies references and numbers; the record is formatted later by the writer thread.
+ */
+class LogEntry {
+    // the sequence number of the record the slot holds, set last so the writer sees a complete record
+    volatile long sequence = -1;
+
+    LogKind kind;
+    long time;
+
+    // access records
+    String method;
+    String path;
+    String version;
+    HttpStatus status;
+    long bytes;
+    long micros;
+
+    // event records, formatted as message followed by detail
+    String message;
+    Object detail;
+
+    /**
+     * Drops the references held by the slot once its record is written, so it keeps nothing alive while it waits to be reused.
+     */
+    void clear() {
+        method = null;
+        path = null;
+        version = null;
+        status = null;
+        message = null;
+        detail = null;
+    }
+}
@@ -0,0 +1,98 @@
+package utils.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed ring of preallocated log slots, filled by any number of threads and emptied by one.
+ * A thread claims the next sequence number with a single compare-and-set, fills the slot, and publishes it.
+ * When every slot is waiting to be written the record is dropped and counted rather than waited for,
+ * so a slow disk never holds up a request.
+ */
+class LogRing {
+    private final LogEntry[] slots;
+    private final int mask;
+
+    // the next sequence number to claim, and the next one the writer will read
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Constructor for the LogRing class.
+     * @param capacity The most records waiting to be written, rounded up to a power of two.
+     */
+    LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.slots = new LogEntry[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new LogEntry();
+        }
+    }
+
+    /**
+     * Claims the next free slot.
+     * @return The sequence number of the claimed slot, or -1 if the ring is full and the record was dropped.
+     */
+    long claim() {
+        long sequence;
+
+        do {
+            sequence = tail.get();
+
+            if (sequence - head >= slots.length) {
+                dropped.increment();
+                return -1;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        return sequence;
+    }
+
+    /**
+     * Retrieves a claimed slot to be filled.
+     * @param sequence The sequence number returned by claim.
+     * @return The slot.
+     */
+    LogEntry slot(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * Hands a filled slot to the writer.
+     * @param sequence The sequence number returned by claim.
+     */
+    void publish(long sequence) {
+        slot(sequence).sequence = sequence;
+    }
+
+    /**
+     * Retrieves the next record to write. Only called from the writer thread.
+     * @return The slot holding it, or null if it has not been published yet.
+     */
+    LogEntry peek() {
+        LogEntry entry = slot(head);
+        return entry.sequence == head ? entry : null;
+    }
+
+    /**
+     * Frees the slot returned by peek for reuse. Only called from the writer thread.
+     * @param entry The slot.
+     */
+    void release(LogEntry entry) {
+        entry.clear();
+        head = head + 1;
+    }
+
+    /**
+     * Retrieves how many records have been dropped because the ring was full.
+     * @return The number of records dropped since the ring was created.
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+}
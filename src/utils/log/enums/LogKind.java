@@ -0,0 +1,27 @@
+package utils.log.enums;
+
+/**
+ * Enum class representing the kinds of record written to the log.
+ */
+public enum LogKind {
+    ACCESS("access"),
+    EVENT("event");
+
+    private final String name;
+
+    /**
+     * Constructor for LogKind.
+     * @param name The name written in each record's 'type' field.
+     */
+    LogKind(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the name of the kind.
+     * @return The name written in each record's 'type' field.
+     */
+    public String getName() {
+        return name;
+    }
+}
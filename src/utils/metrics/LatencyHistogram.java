@@ -0,0 +1,150 @@
+package utils.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in log-linear buckets, in the style of an HDR histogram.
+ * Each power of two of microseconds is split into 32 equal buckets, so any recorded value is
+ * reported within about 3% of its true value, from a microsecond up to several hours.
+ * Recording is one atomic increment of a preallocated counter, with no locks and no allocation.
+ */
+public class LatencyHistogram {
+    // values under 2^SUB_BUCKET_BITS microseconds get a bucket each, larger ones share 2^SUB_BUCKET_BITS per power of two
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // values above 2^36 microseconds (about 19 hours) are counted in the last bucket
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The counts of a histogram at one moment, for reporting.
+     * @param counts The count held by each bucket.
+     * @param count The total number of values recorded.
+     * @param sum The total of every value recorded, in nanoseconds.
+     */
+    public record Snapshot(long[] counts, long count, long sum) {
+        /**
+         * Finds the value a given fraction of the recorded values are at or below.
+         * @param quantile The fraction, from 0 to 1 (i.e. 0.99 for the 99th percentile).
+         * @return The largest value in the bucket the quantile falls in, in microseconds, or 0 if nothing was recorded.
+         */
+        public long valueAt(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+
+            return highestValue(counts.length - 1);
+        }
+
+        /**
+         * Corrects the counts for coordinated omission, for values measured by a client that waits for each
+         * response before sending its next request. A response that took several expected intervals held back
+         * the requests that would have been sent meanwhile, so the values they would have seen (the response's
+         * value less one interval, less two, and so on) are counted as well.
+         * @param expectedInterval The expected time between requests, in microseconds.
+         * @return The corrected snapshot, or this one if the interval is not positive.
+         */
+        public Snapshot correctedFor(long expectedInterval) {
+            if (expectedInterval <= 0) {
+                return this;
+            }
+
+            long[] corrected = counts.clone();
+            long correctedCount = count;
+            long correctedSum = sum;
+
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+
+                for (long missing = highestValue(i) - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+                    corrected[indexOf(Math.min(missing, MAX_VALUE))] += counts[i];
+                    correctedCount += counts[i];
+                    correctedSum += counts[i] * TimeUnit.MICROSECONDS.toNanos(missing);
+                }
+            }
+
+            return new Snapshot(corrected, correctedCount, correctedSum);
+        }
+    }
+
+    /**
+     * Records a duration.
+     * @param nanos The duration, in nanoseconds. Negative durations are counted as zero.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        counts.incrementAndGet(indexOf(Math.min(micros, MAX_VALUE)));
+        sum.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Copies the counts, while values may still be being recorded.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        return new Snapshot(copy, count, sum.sum());
+    }
+
+    /**
+     * Finds the bucket a value is counted in.
+     * @param micros The value, in microseconds, no larger than MAX_VALUE.
+     * @return The index of the bucket.
+     */
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+
+        return SUB_BUCKETS * (shift + 1) + subBucket;
+    }
+
+    /**
+     * Finds the largest value counted in a bucket.
+     * @param index The index of the bucket.
+     * @return The value, in microseconds.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+}
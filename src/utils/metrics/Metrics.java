@@ -0,0 +1,242 @@
+package utils.metrics;
+
+import utils.metrics.enums.MetricType;
+
+import utils.request.enums.HttpStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The server's measurements, reachable from anywhere, and exposed in the Prometheus text format.
+ * Durations go into lock-free histograms and byte counts into striped counters, so recording
+ * allocates nothing once a route and status have been seen. Values the rest of the server already
+ * keeps (i.e. open connections) are registered as readings, and only read when scraped.
+ * Nothing is recorded until the metrics are enabled.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final HttpStatus[] STATUSES = HttpStatus.values();
+
+    private static volatile boolean enabled = false;
+
+    // request latency by route, then by status ordinal
+    private static final Map<String, AtomicReferenceArray<LatencyHistogram>> requests = new ConcurrentHashMap<>();
+
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LatencyHistogram queueWait = new LatencyHistogram();
+    private static final LatencyHistogram schedulerDelay = new LatencyHistogram();
+
+    private static final List<Reading> readings = new CopyOnWriteArrayList<>();
+
+    /**
+     * A value kept elsewhere in the server, read when the metrics are scraped.
+     * @param name The metric name.
+     * @param type Whether the value only goes up, or can go down.
+     * @param help What the value measures.
+     * @param value Reads the value.
+     */
+    private record Reading(String name, MetricType type, String help, LongSupplier value) {
+    }
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Starts recording.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Checks whether measurements are being recorded and served.
+     * @return True if the metrics are enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records how long a request took to handle.
+     * @param route The route pattern it matched (i.e. '/tickets/{concertId:int}'), never the raw path.
+     * @param status The status it was answered with.
+     * @param nanos How long it took.
+     */
+    public static void request(String route, HttpStatus status, long nanos) {
+        if (!enabled) {
+            return;
+        }
+
+        AtomicReferenceArray<LatencyHistogram> byStatus = requests.get(route);
+
+        if (byStatus == null) {
+            byStatus = requests.computeIfAbsent(route, r -> new AtomicReferenceArray<>(STATUSES.length));
+        }
+
+        LatencyHistogram histogram = byStatus.get(status.ordinal());
+
+        if (histogram == null) {
+            byStatus.compareAndSet(status.ordinal(), null, new LatencyHistogram());
+            histogram = byStatus.get(status.ordinal());
+        }
+
+        histogram.record(nanos);
+    }
+
+    /**
+     * Counts bytes read from clients.
+     * @param bytes The number of bytes.
+     */
+    public static void bytesRead(long bytes) {
+        if (enabled && bytes > 0) {
+            bytesRead.add(bytes);
+        }
+    }
+
+    /**
+     * Counts bytes written to clients.
+     * @param bytes The number of bytes.
+     */
+    public static void bytesWritten(long bytes) {
+        if (enabled && bytes > 0) {
+            bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * Records how long a purchase waited in the queue, from being enqueued to being processed.
+     * @param nanos How long it waited.
+     */
+    public static void queueWait(long nanos) {
+        if (enabled) {
+            queueWait.record(nanos);
+        }
+    }
+
+    /**
+     * Records how late a scheduled task started, compared to when it was due.
+     * @param nanos How late it was.
+     */
+    public static void schedulerDelay(long nanos) {
+        if (enabled) {
+            schedulerDelay.record(nanos);
+        }
+    }
+
+    /**
+     * Exposes a value kept elsewhere in the server.
+     * @param name The metric name (i.e. 'http_connections_open').
+     * @param type Whether the value only goes up, or can go down.
+     * @param help What the value measures.
+     * @param value Reads the value, on the thread serving the scrape.
+     */
+    public static void register(String name, MetricType type, String help, LongSupplier value) {
+        readings.add(new Reading(name, type, help, value));
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     * @return The metrics.
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "http_request_duration_seconds", MetricType.SUMMARY, "Time taken to handle a request, by route and status.");
+
+        for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> entry : new TreeMap<>(requests).entrySet()) {
+            AtomicReferenceArray<LatencyHistogram> byStatus = entry.getValue();
+
+            for (int i = 0; i < byStatus.length(); i++) {
+                LatencyHistogram histogram = byStatus.get(i);
+
+                if (histogram != null) {
+                    String labels = "route=\"" + escape(entry.getKey()) + "\",status=\"" + STATUSES[i].getStatusCode() + "\"";
+                    summary(out, "http_request_duration_seconds", labels, histogram.snapshot());
+                }
+            }
+        }
+
+        counter(out, "http_received_bytes_total", "Bytes read from clients.", bytesRead.sum());
+        counter(out, "http_sent_bytes_total", "Bytes written to clients.", bytesWritten.sum());
+
+        for (Reading reading : readings) {
+            header(out, reading.name(), reading.type(), reading.help());
+            out.append(reading.name()).append(' ').append(reading.value().getAsLong()).append('\n');
+        }
+
+        header(out, "queue_wait_seconds", MetricType.SUMMARY, "Time purchases spent in the queue, from enqueue to dequeue.");
+        summary(out, "queue_wait_seconds", "", queueWait.snapshot());
+
+        header(out, "queue_scheduler_delay_seconds", MetricType.SUMMARY, "How late scheduled queue tasks started after they were due.");
+        summary(out, "queue_scheduler_delay_seconds", "", schedulerDelay.snapshot());
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the help and type lines that start a metric.
+     * @param out Where to write.
+     * @param name The metric name.
+     * @param type The metric type.
+     * @param help What the metric measures.
+     */
+    private static void header(StringBuilder out, String name, MetricType type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type.getName()).append('\n');
+    }
+
+    /**
+     * Writes a counter, with its help and type lines.
+     * @param out Where to write.
+     * @param name The metric name.
+     * @param help What the metric counts.
+     * @param value The count.
+     */
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, MetricType.COUNTER, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Writes the quantiles, sum and count of a histogram, in seconds.
+     * @param out Where to write.
+     * @param name The metric name.
+     * @param labels The labels shared by every line (i.e. 'route="/",status="200"'), or blank for none.
+     * @param snapshot The histogram's counts.
+     */
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        String separator = labels.isEmpty() ? "" : ",";
+
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(labels).append(separator)
+                    .append("quantile=\"").append(quantile).append("\"} ")
+                    .append(snapshot.valueAt(quantile) / 1e6).append('\n');
+        }
+
+        String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braced).append(' ').append(snapshot.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braced).append(' ').append(snapshot.count()).append('\n');
+    }
+
+    /**
+     * Escapes a label value.
+     * @param value The value.
+     * @return The value with backslashes, quotes and newlines escaped.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,28 @@
+package utils.metrics.enums;
+
+/**
+ * Enum class representing the Prometheus types of the values the server exposes.
+ */
+public enum MetricType {
+    COUNTER("counter"),
+    GAUGE("gauge"),
+    SUMMARY("summary");
+
+    private final String name;
+
+    /**
+     * Constructor for MetricType.
+     * @param name The type as written in the '# TYPE' line.
+     */
+    MetricType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the name of the type.
+     * @return The type as written in the '# TYPE' line.
+     */
+    public String getName() {
+        return name;
+    }
+}
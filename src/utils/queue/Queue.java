@@ -1,16 +1,33 @@
 package utils.queue;
 
+import utils.jfr.QueueDequeueEvent;
+import utils.jfr.QueueEnqueueEvent;
+import utils.jfr.QueueRemoveEvent;
+import utils.jfr.TicketAssignmentEvent;
+
+import utils.log.Log;
+
+import utils.metrics.Metrics;
+
 import utils.queue.common.QueueFullException;
+import utils.queue.enums.QueueEvent;
 import utils.queue.interfaces.IQueue;
 
 import utils.store.Purchase;
 import utils.store.Store;
 
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,6 +35,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Creates a queue to process all ticket purchase requests.
+ * Subscribers are told when their purchase moves, at most once per tick of the worker, however
+ * many purchases joined or left during it: one pass over the queue updates every subscriber.
  */
 public class Queue implements IQueue {
     private static final long MIN_QUEUE_TIME = 10000;
@@ -25,42 +44,93 @@ public class Queue implements IQueue {
     private final int CAPACITY;
     private final List<Purchase> queue;
     private final Store store;
+    private final ScheduledExecutorService worker;
 
     private final AtomicInteger queueId = new AtomicInteger(0);
     private final AtomicInteger ticketCounter = new AtomicInteger(1);
 
     private final Map<Integer, Long> queueTimestamps = new HashMap<>();
-    private final Map<Integer, Boolean> completedPurchases = new HashMap<>();
+    private final Map<Integer, Boolean> completedPurchases = new ConcurrentHashMap<>();
+
+    // open subscriptions by purchase ID, usually one each
+    private final Map<Integer, Set<QueueSubscription>> subscribers = new ConcurrentHashMap<>();
+
+    // whether positions have changed since subscribers were last told, guarded by the queue
+    private boolean moved = false;
+
+    // set once the server starts shutting down, so late subscriptions end straight away
+    private volatile boolean subscriptionsEnded = false;
 
     /**
      * Constructor for the Queue class
      * @param store The storage of all concert and purchase information
      */
     public Queue(Store store) {
+        this(store, 128); // fair size?
+    }
+
+    /**
+     * Constructor for the Queue class, holding a given number of purchases (i.e. for benchmarks at larger depths).
+     * @param store The storage of all concert and purchase information
+     * @param capacity The most purchases waiting at once
+     */
+    public Queue(Store store, int capacity) {
         this.store = store;
 
-        this.CAPACITY = 128; // fair size?
+        this.CAPACITY = capacity;
         this.queue = new ArrayList<>();
 
-        ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+        this.worker = Executors.newSingleThreadScheduledExecutor();
         worker.scheduleAtFixedRate(this::dequeue, 1, 1, TimeUnit.SECONDS);
     }
 
     @Override
     public void enqueue(Purchase purchase) throws QueueFullException {
-        if (queue.size() < CAPACITY) {
-            synchronized (queue) {
+        QueueEnqueueEvent event = new QueueEnqueueEvent();
+        event.begin();
+
+        long waitStart = System.nanoTime();
+        int position = -1;
+
+        synchronized (queue) {
+            event.lockWait = System.nanoTime() - waitStart;
+
+            // the capacity check must happen under the lock, or concurrent enqueues can overfill the queue
+            if (queue.size() < CAPACITY) {
                 queue.add(purchase);
                 queueTimestamps.put(purchase.getId(), System.currentTimeMillis());
+                moved = true;
+                position = queue.size() - 1;
             }
-        } else {
+        }
+
+        // committed once the queue is unlocked, so recording never lengthens the time it is held
+        if (event.shouldCommit()) {
+            event.purchaseId = purchase.getId();
+            event.position = position;
+            event.commit();
+        }
+
+        if (position < 0) {
             throw new QueueFullException();
         }
     }
 
     @Override
     public void dequeue() {
+        QueueDequeueEvent event = new QueueDequeueEvent();
+        event.begin();
+
+        TicketAssignmentEvent assignment = null;
+        Purchase first = null;
+        boolean processed = false;
+        long waited = 0;
+        int depth;
+        long waitStart = System.nanoTime();
+
         synchronized (queue) {
+            event.lockWait = System.nanoTime() - waitStart;
+
             if (!queue.isEmpty()) {
                 Purchase purchase = queue.getFirst();
                 Long entryTimestamp = queueTimestamps.get(purchase.getId());
@@ -73,21 +143,67 @@ public class Queue implements IQueue {
                         queue.removeFirst();
                         queueTimestamps.remove(purchase.getId());
 
-                        // assign ticket IDs
+                        // assign ticket IDs, timed here but only committed once the monitor is released
+                        assignment = new TicketAssignmentEvent();
+                        assignment.begin();
+
                         List<String> ids = getTicketIds(purchase.getNumberOfTickets());
                         purchase.setTicketIDs(ids);
 
+                        assignment.end();
+                        assignment.purchaseId = purchase.getId();
+                        assignment.tickets = purchase.getNumberOfTickets();
+
                         // reduce tickets
                         purchase.getConcert().reduceCount(purchase.getNumberOfTickets());
                         completedPurchases.put(purchase.getId(), true);
+                        publish(purchase.getId(), new QueueUpdate(QueueEvent.COMPLETE, -1));
+                        moved = true;
 
-                        System.out.println("Purchase " + purchase.getId() + " processed after " + timeInQueue + "ms");
-                    } else {
-                        System.out.println("Purchase " + purchase.getId() + " waiting... (" +
-                                (MIN_QUEUE_TIME - timeInQueue) + "ms remaining)");
+                        processed = true;
+                        Metrics.queueWait(TimeUnit.MILLISECONDS.toNanos(timeInQueue));
                     }
+
+                    first = purchase;
+                    waited = timeInQueue;
                 }
             }
+
+            if (moved) {
+                publishPositions();
+            }
+
+            depth = queue.size();
+        }
+
+        if (event.shouldCommit()) {
+            event.purchaseId = first == null ? -1 : first.getId();
+            event.processed = processed;
+            event.depth = depth;
+            event.timeInQueue = waited;
+            event.commit();
+        }
+
+        if (assignment != null && assignment.shouldCommit()) {
+            assignment.commit();
+        }
+
+        // logged once the queue is unlocked, so enqueues never wait on it
+        if (first == null) {
+            return;
+        }
+
+        if (processed) {
+            Log.event("Purchase " + first.getId() + " processed after " + waited + "ms");
+        } else {
+            Log.event("Purchase " + first.getId() + " waiting... (" + (MIN_QUEUE_TIME - waited) + "ms remaining)");
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (queue) {
+            return queue.size();
         }
     }
 
@@ -117,10 +233,17 @@ public class Queue implements IQueue {
 
     @Override
     public void remove(int id) {
+        QueueRemoveEvent event = new QueueRemoveEvent();
+        event.begin();
+
+        long waitStart = System.nanoTime();
+        int position = -1;
+
         synchronized (queue) {
+            event.lockWait = System.nanoTime() - waitStart;
+
             // find the purchase in the queue by ID
             Purchase targetPurchase = null;
-            int position = -1;
 
             for (int i = 0; i < queue.size(); i++) {
                 if (queue.get(i).getId() == id) {
@@ -134,9 +257,162 @@ public class Queue implements IQueue {
                 queue.remove(position);
                 queueTimestamps.remove(id);
                 completedPurchases.put(id, false); // mark as removed
-                store.getPurchases().remove(id);
+                store.removePurchase(id);
+                publish(id, new QueueUpdate(QueueEvent.REMOVED, -3));
+                moved = true;
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.purchaseId = id;
+            event.position = position;
+            event.commit();
+        }
+    }
+
+    @Override
+    public QueueSubscription subscribe(int id) {
+        QueueSubscription subscription = new QueueSubscription(id, this::unsubscribe);
+
+        synchronized (queue) {
+            // registered and seeded under the lock, so no tick can fall between the two
+            subscribers.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+
+            Boolean completed = completedPurchases.get(id);
+
+            if (completed == null) {
+                subscription.publish(new QueueUpdate(QueueEvent.POSITION, getPosition(id)));
+            } else if (completed) {
+                subscription.publish(new QueueUpdate(QueueEvent.COMPLETE, -1));
+            } else {
+                subscription.publish(new QueueUpdate(QueueEvent.REMOVED, -3));
             }
         }
+
+        if (subscriptionsEnded) {
+            subscription.close();
+        }
+
+        return subscription;
+    }
+
+    @Override
+    public void endSubscriptions() {
+        subscriptionsEnded = true;
+
+        for (Set<QueueSubscription> subscriptions : subscribers.values()) {
+            subscriptions.forEach(QueueSubscription::end);
+        }
+
+        subscribers.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        worker.shutdown();
+
+        try {
+            worker.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public JsonObject toJson() {
+        JsonArrayBuilder waiting = Json.createArrayBuilder();
+        JsonArrayBuilder completed = Json.createArrayBuilder();
+        long now = System.currentTimeMillis();
+
+        synchronized (queue) {
+            for (Purchase purchase : queue) {
+                waiting.add(Json.createObjectBuilder()
+                        .add("id", purchase.getId())
+                        .add("waited", now - queueTimestamps.getOrDefault(purchase.getId(), now)));
+            }
+        }
+
+        completedPurchases.forEach((id, done) -> {
+            if (done) {
+                completed.add(id);
+            }
+        });
+
+        return Json.createObjectBuilder()
+                .add("nextId", queueId.get())
+                .add("nextTicket", ticketCounter.get())
+                .add("waiting", waiting)
+                .add("completed", completed)
+                .build();
+    }
+
+    @Override
+    public void restore(JsonObject json) {
+        queueId.set(json.getInt("nextId"));
+        ticketCounter.set(json.getInt("nextTicket"));
+
+        for (JsonNumber id : json.getJsonArray("completed").getValuesAs(JsonNumber.class)) {
+            completedPurchases.put(id.intValue(), true);
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (queue) {
+            // restored entries keep their place and their time served, even past the capacity
+            for (JsonObject entry : json.getJsonArray("waiting").getValuesAs(JsonObject.class)) {
+                Purchase purchase = store.getPurchase(entry.getInt("id"));
+
+                if (purchase != null) {
+                    queue.add(purchase);
+                    queueTimestamps.put(purchase.getId(), now - entry.getJsonNumber("waited").longValue());
+                }
+            }
+
+            moved = true;
+        }
+    }
+
+    /**
+     * Tells every subscriber still waiting in the queue its position, in one pass over the queue.
+     * Must be called holding the queue.
+     */
+    private void publishPositions() {
+        moved = false;
+
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < queue.size(); i++) {
+            publish(queue.get(i).getId(), new QueueUpdate(QueueEvent.POSITION, i));
+        }
+    }
+
+    /**
+     * Sends an update to every subscriber of a purchase.
+     * @param id The id of the purchase request.
+     * @param update The update.
+     */
+    private void publish(int id, QueueUpdate update) {
+        Set<QueueSubscription> subscriptions = subscribers.get(id);
+
+        if (subscriptions != null) {
+            for (QueueSubscription subscription : subscriptions) {
+                subscription.publish(update);
+            }
+        }
+    }
+
+    /**
+     * Forgets a subscription its reader has closed.
+     * @param subscription The subscription.
+     */
+    private void unsubscribe(QueueSubscription subscription) {
+        subscribers.computeIfPresent(subscription.getId(), (id, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
     }
 
     /**
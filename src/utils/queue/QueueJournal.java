@@ -0,0 +1,146 @@
+package utils.queue;
+
+import utils.queue.interfaces.IQueue;
+
+import utils.store.Concert;
+import utils.store.Purchase;
+import utils.store.Store;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves the queue and the purchases behind it to a file on shutdown, and reloads them on the next
+ * startup, so a restart during a sale loses no one's place in the queue.
+ * Ticket counts are saved too, as they have already been reduced by the completed purchases.
+ */
+public class QueueJournal {
+    private final Path path;
+
+    /**
+     * Constructor for the QueueJournal class.
+     * @param path The file the queue is saved to.
+     */
+    public QueueJournal(String path) {
+        this.path = Path.of(path);
+    }
+
+    /**
+     * Writes the queue to the file. The file is written beside the old one and then moved into place,
+     * so a crash part way through never leaves a half written file to be restored.
+     * A file that is already there has not been restored by anyone (i.e. two servers overlapped on the
+     * same port), so it is kept, and this queue is saved next to it under the process ID instead.
+     * @param store The primary storage for concerts and purchases.
+     * @param queue The queue, which must already be shut down.
+     * @return The file the queue was saved to.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public Path save(Store store, IQueue queue) throws IOException {
+        JsonArrayBuilder concerts = Json.createArrayBuilder();
+        JsonArrayBuilder purchases = Json.createArrayBuilder();
+
+        for (int id = 0; id < store.getConcertCount(); id++) {
+            Concert concert = store.getConcert(id);
+
+            if (concert != null) {
+                concerts.add(Json.createObjectBuilder().add("id", id).add("count", concert.getCount()));
+            }
+        }
+
+        for (Purchase purchase : store.getPurchases()) {
+            JsonArrayBuilder ticketIds = Json.createArrayBuilder();
+            purchase.getTicketIDs().forEach(ticketIds::add);
+
+            purchases.add(Json.createObjectBuilder()
+                    .add("id", purchase.getId())
+                    .add("concertId", purchase.getConcert().getId())
+                    .add("tickets", purchase.getNumberOfTickets())
+                    .add("ticketIds", ticketIds));
+        }
+
+        JsonObject json = Json.createObjectBuilder()
+                .add("concerts", concerts)
+                .add("purchases", purchases)
+                .add("queue", queue.toJson())
+                .build();
+
+        Path target = Files.exists(path)
+                ? path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid())
+                : path;
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (OutputStream outputStream = Files.newOutputStream(temp); JsonWriter writer = Json.createWriter(outputStream)) {
+            writer.writeObject(json);
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * Reloads a saved queue, if there is one, and deletes the file so it is only ever restored once.
+     * @param store The primary storage for concerts and purchases, freshly loaded.
+     * @param queue The queue, still empty.
+     * @return The number of purchases restored, or 0 if nothing was saved.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public int restore(Store store, IQueue queue) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        JsonObject json;
+
+        try (InputStream inputStream = Files.newInputStream(path); JsonReader reader = Json.createReader(inputStream)) {
+            json = reader.readObject();
+        }
+
+        for (JsonObject saved : json.getJsonArray("concerts").getValuesAs(JsonObject.class)) {
+            Concert concert = store.getConcert(saved.getInt("id"));
+
+            if (concert != null) {
+                concert.increaseCount(saved.getInt("count") - concert.getCount());
+            }
+        }
+
+        List<JsonObject> purchases = json.getJsonArray("purchases").getValuesAs(JsonObject.class);
+
+        for (JsonObject saved : purchases) {
+            Concert concert = store.getConcert(saved.getInt("concertId"));
+
+            if (concert == null) {
+                continue;
+            }
+
+            Purchase purchase = new Purchase(concert, saved.getInt("id"), saved.getInt("tickets"));
+            List<String> ticketIds = new ArrayList<>();
+
+            for (JsonString ticketId : saved.getJsonArray("ticketIds").getValuesAs(JsonString.class)) {
+                ticketIds.add(ticketId.getString());
+            }
+
+            purchase.setTicketIDs(ticketIds);
+            store.addPurchase(purchase);
+        }
+
+        queue.restore(json.getJsonObject("queue"));
+        Files.delete(path);
+
+        return purchases.size();
+    }
+}
@@ -0,0 +1,137 @@
+package utils.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import java.util.function.Consumer;
+
+/**
+ * One client's interest in a purchase's place in the queue (i.e. an open event stream).
+ * Only the latest unread update is kept: if the queue moves several times before the client
+ * is written to, it is sent the last position only, and a position it already has is not sent again.
+ * Uses a lock rather than a monitor, so a virtual thread waiting on it does not hold its carrier.
+ */
+public class QueueSubscription implements AutoCloseable {
+    private final int id;
+    private final Consumer<QueueSubscription> onClose;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition updated = lock.newCondition();
+
+    private QueueUpdate pending;
+    private int lastPosition = Integer.MIN_VALUE;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    /**
+     * Constructor for the QueueSubscription class.
+     * @param id The id of the purchase request.
+     * @param onClose Run once when the subscription is closed by its reader, to stop publishing to it.
+     */
+    QueueSubscription(int id, Consumer<QueueSubscription> onClose) {
+        this.id = id;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Retrieves the id of the purchase subscribed to.
+     * @return The id of the purchase request.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Replaces any unread update with a newer one, and wakes the reader.
+     * Updates after the final one, or repeating the last position, are dropped.
+     * @param update The update.
+     */
+    void publish(QueueUpdate update) {
+        lock.lock();
+
+        try {
+            if (finished || closed || update.position() == lastPosition && !update.event().isFinal()) {
+                return;
+            }
+
+            pending = update;
+            lastPosition = update.position();
+            finished = update.event().isFinal();
+            updated.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next update.
+     * @param timeout The most milliseconds to wait.
+     * @return The latest update, or null if there was none in time or the subscription has ended.
+     * @throws InterruptedException Thrown if the reader is interrupted while waiting.
+     */
+    public QueueUpdate next(long timeout) throws InterruptedException {
+        lock.lock();
+
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+            while (pending == null && !closed && remaining > 0) {
+                remaining = updated.awaitNanos(remaining);
+            }
+
+            QueueUpdate update = pending;
+            pending = null;
+
+            return update;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the subscription has ended, because it was closed or the server is shutting down.
+     * @return True if no more updates will arrive.
+     */
+    public boolean isClosed() {
+        lock.lock();
+
+        try {
+            return closed;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the subscription without telling the queue, and wakes the reader.
+     * @return True if it was still open.
+     */
+    boolean end() {
+        lock.lock();
+
+        try {
+            boolean wasOpen = !closed;
+            closed = true;
+            updated.signal();
+
+            return wasOpen;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the subscription, so the queue stops publishing to it.
+     */
+    @Override
+    public void close() {
+        if (end()) {
+            onClose.accept(this);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package utils.queue;
+
+import utils.queue.enums.QueueEvent;
+
+/**
+ * A change to a purchase's place in the queue, as sent to its subscribers.
+ * @param event What happened to the purchase.
+ * @param position The purchase's position, as returned by getPosition (i.e. -1 once complete).
+ */
+public record QueueUpdate(QueueEvent event, int position) {
+}
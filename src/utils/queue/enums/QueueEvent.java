@@ -0,0 +1,36 @@
+package utils.queue.enums;
+
+/**
+ * Enum class representing what has happened to a purchase waiting in the queue.
+ */
+public enum QueueEvent {
+    POSITION("position"),
+    COMPLETE("complete"),
+    REMOVED("removed");
+
+    private final String name;
+
+    /**
+     * Constructor for QueueEvent.
+     * @param name The name the event is sent to clients under.
+     */
+    QueueEvent(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the name of the event.
+     * @return The name the event is sent to clients under.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks whether the purchase has left the queue, so nothing will follow this event.
+     * @return True for COMPLETE and REMOVED.
+     */
+    public boolean isFinal() {
+        return this != POSITION;
+    }
+}
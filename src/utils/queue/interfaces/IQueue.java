@@ -1,8 +1,11 @@
 package utils.queue.interfaces;
 
+import utils.queue.QueueSubscription;
 import utils.queue.common.QueueFullException;
 import utils.store.Purchase;
 
+import javax.json.JsonObject;
+
 /**
  * The interface class for a Queue
  */
@@ -28,6 +31,12 @@ public interface IQueue {
      */
     int getPosition(int id);
 
+    /**
+     * Retrieves how many purchases are waiting in the queue.
+     * @return The number of purchases waiting.
+     */
+    int size();
+
     /**
      * Generates an id for the next purchase request.
      * @return The id of the next purchase request.
@@ -40,4 +49,36 @@ public interface IQueue {
      * @param id The id of the purchase request.
      */
     void remove(int id);
+
+    /**
+     * Subscribes to a purchase's place in the queue. Position changes are published once per tick of
+     * the queue, followed by a final update when the purchase completes or is removed.
+     * @param id The id of the purchase request.
+     * @return The subscription, already holding the current position. Its reader must close it when done.
+     */
+    QueueSubscription subscribe(int id);
+
+    /**
+     * Ends every open subscription, so the event streams reading them finish (i.e. when the server is shutting down).
+     */
+    void endSubscriptions();
+
+    /**
+     * Stops processing the queue, waiting for a dequeue already underway to finish.
+     * The queue can still be read and saved afterwards.
+     */
+    void shutdown();
+
+    /**
+     * Captures everything needed to carry on where the queue left off after a restart:
+     * the waiting purchases in order with how long each has waited, the completed purchases, and the ID counters.
+     * @return A JSON object representing the queue.
+     */
+    JsonObject toJson();
+
+    /**
+     * Reloads a queue saved with toJson. The purchases it refers to must already be in the store.
+     * @param json The saved queue.
+     */
+    void restore(JsonObject json);
 }
@@ -4,64 +4,111 @@ import utils.HttpResponse;
 import utils.request.enums.ContentType;
 import utils.request.enums.HttpStatus;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Helper class that generates default HTTP responses.
+ * Responses are immutable, so each fixed message is built once and the same object is returned every time.
  */
 public class DefaultResponses {
+    // guards against a caller passing per-request text to a method that caches
+    private static final int MAX_CACHED_PER_STATUS = 256;
+
+    private static final HttpResponse NOT_FOUND = build(HttpStatus.NOT_FOUND, "404 File Not Found");
+    private static final Map<HttpStatus, Map<String, HttpResponse>> CACHE = new EnumMap<>(HttpStatus.class);
+
+    static {
+        for (HttpStatus status : HttpStatus.values()) {
+            CACHE.put(status, new ConcurrentHashMap<>());
+        }
+    }
+
     /**
      * Creates a 404 error object.
      * @return A HttpResponse object.
      */
     public HttpResponse make404() {
-        return new HttpResponse(
-                HttpStatus.NOT_FOUND,
-                ContentType.textPlain,
-                "404 File Not Found".getBytes(),
-                new HashMap<>()
-        );
+        return NOT_FOUND;
     }
 
     /**
      * Creates a 500 error object.
-     * @param message The reasoning for the error.
+     * @param message The reasoning for the error. Should be fixed text, as the response is shared.
      * @return A HttpResponse object.
      */
     public HttpResponse make500(String message) {
-        return new HttpResponse(
-                HttpStatus.SERVER_ERROR,
-                ContentType.textPlain,
-                message.getBytes(),
-                new HashMap<>()
-        );
+        return makeError(HttpStatus.SERVER_ERROR, message);
     }
 
     /**
      * Creates a 400 error object.
-     * @param message The reasoning for the error.
+     * @param message The reasoning for the error. Should be fixed text, as the response is shared.
      * @return A HttpResponse object.
      */
     public HttpResponse make400(String message) {
-        return new HttpResponse(
-                HttpStatus.BAD_REQUEST,
-                ContentType.textPlain,
-                message.getBytes(),
-                new HashMap<>()
-        );
+        return makeError(HttpStatus.BAD_REQUEST, message);
+    }
+
+    /**
+     * Creates an error object for any status.
+     * @param status The error status.
+     * @param message The reasoning for the error. Should be fixed text, as the response is shared.
+     * @return A HttpResponse object.
+     */
+    public HttpResponse makeError(HttpStatus status, String message) {
+        Map<String, HttpResponse> responses = CACHE.get(status);
+        HttpResponse response = responses.get(message);
+
+        if (response != null) {
+            return response;
+        }
+
+        response = build(status, message);
+
+        if (responses.size() < MAX_CACHED_PER_STATUS) {
+            HttpResponse existing = responses.putIfAbsent(message, response);
+            return existing != null ? existing : response;
+        }
+
+        return response;
     }
 
     /**
      * Creates a 200 object.
-     * @param message The associated message for the response.
+     * @param message The associated message for the response. Should be fixed text, as the response is shared.
      * @return A HttpResponse object.
      */
     public HttpResponse make200(String message) {
+        return makeError(HttpStatus.OK, message);
+    }
+
+    /**
+     * Creates a response whose message includes details of the request, so it cannot be shared.
+     * @param status The status.
+     * @param message The message for the response.
+     * @return A new HttpResponse object.
+     */
+    public HttpResponse makeDetailed(HttpStatus status, String message) {
+        return build(status, message);
+    }
+
+    /**
+     * Builds a plain text response.
+     * @param status The status.
+     * @param message The body.
+     * @return A HttpResponse object with no extra headers.
+     */
+    private static HttpResponse build(HttpStatus status, String message) {
         return new HttpResponse(
-                HttpStatus.OK,
+                status,
                 ContentType.textPlain,
-                message.getBytes(),
-                new HashMap<>()
+                message.getBytes(StandardCharsets.UTF_8),
+                Map.of()
         );
     }
 }
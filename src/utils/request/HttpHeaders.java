@@ -0,0 +1,196 @@
+package utils.request;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The headers of a request, kept as the raw bytes the client sent.
+ * Each header is stored as offsets into those bytes, so nothing is decoded until a handler asks for it.
+ */
+public class HttpHeaders {
+    public static final HttpHeaders EMPTY = new HttpHeaders(new byte[0], new int[0], 0);
+
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int count;
+
+    /**
+     * Constructor for the HttpHeaders class.
+     * @param bytes The raw header block.
+     * @param offsets Four entries per header: name start, name end, value start and value end.
+     * @param count The number of headers.
+     */
+    public HttpHeaders(byte[] bytes, int[] offsets, int count) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /**
+     * Retrieves the value of a header. Header names are matched case-insensitively.
+     * @param name The name of the header.
+     * @return The value of the header, or null if the client did not send it.
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+
+        if (i == -1) {
+            return null;
+        }
+
+        int start = offsets[i * 4 + 2];
+        return new String(bytes, start, offsets[i * 4 + 3] - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Checks whether the client sent a header.
+     * @param name The name of the header.
+     * @return True if the header is present.
+     */
+    public boolean contains(String name) {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * Reads a header holding a non-negative whole number, without decoding it to a string first.
+     * The header may be repeated, or hold a comma-separated list, as long as every value is the same
+     * (RFC 9112 6.3). Values that differ would let the client and a proxy disagree on where a body ends.
+     * @param name The name of the header.
+     * @param defaultValue Returned if the header is missing.
+     * @return The value of the header, or -2 if the header is present but not a valid number, or its values differ.
+     */
+    public long getLong(String name, long defaultValue) {
+        long value = -1;
+
+        for (int i = 0; i < count; i++) {
+            if (!regionEquals(offsets[i * 4], offsets[i * 4 + 1], name)) {
+                continue;
+            }
+
+            int end = offsets[i * 4 + 3];
+            int element = offsets[i * 4 + 2];
+
+            while (true) {
+                int comma = element;
+
+                while (comma < end && bytes[comma] != ',') {
+                    comma++;
+                }
+
+                long parsed = parseNumber(element, comma);
+
+                if (parsed < 0 || value >= 0 && parsed != value) {
+                    return -2;
+                }
+
+                value = parsed;
+
+                if (comma == end) {
+                    break;
+                }
+
+                element = comma + 1;
+            }
+        }
+
+        return value < 0 ? defaultValue : value;
+    }
+
+    /**
+     * Parses a non-negative whole number from the raw bytes, ignoring the spaces and tabs around it.
+     * @param start The start of the number.
+     * @param end The end of the number (exclusive).
+     * @return The number, or -2 if it is not a valid number.
+     */
+    private long parseNumber(int start, int end) {
+        while (start < end && (bytes[start] == ' ' || bytes[start] == '\t')) {
+            start++;
+        }
+
+        while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) {
+            end--;
+        }
+
+        if (start == end || end - start > 18) {
+            return -2;
+        }
+
+        long value = 0;
+
+        for (int j = start; j < end; j++) {
+            int digit = bytes[j] - '0';
+
+            if (digit < 0 || digit > 9) {
+                return -2;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks whether a header's value matches a token, ignoring case.
+     * @param name The name of the header.
+     * @param value The expected value.
+     * @return True if the header is present and equal to the value.
+     */
+    public boolean valueEquals(String name, String value) {
+        int i = indexOf(name);
+
+        return i != -1 && regionEquals(offsets[i * 4 + 2], offsets[i * 4 + 3], value);
+    }
+
+    /**
+     * Retrieves the number of headers the client sent.
+     * @return The number of headers.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Finds a header by name.
+     * @param name The name of the header.
+     * @return The index of the header, or -1 if it is missing.
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < count; i++) {
+            if (regionEquals(offsets[i * 4], offsets[i * 4 + 1], name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compares a region of the raw bytes to a string, ignoring ASCII case.
+     * @param start The start of the region.
+     * @param end The end of the region (exclusive).
+     * @param text The string to compare with.
+     * @return True if they match.
+     */
+    private boolean regionEquals(int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+
+        for (int j = 0; j < text.length(); j++) {
+            if (toLower(bytes[start + j]) != toLower((byte) text.charAt(j))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Lower-cases an ASCII letter, leaving every other byte alone.
+     * @param b The byte.
+     * @return The lower-case byte.
+     */
+    private static int toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + 32 : b;
+    }
+}
@@ -1,13 +1,39 @@
 package utils.request;
 
-import java.util.Map;
+import java.net.URLDecoder;
+
+import java.nio.charset.StandardCharsets;
 
 /**
  * A representation of a HTTP request.
  * @param method The method for the request (i.e. GET, POST...).
- * @param path The path for the resources (i.e. 'index.html', '/tickets'...).
- * @param headers The map of headers for the request.
+ * @param path The path for the resources (i.e. 'index.html', '/tickets'...), without any query string.
+ * @param query The query string after the '?' in the request target, or null if there is none.
+ * @param version The protocol version from the request line (i.e. HTTP/1.1).
+ * @param headers The headers of the request.
  * @param body The main body of the request.
  */
-public record HttpRequest(String method, String path, Map<String, String> headers, String body) {
+public record HttpRequest(String method, String path, String query, String version, HttpHeaders headers, String body) {
+    /**
+     * Finds a parameter in the query string (i.e. 'wait' in '?wait=30&since=4').
+     * @param name The name of the parameter.
+     * @return The decoded value, an empty string if the parameter has no value, or null if it is missing.
+     * @throws IllegalArgumentException Thrown if the value holds a malformed escape.
+     */
+    public String queryParam(String name) {
+        if (query == null) {
+            return null;
+        }
+
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals == -1 ? pair : pair.substring(0, equals);
+
+            if (key.equals(name)) {
+                return equals == -1 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+
+        return null;
+    }
 }
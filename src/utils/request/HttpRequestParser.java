@@ -0,0 +1,338 @@
+package utils.request;
+
+import utils.request.common.HttpParseException;
+import utils.request.enums.HttpStatus;
+import utils.request.enums.RequestPhase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Builds HttpRequest objects straight from the bytes sent by the client.
+ * The parser holds no per-request state, so one instance is shared by every connection.
+ */
+public class HttpRequestParser {
+    private static final String[] METHODS = {"GET", "POST", "DELETE", "PUT", "HEAD", "OPTIONS", "PATCH"};
+    private static final String[] VERSIONS = {"HTTP/1.1", "HTTP/1.0"};
+
+    private final int maxRequestLine;
+    private final int maxHeaderSize;
+    private final int maxBodySize;
+
+    /**
+     * Constructor for the HttpRequestParser class.
+     * @param maxRequestLine The longest request line accepted, in bytes.
+     * @param maxHeaderSize The largest block of headers accepted, in bytes.
+     * @param maxBodySize The largest body accepted, in bytes.
+     */
+    public HttpRequestParser(int maxRequestLine, int maxHeaderSize, int maxBodySize) {
+        this.maxRequestLine = maxRequestLine;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Reads from a blocking stream until a whole request has arrived.
+     * @param inputStream The stream to read from.
+     * @param buffer The connection's request buffer, which may already hold pipelined bytes.
+     * @param progress Told which part of the request is still arriving before every read, so deadlines can be applied per phase.
+     * @return An object representing the request, or null if the stream ended between requests.
+     * @throws IOException Thrown if the stream cannot be read.
+     * @throws HttpParseException Thrown if the request is malformed or too large.
+     */
+    public HttpRequest read(
+            InputStream inputStream,
+            RequestBuffer buffer,
+            Consumer<RequestPhase> progress
+    ) throws IOException, HttpParseException {
+        HttpRequest req;
+
+        while ((req = parse(buffer)) == null) {
+            progress.accept(buffer.phase());
+
+            if (buffer.fill(inputStream) == -1) {
+                if (buffer.hasRemaining()) {
+                    throw new HttpParseException(HttpStatus.BAD_REQUEST, "Incomplete HTTP request.");
+                }
+
+                return null;
+            }
+        }
+
+        return req;
+    }
+
+    /**
+     * Tries to parse the next request from the bytes already in the buffer.
+     * @param buffer The connection's request buffer.
+     * @return The request, or null if more bytes are needed.
+     * @throws HttpParseException Thrown if the request is malformed or too large.
+     */
+    public HttpRequest parse(RequestBuffer buffer) throws HttpParseException {
+        byte[] bytes = buffer.bytes();
+        int start = buffer.start();
+        int end = buffer.end();
+
+        int lineEnd = indexOf(bytes, start, Math.min(end, start + maxRequestLine + 2), (byte) '\n');
+
+        if (lineEnd == -1) {
+            if (end - start > maxRequestLine) {
+                throw new HttpParseException(HttpStatus.URI_TOO_LONG, "Request line too long.");
+            }
+
+            buffer.setPhase(RequestPhase.REQUEST_LINE);
+            return null;
+        }
+
+        int headersStart = lineEnd + 1;
+        int headEnd = findHeadEnd(buffer, headersStart);
+
+        if (headEnd == -1) {
+            if (end - headersStart > maxHeaderSize) {
+                throw new HttpParseException(HttpStatus.HEADERS_TOO_LARGE, "Request headers too large.");
+            }
+
+            buffer.setPhase(RequestPhase.HEADERS);
+            return null;
+        }
+
+        if (headEnd - headersStart > maxHeaderSize) {
+            throw new HttpParseException(HttpStatus.HEADERS_TOO_LARGE, "Request headers too large.");
+        }
+
+        HttpHeaders headers = parseHeaders(bytes, headersStart, headEnd);
+
+        if (headers.contains("Transfer-Encoding")) {
+            throw new HttpParseException(HttpStatus.BAD_REQUEST, "Chunked request bodies are not supported.");
+        }
+
+        // repeated lengths that disagree are rejected, so no proxy in front can frame the body differently
+        long contentLength = headers.getLong("Content-Length", 0);
+
+        if (contentLength < 0) {
+            throw new HttpParseException(HttpStatus.BAD_REQUEST, "Invalid Content-Length.");
+        }
+
+        if (contentLength > maxBodySize) {
+            throw new HttpParseException(HttpStatus.PAYLOAD_TOO_LARGE, "Request body too large.");
+        }
+
+        int length = headEnd - start + (int) contentLength;
+
+        if (end - start < length) {
+            // make sure the whole body will fit before asking for more bytes
+            buffer.ensureCapacity(length);
+            buffer.setPhase(RequestPhase.BODY);
+            return null;
+        }
+
+        HttpRequest req = parseRequestLine(bytes, start, lineEnd, headers,
+                new String(bytes, start + length - (int) contentLength, (int) contentLength, StandardCharsets.UTF_8));
+
+        buffer.consume(length);
+        return req;
+    }
+
+    /**
+     * Splits the request line (i.e. GET /tickets HTTP/1.1) without regular expressions.
+     * @param bytes The buffer.
+     * @param start The start of the request line.
+     * @param lineEnd The position of the line feed ending the request line.
+     * @param headers The parsed headers.
+     * @param body The decoded body.
+     * @return The request.
+     * @throws HttpParseException Thrown if the request line is malformed, or asks for a version other than HTTP/1.0 or HTTP/1.1.
+     */
+    private HttpRequest parseRequestLine(
+            byte[] bytes,
+            int start,
+            int lineEnd,
+            HttpHeaders headers,
+            String body
+    ) throws HttpParseException {
+        int end = lineEnd > start && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+
+        int firstSpace = indexOf(bytes, start, end, (byte) ' ');
+        int secondSpace = firstSpace == -1 ? -1 : indexOf(bytes, firstSpace + 1, end, (byte) ' ');
+
+        if (firstSpace <= start || secondSpace == -1 || secondSpace == firstSpace + 1) {
+            throw new HttpParseException(HttpStatus.BAD_REQUEST, "Malformed request line.");
+        }
+
+        String method = match(METHODS, bytes, start, firstSpace);
+        String version = match(VERSIONS, bytes, secondSpace + 1, end);
+
+        // anything but a known constant is a version this parser cannot speak (i.e. HTTP/2.0), or not a version at all
+        if (version != VERSIONS[0] && version != VERSIONS[1]) {
+            if (version.startsWith("HTTP/")) {
+                throw new HttpParseException(HttpStatus.HTTP_VERSION_NOT_SUPPORTED, "Unsupported HTTP version.");
+            }
+
+            throw new HttpParseException(HttpStatus.BAD_REQUEST, "Malformed request line.");
+        }
+
+        // split the target into its path and query string
+        int question = indexOf(bytes, firstSpace + 1, secondSpace, (byte) '?');
+        int pathEnd = question == -1 ? secondSpace : question;
+
+        String path = new String(bytes, firstSpace + 1, pathEnd - firstSpace - 1, StandardCharsets.ISO_8859_1);
+        String query = question == -1
+                ? null
+                : new String(bytes, question + 1, secondSpace - question - 1, StandardCharsets.ISO_8859_1);
+
+        return new HttpRequest(method, path, query, version, headers, body);
+    }
+
+    /**
+     * Records where each header's name and value sit in the header block.
+     * @param bytes The buffer.
+     * @param start The start of the first header line.
+     * @param end The position after the blank line ending the headers.
+     * @return The headers, backed by a single copy of the header block.
+     * @throws HttpParseException Thrown if a header line has no colon.
+     */
+    private HttpHeaders parseHeaders(byte[] bytes, int start, int end) throws HttpParseException {
+        byte[] block = Arrays.copyOfRange(bytes, start, end);
+        int[] offsets = new int[32];
+        int count = 0;
+        int pos = 0;
+
+        while (pos < block.length) {
+            int lineEnd = indexOf(block, pos, block.length, (byte) '\n');
+            int contentEnd = lineEnd > pos && block[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+
+            // the blank line that ends the headers
+            if (contentEnd == pos) {
+                break;
+            }
+
+            int colon = indexOf(block, pos, contentEnd, (byte) ':');
+
+            if (colon <= pos) {
+                throw new HttpParseException(HttpStatus.BAD_REQUEST, "Malformed header.");
+            }
+
+            int nameEnd = colon;
+            while (nameEnd > pos && isSpace(block[nameEnd - 1])) {
+                nameEnd--;
+            }
+
+            int valueStart = colon + 1;
+            while (valueStart < contentEnd && isSpace(block[valueStart])) {
+                valueStart++;
+            }
+
+            int valueEnd = contentEnd;
+            while (valueEnd > valueStart && isSpace(block[valueEnd - 1])) {
+                valueEnd--;
+            }
+
+            if (count * 4 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+
+            offsets[count * 4] = pos;
+            offsets[count * 4 + 1] = nameEnd;
+            offsets[count * 4 + 2] = valueStart;
+            offsets[count * 4 + 3] = valueEnd;
+            count++;
+
+            pos = lineEnd + 1;
+        }
+
+        return new HttpHeaders(block, offsets, count);
+    }
+
+    /**
+     * Looks for the blank line that ends the headers, carrying on from where the last search stopped.
+     * @param buffer The connection's request buffer.
+     * @param headersStart The start of the first header line.
+     * @return The position after the blank line, or -1 if it has not arrived yet.
+     */
+    private int findHeadEnd(RequestBuffer buffer, int headersStart) {
+        byte[] bytes = buffer.bytes();
+        int end = buffer.end();
+
+        // a request with no headers at all
+        if (end > headersStart && bytes[headersStart] == '\n') {
+            return headersStart + 1;
+        }
+        if (end > headersStart + 1 && bytes[headersStart] == '\r' && bytes[headersStart + 1] == '\n') {
+            return headersStart + 2;
+        }
+
+        for (int i = Math.max(buffer.scanned(), headersStart + 1); i < end; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+
+            // either \n\n or \n\r\n ends the headers
+            if (bytes[i - 1] == '\n' || (bytes[i - 1] == '\r' && i - 2 >= headersStart && bytes[i - 2] == '\n')) {
+                return i + 1;
+            }
+        }
+
+        // step back a little so a terminator split across two reads is still found
+        buffer.setScanned(Math.max(headersStart + 1, end - 2));
+        return -1;
+    }
+
+    /**
+     * Returns the shared constant for a well known token, so common methods and versions allocate nothing.
+     * @param known The well known tokens.
+     * @param bytes The buffer.
+     * @param start The start of the token.
+     * @param end The end of the token (exclusive).
+     * @return The matching constant, or a new string for anything else.
+     */
+    private static String match(String[] known, byte[] bytes, int start, int end) {
+        for (String token : known) {
+            if (token.length() != end - start) {
+                continue;
+            }
+
+            int i = 0;
+            while (i < token.length() && bytes[start + i] == token.charAt(i)) {
+                i++;
+            }
+
+            if (i == token.length()) {
+                return token;
+            }
+        }
+
+        return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Finds the first occurrence of a byte in a range.
+     * @param bytes The buffer.
+     * @param from The start of the range.
+     * @param to The end of the range (exclusive).
+     * @param target The byte to look for.
+     * @return The position of the byte, or -1 if it is not in the range.
+     */
+    private static int indexOf(byte[] bytes, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks for optional whitespace around header values.
+     * @param b The byte.
+     * @return True for a space or tab.
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -0,0 +1,235 @@
+package utils.request;
+
+import utils.metrics.Metrics;
+
+import utils.request.enums.RequestPhase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.Arrays;
+
+/**
+ * The reusable byte buffer a connection reads requests into.
+ * Bytes between start and end have been read but not yet consumed by the parser,
+ * which lets pipelined requests and partial reads share the same buffer.
+ */
+public class RequestBuffer {
+    private static final int INITIAL_SIZE = 8192;
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+
+    private int start = 0;
+    private int end = 0;
+
+    // how far the parser has already searched for the end of the headers
+    private int scanned = 0;
+
+    // which part of the current request the parser is waiting for
+    private RequestPhase phase = RequestPhase.REQUEST_LINE;
+
+    /**
+     * Reads more bytes from a blocking stream.
+     * @param inputStream The stream to read from.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    public int fill(InputStream inputStream) throws IOException {
+        makeRoom();
+        int read = inputStream.read(bytes, end, bytes.length - end);
+
+        if (read > 0) {
+            end += read;
+            Metrics.bytesRead(read);
+        }
+
+        return read;
+    }
+
+    /**
+     * Reads more bytes from a channel.
+     * @param channel The channel to read from.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException Thrown if the channel cannot be read.
+     */
+    public int fill(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        view.limit(bytes.length).position(end);
+        int read = channel.read(view);
+
+        if (read > 0) {
+            end += read;
+            Metrics.bytesRead(read);
+        }
+
+        return read;
+    }
+
+    /**
+     * Makes sure the buffer can hold a request of the given size, growing it if needed.
+     * @param size The number of bytes the current request needs.
+     */
+    void ensureCapacity(int size) {
+        if (size <= bytes.length - start) {
+            return;
+        }
+
+        compact();
+
+        if (size > bytes.length) {
+            int capacity = bytes.length;
+
+            while (capacity < size) {
+                capacity *= 2;
+            }
+
+            byte[] larger = new byte[capacity];
+            System.arraycopy(bytes, 0, larger, 0, end);
+            bytes = larger;
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    /**
+     * Marks the bytes of a parsed request as consumed.
+     * @param length The length of the request.
+     */
+    void consume(int length) {
+        start += length;
+        scanned = start;
+        phase = RequestPhase.REQUEST_LINE;
+
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scanned = 0;
+        }
+    }
+
+    /**
+     * Checks whether any unconsumed bytes remain.
+     * @return True if the buffer holds part of (or all of) another request.
+     */
+    public boolean hasRemaining() {
+        return end > start;
+    }
+
+    /**
+     * Retrieves the number of unconsumed bytes.
+     * @return The number of bytes read but not yet parsed.
+     */
+    public int remaining() {
+        return end - start;
+    }
+
+    /**
+     * Checks whether the unconsumed bytes agree with a fixed prefix, as far as they go (i.e. the HTTP/2 preface).
+     * @param prefix The bytes expected at the start of the buffer.
+     * @return True if every unconsumed byte, up to the length of the prefix, matches it.
+     */
+    public boolean matches(byte[] prefix) {
+        int length = Math.min(prefix.length, end - start);
+
+        return Arrays.equals(bytes, start, start + length, prefix, 0, length);
+    }
+
+    /**
+     * Moves every unconsumed byte into another buffer, when the connection switches to another protocol.
+     * @param dest The buffer, in write mode, with room for every unconsumed byte.
+     */
+    public void transferTo(ByteBuffer dest) {
+        dest.put(bytes, start, end - start);
+        start = 0;
+        end = 0;
+        scanned = 0;
+    }
+
+    /**
+     * Retrieves which part of the current request is still arriving.
+     * @return IDLE if nothing of the next request has arrived, otherwise the part the parser is waiting for.
+     */
+    public RequestPhase phase() {
+        return hasRemaining() ? phase : RequestPhase.IDLE;
+    }
+
+    /**
+     * Records which part of the current request the parser is waiting for.
+     * @param phase The part still arriving.
+     */
+    void setPhase(RequestPhase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Retrieves the backing array.
+     * @return The backing array.
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Retrieves the position of the first unconsumed byte.
+     * @return The start of the current request.
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * Retrieves the position after the last byte read.
+     * @return The end of the read bytes.
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Retrieves how far the end-of-headers search has got.
+     * @return The position to continue searching from.
+     */
+    int scanned() {
+        return Math.max(scanned, start);
+    }
+
+    /**
+     * Records how far the end-of-headers search has got.
+     * @param scanned The position to continue searching from next time.
+     */
+    void setScanned(int scanned) {
+        this.scanned = scanned;
+    }
+
+    /**
+     * Frees space at the end of the buffer, either by moving the current request to the front or by growing.
+     */
+    private void makeRoom() {
+        if (end < bytes.length) {
+            return;
+        }
+
+        if (start > 0) {
+            compact();
+        } else {
+            ensureCapacity(bytes.length * 2);
+        }
+    }
+
+    /**
+     * Moves the unconsumed bytes to the front of the buffer.
+     */
+    private void compact() {
+        if (start == 0) {
+            return;
+        }
+
+        System.arraycopy(bytes, start, bytes, 0, end - start);
+        end -= start;
+        scanned = Math.max(0, scanned - start);
+        start = 0;
+    }
+}
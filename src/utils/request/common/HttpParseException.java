@@ -0,0 +1,30 @@
+package utils.request.common;
+
+import utils.request.enums.HttpStatus;
+
+/**
+ * Custom Exception class for requests that cannot be parsed, or break one of the size limits.
+ */
+@SuppressWarnings("serial")
+public class HttpParseException extends Exception {
+    private final HttpStatus status;
+
+    /**
+     * Constructor for the HttpParseException class.
+     * @param status The error status to answer the client with.
+     * @param message The reasoning for the error.
+     */
+    public HttpParseException(HttpStatus status, String message) {
+        // malformed requests are routine, so skip filling in a stack trace nobody reads
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    /**
+     * Retrieves the status the client should be answered with.
+     * @return The error status.
+     */
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
@@ -1,23 +1,39 @@
 package utils.request.enums;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Enum class representing the type of content a HTTP response contains.
  */
 public enum ContentType {
-    html("text/html"),
-    css("text/css"),
-    javascript("text/javascript"),
-    json("application/json"),
-    textPlain("text/plain");
+    html("text/html", true),
+    css("text/css", true),
+    javascript("text/javascript", true),
+    json("application/json", true),
+    textPlain("text/plain", true),
+    png("image/png", false),
+    jpeg("image/jpeg", false),
+    svg("image/svg+xml", true),
+    mp4("video/mp4", false),
+    octetStream("application/octet-stream", false),
+    eventStream("text/event-stream", false), // text, but gzip would hold events back until a block fills
+    prometheus("text/plain; version=0.0.4; charset=utf-8", true);
 
     private final String contentType;
+    private final boolean compressible;
+
+    // the encoded header, i.e. 'Content-Type: text/html\r\n', built once rather than for every response
+    private final byte[] header;
 
     /**
      * Constructor for the ContentType class.
      * @param contentType The type of content, as represented by a string.
+     * @param compressible Whether the content is text that shrinks under gzip, rather than already compressed.
      */
-    ContentType(String contentType) {
+    ContentType(String contentType, boolean compressible) {
         this.contentType = contentType;
+        this.compressible = compressible;
+        this.header = ("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.US_ASCII);
     }
 
     /**
@@ -27,4 +43,52 @@ public enum ContentType {
     public String getContentType() {
         return contentType;
     }
+
+    /**
+     * Checks whether the content is worth compressing.
+     * @return True for text-like content, false for formats that are already compressed.
+     */
+    public boolean isCompressible() {
+        return compressible;
+    }
+
+    /**
+     * Retrieves the length of the encoded Content-Type header.
+     * @return The number of bytes in the header, including its line ending.
+     */
+    public int getHeaderLength() {
+        return header.length;
+    }
+
+    /**
+     * Copies the encoded Content-Type header into a response head.
+     * @param dest The array holding the response head.
+     * @param offset The position to copy to.
+     * @return The position after the header.
+     */
+    public int copyHeader(byte[] dest, int offset) {
+        System.arraycopy(header, 0, dest, offset, header.length);
+        return offset + header.length;
+    }
+
+    /**
+     * Works out the type of content in a file from its extension.
+     * @param fileName The name of the file.
+     * @return The content type, or octetStream if the extension is not recognised.
+     */
+    public static ContentType fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+
+        if (name.endsWith(".html")) return html;
+        if (name.endsWith(".css")) return css;
+        if (name.endsWith(".js")) return javascript;
+        if (name.endsWith(".json")) return json;
+        if (name.endsWith(".txt")) return textPlain;
+        if (name.endsWith(".png")) return png;
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return jpeg;
+        if (name.endsWith(".svg")) return svg;
+        if (name.endsWith(".mp4")) return mp4;
+
+        return octetStream;
+    }
 }
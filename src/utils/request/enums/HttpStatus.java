@@ -1,5 +1,7 @@
 package utils.request.enums;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Enum class to represent HTTP status types and their associated messages.
  */
@@ -7,12 +9,24 @@ public enum HttpStatus {
     OK(200, "OK"),
     SERVER_ERROR(500, "Internal Server Error"),
     CREATED(201, "Created"),
+    PARTIAL_CONTENT(206, "Partial Content"),
+    NOT_MODIFIED(304, "Not Modified"),
     BAD_REQUEST(400, "Bad Request"),
-    NOT_FOUND(404, "Not Found");
+    NOT_FOUND(404, "Not Found"),
+    METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+    PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+    URI_TOO_LONG(414, "URI Too Long"),
+    RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
+    HEADERS_TOO_LARGE(431, "Request Header Fields Too Large"),
+    SERVICE_UNAVAILABLE(503, "Service Unavailable"),
+    HTTP_VERSION_NOT_SUPPORTED(505, "HTTP Version Not Supported");
 
     private final int statusCode;
     private final String statusMessage;
 
+    // the encoded status line, i.e. 'HTTP/1.1 200 OK\r\n', built once rather than for every response
+    private final byte[] statusLine;
+
     /**
      * Constructor for HttpStatus
      * @param statusCode The status code.
@@ -21,6 +35,7 @@ public enum HttpStatus {
     HttpStatus(int statusCode, String statusMessage) {
         this.statusCode = statusCode;
         this.statusMessage = statusMessage;
+        this.statusLine = ("HTTP/1.1 " + statusCode + " " + statusMessage + "\r\n").getBytes(StandardCharsets.US_ASCII);
     }
 
     /**
@@ -38,4 +53,23 @@ public enum HttpStatus {
     public String getStatusMessage() {
         return statusMessage;
     }
+
+    /**
+     * Retrieves the length of the encoded status line.
+     * @return The number of bytes in the status line, including its line ending.
+     */
+    public int getStatusLineLength() {
+        return statusLine.length;
+    }
+
+    /**
+     * Copies the encoded status line into a response head.
+     * @param dest The array holding the response head.
+     * @param offset The position to copy to.
+     * @return The position after the status line.
+     */
+    public int copyStatusLine(byte[] dest, int offset) {
+        System.arraycopy(statusLine, 0, dest, offset, statusLine.length);
+        return offset + statusLine.length;
+    }
 }
@@ -0,0 +1,11 @@
+package utils.request.enums;
+
+/**
+ * Enum class representing how far a connection has got through reading its next request.
+ */
+public enum RequestPhase {
+    IDLE,
+    REQUEST_LINE,
+    HEADERS,
+    BODY
+}
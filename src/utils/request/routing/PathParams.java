@@ -0,0 +1,102 @@
+package utils.request.routing;
+
+/**
+ * The path parameters captured while matching a request against the route table.
+ * Integer parameters are parsed straight from the path, so reading one allocates nothing.
+ */
+public class PathParams {
+    private static final String[] NO_NAMES = new String[0];
+
+    private final int[] ints;
+    private final String[] strings;
+    private String[] names = NO_NAMES;
+    private String route;
+
+    /**
+     * Constructor for the PathParams class.
+     * @param capacity The most parameters any route has.
+     */
+    PathParams(int capacity) {
+        this.ints = new int[capacity];
+        this.strings = new String[capacity];
+    }
+
+    /**
+     * Retrieves an integer parameter, declared in the route as '{name:int}'.
+     * @param name The name of the parameter.
+     * @return The value of the parameter.
+     * @throws IllegalArgumentException Thrown if the route has no such parameter.
+     */
+    public int getInt(String name) {
+        return ints[indexOf(name)];
+    }
+
+    /**
+     * Retrieves a text parameter, declared in the route as '{name}'.
+     * @param name The name of the parameter.
+     * @return The value of the parameter.
+     * @throws IllegalArgumentException Thrown if the route has no such parameter.
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+        return strings[i] != null ? strings[i] : String.valueOf(ints[i]);
+    }
+
+    /**
+     * Retrieves the pattern of the route the request matched, used to label it in metrics.
+     * @return The pattern (i.e. '/tickets/{concertId:int}'), or null if no route matched the path.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Records an integer parameter.
+     * @param index The position of the parameter in the route.
+     * @param value The value.
+     */
+    void setInt(int index, int value) {
+        ints[index] = value;
+        strings[index] = null;
+    }
+
+    /**
+     * Records a text parameter.
+     * @param index The position of the parameter in the route.
+     * @param value The value.
+     */
+    void setString(int index, String value) {
+        strings[index] = value;
+    }
+
+    /**
+     * Attaches the names of the matched route's parameters.
+     * @param names The names, in the order they appear in the route.
+     */
+    void bind(String[] names) {
+        this.names = names;
+    }
+
+    /**
+     * Records which route the path matched.
+     * @param pattern The route's pattern.
+     */
+    void matched(String pattern) {
+        this.route = pattern;
+    }
+
+    /**
+     * Finds a parameter by name.
+     * @param name The name of the parameter.
+     * @return The position of the parameter.
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("No path parameter named " + name);
+    }
+}
@@ -0,0 +1,293 @@
+package utils.request.routing;
+
+import utils.HttpResponse;
+
+import utils.jfr.HandlerEvent;
+
+import utils.request.HttpRequest;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import utils.request.routing.interfaces.IRouteHandler;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Matches requests to their handlers using a trie of path segments, built once at startup.
+ * Routes are written as patterns such as '/queue/{concertId:int}/{queueId:int}', where '{name:int}'
+ * only matches a whole number and '{name}' matches any segment. Literal segments match ignoring case,
+ * and empty segments (i.e. a trailing slash) are skipped.
+ * Routes must all be added before the router is shared between threads.
+ */
+public class Router {
+    private static final byte[] METHOD_NOT_ALLOWED = "Method Not Allowed".getBytes(StandardCharsets.UTF_8);
+
+    private final Node root = new Node();
+    private int maxParams = 0;
+
+    /**
+     * A handler, along with the names of the path parameters it expects.
+     * @param handler The code behind the route.
+     * @param names The names of the route's parameters, in the order they appear in the path.
+     * @param pattern The pattern the route was added with, used to label its requests in metrics.
+     */
+    private record Route(IRouteHandler handler, String[] names, String pattern) {
+    }
+
+    /**
+     * One segment of the trie. Literal children are tried first, then an integer parameter, then a text parameter.
+     */
+    private static class Node {
+        private String[] literals = new String[0];
+        private Node[] literalChildren = new Node[0];
+        private Node intChild;
+        private Node stringChild;
+
+        // keyed by method, in the order the routes were added so the Allow header is stable
+        private final Map<String, Route> routes = new LinkedHashMap<>();
+        private HttpResponse methodNotAllowed;
+
+        // the first pattern added here, used to label requests with a method the node has no route for
+        private String pattern;
+
+        /**
+         * Finds or creates the child for a literal segment.
+         * @param literal The segment.
+         * @return The child node.
+         */
+        Node literal(String literal) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equalsIgnoreCase(literal)) {
+                    return literalChildren[i];
+                }
+            }
+
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+            literals[literals.length - 1] = literal;
+            literalChildren[literalChildren.length - 1] = new Node();
+
+            return literalChildren[literalChildren.length - 1];
+        }
+    }
+
+    /**
+     * Adds a route.
+     * @param method The HTTP method (i.e. GET, POST).
+     * @param pattern The path pattern (i.e. '/tickets/{concertId:int}').
+     * @param handler The code to run for matching requests.
+     * @return This router, so routes can be chained.
+     * @throws IllegalArgumentException Thrown if the pattern is malformed or the route already exists.
+     */
+    public Router add(String method, String pattern, IRouteHandler handler) {
+        Node node = root;
+        String[] names = new String[0];
+
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            if (!segment.startsWith("{")) {
+                node = node.literal(segment);
+                continue;
+            }
+
+            if (!segment.endsWith("}")) {
+                throw new IllegalArgumentException("Malformed path parameter in route: " + pattern);
+            }
+
+            String parameter = segment.substring(1, segment.length() - 1);
+            String name;
+
+            if (parameter.endsWith(":int")) {
+                name = parameter.substring(0, parameter.length() - ":int".length());
+
+                if (node.intChild == null) {
+                    node.intChild = new Node();
+                }
+                node = node.intChild;
+            } else if (parameter.indexOf(':') == -1) {
+                name = parameter;
+
+                if (node.stringChild == null) {
+                    node.stringChild = new Node();
+                }
+                node = node.stringChild;
+            } else {
+                throw new IllegalArgumentException("Unknown path parameter type in route: " + pattern);
+            }
+
+            names = Arrays.copyOf(names, names.length + 1);
+            names[names.length - 1] = name;
+        }
+
+        if (node.routes.putIfAbsent(method, new Route(handler, names, pattern)) != null) {
+            throw new IllegalArgumentException("Duplicate route: " + method + " " + pattern);
+        }
+
+        if (node.pattern == null) {
+            node.pattern = pattern;
+        }
+
+        node.methodNotAllowed = new HttpResponse(
+                HttpStatus.METHOD_NOT_ALLOWED,
+                ContentType.textPlain,
+                METHOD_NOT_ALLOWED,
+                Map.of("Allow", String.join(", ", node.routes.keySet()))
+        );
+        maxParams = Math.max(maxParams, names.length);
+
+        return this;
+    }
+
+    /**
+     * Creates somewhere to collect a request's path parameters, big enough for any route.
+     * @return The empty parameters.
+     */
+    public PathParams params() {
+        return new PathParams(maxParams);
+    }
+
+    /**
+     * Finds the route for a request and runs its handler.
+     * @param req The request made by the client.
+     * @return The handler's response, a 405 if the path exists but not for this method, or null if no route matches the path.
+     * @throws IOException Thrown if the handler cannot read a file it needs.
+     */
+    public HttpResponse route(HttpRequest req) throws IOException {
+        return route(req, params());
+    }
+
+    /**
+     * Finds the route for a request and runs its handler, leaving the matched pattern in the parameters.
+     * @param req The request made by the client.
+     * @param params Collects the path parameters, and the pattern of the route matched.
+     * @return The handler's response, a 405 if the path exists but not for this method, or null if no route matches the path.
+     * @throws IOException Thrown if the handler cannot read a file it needs.
+     */
+    public HttpResponse route(HttpRequest req, PathParams params) throws IOException {
+        Node node = match(root, req.path(), 0, params, 0);
+
+        if (node == null) {
+            return null;
+        }
+
+        Route route = node.routes.get(req.method());
+
+        if (route == null) {
+            params.matched(node.pattern);
+            return node.methodNotAllowed;
+        }
+
+        // routes sharing a node (i.e. 'POST /queue/{concertId:int}' and 'DELETE /queue/{queueId:int}') keep their own labels
+        params.matched(route.pattern());
+        params.bind(route.names());
+
+        HandlerEvent event = new HandlerEvent();
+        event.begin();
+
+        HttpResponse res = route.handler().handle(req, params);
+
+        if (event.shouldCommit() && res != null) {
+            event.method = req.method();
+            event.route = route.pattern();
+            event.status = res.status().getStatusCode();
+            event.commit();
+        }
+
+        return res;
+    }
+
+    /**
+     * Walks the trie from a node, one path segment at a time, backtracking if a branch leads nowhere.
+     * @param node The node matched so far.
+     * @param path The request path.
+     * @param pos The start of the rest of the path.
+     * @param params Collects the path parameters.
+     * @param index The position of the next path parameter.
+     * @return The node for the whole path, or null if no route matches.
+     */
+    private static Node match(Node node, String path, int pos, PathParams params, int index) {
+        while (pos < path.length() && path.charAt(pos) == '/') {
+            pos++;
+        }
+
+        if (pos == path.length()) {
+            return node.routes.isEmpty() ? null : node;
+        }
+
+        int end = path.indexOf('/', pos);
+        if (end == -1) {
+            end = path.length();
+        }
+
+        int length = end - pos;
+
+        for (int i = 0; i < node.literals.length; i++) {
+            String literal = node.literals[i];
+
+            if (literal.length() == length && path.regionMatches(true, pos, literal, 0, length)) {
+                Node found = match(node.literalChildren[i], path, end, params, index);
+
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+
+        if (node.intChild != null) {
+            long value = parseInt(path, pos, end);
+
+            if (value >= 0) {
+                params.setInt(index, (int) value);
+                Node found = match(node.intChild, path, end, params, index + 1);
+
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+
+        if (node.stringChild != null) {
+            params.setString(index, path.substring(pos, end));
+            return match(node.stringChild, path, end, params, index + 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses a segment holding a non-negative whole number, without extracting it as a string first.
+     * @param path The request path.
+     * @param start The start of the segment.
+     * @param end The end of the segment (exclusive).
+     * @return The value, or -1 if the segment is not a number that fits in an int.
+     */
+    private static long parseInt(String path, int start, int end) {
+        if (end - start > 10) {
+            return -1;
+        }
+
+        long value = 0;
+
+        for (int i = start; i < end; i++) {
+            int digit = path.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value > Integer.MAX_VALUE ? -1 : value;
+    }
+}
@@ -0,0 +1,21 @@
+package utils.request.routing.interfaces;
+
+import utils.HttpResponse;
+import utils.request.HttpRequest;
+import utils.request.routing.PathParams;
+
+import java.io.IOException;
+
+/**
+ * The interface for the code behind a single route (i.e. 'GET /tickets/{concertId:int}').
+ */
+public interface IRouteHandler {
+    /**
+     * Processes a request that matched the route.
+     * @param req The request made by the client.
+     * @param params The values of the route's path parameters, already converted to their types.
+     * @return The response to send back to the client.
+     * @throws IOException Thrown if the response needs a file that cannot be read.
+     */
+    HttpResponse handle(HttpRequest req, PathParams params) throws IOException;
+}
@@ -2,6 +2,10 @@ package utils.request.types;
 
 import utils.HttpResponse;
 
+import utils.metrics.Metrics;
+
+import utils.queue.QueueSubscription;
+import utils.queue.QueueUpdate;
 import utils.queue.common.QueueFullException;
 import utils.queue.interfaces.IQueue;
 
@@ -11,6 +15,10 @@ import utils.request.HttpRequest;
 import utils.request.enums.ContentType;
 import utils.request.enums.HttpStatus;
 
+import utils.request.routing.PathParams;
+
+import utils.response.StreamingBody;
+
 import utils.store.Concert;
 import utils.store.Purchase;
 import utils.store.Store;
@@ -19,12 +27,20 @@ import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -33,80 +49,49 @@ import java.util.concurrent.TimeUnit;
  * Helper class to process '/queue' HTTP requests.
  */
 public class QueueRequest {
+    // a comment is sent on a quiet event stream this often, well inside the response write timeout
+    private static final long HEARTBEAT_INTERVAL = 15000;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
 
     private final DefaultResponses defaultResponses = new DefaultResponses();
     private final Store store;
     private final IQueue queue;
+    private final int maxWait;
 
-    private HttpRequest req;
+    // purchases made but still waiting out their delay before joining the queue, by ID
+    private final Map<Integer, Purchase> arriving = new ConcurrentHashMap<>();
 
     /**
      * Constructor for QueueRequest.
      * @param store The primary storage for concerts and purchases.
+     * @param queue The queue purchases wait in.
+     * @param maxWait The longest a long poll is held, in seconds, or 0 to answer every poll at once.
      */
-    public QueueRequest(Store store, IQueue queue) {
+    public QueueRequest(Store store, IQueue queue, int maxWait) {
         this.store = store;
         this.queue = queue;
+        this.maxWait = maxWait;
     }
 
     /**
-     * Processes '/queue' requests.
-     * @param request Teh request made by the client.
-     * @return A HttpResponse Object.
-     */
-    public HttpResponse handleRequest(HttpRequest request) {
-        this.req = request;
-
-        // Check the method type. Valid methods: POST, GET, DELETE
-        if (
-                req.method().equals("GET")
-                && req.headers().get("Accept").equals("application/json")
-        ) {
-            return handleGetRequest();
-        }
-        else if (
-                req.method().equals("POST")
-                && req.headers().get("Accept").equals("application/json")
-                && req.headers().get("Content-Type").equals("application/json")
-        ) {
-            return handlePostRequest();
-        }
-        else if (
-                req.method().equals("DELETE")
-                && req.headers().get("Accept").equals("application/json")
-        ) {
-            return handleDeleteRequest();
-        }
-        else {
-            return defaultResponses.make500("Unsupported or malformed HTTP request.");
-        }
-    }
-
-    /**
-     * Processes a 'GET /queue/{concertID}/{queueID}' request.
+     * Processes a 'GET /queue/{concertId}/{queueId}' request.
+     * With '?wait=30' the request is a long poll, answered once the position differs from 'since'
+     * (or, without 'since', from the position when the request arrived), once the purchase leaves
+     * the queue, or after 'wait' seconds at most, whichever comes first. If long polls are turned off,
+     * 'wait' is ignored and the status is answered at once.
+     * @param req The request made by the client.
+     * @param params The path parameters, holding the concert and queue IDs.
      * @return A HttpResponse object.
      */
-    private HttpResponse handleGetRequest() {
-        // split so that we have something like ["queue", "{concertID}, "{id}"]
-        List<String> parts = Arrays.stream(req.path().split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
-
-        // if the parts are now empty, something has gone wrong
-        if (parts.size() != 3) {
-            return defaultResponses.make500("Malformed path parameter");
+    public HttpResponse getStatus(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req)) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
         }
 
-        int concertID;
-        int queueID;
-
-        try {
-            concertID = Integer.parseInt(parts.get(1));
-            queueID = Integer.parseInt(parts.get(2));
-        } catch (NumberFormatException e) {
-            return defaultResponses.make400("Invalid path parameter");
-        }
+        int concertID = params.getInt("concertId");
+        int queueID = params.getInt("queueId");
 
         // check tha the concert exists
         Concert concert = store.getConcert(concertID);
@@ -116,6 +101,12 @@ public class QueueRequest {
             return defaultResponses.make404();
         }
 
+        String wait = req.queryParam("wait");
+
+        if (wait != null && maxWait > 0) {
+            return longPoll(purchase, wait, req.queryParam("since"));
+        }
+
         int position = queue.getPosition(queueID);
 
         // otherwise, a purchase does exist and can be returned.
@@ -124,25 +115,173 @@ public class QueueRequest {
         return new HttpResponse(
                 HttpStatus.OK,
                 ContentType.json,
-                json.toString().getBytes(),
-                new HashMap<>()
+                json.toString().getBytes(StandardCharsets.UTF_8),
+                Map.of()
+        );
+    }
+
+    /**
+     * Builds the answer to a long poll. The body is written once the position changes, so the status and
+     * headers go out straight away, and the request is parked in the body's writer. That holds no
+     * admission slot, and runs on a virtual thread.
+     * @param purchase The purchase.
+     * @param wait The most seconds to wait, capped at maxWait.
+     * @param since The position the client already has, or null to use the current one.
+     * @return A HttpResponse object.
+     */
+    private HttpResponse longPoll(Purchase purchase, String wait, String since) {
+        long timeout;
+        Integer known;
+
+        try {
+            timeout = TimeUnit.SECONDS.toMillis(Math.clamp(Integer.parseInt(wait), 0, maxWait));
+            known = since == null ? null : Integer.parseInt(since);
+        } catch (IllegalArgumentException e) {
+            return defaultResponses.make400("Invalid 'wait' or 'since'.");
+        }
+
+        return new HttpResponse(
+                HttpStatus.OK,
+                ContentType.json,
+                new StreamingBody(outputStream -> awaitChange(purchase, timeout, known, outputStream)),
+                Map.of("Cache-Control", "no-store")
+        );
+    }
+
+    /**
+     * Waits on the purchase's subscription until its position moves away from the one the client
+     * knows, then writes the same JSON as a plain status request. A long wait sends a space every
+     * HEARTBEAT_INTERVAL, which JSON ignores, so the response write timeout does not pass.
+     * @param purchase The purchase.
+     * @param timeout The most milliseconds to wait.
+     * @param known The position the client already has, or null to use the current one.
+     * @param outputStream The stream to write the body to.
+     * @throws IOException Thrown if the client cannot be written to.
+     */
+    private void awaitChange(Purchase purchase, long timeout, Integer known, OutputStream outputStream) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        try (QueueSubscription subscription = queue.subscribe(purchase.getId())) {
+            // a new subscription already holds the current position
+            QueueUpdate current = subscription.next(0);
+            int baseline = known != null ? known : current.position();
+
+            while (current.position() == baseline && !current.event().isFinal() && !subscription.isClosed()) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    break;
+                }
+
+                QueueUpdate update = subscription.next(Math.min(remaining, HEARTBEAT_INTERVAL));
+
+                if (update != null) {
+                    current = update;
+                } else if (remaining > HEARTBEAT_INTERVAL) {
+                    outputStream.write(' ');
+                    outputStream.flush();
+                }
+            }
+
+            outputStream.write(purchase.toJson(current.position()).toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Long poll interrupted");
+        }
+    }
+
+    /**
+     * Processes a 'GET /queue/{concertId}/{queueId}/events' request: a Server-Sent Events stream of
+     * the purchase's position, sent as it changes, ending with its ticket IDs once it completes.
+     * Each event carries the same JSON as 'GET /queue/{concertId}/{queueId}'.
+     * @param req The request made by the client.
+     * @param params The path parameters, holding the concert and queue IDs.
+     * @return A HttpResponse object, whose body is written until the purchase leaves the queue.
+     */
+    public HttpResponse events(HttpRequest req, PathParams params) {
+        if (!req.headers().valueEquals("Accept", "text/event-stream")) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
+        }
+
+        Concert concert = store.getConcert(params.getInt("concertId"));
+        Purchase purchase = store.getPurchase(params.getInt("queueId"));
+
+        if (concert == null || purchase == null) {
+            return defaultResponses.make404();
+        }
+
+        return new HttpResponse(
+                HttpStatus.OK,
+                ContentType.eventStream,
+                new StreamingBody(outputStream -> streamEvents(purchase, outputStream)),
+                Map.of("Cache-Control", "no-store")
         );
     }
 
     /**
-     * Processes a 'POST /queue/{concertID}' request.
+     * Writes a purchase's events until it leaves the queue, the client goes away, or the server shuts down.
+     * Subscribing only once the head has been sent means a response that is never written leaves nothing behind.
+     * @param purchase The purchase.
+     * @param outputStream The stream to write the events to.
+     * @throws IOException Thrown if the client cannot be written to.
+     */
+    private void streamEvents(Purchase purchase, OutputStream outputStream) throws IOException {
+        try (QueueSubscription subscription = queue.subscribe(purchase.getId())) {
+            while (true) {
+                QueueUpdate update = subscription.next(HEARTBEAT_INTERVAL);
+
+                if (update != null) {
+                    outputStream.write(formatEvent(purchase, update));
+                    outputStream.flush();
+
+                    if (update.event().isFinal()) {
+                        return;
+                    }
+                } else if (subscription.isClosed()) {
+                    return;
+                } else {
+                    outputStream.write(HEARTBEAT);
+                    outputStream.flush();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Event stream interrupted");
+        }
+    }
+
+    /**
+     * Encodes an update as a Server-Sent Event.
+     * @param purchase The purchase the update is about.
+     * @param update The update.
+     * @return The event, including the blank line that ends it.
+     */
+    private byte[] formatEvent(Purchase purchase, QueueUpdate update) {
+        String event = "event: " + update.event().getName() + "\n"
+                + "data: " + purchase.toJson(update.position()) + "\n\n";
+
+        return event.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Ends every open event stream, so clients reconnect elsewhere rather than holding up shutdown.
+     */
+    public void endEvents() {
+        queue.endSubscriptions();
+    }
+
+    /**
+     * Processes a 'POST /queue/{concertId}' request.
      * This request must contain a JSON object with a number of tickets to be purchased.
+     * @param req The request made by the client.
+     * @param params The path parameters, holding the concert's ID.
      * @return A HttpResponse object.
      */
-    private HttpResponse handlePostRequest() {
-        // split so that we have something like ["queue", "{concertID}"]
-        List<String> parts = Arrays.stream(req.path().split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
-
-        // if the parts are now empty, something has gone wrong
-        if (parts.size() != 2) {
-            return defaultResponses.make400("Malformed path parameter");
+    public HttpResponse enqueue(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req) || !req.headers().valueEquals("Content-Type", "application/json")) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
         }
 
         if (req.body() == null || req.body().isEmpty()) {
@@ -150,14 +289,7 @@ public class QueueRequest {
         }
 
         // validate the concert
-        int concertID;
-
-        try {
-            concertID = Integer.parseInt(parts.get(1));
-        } catch (NumberFormatException e) {
-            return defaultResponses.make400("Invalid concert ID.");
-        }
-
+        int concertID = params.getInt("concertId");
         Concert concert = store.getConcert(concertID);
 
         if (concert == null) {
@@ -168,7 +300,7 @@ public class QueueRequest {
         int numberOfTickets;
 
         try {
-            numberOfTickets = parseNumberOfTickets();
+            numberOfTickets = parseNumberOfTickets(req.body());
         } catch (Exception e) {
             return defaultResponses.make400("Invalid JSON body.");
         }
@@ -190,12 +322,22 @@ public class QueueRequest {
         // make a new purchase instance
         Purchase purchase = new Purchase(concert, queueId, numberOfTickets);
         store.addPurchase(purchase);
+        arriving.put(queueId, purchase);
 
         // Add after a random delay (5-10 seconds)
         int delay = (int)(Math.random() * 6) + 5;
 
+        long due = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+
         try  {
             scheduler.schedule(() -> {
+                Metrics.schedulerDelay(System.nanoTime() - due);
+
+                // claimed first, so a shutdown running at the same time cannot enqueue it twice
+                if (arriving.remove(purchase.getId()) == null) {
+                    return;
+                }
+
                 try {
                     queue.enqueue(purchase);
                 } catch (QueueFullException e) {
@@ -203,7 +345,7 @@ public class QueueRequest {
                 }
             }, delay, TimeUnit.SECONDS);
         } catch (RuntimeException e) {
-            return defaultResponses.make500(String.valueOf(e));
+            return defaultResponses.makeDetailed(HttpStatus.SERVER_ERROR, String.valueOf(e));
         }
 
         HashMap<String, String> headers = new HashMap<>();
@@ -216,17 +358,18 @@ public class QueueRequest {
         return new HttpResponse(
                 HttpStatus.CREATED,
                 ContentType.json,
-                response.toString().getBytes(),
+                response.toString().getBytes(StandardCharsets.UTF_8),
                 headers
         );
     }
 
     /**
      * Parses a JSON body to get the number of tickets the client would like to purchase.
+     * @param body The body of the client's request.
      * @return The number of tickets the client wants to purchase.
      */
-    private int parseNumberOfTickets() {
-        JsonReader reader = Json.createReader(new StringReader(req.body()));
+    private int parseNumberOfTickets(String body) {
+        JsonReader reader = Json.createReader(new StringReader(body));
         JsonObject jsonObject = reader.readObject();
         int numberOfTickets = jsonObject.getInt("tickets");
         reader.close();
@@ -235,28 +378,17 @@ public class QueueRequest {
     }
 
     /**
-     * Processes a 'DELETE /queue/{queueID}' request.
+     * Processes a 'DELETE /queue/{queueId}' request.
+     * @param req The request made by the client.
+     * @param params The path parameters, holding the queue ID.
      * @return A HttpResponse object.
      */
-    public HttpResponse handleDeleteRequest() {
-        // split so that we have something like ["queue", "{queueID}"]
-        List<String> parts = Arrays.stream(req.path().split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
-
-        // if the parts are now empty, something has gone wrong
-        if (parts.size() != 2) {
-            return defaultResponses.make400("Malformed path parameter");
-        }
-
-        int queueID;
-
-        try {
-            queueID = Integer.parseInt(parts.get(1));
-        } catch (NumberFormatException e) {
-            return defaultResponses.make400("Invalid queue ID.");
+    public HttpResponse remove(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req)) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
         }
 
+        int queueID = params.getInt("queueId");
         int position = queue.getPosition(queueID);
 
         // if the position is negative, the ticket is not a member of the queue.
@@ -269,4 +401,40 @@ public class QueueRequest {
 
         return defaultResponses.make200("Deleted.");
     }
+
+    /**
+     * Stops scheduling purchases into the queue, and enqueues every purchase still waiting out its
+     * delay straight away, in the order they were made, so none is lost when the queue is saved.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Purchase> remaining = new ArrayList<>(arriving.values());
+        remaining.sort(Comparator.comparingInt(Purchase::getId));
+        arriving.clear();
+
+        for (Purchase purchase : remaining) {
+            try {
+                queue.enqueue(purchase);
+            } catch (QueueFullException e) {
+                System.err.println("Queue is full, dropping purchase " + purchase.getId());
+            }
+        }
+    }
+
+    /**
+     * Checks that the client asked for a JSON response.
+     * @param req The request made by the client.
+     * @return True if the Accept header is 'application/json'.
+     */
+    private boolean acceptsJson(HttpRequest req) {
+        return req.headers().valueEquals("Accept", "application/json");
+    }
 }
@@ -2,12 +2,19 @@ package utils.request.types;
 
 import utils.HttpResponse;
 
+import utils.cache.CatalogueCache;
+
 import utils.request.DefaultResponses;
 import utils.request.HttpRequest;
 
 import utils.request.enums.ContentType;
 import utils.request.enums.HttpStatus;
 
+import utils.request.routing.PathParams;
+
+import utils.response.CompressionPolicy;
+import utils.response.StreamingBody;
+
 import utils.store.Concert;
 import utils.store.Purchase;
 import utils.store.Store;
@@ -16,89 +23,99 @@ import javax.json.JsonReader;
 import javax.json.Json;
 import javax.json.JsonObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 
+import java.nio.charset.StandardCharsets;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Arrays;
+
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Helper class to process '/ticket' HTTP requests.
  */
 public class TicketRequest {
+    private static final int STREAMING_THRESHOLD = 1000;
+
     private final DefaultResponses defaultResponses = new DefaultResponses();
     private final Store store;
-
-    private HttpRequest req;
+    private final CompressionPolicy compressionPolicy;
+    private final CatalogueCache catalogueCache;
 
     /**
      * Constructor for TicketRequest.
      * @param store The primary storage for concerts and purchases.
+     * @param compressionPolicy Decides whether the catalogue is sent compressed.
      */
-    public TicketRequest(Store store) {
+    public TicketRequest(Store store, CompressionPolicy compressionPolicy) {
         this.store = store;
+        this.compressionPolicy = compressionPolicy;
+        this.catalogueCache = new CatalogueCache(store, compressionPolicy);
     }
 
     /**
-     * Processes '/ticket' requests.
-     * @param request The request made by the client.
+     * Processes a 'GET /tickets' request, returning every concert.
+     * @param req The request made by the client.
+     * @param params The path parameters (none for this route).
      * @return A HttpResponse object.
      */
-    public HttpResponse handleRequest(HttpRequest request) {
-        this.req = request;
-
-        // Check the method type. Valid methods: GET, POST.
-        if (
-                req.method().equals("GET")
-                && req.headers().get("Accept").equals("application/json")
-        ) {
-            return handleGetRequest();
-        }
-        else if (
-                req.method().equals("POST")
-                && req.headers().get("Accept").equals("application/json")
-                && req.headers().get("Content-Type").equals("application/json")
-        ) {
-            return handlePostRequest();
-        } // otherwise, the requested method is illegal
-        else {
-            return defaultResponses.make500("Unsupported or malformed HTTP request.");
+    public HttpResponse getTickets(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req)) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
         }
-    }
-
-    /**
-     * Processes a 'GET /tickets' requests.
-     * Allowed /tickets requests may look like '/tickets' or '/tickets/{ID}'.
-     * @return A HTTPResponse object.
-     */
-    private HttpResponse handleGetRequest() {
-        // split so that we have something like ["tickets", "{id}"]
-        List<String> parts = Arrays.stream(req.path().split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
 
-        // if the parts are now empty, something has gone wrong
-        if (parts.isEmpty()) {
-            return defaultResponses.make500("Missing path parameter");
-        }
+        // large catalogues are streamed as they are written, rather than built in memory first
+        if (store.getConcertCount() > STREAMING_THRESHOLD) {
+            if (!compressionPolicy.acceptsGzip(req.headers())) {
+                return new HttpResponse(
+                        HttpStatus.OK,
+                        ContentType.json,
+                        new StreamingBody(store::writeJson),
+                        Map.of("Vary", "Accept-Encoding")
+                );
+            }
 
-        // if the client wants all tickets
-        if (parts.size() == 1) {
             return new HttpResponse(
                     HttpStatus.OK,
                     ContentType.json,
-                    store.toJson().toString().getBytes(),
-                    new HashMap<>()
+                    new StreamingBody(this::writeCompressedJson),
+                    Map.of("Vary", "Accept-Encoding", "Content-Encoding", "gzip")
             );
         }
 
-        // otherwise, the client wants a specific concert
-        int concertID = Integer.parseInt(parts.get(1));
+        return catalogueCache.serve(req.headers());
+    }
+
+    /**
+     * Streams the catalogue through gzip. Each flush of the catalogue also flushes the compressor,
+     * so the client still starts receiving concerts straight away.
+     * @param outputStream The stream to write the compressed catalogue to.
+     * @throws IOException Thrown if the client cannot be written to.
+     */
+    private void writeCompressedJson(OutputStream outputStream) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream, 8192, true);
+        store.writeJson(gzip);
+        gzip.finish();
+    }
+
+    /**
+     * Processes a 'GET /tickets/{concertId}' request, returning a single concert.
+     * @param req The request made by the client.
+     * @param params The path parameters, holding the concert's ID.
+     * @return A HttpResponse object.
+     */
+    public HttpResponse getConcert(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req)) {
+            return defaultResponses.make400("Unsupported or malformed HTTP request.");
+        }
 
         // try to get the concert
-        Concert concert = store.getConcert(concertID);
+        Concert concert = store.getConcert(params.getInt("concertId"));
 
         if (concert == null) {
             return defaultResponses.make500("Concert not found");
@@ -108,24 +125,20 @@ public class TicketRequest {
         return new HttpResponse(
                 HttpStatus.OK,
                 ContentType.json,
-                store.getConcert(concertID).toJson().toString().getBytes(),
-                new HashMap<>()
+                concert.toJson().toString().getBytes(StandardCharsets.UTF_8),
+                Map.of()
         );
     }
 
     /**
      * Processes a 'POST /tickets/refund' request.
      * This request must contain a JSON object with ticketIDs.
+     * @param req The request made by the client.
+     * @param params The path parameters (none for this route).
      * @return A HttpResponse object.
      */
-    private HttpResponse handlePostRequest() {
-        // split so that we have something like ["tickets", "refund"]
-        List<String> parts = Arrays.stream(req.path().split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
-
-        // the second part should be 'refund' and there a should be content in the body
-        if (!parts.get(1).equalsIgnoreCase("refund") || parts.size() != 2) {
+    public HttpResponse refund(HttpRequest req, PathParams params) {
+        if (!acceptsJson(req) || !req.headers().valueEquals("Content-Type", "application/json")) {
             return defaultResponses.make400("Unsupported or malformed HTTP request.");
         }
 
@@ -134,7 +147,7 @@ public class TicketRequest {
         }
 
         // We can now assume the request is mostly valid. So let's parse the JSON body
-        List<String> ticketIds = parseTicketIds();
+        List<String> ticketIds = parseTicketIds(req.body());
         HashMap<Concert, Integer> ticketsPerConcert = new HashMap<>();
         List<String> invalidIds = new ArrayList<>();
 
@@ -164,7 +177,7 @@ public class TicketRequest {
 
         // Handle invalid IDs
         if (!invalidIds.isEmpty()) {
-            return defaultResponses.make400("Invalid ticket IDs: " + invalidIds);
+            return defaultResponses.makeDetailed(HttpStatus.BAD_REQUEST, "Invalid ticket IDs: " + invalidIds);
         }
 
         // now we know the number of ticketsPerConcert, so let's add those tickets again
@@ -179,19 +192,18 @@ public class TicketRequest {
         return new HttpResponse(
                 HttpStatus.OK,
                 ContentType.json,
-                responseJson.toString().getBytes(),
-                new HashMap<>()
+                responseJson.toString().getBytes(StandardCharsets.UTF_8),
+                Map.of()
         );
     }
 
     /**
      * Processes a JSON body to get a list of ticket ids.
+     * @param body The body of the client's request.
      * @return A list of Ticket Ids.
      */
-    private List<String> parseTicketIds() {
-        System.out.println(req.body());
-
-        JsonReader reader = Json.createReader(new StringReader(req.body()));
+    private List<String> parseTicketIds(String body) {
+        JsonReader reader = Json.createReader(new StringReader(body));
         JsonObject jsonObject = reader.readObject();
 
         if (!jsonObject.containsKey("ticketIDs")) {
@@ -209,4 +221,13 @@ public class TicketRequest {
                 })
                 .toList();
     }
+
+    /**
+     * Checks that the client asked for a JSON response.
+     * @param req The request made by the client.
+     * @return True if the Accept header is 'application/json'.
+     */
+    private boolean acceptsJson(HttpRequest req) {
+        return req.headers().valueEquals("Accept", "application/json");
+    }
 }
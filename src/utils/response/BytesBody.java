@@ -0,0 +1,51 @@
+package utils.response;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A response body held in memory.
+ * @param bytes The array holding the content.
+ * @param offset The position of the first byte of content in the array.
+ * @param size The number of bytes of content.
+ */
+public record BytesBody(byte[] bytes, int offset, int size) implements SliceableBody {
+
+    /**
+     * Constructor for a body made up of a whole array.
+     * @param bytes The content.
+     */
+    public BytesBody(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public long length() {
+        return size;
+    }
+
+    @Override
+    public SliceableBody slice(long offset, long length) {
+        // shares the array, so answering a Range request copies nothing
+        return new BytesBody(bytes, this.offset + (int) offset, (int) length);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = toByteBuffer();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Wraps the content without copying it.
+     * @return A buffer over the content.
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, offset, size);
+    }
+}
@@ -0,0 +1,114 @@
+package utils.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames everything written to it as HTTP/1.1 chunks.
+ * Writes are gathered into chunks of up to BUFFER_SIZE bytes, and flush sends whatever has been gathered.
+ * The buffer keeps room either side of the data for the chunk's size line and trailing CRLF, so each
+ * chunk goes out as a single write, with nothing allocated per chunk.
+ * Closing the stream sends the final zero-length chunk, in the same write as the last of the data,
+ * but leaves the underlying stream open, so the connection can carry further responses.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // room for the largest size line ('2000\r\n'), and for the CRLF ending the data plus the last chunk
+    private static final int HEAD_ROOM = Integer.toHexString(BUFFER_SIZE).length() + CRLF.length;
+    private static final int TAIL_ROOM = CRLF.length + LAST_CHUNK.length;
+
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[HEAD_ROOM + BUFFER_SIZE + TAIL_ROOM];
+    private int count = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor for the ChunkedOutputStream class.
+     * @param outputStream The connection's stream.
+     */
+    public ChunkedOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == BUFFER_SIZE) {
+            writeChunk(false);
+        }
+
+        buffer[HEAD_ROOM + count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == BUFFER_SIZE) {
+                writeChunk(false);
+            }
+
+            int copied = Math.min(length, BUFFER_SIZE - count);
+            System.arraycopy(bytes, offset, buffer, HEAD_ROOM + count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk(false);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        writeChunk(true);
+        outputStream.flush();
+    }
+
+    /**
+     * Sends the gathered bytes as one chunk, framed in place. An empty chunk is skipped, as a zero-length
+     * chunk ends the body, unless it is the last.
+     * @param last Whether to end the body after the chunk.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void writeChunk(boolean last) throws IOException {
+        int start = HEAD_ROOM;
+        int end = HEAD_ROOM + count;
+
+        if (count > 0) {
+            // the size line is written backwards, so it ends right where the data starts
+            start -= CRLF.length;
+            System.arraycopy(CRLF, 0, buffer, start, CRLF.length);
+
+            for (int size = count; size > 0; size >>>= 4) {
+                buffer[--start] = HEX_DIGITS[size & 0xf];
+            }
+
+            System.arraycopy(CRLF, 0, buffer, end, CRLF.length);
+            end += CRLF.length;
+        }
+
+        if (last) {
+            System.arraycopy(LAST_CHUNK, 0, buffer, end, LAST_CHUNK.length);
+            end += LAST_CHUNK.length;
+        }
+
+        if (end > start) {
+            outputStream.write(buffer, start, end - start);
+        }
+
+        count = 0;
+    }
+}
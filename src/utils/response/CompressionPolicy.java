@@ -0,0 +1,148 @@
+package utils.response;
+
+import utils.HttpResponse;
+
+import utils.request.HttpHeaders;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides which responses are sent gzip compressed, and compresses them.
+ * Only text-like content types are compressed (images and video are already compressed),
+ * only if the client sends 'Accept-Encoding: gzip', and only if the body is large enough to be worth it.
+ */
+public class CompressionPolicy {
+    private final int minSize;
+
+    /**
+     * Constructor for the CompressionPolicy class.
+     * @param minSize Bodies smaller than this, in bytes, are always sent uncompressed.
+     */
+    public CompressionPolicy(int minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Checks whether a body of this type and size would be compressed for a client that accepts gzip.
+     * @param contentType The type of content.
+     * @param length The length of the uncompressed body, in bytes.
+     * @return True if the body is worth compressing.
+     */
+    public boolean isEligible(ContentType contentType, long length) {
+        return contentType.isCompressible() && length >= minSize;
+    }
+
+    /**
+     * Checks whether the client accepts gzip, honouring q-values (i.e. 'gzip;q=0' refuses it).
+     * @param requestHeaders The headers of the client's request.
+     * @return True if a gzip response is acceptable.
+     */
+    public boolean acceptsGzip(HttpHeaders requestHeaders) {
+        String acceptEncoding = requestHeaders.get("Accept-Encoding");
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        double gzip = -1;
+        double any = -1;
+
+        for (String coding : acceptEncoding.split(",")) {
+            int semicolon = coding.indexOf(';');
+            String name = (semicolon == -1 ? coding : coding.substring(0, semicolon)).trim();
+            double q = semicolon == -1 ? 1 : parseQuality(coding.substring(semicolon + 1));
+
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                gzip = q;
+            } else if (name.equals("*")) {
+                any = q;
+            }
+        }
+
+        // an explicit gzip entry overrides the wildcard
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    /**
+     * Compresses a dynamic response if the client accepts gzip and the response is worth compressing.
+     * Responses that already chose an encoding (i.e. from one of the caches) are returned unchanged.
+     * @param requestHeaders The headers of the client's request.
+     * @param res The uncompressed response.
+     * @return The response to send.
+     */
+    public HttpResponse apply(HttpHeaders requestHeaders, HttpResponse res) {
+        if (!(res.body() instanceof BytesBody body)
+                || (res.status() != HttpStatus.OK && res.status() != HttpStatus.CREATED)
+                || !isEligible(res.contentType(), body.length())
+                || res.headers().containsKey("Vary")) {
+            return res;
+        }
+
+        Map<String, String> headers = new HashMap<>(res.headers());
+        headers.put("Vary", "Accept-Encoding");
+
+        if (!acceptsGzip(requestHeaders)) {
+            return new HttpResponse(res.status(), res.contentType(), body, headers);
+        }
+
+        byte[] compressed = compress(body.bytes(), body.offset(), body.size());
+
+        if (compressed.length >= body.size()) {
+            return new HttpResponse(res.status(), res.contentType(), body, headers);
+        }
+
+        headers.put("Content-Encoding", "gzip");
+        return new HttpResponse(res.status(), res.contentType(), compressed, headers);
+    }
+
+    /**
+     * Compresses bytes held in memory.
+     * @param bytes The array holding the content.
+     * @param offset The position of the first byte of content.
+     * @param length The number of bytes of content.
+     * @return The gzip compressed content.
+     */
+    public byte[] compress(byte[] bytes, int offset, int length) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 4));
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes, offset, length);
+        }
+        catch (IOException e) {
+            // only possible if the in-memory stream fails
+            throw new UncheckedIOException(e);
+        }
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Reads the q-value from the parameters of a content coding (i.e. ' q=0.5').
+     * @param parameters The text after the semicolon.
+     * @return The q-value, 1 if there is none, or 0 if it is malformed.
+     */
+    private static double parseQuality(String parameters) {
+        String parameter = parameters.trim();
+
+        if (!parameter.startsWith("q=")) {
+            return 1;
+        }
+
+        try {
+            return Double.parseDouble(parameter.substring(2));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package utils.response;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A response body streamed from a file on disk rather than held in the heap.
+ * Socket channels are written with FileChannel.transferTo, which the kernel can serve with sendfile.
+ * @param path The file.
+ * @param offset The position of the first byte of content in the file.
+ * @param size The number of bytes of content.
+ */
+public record FileBody(Path path, long offset, long size) implements SliceableBody {
+    private static final long MAPPED_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    @Override
+    public long length() {
+        return size;
+    }
+
+    @Override
+    public SliceableBody slice(long offset, long length) {
+        return new FileBody(path, this.offset + offset, length);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        try (FileChannel file = open()) {
+            long position = offset;
+            long end = offset + size;
+
+            ProgressChannel progress = channel instanceof ProgressChannel p ? p : null;
+            SocketChannel socket = progress != null ? progress.socket()
+                    : channel instanceof SocketChannel s ? s : null;
+
+            if (socket != null) {
+                while (position < end) {
+                    // sent a chunk at a time so progress can be reported between chunks
+                    long sent = file.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, end - position), socket);
+
+                    // the file shrank underneath us, and the promised length can no longer be met
+                    if (sent == 0 && position >= file.size()) {
+                        throw new EOFException("File truncated while sending: " + path);
+                    }
+
+                    position += sent;
+
+                    if (progress != null) {
+                        progress.progress(sent);
+                    }
+                }
+                return;
+            }
+
+            // anything else (i.e. a TLS stream) gets the file a mapped chunk at a time
+            while (position < end) {
+                MappedByteBuffer chunk = file.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        position,
+                        Math.min(MAPPED_CHUNK_SIZE, end - position)
+                );
+
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the file for reading.
+     * @return A channel over the file.
+     * @throws IOException Thrown if the file cannot be opened.
+     */
+    public FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+}
@@ -0,0 +1,94 @@
+package utils.response;
+
+import utils.metrics.Metrics;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel to the client that reports every write that makes progress, so a write deadline can be pushed
+ * back for as long as the client keeps reading. File bodies unwrap it to keep their zero-copy transfers.
+ */
+public class ProgressChannel implements GatheringByteChannel {
+    private final WritableByteChannel channel;
+    private final Runnable onProgress;
+
+    /**
+     * Constructor for the ProgressChannel class.
+     * @param channel The client's socket in blocking mode, or a channel over its output stream (i.e. for TLS).
+     * @param onProgress Run after every write that sends at least one byte.
+     */
+    public ProgressChannel(WritableByteChannel channel, Runnable onProgress) {
+        this.channel = channel;
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * Retrieves the wrapped socket, for zero-copy transfers.
+     * @return The client's socket, or null if the channel is not a plain socket.
+     */
+    public SocketChannel socket() {
+        return channel instanceof SocketChannel socket ? socket : null;
+    }
+
+    /**
+     * Reports progress made by writing to the socket directly.
+     * @param written The number of bytes written.
+     */
+    public void progress(long written) {
+        reported(written);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) reported(channel.write(src));
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if (channel instanceof GatheringByteChannel gathering) {
+            return reported(gathering.write(srcs, offset, length));
+        }
+
+        long written = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            written += write(srcs[i]);
+        }
+
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reports a write if it sent anything.
+     * @param written The number of bytes written.
+     * @return The number of bytes written.
+     */
+    private long reported(long written) {
+        if (written > 0) {
+            Metrics.bytesWritten(written);
+            onProgress.run();
+        }
+
+        return written;
+    }
+}
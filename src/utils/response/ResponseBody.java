@@ -0,0 +1,23 @@
+package utils.response;
+
+import java.io.IOException;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The interface for the content of a HTTP response.
+ */
+public sealed interface ResponseBody permits SliceableBody, StreamingBody {
+    /**
+     * Retrieves the length of the content.
+     * @return The number of bytes in the body, or -1 if it is not known until the body has been sent.
+     */
+    long length();
+
+    /**
+     * Writes the whole body to a blocking channel.
+     * @param channel The channel to write to.
+     * @throws IOException Thrown if the channel cannot be written.
+     */
+    void writeTo(WritableByteChannel channel) throws IOException;
+}
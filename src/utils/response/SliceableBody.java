@@ -0,0 +1,14 @@
+package utils.response;
+
+/**
+ * A response body whose content is all there up front, so part of it can be sent on its own.
+ */
+public sealed interface SliceableBody extends ResponseBody permits BytesBody, FileBody {
+    /**
+     * Creates a body holding part of this one, used to answer Range requests.
+     * @param offset The first byte of the part, relative to this body.
+     * @param length The number of bytes in the part.
+     * @return The part of the body.
+     */
+    SliceableBody slice(long offset, long length);
+}
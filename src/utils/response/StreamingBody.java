@@ -0,0 +1,60 @@
+package utils.response;
+
+import utils.response.interfaces.IBodyWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A response body whose length is not known up front.
+ * It is produced by a writer while the response is being sent, and sent with chunked transfer encoding,
+ * or unframed to HTTP/1.0 clients, which know the body has ended when the connection closes.
+ * @param writer Produces the body.
+ * @param chunked Whether the body is sent as chunks.
+ */
+public record StreamingBody(IBodyWriter writer, boolean chunked) implements ResponseBody {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Constructor for a body sent with chunked transfer encoding.
+     * @param writer Produces the body.
+     */
+    public StreamingBody(IBodyWriter writer) {
+        this(writer, true);
+    }
+
+    /**
+     * Builds the same body without chunk framing, for a client that does not understand it.
+     * @return The unframed body.
+     */
+    public StreamingBody unframed() {
+        return new StreamingBody(writer, false);
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        if (!chunked) {
+            OutputStream unframed = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            writer.writeTo(unframed);
+
+            // the connection is closed after this, which is what ends the body
+            unframed.flush();
+            return;
+        }
+
+        OutputStream chunks = new ChunkedOutputStream(Channels.newOutputStream(channel));
+        writer.writeTo(chunks);
+
+        // sends the last chunk, which tells the client the body is complete
+        chunks.close();
+    }
+}
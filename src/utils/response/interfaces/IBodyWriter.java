@@ -0,0 +1,16 @@
+package utils.response.interfaces;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The interface for code that produces a response body as it goes, rather than all at once.
+ */
+public interface IBodyWriter {
+    /**
+     * Writes the body. Anything flushed is sent to the client straight away.
+     * @param outputStream The stream to write the body to. Closing it is not required.
+     * @throws IOException Thrown if the client cannot be written to.
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+}
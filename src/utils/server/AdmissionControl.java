@@ -0,0 +1,150 @@
+package utils.server;
+
+import utils.HttpResponse;
+
+import utils.request.enums.ContentType;
+import utils.request.enums.HttpStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps how much work the server takes on at once, so that under overload new clients are
+ * turned away quickly instead of every client waiting longer and longer.
+ * Connections over the cap, and requests over the in-flight cap, are answered with a
+ * pre-encoded 503 before any of their bytes are parsed, and the connection is closed.
+ */
+public class AdmissionControl {
+    private final int maxConnections;
+    private final int maxInFlightRequests;
+
+    // the whole 503, head and body, encoded once
+    private final byte[] overloaded;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final LongAdder admittedConnections = new LongAdder();
+    private final LongAdder shedConnections = new LongAdder();
+    private final LongAdder shedRequests = new LongAdder();
+
+    /**
+     * Constructor for the AdmissionControl class.
+     * @param maxConnections The most connections open at once.
+     * @param maxInFlightRequests The most requests being parsed and handled at once.
+     * @param retryAfter How many seconds rejected clients are told to wait before trying again.
+     */
+    public AdmissionControl(int maxConnections, int maxInFlightRequests, int retryAfter) {
+        this.maxConnections = maxConnections;
+        this.maxInFlightRequests = maxInFlightRequests;
+
+        byte[] body = "Server busy, please try again shortly.".getBytes(StandardCharsets.UTF_8);
+        byte[] head = new HttpResponse(
+                HttpStatus.SERVICE_UNAVAILABLE,
+                ContentType.textPlain,
+                body,
+                Map.of("Retry-After", String.valueOf(retryAfter))
+        ).head(false);
+
+        this.overloaded = Arrays.copyOf(head, head.length + body.length);
+        System.arraycopy(body, 0, overloaded, head.length, body.length);
+    }
+
+    /**
+     * Admits a newly accepted connection if there is room for it.
+     * Every admitted connection must be handed back with releaseConnection once it closes.
+     * @return True if the connection may be served, false if it should be answered with overloadedResponse.
+     */
+    public boolean tryAdmitConnection() {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            shedConnections.increment();
+            return false;
+        }
+
+        admittedConnections.increment();
+        return true;
+    }
+
+    /**
+     * Frees the place held by a connection that has closed.
+     */
+    public void releaseConnection() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Admits a request whose first bytes have arrived, if there is room for it.
+     * Every admitted request must be handed back with releaseRequest once it has been answered.
+     * @return True if the request may be parsed and handled, false if it should be answered with overloadedResponse.
+     */
+    public boolean tryAdmitRequest() {
+        if (inFlightRequests.incrementAndGet() > maxInFlightRequests) {
+            inFlightRequests.decrementAndGet();
+            shedRequests.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Frees the place held by a request that has been answered.
+     */
+    public void releaseRequest() {
+        inFlightRequests.decrementAndGet();
+    }
+
+    /**
+     * Retrieves the pre-encoded 503, which asks the client to close the connection.
+     * @return A new read-only buffer over the shared bytes, so nothing is encoded or copied.
+     */
+    public ByteBuffer overloadedResponse() {
+        return ByteBuffer.wrap(overloaded).asReadOnlyBuffer();
+    }
+
+    /**
+     * Retrieves the number of open connections.
+     * @return The number of connections currently admitted.
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Retrieves the number of requests being handled.
+     * @return The number of requests currently admitted.
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * Retrieves the number of connections admitted since startup.
+     * @return The number of connections served.
+     */
+    public long getAdmittedConnections() {
+        return admittedConnections.sum();
+    }
+
+    /**
+     * Retrieves the number of connections turned away since startup.
+     * @return The number of connections answered with a 503 on arrival.
+     */
+    public long getShedConnections() {
+        return shedConnections.sum();
+    }
+
+    /**
+     * Retrieves the number of requests turned away since startup.
+     * @return The number of requests answered with a 503 before being parsed.
+     */
+    public long getShedRequests() {
+        return shedRequests.sum();
+    }
+}
@@ -0,0 +1,74 @@
+package utils.server;
+
+import utils.request.enums.RequestPhase;
+
+/**
+ * The single deadline a connection is held to, re-armed as it moves between reading, processing and writing.
+ * Backed by one re-armable timeout on the shared timer wheel, so a connection never needs a timer of its own.
+ * Only the thread currently serving the connection may call the methods that arm it.
+ */
+public class ConnectionDeadline {
+    private final TimeoutPolicy timeoutPolicy;
+    private final TimerWheel.Timeout timeout;
+
+    // the read phase the deadline is currently armed for, or null while processing or writing
+    private RequestPhase phase = null;
+    private volatile boolean expired = false;
+
+    /**
+     * Constructor for the ConnectionDeadline class.
+     * @param timerWheel The wheel that tracks every connection's deadline.
+     * @param timeoutPolicy The deadlines to apply.
+     * @param onExpired Run on the timer wheel's thread if the deadline passes. Should close the connection.
+     */
+    public ConnectionDeadline(TimerWheel timerWheel, TimeoutPolicy timeoutPolicy, Runnable onExpired) {
+        this.timeoutPolicy = timeoutPolicy;
+        this.timeout = timerWheel.newTimeout(() -> {
+            expired = true;
+            onExpired.run();
+        });
+    }
+
+    /**
+     * Applies the deadline for the part of the request that is arriving.
+     * The deadline only restarts when the phase changes, so a client sending a byte at a time gains nothing.
+     * @param phase The part of the request still arriving, or IDLE between requests.
+     */
+    public void reading(RequestPhase phase) {
+        if (phase != this.phase) {
+            this.phase = phase;
+            timeout.schedule(timeoutPolicy.timeoutFor(phase));
+        }
+    }
+
+    /**
+     * Pushes back the write deadline. Called whenever a response write makes progress.
+     */
+    public void writing() {
+        phase = null;
+        timeout.schedule(timeoutPolicy.getWriteTimeout());
+    }
+
+    /**
+     * Suspends the deadline while the server itself is working on a request.
+     */
+    public void processing() {
+        phase = null;
+        timeout.cancel();
+    }
+
+    /**
+     * Disarms the deadline for good, once the connection has closed.
+     */
+    public void cancel() {
+        processing();
+    }
+
+    /**
+     * Checks whether the connection was closed for missing its deadline.
+     * @return True if the deadline passed.
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+}
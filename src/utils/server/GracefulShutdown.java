@@ -0,0 +1,124 @@
+package utils.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.List;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shuts the server down without dropping work: stops accepting connections, lets the requests already
+ * being handled finish within a deadline, and then runs the clean up tasks (i.e. saving the queue).
+ * Runs as a JVM shutdown hook, so it is triggered by SIGTERM or Ctrl-C, but not by 'kill -9'.
+ */
+public class GracefulShutdown {
+    private static final long POLL_INTERVAL = 50;
+
+    private final AdmissionControl admissionControl;
+    private final KeepAlivePolicy keepAlivePolicy;
+    private final long drainTimeout;
+
+    private final List<Closeable> listeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> beforeDrain = new CopyOnWriteArrayList<>();
+    private final List<Runnable> afterDrain = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor for the GracefulShutdown class.
+     * @param admissionControl Counts the connections still open.
+     * @param keepAlivePolicy Told to stop keeping connections open once shutdown starts.
+     * @param drainTimeout How long, in milliseconds, open connections are given to finish.
+     */
+    public GracefulShutdown(AdmissionControl admissionControl, KeepAlivePolicy keepAlivePolicy, long drainTimeout) {
+        this.admissionControl = admissionControl;
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Registers the shutdown sequence to run when the JVM is asked to exit.
+     */
+    public void install() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::run, "shutdown"));
+    }
+
+    /**
+     * Adds something that accepts connections, which is closed as soon as shutdown starts.
+     * @param listener The listening socket or engine.
+     */
+    public void addListener(Closeable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds a task to run as soon as shutdown starts, once the listeners are closed (i.e. ending
+     * responses that would otherwise stay open until the drain timeout).
+     * @param task The task.
+     */
+    public void beforeDrain(Runnable task) {
+        beforeDrain.add(task);
+    }
+
+    /**
+     * Adds a task to run once every connection has finished, or the drain timeout has passed.
+     * Tasks run in the order they were added.
+     * @param task The clean up task.
+     */
+    public void afterDrain(Runnable task) {
+        afterDrain.add(task);
+    }
+
+    /**
+     * The shutdown sequence. New connections are refused at once, and every response sent from then
+     * on carries 'Connection: close', so open connections finish after their current request. Idle
+     * connections are left to the idle timeout, so the drain timeout should be longer than it.
+     */
+    private void run() {
+        keepAlivePolicy.drain();
+
+        for (Closeable listener : listeners) {
+            try {
+                listener.close();
+            }
+            catch (IOException e) {
+                System.err.println("IO Exception: " + e.getMessage());
+            }
+        }
+
+        runAll(beforeDrain);
+
+        System.out.println("Shutting down: draining " + admissionControl.getConnections() + " connections");
+
+        long deadline = System.currentTimeMillis() + drainTimeout;
+
+        try {
+            while (admissionControl.getConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_INTERVAL);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (admissionControl.getConnections() > 0) {
+            System.out.println("Drain timed out, dropping " + admissionControl.getConnections() + " connections");
+        }
+
+        runAll(afterDrain);
+    }
+
+    /**
+     * Runs shutdown tasks in order, carrying on past any that fail.
+     * @param tasks The tasks.
+     */
+    private static void runAll(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                System.err.println("Shutdown task failed: " + e);
+            }
+        }
+    }
+}
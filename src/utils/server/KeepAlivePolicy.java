@@ -0,0 +1,69 @@
+package utils.server;
+
+import utils.request.HttpRequest;
+
+/**
+ * Decides whether a connection stays open after a response (HTTP/1.1 persistent connections).
+ */
+public class KeepAlivePolicy {
+    private final int maxRequests;
+    private final int idleTimeout;
+
+    // set once the server starts shutting down, after which every connection closes after its current request
+    private volatile boolean draining = false;
+
+    /**
+     * Constructor for the KeepAlivePolicy class.
+     * @param maxRequests The most requests served on one connection before it is closed.
+     * @param idleTimeout How long, in milliseconds, an open connection may wait for its next request.
+     */
+    public KeepAlivePolicy(int maxRequests, int idleTimeout) {
+        this.maxRequests = maxRequests;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Works out whether the connection should stay open once this request has been answered.
+     * HTTP/1.1 connections persist unless the client sends 'Connection: close',
+     * HTTP/1.0 connections only persist if the client asks for 'Connection: keep-alive'.
+     * @param req The request that is being answered.
+     * @param served How many requests the connection has already answered before this one.
+     * @return True if the connection should be kept open.
+     */
+    public boolean keepAlive(HttpRequest req, int served) {
+        if (draining || served + 1 >= maxRequests) {
+            return false;
+        }
+
+        String connection = req.headers().get("Connection");
+
+        if ("HTTP/1.0".equals(req.version())) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    /**
+     * Stops keeping connections open, so each one closes once its current request has been answered.
+     */
+    public void drain() {
+        draining = true;
+    }
+
+    /**
+     * Checks whether the server is draining, for connections that outlive a single request (i.e. HTTP/2).
+     * @return True once the server has started shutting down.
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Retrieves the idle timeout.
+     * @return How long, in milliseconds, an open connection may wait for its next request.
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+}
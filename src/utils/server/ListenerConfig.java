@@ -0,0 +1,77 @@
+package utils.server;
+
+import java.net.InetSocketAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One address the server listens on, and how many sockets accept connections on it.
+ * Each acceptor has its own socket bound with SO_REUSEPORT, and the kernel spreads new connections
+ * across them, so connection setup is not limited to what one accept loop can keep up with.
+ * @param address The address and port to bind.
+ * @param acceptors The number of sockets, and accept loops, for the address.
+ */
+public record ListenerConfig(InetSocketAddress address, int acceptors) {
+
+    /**
+     * Parses the 'listeners' property: a comma separated list of '[address:]port[/acceptors]'
+     * (i.e. '8080/4, 127.0.0.1:8081, [::1]:8082/2'). An address of '*', or none, means every interface.
+     * @param listeners The property, or an empty string to listen on the default port only.
+     * @param defaultPort The port listened on if no listeners are given.
+     * @return The listeners, never empty.
+     * @throws IllegalArgumentException Thrown if an entry is malformed.
+     */
+    public static List<ListenerConfig> parseAll(String listeners, int defaultPort) {
+        List<ListenerConfig> configs = new ArrayList<>();
+
+        for (String entry : listeners.split(",")) {
+            if (!entry.isBlank()) {
+                configs.add(parse(entry.trim()));
+            }
+        }
+
+        if (configs.isEmpty()) {
+            configs.add(new ListenerConfig(new InetSocketAddress(defaultPort), 1));
+        }
+
+        return configs;
+    }
+
+    /**
+     * Parses a single '[address:]port[/acceptors]' entry.
+     * @param entry The entry, with no surrounding whitespace.
+     * @return The listener.
+     * @throws IllegalArgumentException Thrown if the entry is malformed.
+     */
+    private static ListenerConfig parse(String entry) {
+        int slash = entry.lastIndexOf('/');
+        int colon = entry.lastIndexOf(':');
+
+        String hostAndPort = slash == -1 ? entry : entry.substring(0, slash);
+        String host = colon == -1 ? "*" : hostAndPort.substring(0, colon);
+
+        try {
+            int port = Integer.parseInt(colon == -1 ? hostAndPort : hostAndPort.substring(colon + 1));
+            int acceptors = slash == -1 ? 1 : Integer.parseInt(entry.substring(slash + 1));
+
+            if (acceptors < 1) {
+                throw new IllegalArgumentException("Listener needs at least one acceptor: " + entry);
+            }
+
+            // IPv6 addresses are written in brackets, so the port can be told apart from the address
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+
+            InetSocketAddress address = host.isEmpty() || host.equals("*")
+                    ? new InetSocketAddress(port)
+                    : new InetSocketAddress(host, port);
+
+            return new ListenerConfig(address, acceptors);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed listener: " + entry);
+        }
+    }
+}
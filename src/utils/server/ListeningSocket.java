@@ -0,0 +1,60 @@
+package utils.server;
+
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Opens the sockets the server listens on, in a way that lets a replacement process take over the port
+ * without a gap: either by inheriting an already listening socket from whatever launched it, or by
+ * binding alongside the old process with SO_REUSEPORT while the old one drains.
+ */
+public class ListeningSocket {
+
+    /**
+     * Retrieves a listening socket inherited from the parent process (i.e. systemd socket activation or
+     * inetd 'wait' mode). It stays open across restarts, so clients queue rather than being refused.
+     * @return The inherited socket, in blocking mode, or null if the server was started normally.
+     * @throws IOException Thrown if the inherited channel cannot be read.
+     */
+    public static ServerSocketChannel inherited() throws IOException {
+        Channel inherited = System.inheritedChannel();
+
+        if (inherited instanceof ServerSocketChannel channel) {
+            return channel;
+        }
+
+        return null;
+    }
+
+    /**
+     * Binds a new listening socket with SO_REUSEADDR, and SO_REUSEPORT if asked.
+     * @param address The address and port to bind.
+     * @param backlog The most connections the kernel queues before they are accepted.
+     * @param reusePort Whether other sockets, in this process or another, may bind the same address.
+     * @return The listening socket, in blocking mode.
+     * @throws IOException Thrown if the address cannot be bound, or SO_REUSEPORT is asked for but not supported.
+     */
+    public static ServerSocketChannel open(InetSocketAddress address, int backlog, boolean reusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        // lets a restarted server bind straight away, rather than waiting out connections in TIME_WAIT
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+
+        if (reusePort) {
+            if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                channel.close();
+                throw new IOException("SO_REUSEPORT is not supported on this platform");
+            }
+
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+
+        channel.bind(address, backlog);
+        return channel;
+    }
+}
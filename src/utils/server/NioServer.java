@@ -0,0 +1,823 @@
+package utils.server;
+
+import utils.HttpResponse;
+
+import utils.http2.Http2Connection;
+import utils.http2.Http2Settings;
+
+import utils.jfr.RequestParseEvent;
+import utils.jfr.ResponseWriteEvent;
+
+import utils.log.Log;
+
+import utils.metrics.Metrics;
+
+import utils.request.DefaultResponses;
+import utils.request.HttpRequest;
+import utils.request.HttpRequestParser;
+import utils.request.RequestBuffer;
+import utils.request.common.HttpParseException;
+
+import utils.response.BytesBody;
+import utils.response.FileBody;
+import utils.response.ProgressChannel;
+import utils.response.StreamingBody;
+
+import utils.server.interfaces.IRequestDispatcher;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A non-blocking server engine built on a ServerSocketChannel and a set of Selector event loops.
+ * Idle connections cost a buffer and a selection key rather than a thread, so the server can hold
+ * far more open connections than it has threads.
+ */
+public class NioServer {
+    private final IRequestDispatcher dispatcher;
+    private final KeepAlivePolicy keepAlivePolicy;
+    private final AdmissionControl admissionControl;
+    private final TimerWheel timerWheel;
+    private final TimeoutPolicy timeoutPolicy;
+    private final Http2Settings http2;
+    private final EventLoop[] eventLoops;
+
+    private final HttpRequestParser requestParser;
+    private final DefaultResponses defaultResponses = new DefaultResponses();
+
+    private List<ServerSocketChannel> serverChannels = List.of();
+
+    /**
+     * Constructor for the NioServer class.
+     * @param eventLoops The number of selector threads to spread connections across.
+     * @param dispatcher Processes every parsed request.
+     * @param requestParser Parses the bytes read from each connection.
+     * @param keepAlivePolicy Decides whether a connection stays open after each response.
+     * @param admissionControl Limits how many connections and requests are handled at once.
+     * @param timerWheel Tracks every connection's deadline.
+     * @param timeoutPolicy The deadlines each connection must meet.
+     * @param http2 The limits for HTTP/2 connections, or null if HTTP/2 is turned off.
+     * @throws IOException Thrown if a selector cannot be opened.
+     */
+    public NioServer(
+            int eventLoops,
+            IRequestDispatcher dispatcher,
+            HttpRequestParser requestParser,
+            KeepAlivePolicy keepAlivePolicy,
+            AdmissionControl admissionControl,
+            TimerWheel timerWheel,
+            TimeoutPolicy timeoutPolicy,
+            Http2Settings http2
+    ) throws IOException {
+        this.admissionControl = admissionControl;
+        this.timerWheel = timerWheel;
+        this.timeoutPolicy = timeoutPolicy;
+        this.http2 = http2;
+        this.dispatcher = dispatcher;
+        this.requestParser = requestParser;
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoops)];
+
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            this.eventLoops[i] = new EventLoop();
+        }
+    }
+
+    /**
+     * Starts every event loop. The listening sockets are shared out between the loops, and each loop
+     * accepts from its own and deals the connections out round-robin.
+     * @param serverChannels The bound listening sockets.
+     * @throws IOException Thrown if a listening socket cannot be registered.
+     */
+    public void start(List<ServerSocketChannel> serverChannels) throws IOException {
+        this.serverChannels = List.copyOf(serverChannels);
+
+        for (int i = 0; i < serverChannels.size(); i++) {
+            ServerSocketChannel serverChannel = serverChannels.get(i);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(eventLoops[i % eventLoops.length].selector, SelectionKey.OP_ACCEPT);
+        }
+
+        System.out.println("Starting server: " + serverChannels.size() + " listening sockets with "
+                + eventLoops.length + " event loops");
+
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread thread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting connections by closing the listening sockets. Connections already open carry on.
+     * @throws IOException Thrown if a socket cannot be closed.
+     */
+    public void stopAccepting() throws IOException {
+        for (ServerSocketChannel serverChannel : serverChannels) {
+            serverChannel.close();
+        }
+
+        // each socket is only released once the loop accepting from it next selects
+        for (EventLoop loop : eventLoops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * A single selector thread, which owns every connection registered with it.
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> detaching = new ArrayDeque<>();
+        private final Queue<Connection> expired = new ConcurrentLinkedQueue<>();
+        private int nextLoop = 0;
+
+        /**
+         * Constructor for the EventLoop class.
+         * @throws IOException Thrown if the selector cannot be opened.
+         */
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Hands a connection to this loop, either newly accepted or back from a streamed response.
+         * Safe to call from any thread.
+         * @param connection The connection, whose channel must be in non-blocking mode.
+         */
+        void adopt(Connection connection) {
+            pending.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Takes a connection off this loop so a streamed response can be written from its own thread,
+         * or so it can be served as an HTTP/2 connection or a WebSocket with blocking I/O.
+         * The channel can only switch to blocking mode once the selector has dropped it, which
+         * happens during the next select, so the hand-off completes at the top of the next iteration.
+         * @param connection The connection to detach.
+         */
+        void detach(Connection connection) {
+            connection.key.cancel();
+            connection.detached = true;
+            detaching.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks this loop to close a connection that has missed its deadline.
+         * Called from the timer wheel's thread, so the close itself happens on the loop.
+         * @param connection The connection to close.
+         */
+        void expire(Connection connection) {
+            expired.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    startStreaming();
+                    registerPending();
+                    closeExpired();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+
+                        Connection connection = (Connection) key.attachment();
+
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                        catch (IOException e) {
+                            connection.close();
+                        }
+                        catch (RuntimeException e) {
+                            // a bug in handling one request must not take down every connection on this loop
+                            Log.event("Unexpected error: ", e);
+                            connection.close();
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    Log.event("IO Exception: ", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Accepts every connection waiting on the listening socket.
+         * Connections over the cap get the pre-encoded 503 and are closed without being registered.
+         * @param serverChannel The listening socket.
+         * @throws IOException Thrown if accepting fails.
+         */
+        private void accept(ServerSocketChannel serverChannel) throws IOException {
+            SocketChannel channel;
+
+            while ((channel = serverChannel.accept()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                }
+                catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+
+                if (!admissionControl.tryAdmitConnection()) {
+                    reject(channel);
+                    continue;
+                }
+
+                EventLoop loop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+                loop.adopt(new Connection(channel));
+            }
+        }
+
+        /**
+         * Answers a connection there is no room for and closes it. A single non-blocking write is
+         * enough, as the response is far smaller than a fresh socket's send buffer.
+         * @param channel The client's socket.
+         */
+        private void reject(SocketChannel channel) {
+            try (channel) {
+                channel.write(admissionControl.overloadedResponse());
+            }
+            catch (IOException e) {
+                // the client has already gone, which is no loss
+            }
+        }
+
+        /**
+         * Closes every connection the timer wheel has reported as past its deadline.
+         * A connection streaming a response from its own thread only has its socket closed here,
+         * which fails the blocked write so that thread cleans up.
+         */
+        private void closeExpired() {
+            Connection connection;
+
+            while ((connection = expired.poll()) != null) {
+                if (connection.detached) {
+                    connection.closeChannel();
+                } else {
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Registers the connections handed over by the accepting loop, or returning from a streamed response.
+         */
+        private void registerPending() {
+            Connection connection;
+
+            while ((connection = pending.poll()) != null) {
+                try {
+                    connection.register(this);
+                }
+                catch (IOException e) {
+                    // the client went away before we got to it
+                    connection.close();
+                }
+                catch (RuntimeException e) {
+                    Log.event("Unexpected error: ", e);
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Starts a thread for each connection that has been detached to stream a response or switch protocols.
+         */
+        private void startStreaming() {
+            Connection connection;
+
+            while ((connection = detaching.poll()) != null) {
+                try {
+                    connection.channel.configureBlocking(true);
+                    Thread.ofVirtual().name("nio-stream").start(connection::stream);
+                }
+                catch (IOException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The per-connection state: the bytes read so far and the responses waiting to be written.
+     * A connection belongs to one event loop, except while it is detached to stream a response.
+     * A connection that switches to HTTP/2 or a WebSocket is detached for good, and closed when that ends.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ArrayDeque<PendingWrite> outbound = new ArrayDeque<>();
+        private final RequestBuffer inbound = new RequestBuffer();
+
+        private final ConnectionDeadline deadline;
+
+        // read by the timer wheel's thread when the deadline passes
+        private volatile EventLoop loop;
+        private volatile boolean detached = false;
+
+        private SelectionKey key;
+        private int served = 0;
+        private boolean closeAfterWrite = false;
+        private boolean streaming = false;
+        private boolean closed = false;
+
+        /**
+         * Constructor for the Connection class.
+         * @param channel The client's socket, in non-blocking mode.
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.deadline = new ConnectionDeadline(timerWheel, timeoutPolicy, () -> loop.expire(this));
+        }
+
+        /**
+         * Registers the connection with an event loop, and answers any requests that arrived while it was away.
+         * @param loop The loop that now owns the connection.
+         * @throws IOException Thrown if the channel is closed or cannot be written.
+         */
+        void register(EventLoop loop) throws IOException {
+            this.loop = loop;
+            this.key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+
+            processRequests();
+            flush();
+            updateDeadline();
+        }
+
+        /**
+         * Reads whatever the client has sent and dispatches every request that has fully arrived.
+         * @throws IOException Thrown if the socket cannot be read.
+         */
+        void onReadable() throws IOException {
+            if (inbound.fill(channel) == -1) {
+                close();
+                return;
+            }
+
+            processRequests();
+            flush();
+            updateDeadline();
+        }
+
+        /**
+         * Applies the deadline for whatever the connection is waiting on: the client reading
+         * a response, the rest of a request, or the next request.
+         */
+        private void updateDeadline() {
+            if (closed || streaming) {
+                return;
+            }
+
+            if (!outbound.isEmpty()) {
+                deadline.writing();
+            } else {
+                deadline.reading(inbound.phase());
+            }
+        }
+
+        /**
+         * Answers every complete request in the buffer, in order, so pipelined requests just queue up.
+         * Stops after a streamed response, as that has to be written before anything behind it.
+         * Each request must be admitted before it is parsed; one that is not gets a 503 and the
+         * connection is closed once it has been written.
+         * A new connection opening with the HTTP/2 preface, or a request asking to upgrade, switches the
+         * connection to HTTP/2 once everything ahead of it has been written. A WebSocket handshake is
+         * handed to the dispatcher the same way.
+         * @throws IOException Thrown if a response cannot be queued.
+         */
+        private void processRequests() throws IOException {
+            try {
+                while (!closeAfterWrite && !streaming && inbound.hasRemaining()) {
+                    if (served == 0 && http2 != null && inbound.matches(Http2Connection.PREFACE)) {
+                        if (inbound.remaining() >= Http2Connection.PREFACE.length) {
+                            switchToHttp2(null);
+                        }
+
+                        return; // or wait for the rest of the preface
+                    }
+
+                    if (!admissionControl.tryAdmitRequest()) {
+                        closeAfterWrite = true;
+                        outbound.add(new BufferWrite(admissionControl.overloadedResponse()));
+                        return;
+                    }
+
+                    try {
+                        RequestParseEvent parse = new RequestParseEvent();
+                        parse.begin();
+
+                        HttpRequest req = requestParser.parse(inbound);
+
+                        if (req == null) {
+                            return; // wait for the rest of the request
+                        }
+
+                        if (parse.shouldCommit()) {
+                            parse.method = req.method();
+                            parse.path = req.path();
+                            parse.commit();
+                        }
+
+                        boolean keepAlive = keepAlivePolicy.keepAlive(req, served++);
+
+                        if (keepAlive && dispatcher.isUpgrade(req)) {
+                            streaming = true;
+                            outbound.add(new UpgradeSwitch(req));
+                            return;
+                        }
+
+                        if (keepAlive && http2 != null && Http2Connection.isUpgrade(req)) {
+                            switchToHttp2(req);
+                            return;
+                        }
+
+                        HttpResponse res = dispatcher.dispatch(req);
+                        respond(res, keepAlive && !res.isCloseDelimited());
+                    }
+                    finally {
+                        admissionControl.releaseRequest();
+                    }
+                }
+            }
+            catch (HttpParseException e) {
+                // we can't tell where the next request would start, so answer and close
+                respond(defaultResponses.makeError(e.getStatus(), e.getMessage()), false);
+            }
+        }
+
+        /**
+         * Writes as much of the queued responses as the socket will take.
+         * Reading is paused until everything queued has been written, so a client
+         * that never reads its responses cannot make us buffer without limit.
+         * @throws IOException Thrown if the socket cannot be written.
+         */
+        void onWritable() throws IOException {
+            while (!outbound.isEmpty()) {
+                PendingWrite next = outbound.peek();
+
+                if (next instanceof StreamWrite || next instanceof Http2Switch || next instanceof UpgradeSwitch) {
+                    loop.detach(this);
+                    return;
+                }
+
+                if (!outbound.peek().writeTo(channel)) {
+                    deadline.writing();
+                    return; // the socket is full, wait for the next OP_WRITE
+                }
+
+                outbound.poll().release();
+            }
+
+            if (closeAfterWrite) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+                deadline.reading(inbound.phase());
+            }
+        }
+
+        /**
+         * Writes a streamed response with blocking I/O, then hands the connection back to its event loop.
+         * Runs on a virtual thread, so a slow producer never holds up the other connections on the loop.
+         */
+        void stream() {
+            if (outbound.peek() instanceof Http2Switch upgrade) {
+                outbound.poll();
+                serveHttp2(upgrade.request());
+                return;
+            }
+
+            if (outbound.peek() instanceof UpgradeSwitch upgrade) {
+                outbound.poll();
+                serveUpgrade(upgrade.request());
+                return;
+            }
+
+            StreamWrite write = (StreamWrite) outbound.poll();
+
+            try {
+                ResponseWriteEvent event = new ResponseWriteEvent();
+                event.begin();
+
+                deadline.writing();
+                write.response().sendResponse(new ProgressChannel(channel, deadline::writing), write.keepAlive());
+
+                if (event.shouldCommit()) {
+                    event.status = write.response().status().getStatusCode();
+                    event.bytes = write.response().body().length();
+                    event.keepAlive = write.keepAlive();
+                    event.commit();
+                }
+
+                if (closeAfterWrite) {
+                    close();
+                    return;
+                }
+
+                channel.configureBlocking(false);
+                streaming = false;
+                detached = false;
+                loop.adopt(this);
+            }
+            catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Serves the connection as HTTP/2 until it ends, then closes it. Runs on a virtual thread,
+         * which reads frames while each stream's response is written from a virtual thread of its own.
+         * @param upgrade The HTTP/1.1 request that asked for the upgrade, or null if the client opened with the preface.
+         */
+        void serveHttp2(HttpRequest upgrade) {
+            try {
+                new Http2Connection(
+                        Channels.newInputStream(channel),
+                        inbound,
+                        new ProgressChannel(channel, deadline::writing),
+                        dispatcher,
+                        admissionControl,
+                        keepAlivePolicy,
+                        deadline,
+                        http2
+                ).serve(upgrade);
+            }
+            catch (IOException e) {
+                // the client went away, or the connection was closed for missing a deadline
+            }
+            finally {
+                close();
+            }
+        }
+
+        /**
+         * Hands the connection to the dispatcher for the protocol it asked for (i.e. WebSocket) until it ends,
+         * then closes it. Runs on a virtual thread.
+         * @param upgrade The request that asked for the switch.
+         */
+        void serveUpgrade(HttpRequest upgrade) {
+            try {
+                dispatcher.serveUpgrade(
+                        upgrade,
+                        Channels.newInputStream(channel),
+                        inbound,
+                        new ProgressChannel(channel, deadline::writing),
+                        deadline
+                );
+            }
+            catch (IOException e) {
+                // the client went away, or the connection was closed for missing a deadline
+            }
+            finally {
+                close();
+            }
+        }
+
+        /**
+         * Queues the switch to HTTP/2 behind any responses already queued, and stops reading requests.
+         * @param upgrade The request that asked for the upgrade, or null if the client opened with the preface.
+         */
+        private void switchToHttp2(HttpRequest upgrade) {
+            streaming = true;
+            outbound.add(new Http2Switch(upgrade));
+        }
+
+        /**
+         * Queues a response behind any earlier ones.
+         * @param res The response to send.
+         * @param keepAlive Whether the connection stays open after this response.
+         */
+        private void respond(HttpResponse res, boolean keepAlive) {
+            closeAfterWrite = !keepAlive;
+
+            switch (res.body()) {
+                case BytesBody bytes -> outbound.add(new BufferWrite(ByteBuffer.wrap(res.head(keepAlive)), bytes.toByteBuffer()));
+                case FileBody file -> {
+                    outbound.add(new BufferWrite(ByteBuffer.wrap(res.head(keepAlive))));
+                    outbound.add(new FileWrite(file));
+                }
+                case StreamingBody stream -> {
+                    streaming = true;
+                    outbound.add(new StreamWrite(res, keepAlive));
+                }
+            }
+        }
+
+        /**
+         * Starts writing any queued responses.
+         * @throws IOException Thrown if the socket cannot be written.
+         */
+        private void flush() throws IOException {
+            if (!outbound.isEmpty()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                onWritable();
+            }
+        }
+
+        /**
+         * Closes the connection and drops its registration.
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            deadline.cancel();
+            admissionControl.releaseConnection();
+
+            if (key != null) {
+                key.cancel();
+            }
+
+            for (PendingWrite write : outbound) {
+                write.release();
+            }
+            outbound.clear();
+
+            closeChannel();
+        }
+
+        /**
+         * Closes the socket only, leaving the rest of the clean up to whichever thread owns the connection.
+         */
+        void closeChannel() {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                Log.event("IO Exception: ", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Part of a response waiting to be written to a non-blocking socket.
+     */
+    private interface PendingWrite {
+        /**
+         * Writes as much as the socket will take.
+         * @param channel The client's socket.
+         * @return True once everything has been written.
+         * @throws IOException Thrown if the socket cannot be written.
+         */
+        boolean writeTo(SocketChannel channel) throws IOException;
+
+        /**
+         * Frees anything held open for the write.
+         */
+        default void release() {
+        }
+    }
+
+    /**
+     * Bytes held in memory, such as a response head and its body, sent together with one gathering write.
+     * @param buffers The bytes still to be written, in order.
+     */
+    private record BufferWrite(ByteBuffer... buffers) implements PendingWrite {
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            Metrics.bytesWritten(channel.write(buffers));
+
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * A streamed response, which is written from its own thread once everything ahead of it has gone.
+     * @param response The response.
+     * @param keepAlive Whether the connection stays open after the response.
+     */
+    private record StreamWrite(HttpResponse response, boolean keepAlive) implements PendingWrite {
+        @Override
+        public boolean writeTo(SocketChannel channel) {
+            throw new IllegalStateException("Streamed responses are written by Connection.stream");
+        }
+    }
+
+    /**
+     * The point where the connection switches to HTTP/2, once everything ahead of it has gone.
+     * @param request The HTTP/1.1 request that asked for the upgrade, or null if the client opened with the preface.
+     */
+    private record Http2Switch(HttpRequest request) implements PendingWrite {
+        @Override
+        public boolean writeTo(SocketChannel channel) {
+            throw new IllegalStateException("HTTP/2 connections are served by Connection.serveHttp2");
+        }
+    }
+
+    /**
+     * The point where the dispatcher takes the connection over for another protocol, once everything ahead of it has gone.
+     * @param request The HTTP/1.1 request that asked for the switch.
+     */
+    private record UpgradeSwitch(HttpRequest request) implements PendingWrite {
+        @Override
+        public boolean writeTo(SocketChannel channel) {
+            throw new IllegalStateException("Upgraded connections are served by Connection.serveUpgrade");
+        }
+    }
+
+    /**
+     * A file body, sent with FileChannel.transferTo so the bytes never enter the heap.
+     */
+    private static class FileWrite implements PendingWrite {
+        private final FileBody body;
+        private FileChannel file;
+        private long position;
+
+        /**
+         * Constructor for the FileWrite class.
+         * @param body The file body to send.
+         */
+        FileWrite(FileBody body) {
+            this.body = body;
+            this.position = body.offset();
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            // opened on first use, so queued responses do not hold files open
+            if (file == null) {
+                file = body.open();
+            }
+
+            long end = body.offset() + body.size();
+
+            while (position < end) {
+                long sent = file.transferTo(position, end - position, channel);
+
+                if (sent == 0) {
+                    if (position >= file.size()) {
+                        throw new EOFException("File truncated while sending: " + body.path());
+                    }
+
+                    return false;
+                }
+
+                position += sent;
+                Metrics.bytesWritten(sent);
+            }
+
+            return true;
+        }
+
+        @Override
+        public void release() {
+            if (file == null) {
+                return;
+            }
+
+            try {
+                file.close();
+            }
+            catch (IOException e) {
+                Log.event("IO Exception: ", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package utils.server;
+
+import utils.request.enums.RequestPhase;
+
+/**
+ * The deadlines a connection must meet, so slow or stalled clients cannot hold on to the server.
+ * Each part of a request must arrive within its own deadline, counted from when that part started,
+ * so trickling in a byte at a time does not keep a connection alive. Writing a response only has to
+ * keep making progress, so large downloads over slow links are not cut off.
+ */
+public class TimeoutPolicy {
+    private final long idleTimeout;
+    private final long requestLineTimeout;
+    private final long headerTimeout;
+    private final long bodyTimeout;
+    private final long writeTimeout;
+
+    /**
+     * Constructor for the TimeoutPolicy class. All times are in milliseconds.
+     * @param idleTimeout How long a connection may wait for the first byte of its next request.
+     * @param requestLineTimeout How long the request line may take to arrive.
+     * @param headerTimeout How long the headers may take to arrive, once the request line has.
+     * @param bodyTimeout How long the body may take to arrive, once the headers have.
+     * @param writeTimeout How long a response write may go without sending anything.
+     */
+    public TimeoutPolicy(
+            long idleTimeout,
+            long requestLineTimeout,
+            long headerTimeout,
+            long bodyTimeout,
+            long writeTimeout
+    ) {
+        this.idleTimeout = idleTimeout;
+        this.requestLineTimeout = requestLineTimeout;
+        this.headerTimeout = headerTimeout;
+        this.bodyTimeout = bodyTimeout;
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Retrieves the deadline for one part of a request.
+     * @param phase The part of the request still arriving.
+     * @return The time allowed, in milliseconds.
+     */
+    public long timeoutFor(RequestPhase phase) {
+        return switch (phase) {
+            case IDLE -> idleTimeout;
+            case REQUEST_LINE -> requestLineTimeout;
+            case HEADERS -> headerTimeout;
+            case BODY -> bodyTimeout;
+        };
+    }
+
+    /**
+     * Retrieves how long a response write may stall.
+     * @return The time allowed without progress, in milliseconds.
+     */
+    public long getWriteTimeout() {
+        return writeTimeout;
+    }
+}
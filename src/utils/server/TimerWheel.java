@@ -0,0 +1,242 @@
+package utils.server;
+
+import java.util.Queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel, which tracks a deadline for every open connection with a single thread.
+ * Time is cut into ticks, and each timeout sits in the bucket for the tick it expires on, so each
+ * tick only looks at the timeouts in one bucket, however many connections are open.
+ * Pushing a deadline back, which happens constantly as connections make progress, is a single
+ * volatile write: the timeout stays in its old bucket, and is moved on when that bucket comes round.
+ */
+public class TimerWheel {
+    private static final long DISARMED = Long.MAX_VALUE;
+
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+
+    // timeouts whose deadline moved earlier than their bucket, waiting for the wheel thread to move them
+    private final Queue<Timeout> moved = new ConcurrentLinkedQueue<>();
+
+    // only touched by the wheel thread
+    private long tick = 0;
+
+    /**
+     * Constructor for the TimerWheel class. Starts the wheel's daemon thread.
+     * @param tickMillis The length of a tick. Timeouts fire up to one tick late.
+     * @param wheelSize The number of buckets, rounded up to a power of two.
+     */
+    public TimerWheel(long tickMillis, int wheelSize) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1];
+        this.mask = buckets.length - 1;
+
+        Thread thread = new Thread(this::run, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates a timeout that is not yet armed. A connection keeps one for its whole life, re-arming it as it goes.
+     * @param task Run on the wheel thread when the timeout expires. Must be quick, as it holds up every other timeout.
+     * @return The timeout.
+     */
+    public Timeout newTimeout(Runnable task) {
+        return new Timeout(task);
+    }
+
+    /**
+     * A single re-armable deadline.
+     */
+    public class Timeout {
+        private final Runnable task;
+        private final AtomicLong deadline = new AtomicLong(DISARMED);
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+
+        // the bucket list this timeout is in, only touched by the wheel thread
+        private int bucket = -1;
+        private Timeout previous;
+        private Timeout next;
+
+        /**
+         * Constructor for the Timeout class.
+         * @param task Run when the timeout expires.
+         */
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Arms the timeout, replacing any earlier deadline.
+         * @param delayMillis How long from now the timeout expires.
+         */
+        public void schedule(long delayMillis) {
+            long next = now() + delayMillis;
+            long previous = deadline.getAndSet(next);
+
+            // a later deadline is picked up lazily, an earlier one has to be moved to its bucket now
+            if (next < previous && queued.compareAndSet(false, true)) {
+                moved.add(this);
+            }
+        }
+
+        /**
+         * Disarms the timeout. It is dropped from the wheel when its bucket next comes round.
+         */
+        public void cancel() {
+            deadline.set(DISARMED);
+        }
+    }
+
+    /**
+     * The wheel thread: once a tick, moves rescheduled timeouts and fires the ones that are due.
+     */
+    private void run() {
+        while (true) {
+            long sleep = (tick + 1) * tickMillis - now();
+
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            placeMoved();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    /**
+     * Puts every timeout whose deadline moved earlier into its new bucket.
+     */
+    private void placeMoved() {
+        Timeout timeout;
+
+        while ((timeout = moved.poll()) != null) {
+            timeout.queued.set(false);
+            unlink(timeout);
+
+            long deadline = timeout.deadline.get();
+
+            if (deadline != DISARMED) {
+                link(timeout, bucketFor(deadline));
+            }
+        }
+    }
+
+    /**
+     * Fires the due timeouts in a bucket, and moves on any whose deadline has been pushed back.
+     * @param index The bucket for the current tick.
+     */
+    private void expire(int index) {
+        long now = now();
+        Timeout timeout = buckets[index];
+
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            long deadline = timeout.deadline.get();
+
+            if (deadline == DISARMED) {
+                unlink(timeout);
+            }
+            else if (deadline <= now) {
+                unlink(timeout);
+
+                // if this fails, the owner re-armed it at the last moment and it is no longer due
+                if (timeout.deadline.compareAndSet(deadline, DISARMED)) {
+                    fire(timeout);
+                }
+                else if (timeout.deadline.get() != DISARMED) {
+                    link(timeout, bucketFor(timeout.deadline.get()));
+                }
+            }
+            else if (bucketFor(deadline) != index) {
+                unlink(timeout);
+                link(timeout, bucketFor(deadline));
+            }
+
+            timeout = next;
+        }
+    }
+
+    /**
+     * Runs a timeout's task, keeping the wheel alive whatever the task throws.
+     * @param timeout The expired timeout.
+     */
+    private void fire(Timeout timeout) {
+        try {
+            timeout.task.run();
+        }
+        catch (RuntimeException e) {
+            System.err.println("Timeout task failed: " + e);
+        }
+    }
+
+    /**
+     * Works out which bucket a deadline belongs in. Deadlines more than a full turn away wait out the extra turns.
+     * @param deadline The deadline, in milliseconds since the wheel started.
+     * @return The bucket index, never earlier than the one being processed.
+     */
+    private int bucketFor(long deadline) {
+        return (int) (Math.max(deadline / tickMillis, tick) & mask);
+    }
+
+    /**
+     * Adds a timeout to the front of a bucket.
+     * @param timeout The timeout.
+     * @param index The bucket.
+     */
+    private void link(Timeout timeout, int index) {
+        timeout.bucket = index;
+        timeout.previous = null;
+        timeout.next = buckets[index];
+
+        if (buckets[index] != null) {
+            buckets[index].previous = timeout;
+        }
+
+        buckets[index] = timeout;
+    }
+
+    /**
+     * Removes a timeout from whichever bucket it is in.
+     * @param timeout The timeout.
+     */
+    private void unlink(Timeout timeout) {
+        if (timeout.bucket == -1) {
+            return;
+        }
+
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+
+        timeout.bucket = -1;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Reads the wheel's clock.
+     * @return Milliseconds since the wheel started.
+     */
+    private long now() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
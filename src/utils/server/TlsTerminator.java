@@ -0,0 +1,230 @@
+package utils.server;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import java.io.IOException;
+
+import java.net.Socket;
+
+import java.nio.file.Path;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Terminates TLS on connections accepted from the HTTPS listeners, so no proxy is needed in front of the server.
+ * Sessions are cached, and handed to clients as session tickets, so a client that reconnects (i.e. to poll
+ * its place in the queue) resumes its session with an abbreviated handshake instead of a full one.
+ * Counts full and resumed handshakes, and the handshake rate over the last minute.
+ */
+public class TlsTerminator {
+    private static final int RATE_WINDOW = 60;
+
+    private final SSLSocketFactory socketFactory;
+    private final SSLParameters parameters;
+    private final SSLSessionContext sessionContext;
+
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+
+    // handshakes per second for the last minute, each slot stamped with the second it counts
+    private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_WINDOW);
+    private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_WINDOW);
+
+    /**
+     * Constructor for the TlsTerminator class.
+     * @param keyStore The PKCS12 (or JKS) keystore holding the server's private key and certificate chain.
+     * @param password The password for the keystore and the key.
+     * @param protocols The protocols to allow (i.e. 'TLSv1.3,TLSv1.2'), or empty for the JDK's defaults.
+     * @param cipherSuites The cipher suites to allow in order of preference, or empty for the JDK's defaults.
+     * @param sessionCacheSize The most sessions cached for resumption, 0 for no limit.
+     * @param sessionTimeout How long, in seconds, a cached session or ticket can be resumed for.
+     * @param sessionTickets Whether sessions are handed to clients as tickets, so resumption survives cache eviction.
+     * @throws IOException Thrown if the keystore cannot be read.
+     * @throws GeneralSecurityException Thrown if the keystore, a protocol or a cipher suite is invalid.
+     */
+    public TlsTerminator(
+            Path keyStore,
+            char[] password,
+            String protocols,
+            String cipherSuites,
+            int sessionCacheSize,
+            int sessionTimeout,
+            boolean sessionTickets
+    ) throws IOException, GeneralSecurityException {
+        // read once, when the first TLS context is created, so it must be set before then
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(sessionTickets));
+
+        KeyStore keys = KeyStore.getInstance(keyStore.toFile(), password);
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keys, password);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+
+        this.sessionContext = context.getServerSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(sessionTimeout);
+
+        this.socketFactory = context.getSocketFactory();
+        this.parameters = context.getDefaultSSLParameters();
+        parameters.setUseCipherSuitesOrder(true);
+
+        if (!protocols.isBlank()) {
+            parameters.setProtocols(supported("protocol", protocols, context.getSupportedSSLParameters().getProtocols()));
+        }
+
+        if (!cipherSuites.isBlank()) {
+            parameters.setCipherSuites(supported("cipher suite", cipherSuites, context.getSupportedSSLParameters().getCipherSuites()));
+        }
+    }
+
+    /**
+     * Layers TLS over a newly accepted connection. Nothing is read or written until the handshake.
+     * @param connection The accepted plain socket, closed along with the TLS socket.
+     * @return The TLS socket, in server mode.
+     * @throws IOException Thrown if the socket cannot be wrapped.
+     */
+    public SSLSocket wrap(Socket connection) throws IOException {
+        SSLSocket socket = (SSLSocket) socketFactory.createSocket(connection, null, connection.getPort(), true);
+        socket.setUseClientMode(false);
+        socket.setSSLParameters(parameters);
+        return socket;
+    }
+
+    /**
+     * Runs the handshake on the connection's own thread, and records whether the session was resumed.
+     * A resumed session was created by an earlier handshake, so it is older than this one.
+     * @param socket The TLS socket.
+     * @throws IOException Thrown if the handshake fails or the client goes away.
+     */
+    public void handshake(SSLSocket socket) throws IOException {
+        long started = System.currentTimeMillis();
+
+        try {
+            socket.startHandshake();
+        }
+        catch (IOException e) {
+            failedHandshakes.increment();
+            throw e;
+        }
+
+        if (socket.getSession().getCreationTime() < started) {
+            resumedHandshakes.increment();
+        } else {
+            fullHandshakes.increment();
+        }
+
+        countHandshake(started / 1000);
+    }
+
+    /**
+     * Retrieves the number of full handshakes since startup.
+     * @return The number of handshakes that negotiated a new session.
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    /**
+     * Retrieves the number of resumed handshakes since startup.
+     * @return The number of handshakes that resumed a cached session or a session ticket.
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    /**
+     * Retrieves the number of failed handshakes since startup.
+     * @return The number of handshakes that failed (i.e. a plaintext client, or no shared cipher suite).
+     */
+    public long getFailedHandshakes() {
+        return failedHandshakes.sum();
+    }
+
+    /**
+     * Retrieves the share of handshakes that were resumed.
+     * @return Resumed handshakes over all successful handshakes, or 0 if there have been none.
+     */
+    public double getResumptionRatio() {
+        long resumed = resumedHandshakes.sum();
+        long total = resumed + fullHandshakes.sum();
+
+        return total == 0 ? 0 : (double) resumed / total;
+    }
+
+    /**
+     * Retrieves the handshake rate.
+     * @return The average number of successful handshakes per second over the last minute.
+     */
+    public double getHandshakeRate() {
+        long now = System.currentTimeMillis() / 1000;
+        long handshakes = 0;
+
+        for (int i = 0; i < RATE_WINDOW; i++) {
+            if (now - rateSeconds.get(i) < RATE_WINDOW) {
+                handshakes += rateCounts.get(i);
+            }
+        }
+
+        return (double) handshakes / RATE_WINDOW;
+    }
+
+    /**
+     * Retrieves the number of sessions that can currently be resumed from the cache.
+     * @return The number of cached sessions.
+     */
+    public int getCachedSessions() {
+        return Collections.list(sessionContext.getIds()).size();
+    }
+
+    /**
+     * Adds a handshake to the slot for the second it happened in, clearing the slot first if it last
+     * counted a second from a minute or more ago. A handshake racing with the clear may be lost, which is fine for a rate.
+     * @param second The second the handshake started, since the epoch.
+     */
+    private void countHandshake(long second) {
+        int slot = (int) (second % RATE_WINDOW);
+        long stamped = rateSeconds.get(slot);
+
+        if (stamped != second && rateSeconds.compareAndSet(slot, stamped, second)) {
+            rateCounts.set(slot, 0);
+        }
+
+        rateCounts.incrementAndGet(slot);
+    }
+
+    /**
+     * Checks that every configured protocol or cipher suite is one the JDK supports.
+     * @param kind What is being checked, for the error message.
+     * @param configured The comma separated names from the properties file.
+     * @param supported The names the JDK supports.
+     * @return The configured names.
+     * @throws GeneralSecurityException Thrown if a name is not supported.
+     */
+    private static String[] supported(String kind, String configured, String[] supported) throws GeneralSecurityException {
+        List<String> known = Arrays.asList(supported);
+        String[] names = Arrays.stream(configured.split(",")).map(String::trim).filter(name -> !name.isEmpty()).toArray(String[]::new);
+
+        for (String name : names) {
+            if (!known.contains(name)) {
+                throw new GeneralSecurityException("Unsupported TLS " + kind + ": " + name);
+            }
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,48 @@
+package utils.server.interfaces;
+
+import utils.HttpResponse;
+import utils.request.HttpRequest;
+import utils.request.RequestBuffer;
+import utils.server.ConnectionDeadline;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The interface for anything that can turn a parsed request into a response.
+ * Server engines use this to hand requests to the routing logic without knowing about it.
+ */
+public interface IRequestDispatcher {
+    /**
+     * Processes a single request.
+     * @param request The request made by the client.
+     * @return The response to send back to the client.
+     */
+    HttpResponse dispatch(HttpRequest request);
+
+    /**
+     * Checks whether a request asks to switch its connection to a protocol the dispatcher serves itself (i.e. WebSocket).
+     * @param request The request made by the client.
+     * @return True if the connection should be handed to serveUpgrade rather than answered with dispatch.
+     */
+    boolean isUpgrade(HttpRequest request);
+
+    /**
+     * Serves a connection whose request was accepted by isUpgrade, until it closes. Blocks the calling thread.
+     * @param request The request that asked for the switch.
+     * @param inputStream To read from the client.
+     * @param buffer The connection's request buffer, whose unread bytes belong to the new protocol.
+     * @param channel To write to the client, reporting progress to the deadline.
+     * @param deadline The connection's deadline.
+     * @throws IOException Thrown if the connection cannot be read or written.
+     */
+    void serveUpgrade(
+            HttpRequest request,
+            InputStream inputStream,
+            RequestBuffer buffer,
+            WritableByteChannel channel,
+            ConnectionDeadline deadline
+    ) throws IOException;
+}
@@ -3,6 +3,9 @@ package utils.store;
 import javax.json.Json;
 import javax.json.JsonObject;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Object which represents a concert.
  */
@@ -12,7 +15,10 @@ public class Concert {
     private final String dateTime;
     private final int id;
 
-    private int count;
+    private final AtomicInteger count;
+
+    // shared by every concert in the store, and bumped whenever a count changes
+    private final AtomicLong catalogueVersion;
 
     /**
      * Constructor for the Concert class.
@@ -21,13 +27,15 @@ public class Concert {
      * @param venue The place the concert will be performed at.
      * @param dateTime The day and time the concert will be performed.
      * @param id The id for the concert.
+     * @param catalogueVersion The store's version counter, bumped whenever the number of tickets changes.
      */
-    public Concert(String artist, int count, String venue, String dateTime, int id) {
+    public Concert(String artist, int count, String venue, String dateTime, int id, AtomicLong catalogueVersion) {
         this.artist = artist;
-        this.count = count;
+        this.count = new AtomicInteger(count);
         this.venue = venue;
         this.dateTime = dateTime;
         this.id = id;
+        this.catalogueVersion = catalogueVersion;
     }
 
     /**
@@ -43,7 +51,7 @@ public class Concert {
      * @return The number of tickets currently available.
      */
     public int getCount() {
-        return count;
+        return count.get();
     }
 
     /**
@@ -75,7 +83,8 @@ public class Concert {
      * @param amount The number of tickets to remove.
      */
     public void reduceCount(int amount) {
-        this.count -= amount;
+        count.addAndGet(-amount);
+        catalogueVersion.incrementAndGet();
     }
 
     /**
@@ -83,7 +92,8 @@ public class Concert {
      * @param amount The number of tickets to add.
      */
     public void increaseCount(int amount) {
-        this.count += amount;
+        count.addAndGet(amount);
+        catalogueVersion.incrementAndGet();
     }
 
     /**
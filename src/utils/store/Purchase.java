@@ -4,7 +4,6 @@ import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,7 +13,7 @@ public class Purchase {
     private final Concert concert;
     private final int id;
     private final int numberOfTickets;
-    private final List<String> ticketIDs;
+    private volatile List<String> ticketIDs;
 
     /**
      * Constructor for the Purchase class.
@@ -26,7 +25,7 @@ public class Purchase {
         this.concert = concert;
         this.id = id;
         this.numberOfTickets = numberOfTickets;
-        this.ticketIDs = new ArrayList<>();
+        this.ticketIDs = List.of();
     }
 
     /**
@@ -66,8 +65,8 @@ public class Purchase {
      * @param ticketIDs The List of ticket IDs.
      */
     public void setTicketIDs(List<String> ticketIDs) {
-        this.ticketIDs.clear();
-        this.ticketIDs.addAll(ticketIDs);
+        // published as a single immutable list so request threads never see a partial update
+        this.ticketIDs = List.copyOf(ticketIDs);
     }
 
     /**
@@ -5,26 +5,36 @@ import javax.json.JsonReader;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonGenerator;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.OutputStream;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stores all information about concerts and purchases
  */
 public class Store {
+    // how many concerts are written between flushes when streaming the catalogue
+    private static final int STREAM_FLUSH_INTERVAL = 256;
+
     private HashMap<Integer, Concert> concerts;
-    private HashMap<Integer, Purchase> purchases;
+    private ConcurrentHashMap<Integer, Purchase> purchases;
 
     // counter
     private final AtomicInteger concertID = new AtomicInteger(0);
 
+    // changes whenever anything in the catalogue does, so cached copies can tell they are stale
+    private final AtomicLong version = new AtomicLong(0);
+
     /**
      * Constructor for the Store class.
      * @param json The path to the JSON file.
@@ -32,7 +42,7 @@ public class Store {
     public Store(String json) {
         try {
             this.concerts = parseJson(Json.createReader(new FileInputStream(json)));
-            this.purchases = new HashMap<>();
+            this.purchases = new ConcurrentHashMap<>();
         }
         catch (FileNotFoundException e) {
             System.err.println("File not found: " + e.getMessage());
@@ -60,7 +70,8 @@ public class Store {
                     jsonObject.getInt("count"),
                     jsonObject.getString("venue"),
                     jsonObject.getString("datetime"),
-                    id
+                    id,
+                    version
             ));
         }
 
@@ -81,6 +92,45 @@ public class Store {
         return Json.createObjectBuilder().add("concerts", builder).build();
     }
 
+    /**
+     * Writes every concert in the store as JSON, in the same shape as toJson, without building it in memory first.
+     * The output is flushed every few hundred concerts so the client starts receiving it straight away.
+     * @param outputStream The stream to write to. It is flushed but not closed.
+     */
+    public void writeJson(OutputStream outputStream) {
+        JsonGenerator generator = Json.createGenerator(outputStream);
+        generator.writeStartObject().writeStartArray("concerts");
+
+        int written = 0;
+
+        for (Concert concert : concerts.values()) {
+            generator.write(concert.toJson());
+
+            if (++written % STREAM_FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        }
+
+        generator.writeEnd().writeEnd();
+        generator.flush();
+    }
+
+    /**
+     * Retrieves the number of concerts in the store.
+     * @return The number of concerts.
+     */
+    public int getConcertCount() {
+        return concerts.size();
+    }
+
+    /**
+     * Retrieves the version of the catalogue, which changes whenever a concert's ticket count does.
+     * @return The current version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /**
      * Adds a new purchase to the purchase list.
      * @param purchase The purchase to be added.
@@ -89,6 +139,14 @@ public class Store {
         purchases.put(purchase.getId(), purchase);
     }
 
+    /**
+     * Removes a purchase from the purchase list.
+     * @param id The ID of the purchase to be removed.
+     */
+    public void removePurchase(int id) {
+        purchases.remove(id);
+    }
+
     /**
      * Retrieves a concert based on its unique ID.
      * @param id The ID of the concert.
@@ -0,0 +1,213 @@
+package utils.websocket;
+
+import utils.store.Concert;
+import utils.store.Store;
+
+import javax.json.Json;
+
+import java.nio.ByteBuffer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends WebSocket clients the ticket count of each concert they follow whenever it changes.
+ * The store's version is checked at most updatesPerSecond times a second, so however many purchases
+ * and refunds land in between, a client gets one batch holding the latest counts. Each changed count
+ * is encoded as a frame once, and the same bytes are queued on every socket following that concert.
+ * Subscriptions are only touched on the ticker thread, so fan-out needs no locking.
+ */
+public class LiveCounts {
+    private final Store store;
+    private final ScheduledExecutorService ticker;
+
+    // who follows what, in both directions
+    private final Map<Integer, Set<WebSocket>> subscribers = new HashMap<>();
+    private final Map<WebSocket, Set<Integer>> subscriptions = new HashMap<>();
+
+    // the count last sent to each followed concert's subscribers, and the store version it was read at
+    private final Map<Integer, Integer> sentCounts = new HashMap<>();
+    private long sentVersion = -1;
+
+    private boolean closed = false;
+
+    /**
+     * Constructor for the LiveCounts class.
+     * @param store The store whose counts are published.
+     * @param updatesPerSecond The most batches a client is sent each second.
+     */
+    public LiveCounts(Store store, int updatesPerSecond) {
+        this.store = store;
+        this.ticker = Executors.newSingleThreadScheduledExecutor();
+
+        long interval = Math.max(1, 1000 / updatesPerSecond);
+        ticker.scheduleAtFixedRate(this::publish, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a socket that has completed its handshake.
+     * @param socket The socket.
+     */
+    void register(WebSocket socket) {
+        run(socket, () -> {
+            if (closed) {
+                socket.goAway();
+            } else {
+                subscriptions.put(socket, new HashSet<>());
+            }
+        });
+    }
+
+    /**
+     * Starts sending a socket the count of a concert, beginning with its current count.
+     * @param socket The socket.
+     * @param concertId The concert. Unknown concerts are ignored.
+     */
+    void subscribe(WebSocket socket, int concertId) {
+        run(socket, () -> {
+            Set<Integer> followed = subscriptions.get(socket);
+            Concert concert = store.getConcert(concertId);
+
+            if (followed == null || concert == null || !followed.add(concertId)) {
+                return;
+            }
+
+            int count = concert.getCount();
+            subscribers.computeIfAbsent(concertId, id -> new HashSet<>()).add(socket);
+            sentCounts.putIfAbsent(concertId, count);
+            socket.sendCount(concertId, encode(concertId, count));
+        });
+    }
+
+    /**
+     * Stops sending a socket the count of a concert.
+     * @param socket The socket.
+     * @param concertId The concert.
+     */
+    void unsubscribe(WebSocket socket, int concertId) {
+        run(socket, () -> {
+            Set<Integer> followed = subscriptions.get(socket);
+
+            if (followed != null && followed.remove(concertId)) {
+                forget(socket, concertId);
+            }
+        });
+    }
+
+    /**
+     * Drops a socket that has closed, along with all its subscriptions.
+     * @param socket The socket.
+     */
+    void remove(WebSocket socket) {
+        run(socket, () -> {
+            Set<Integer> followed = subscriptions.remove(socket);
+
+            if (followed != null) {
+                followed.forEach(concertId -> forget(socket, concertId));
+            }
+        });
+    }
+
+    /**
+     * Asks every open socket to close, and stops publishing. Sockets that connect afterwards are closed straight away.
+     */
+    public void shutdown() {
+        try {
+            ticker.execute(() -> {
+                closed = true;
+                subscriptions.keySet().forEach(WebSocket::goAway);
+            });
+        }
+        catch (RejectedExecutionException e) {
+            return; // already shut down
+        }
+
+        ticker.shutdown();
+
+        try {
+            ticker.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends every changed count to the sockets following it, if anything in the store has changed.
+     */
+    private void publish() {
+        long version = store.getVersion();
+
+        if (version == sentVersion) {
+            return;
+        }
+
+        sentVersion = version;
+
+        for (Map.Entry<Integer, Set<WebSocket>> entry : subscribers.entrySet()) {
+            int concertId = entry.getKey();
+            int count = store.getConcert(concertId).getCount();
+            Integer sent = sentCounts.put(concertId, count);
+
+            if (sent != null && sent == count) {
+                continue;
+            }
+
+            ByteBuffer frame = encode(concertId, count);
+
+            for (WebSocket socket : entry.getValue()) {
+                socket.sendCount(concertId, frame);
+            }
+        }
+    }
+
+    /**
+     * Removes one socket from a concert's subscribers, forgetting the concert once nobody follows it.
+     * @param socket The socket.
+     * @param concertId The concert.
+     */
+    private void forget(WebSocket socket, int concertId) {
+        Set<WebSocket> sockets = subscribers.get(concertId);
+        sockets.remove(socket);
+
+        if (sockets.isEmpty()) {
+            subscribers.remove(concertId);
+            sentCounts.remove(concertId);
+        }
+    }
+
+    /**
+     * Runs a change to the subscriptions on the ticker thread, or closes the socket if publishing has stopped.
+     * @param socket The socket the change is for.
+     * @param task The change.
+     */
+    private void run(WebSocket socket, Runnable task) {
+        try {
+            ticker.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            socket.goAway();
+        }
+    }
+
+    /**
+     * Encodes a concert's count as a text frame.
+     * @param concertId The concert.
+     * @param count The number of tickets available.
+     * @return The frame, shared by every subscriber.
+     */
+    private static ByteBuffer encode(int concertId, int count) {
+        return WebSocket.textFrame(Json.createObjectBuilder()
+                .add("id", concertId)
+                .add("count", count)
+                .build()
+                .toString());
+    }
+}
@@ -0,0 +1,629 @@
+package utils.websocket;
+
+import utils.log.Log;
+
+import utils.metrics.Metrics;
+
+import utils.request.HttpHeaders;
+import utils.request.HttpRequest;
+import utils.request.RequestBuffer;
+
+import utils.websocket.common.WebSocketException;
+import utils.websocket.enums.CloseCode;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One WebSocket connection (RFC 6455), on which a client follows the ticket counts of some concerts.
+ * The client sends text messages such as {"subscribe": [1, 2]} or {"unsubscribe": [2]}, and is sent
+ * {"id": 1, "count": 97} whenever the count of a concert it follows changes.
+ * Frames are read on the connection's thread and written from a virtual thread of its own. Only the
+ * latest unsent count of each concert is kept, so a client that reads slowly falls behind by one
+ * batch at most, rather than building up a backlog.
+ */
+public class WebSocket {
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    // opcodes
+    private static final int CONTINUATION = 0x0;
+    private static final int TEXT = 0x1;
+    private static final int BINARY = 0x2;
+    private static final int CLOSE = 0x8;
+    private static final int PING = 0x9;
+    private static final int PONG = 0xa;
+
+    private static final int FIN = 0x80;
+    private static final int RESERVED_BITS = 0x70;
+    private static final int MASKED = 0x80;
+
+    private static final int MAX_MESSAGE_SIZE = 4096;
+    private static final int MAX_CONTROL_SIZE = 125;
+    private static final int MAX_HEADER_LENGTH = 14;
+
+    // a ping is sent on a quiet connection this often, well inside the response write timeout
+    private static final long PING_INTERVAL = 15000;
+
+    // a client that has sent nothing, not even a pong, for this long is assumed to be gone
+    private static final long SILENCE_TIMEOUT = PING_INTERVAL * 3;
+
+    // how long a client is given to answer a close frame before the connection is dropped
+    private static final long CLOSE_TIMEOUT = 2000;
+
+    private static final ByteBuffer PING_FRAME = frame(PING, new byte[0]);
+
+    private final InputStream in;
+    private final WritableByteChannel out;
+    private final LiveCounts counts;
+    private final ByteBuffer readBuffer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+
+    // frames waiting for the sender: control frames first, then the latest count of each concert
+    private final ArrayDeque<ByteBuffer> control = new ArrayDeque<>();
+    private final Map<Integer, ByteBuffer> pendingCounts = new LinkedHashMap<>();
+
+    private boolean closeQueued = false;
+    private boolean closeSent = false;
+    private boolean finished = false;
+
+    private volatile long lastHeard = System.currentTimeMillis();
+
+    /**
+     * Constructor for the WebSocket class.
+     * @param in To read frames. A stream rather than a channel, for the same reason as Http2Connection.
+     * @param buffer The connection's request buffer, whose unread bytes (if any) are the first frames.
+     * @param out To write frames, reporting progress to the connection's write deadline.
+     * @param counts Publishes the counts the client subscribes to.
+     */
+    public WebSocket(InputStream in, RequestBuffer buffer, WritableByteChannel out, LiveCounts counts) {
+        this.in = in;
+        this.out = out;
+        this.counts = counts;
+        this.readBuffer = ByteBuffer.allocate(Math.max(MAX_HEADER_LENGTH + MAX_MESSAGE_SIZE, buffer.remaining()));
+        buffer.transferTo(readBuffer);
+        readBuffer.flip();
+    }
+
+    /**
+     * Checks whether an HTTP/1.1 request is a valid WebSocket opening handshake.
+     * @param req The request.
+     * @return True if the request asks for version 13 of the protocol, with a well formed key.
+     */
+    public static boolean isUpgrade(HttpRequest req) {
+        HttpHeaders headers = req.headers();
+
+        return req.method().equals("GET")
+                && req.body().isEmpty()
+                && headers.valueEquals("Upgrade", "websocket")
+                && hasToken(headers.get("Connection"), "upgrade")
+                && headers.valueEquals("Sec-WebSocket-Version", "13")
+                && isKey(headers.get("Sec-WebSocket-Key"));
+    }
+
+    /**
+     * Completes the handshake, then serves the connection until either side closes it.
+     * Returns once the sender has stopped too, so the caller can close the socket.
+     * @param upgrade The request that opened the handshake.
+     * @throws IOException Thrown if the handshake cannot be written.
+     */
+    public void serve(HttpRequest upgrade) throws IOException {
+        String accept = acceptKey(upgrade.headers().get("Sec-WebSocket-Key"));
+        write(ByteBuffer.wrap(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+
+        Thread sender = Thread.ofVirtual().name("ws-sender").start(this::sendFrames);
+        counts.register(this);
+
+        try {
+            readFrames();
+        }
+        catch (WebSocketException e) {
+            close(e.getCode(), e.getMessage());
+        }
+        catch (IOException e) {
+            // the client went away, or the sender hung up on it
+        }
+        finally {
+            counts.remove(this);
+            finish();
+
+            try {
+                sender.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues the latest count of a concert, replacing any count of it not yet sent.
+     * @param concertId The concert.
+     * @param frame The encoded frame, shared with every other subscriber, so it is never modified.
+     */
+    void sendCount(int concertId, ByteBuffer frame) {
+        lock.lock();
+
+        try {
+            if (!closeQueued && !finished) {
+                pendingCounts.put(concertId, frame.duplicate());
+                ready.signal();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts closing the connection because the server is shutting down.
+     */
+    void goAway() {
+        close(CloseCode.GOING_AWAY, "Server shutting down");
+    }
+
+    /**
+     * Encodes an unmasked text frame, as sent by the server.
+     * @param text The message.
+     * @return The frame, read-only so it can be shared between connections.
+     */
+    static ByteBuffer textFrame(String text) {
+        return frame(TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads frames until the client closes the connection, handling each message as it completes.
+     * @throws IOException Thrown if the connection cannot be read.
+     * @throws WebSocketException Thrown if the client breaks the protocol.
+     */
+    private void readFrames() throws IOException, WebSocketException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        boolean inMessage = false;
+
+        while (fill(2)) {
+            int first = readBuffer.get() & 0xff;
+            int second = readBuffer.get() & 0xff;
+            boolean fin = (first & FIN) != 0;
+            int opcode = first & 0x0f;
+
+            if ((first & RESERVED_BITS) != 0) {
+                throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "No extensions were negotiated");
+            }
+
+            if ((second & MASKED) == 0) {
+                throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "Client frames must be masked");
+            }
+
+            int shortLength = second & 0x7f;
+            int extended = shortLength == 126 ? 2 : shortLength == 127 ? 8 : 0;
+
+            if (!fill(extended + 4)) {
+                return;
+            }
+
+            long length = extended == 2 ? readBuffer.getShort() & 0xffff : extended == 8 ? readBuffer.getLong() : shortLength;
+            boolean isControl = (opcode & 0x8) != 0;
+
+            if (isControl && (length > MAX_CONTROL_SIZE || !fin)) {
+                throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "Control frames must be short and unfragmented");
+            }
+
+            if (length < 0 || length > MAX_MESSAGE_SIZE - (isControl ? 0 : message.size())) {
+                throw new WebSocketException(CloseCode.MESSAGE_TOO_BIG, "Messages are limited to " + MAX_MESSAGE_SIZE + " bytes");
+            }
+
+            byte[] mask = new byte[4];
+            readBuffer.get(mask);
+
+            if (!fill((int) length)) {
+                return;
+            }
+
+            byte[] payload = new byte[(int) length];
+            readBuffer.get(payload);
+
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+
+            lastHeard = System.currentTimeMillis();
+
+            switch (opcode) {
+                case TEXT, CONTINUATION -> {
+                    if (inMessage == (opcode == TEXT)) {
+                        throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "Fragments out of order");
+                    }
+
+                    message.write(payload, 0, payload.length);
+                    inMessage = !fin;
+
+                    if (fin) {
+                        onMessage(decode(message.toByteArray()));
+                        message.reset();
+                    }
+                }
+                case BINARY -> throw new WebSocketException(CloseCode.UNSUPPORTED_DATA, "Only text messages are understood");
+                case PING -> queueControl(frame(PONG, payload));
+                case PONG -> {
+                    // only shows the client is still there
+                }
+                case CLOSE -> {
+                    onClose(payload);
+                    return;
+                }
+                default -> throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "Unknown opcode " + opcode);
+            }
+        }
+    }
+
+    /**
+     * Handles a subscribe or unsubscribe message.
+     * Concert IDs that do not exist are ignored, as are repeated subscriptions.
+     * @param text The message.
+     * @throws WebSocketException Thrown if the message is not one of the two commands.
+     */
+    private void onMessage(String text) throws WebSocketException {
+        try (JsonReader reader = Json.createReader(new StringReader(text))) {
+            JsonObject command = reader.readObject();
+            JsonArray subscribe = command.getJsonArray("subscribe");
+            JsonArray unsubscribe = command.getJsonArray("unsubscribe");
+
+            if (subscribe == null && unsubscribe == null) {
+                throw new WebSocketException(CloseCode.UNSUPPORTED_DATA, "Expected 'subscribe' or 'unsubscribe'");
+            }
+
+            if (subscribe != null) {
+                for (JsonNumber id : subscribe.getValuesAs(JsonNumber.class)) {
+                    counts.subscribe(this, id.intValueExact());
+                }
+            }
+
+            if (unsubscribe != null) {
+                for (JsonNumber id : unsubscribe.getValuesAs(JsonNumber.class)) {
+                    counts.unsubscribe(this, id.intValueExact());
+                }
+            }
+        }
+        catch (JsonException | ClassCastException | ArithmeticException e) {
+            throw new WebSocketException(CloseCode.UNSUPPORTED_DATA, "Expected a JSON object of concert ID arrays");
+        }
+    }
+
+    /**
+     * Answers the client's close frame with one of our own, unless we sent ours first.
+     * @param payload The close frame's payload: empty, or a status code followed by a reason.
+     * @throws WebSocketException Thrown if the payload is malformed.
+     */
+    private void onClose(byte[] payload) throws WebSocketException {
+        if (payload.length == 1) {
+            throw new WebSocketException(CloseCode.PROTOCOL_ERROR, "Malformed close frame");
+        }
+
+        byte[] echo = payload.length == 0 ? new byte[0] : new byte[] {payload[0], payload[1]};
+        queueControl(frame(CLOSE, echo));
+    }
+
+    /**
+     * Queues a close frame. Nothing is sent after it.
+     * @param code The status code.
+     * @param reason The reason, kept short enough to fit in a control frame.
+     */
+    private void close(CloseCode code, String reason) {
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + Math.min(text.length, MAX_CONTROL_SIZE - 2));
+        payload.putShort((short) code.getCode()).put(text, 0, payload.remaining());
+
+        queueControl(frame(CLOSE, payload.array()));
+    }
+
+    /**
+     * Queues a control frame ahead of any counts waiting to be sent.
+     * @param frame The frame.
+     */
+    private void queueControl(ByteBuffer frame) {
+        lock.lock();
+
+        try {
+            if (closeQueued) {
+                return;
+            }
+
+            closeQueued = (frame.get(0) & 0x0f) == CLOSE;
+            control.add(frame);
+            ready.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the reader has stopped, and wakes the sender.
+     */
+    private void finish() {
+        lock.lock();
+
+        try {
+            finished = true;
+            ready.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends queued frames until the connection closes. Each batch goes out in one gathering write,
+     * and a quiet connection is pinged so its write deadline does not pass.
+     */
+    private void sendFrames() {
+        try {
+            ByteBuffer[] batch;
+
+            while ((batch = nextBatch()) != null) {
+                write(batch);
+            }
+        }
+        catch (IOException e) {
+            // the client went away, which the reader finds out too
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            hangUp();
+        }
+    }
+
+    /**
+     * Waits for frames to send.
+     * @return The frames, or null once the close frame has gone, the reader has stopped, or the client has gone quiet.
+     * @throws InterruptedException Thrown if the sender is interrupted while waiting.
+     */
+    private ByteBuffer[] nextBatch() throws InterruptedException {
+        lock.lock();
+
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(PING_INTERVAL);
+
+            while (control.isEmpty() && pendingCounts.isEmpty() && !finished && !closeSent && remaining > 0) {
+                remaining = ready.awaitNanos(remaining);
+            }
+
+            if (closeSent || finished && control.isEmpty()) {
+                return null;
+            }
+
+            if (control.isEmpty() && pendingCounts.isEmpty()) {
+                if (System.currentTimeMillis() - lastHeard > SILENCE_TIMEOUT) {
+                    return null;
+                }
+
+                return new ByteBuffer[] {PING_FRAME.duplicate()};
+            }
+
+            List<ByteBuffer> batch = new ArrayList<>(control);
+
+            if (!closeQueued) {
+                batch.addAll(pendingCounts.values());
+            }
+
+            closeSent = closeQueued;
+            control.clear();
+            pendingCounts.clear();
+
+            return batch.toArray(new ByteBuffer[0]);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the reader a moment to see the client's close frame, then closes the socket if it has not stopped,
+     * which ends its read.
+     */
+    private void hangUp() {
+        lock.lock();
+
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT);
+
+            while (!finished && remaining > 0) {
+                remaining = ready.awaitNanos(remaining);
+            }
+
+            if (finished) {
+                return;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            lock.unlock();
+        }
+
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            Log.event("IO Exception: ", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes buffers in full, gathering them into as few writes as the channel allows.
+     * @param buffers The buffers.
+     * @throws IOException Thrown if the connection cannot be written.
+     */
+    private void write(ByteBuffer... buffers) throws IOException {
+        for (int i = 0; i < buffers.length; ) {
+            if (!buffers[i].hasRemaining()) {
+                i++;
+            } else if (out instanceof GatheringByteChannel gathering) {
+                gathering.write(buffers, i, buffers.length - i);
+            } else {
+                out.write(buffers[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads until the buffer holds at least the given number of bytes.
+     * @param needed The number of bytes needed.
+     * @return True once they have arrived, or false if the client closed the connection first.
+     * @throws IOException Thrown if the connection cannot be read.
+     */
+    private boolean fill(int needed) throws IOException {
+        while (readBuffer.remaining() < needed) {
+            readBuffer.compact();
+            int read = in.read(readBuffer.array(), readBuffer.position(), readBuffer.remaining());
+
+            if (read > 0) {
+                readBuffer.position(readBuffer.position() + read);
+                Metrics.bytesRead(read);
+            }
+
+            readBuffer.flip();
+
+            if (read == -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes a text message, which must be valid UTF-8.
+     * @param bytes The message.
+     * @return The text.
+     * @throws WebSocketException Thrown if the message is not valid UTF-8.
+     */
+    private static String decode(byte[] bytes) throws WebSocketException {
+        try {
+            CharBuffer text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+
+            return text.toString();
+        }
+        catch (CharacterCodingException e) {
+            throw new WebSocketException(CloseCode.INVALID_PAYLOAD, "Text messages must be UTF-8");
+        }
+    }
+
+    /**
+     * Encodes an unmasked, unfragmented frame.
+     * @param opcode The frame's opcode.
+     * @param payload The payload.
+     * @return The frame, read-only so it can be shared.
+     */
+    private static ByteBuffer frame(int opcode, byte[] payload) {
+        int extended = payload.length < 126 ? 0 : payload.length <= 0xffff ? 2 : 8;
+        ByteBuffer frame = ByteBuffer.allocate(2 + extended + payload.length);
+        frame.put((byte) (FIN | opcode));
+
+        if (extended == 0) {
+            frame.put((byte) payload.length);
+        } else if (extended == 2) {
+            frame.put((byte) 126).putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127).putLong(payload.length);
+        }
+
+        return frame.put(payload).flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Computes the Sec-WebSocket-Accept value that proves the server understood the handshake.
+     * @param key The client's Sec-WebSocket-Key.
+     * @return The base64 SHA-1 of the key and the protocol's GUID.
+     */
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key.trim() + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+
+            return Base64.getEncoder().encodeToString(digest);
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java runtime is required to provide SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks that a Sec-WebSocket-Key is the base64 encoding of 16 bytes.
+     * @param key The header value, or null if it is missing.
+     * @return True if the key is well formed.
+     */
+    private static boolean isKey(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        try {
+            return Base64.getDecoder().decode(key.trim()).length == 16;
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a comma separated header value lists a token, ignoring case (i.e. 'keep-alive, Upgrade').
+     * @param value The header value, or null if it is missing.
+     * @param token The token, in lower case.
+     * @return True if the token is listed.
+     */
+    private static boolean hasToken(String value, String token) {
+        if (value == null) {
+            return false;
+        }
+
+        for (String part : value.split(",")) {
+            if (part.trim().toLowerCase(Locale.ROOT).equals(token)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package utils.websocket.common;
+
+import utils.websocket.enums.CloseCode;
+
+/**
+ * Custom Exception class for a client breaking the WebSocket protocol, which ends the connection with a close frame.
+ */
+@SuppressWarnings("serial")
+public class WebSocketException extends Exception {
+    private final CloseCode code;
+
+    /**
+     * Constructor for the WebSocketException class.
+     * @param code The status code to send in the close frame.
+     * @param message The reasoning for the error, sent in the close frame too.
+     */
+    public WebSocketException(CloseCode code, String message) {
+        // a misbehaving client is routine, so skip the stack trace
+        super(message, null, false, false);
+        this.code = code;
+    }
+
+    /**
+     * Retrieves the status code to send to the client.
+     * @return The status code.
+     */
+    public CloseCode getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,31 @@
+package utils.websocket.enums;
+
+/**
+ * Enum class to represent the status codes sent in WebSocket close frames.
+ */
+public enum CloseCode {
+    NORMAL(1000),
+    GOING_AWAY(1001),
+    PROTOCOL_ERROR(1002),
+    UNSUPPORTED_DATA(1003),
+    INVALID_PAYLOAD(1007),
+    MESSAGE_TOO_BIG(1009);
+
+    private final int code;
+
+    /**
+     * Constructor for CloseCode.
+     * @param code The status code sent on the wire.
+     */
+    CloseCode(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Retrieves the status code.
+     * @return The status code sent on the wire.
+     */
+    public int getCode() {
+        return code;
+    }
+}